@@ -0,0 +1,204 @@
+package com.github.felipegutierrez.kafka.elasticsearch.avro;
+
+import com.github.felipegutierrez.kafka.elasticsearch.sink.ElasticSearchSinkConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.ProjectableTweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetProjection;
+import io.confluent.kafka.serializers.KafkaAvroDeserializer;
+import io.confluent.kafka.serializers.KafkaAvroDeserializerConfig;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.util.Utf8;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Index Avro records read with the {@link KafkaAvroDeserializer}, e.g. the {@code CourseStatistic} of the
+ * {@code recent-stats} and {@code long-term-stats} topics of the Udemy pipeline.
+ * <p>
+ * The fields of the record are written straight into an {@link XContentBuilder} following its schema, without a JSON
+ * string in between: nested records and maps become objects, arrays become arrays, a union is written as its value,
+ * {@link Utf8} strings are copied as the UTF-8 bytes they already are, {@code bytes} and {@code fixed} are base64
+ * encoded and a {@code timestamp-millis} is written as epoch milliseconds. The builder writes into a buffer reused from
+ * one record to the next, the request gets a copy of its exact size. Hence the format is used from one thread only,
+ * like the poll loop of the sink.
+ * <p>
+ * The document ID is the value of a configurable field, a dotted path for a field of a nested record, e.g.
+ * {@code course_id} for a course statistic or {@code id} for a review. The records are read as generic records with
+ * the schema they were written with, so the sink does not need the classes generated from the schemas. The
+ * format is not a {@link ProjectableTweetFormat}: an Avro record is projected by reading it with a reader schema that
+ * has the kept fields only, so the {@link ElasticSearchSinkConfig} rejects a {@link TweetProjection}.
+ */
+public class AvroDocumentFormat implements TweetFormat<IndexedRecord> {
+    private final String schemaRegistryUrl;
+    private final String[] idPath;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+
+    /**
+     * @param schemaRegistryUrl where the deserializer fetches the schemas of the records
+     * @param idField           field whose value is the document ID
+     */
+    public AvroDocumentFormat(String schemaRegistryUrl, String idField) {
+        if (idField == null || idField.isEmpty()) {
+            throw new IllegalArgumentException("idField cannot be empty");
+        }
+        this.schemaRegistryUrl = schemaRegistryUrl;
+        this.idPath = idField.split("\\.");
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Class<? extends Deserializer<IndexedRecord>> deserializer() {
+        // it returns Object, the values of the indexed topics are records
+        return (Class) KafkaAvroDeserializer.class;
+    }
+
+    @Override
+    public void configure(Properties consumerProperties) {
+        consumerProperties.setProperty(KafkaAvroDeserializerConfig.SCHEMA_REGISTRY_URL_CONFIG, schemaRegistryUrl);
+    }
+
+    @Override
+    public String extractId(IndexedRecord record) {
+        Object value = record;
+        for (String name : idPath) {
+            if (!(value instanceof IndexedRecord)) {
+                return null;
+            }
+            IndexedRecord parent = (IndexedRecord) value;
+            Schema.Field field = parent.getSchema().getField(name);
+            if (field == null) {
+                return null;
+            }
+            value = parent.get(field.pos());
+        }
+        return value == null || value instanceof IndexedRecord ? null : value.toString();
+    }
+
+    @Override
+    public IndexRequest source(IndexRequest request, IndexedRecord record) {
+        buffer.reset();
+        try (XContentBuilder builder = new XContentBuilder(JsonXContent.jsonXContent, buffer)) {
+            writeRecord(builder, record);
+        } catch (IOException e) {
+            // the buffer is in memory, only a value the schema does not allow gets here
+            throw new UncheckedIOException("Could not write the record " + record.getSchema().getFullName(), e);
+        }
+        return request.source(buffer.toByteArray(), XContentType.JSON);
+    }
+
+    private static void writeRecord(XContentBuilder builder, IndexedRecord record) throws IOException {
+        builder.startObject();
+        for (Schema.Field field : record.getSchema().getFields()) {
+            builder.field(field.name());
+            writeValue(builder, field.schema(), record.get(field.pos()));
+        }
+        builder.endObject();
+    }
+
+    private static void writeValue(XContentBuilder builder, Schema schema, Object value) throws IOException {
+        if (value == null) {
+            builder.nullValue();
+            return;
+        }
+        switch (schema.getType()) {
+            case UNION:
+                writeValue(builder, schema.getTypes().get(GenericData.get().resolveUnion(schema, value)), value);
+                break;
+            case RECORD:
+                writeRecord(builder, (IndexedRecord) value);
+                break;
+            case ARRAY:
+                builder.startArray();
+                for (Object element : (Collection<?>) value) {
+                    writeValue(builder, schema.getElementType(), element);
+                }
+                builder.endArray();
+                break;
+            case MAP:
+                builder.startObject();
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    builder.field(entry.getKey().toString());
+                    writeValue(builder, schema.getValueType(), entry.getValue());
+                }
+                builder.endObject();
+                break;
+            case STRING:
+                if (value instanceof Utf8) {
+                    Utf8 utf8 = (Utf8) value;
+                    builder.utf8Value(utf8.getBytes(), 0, utf8.getByteLength());
+                } else {
+                    builder.value(value.toString());
+                }
+                break;
+            case BYTES:
+                if (value instanceof ByteBuffer) {
+                    ByteBuffer bytes = ((ByteBuffer) value).duplicate();
+                    byte[] copy = new byte[bytes.remaining()];
+                    bytes.get(copy);
+                    builder.value(copy);
+                } else {
+                    writeLogicalValue(builder, value);
+                }
+                break;
+            case FIXED:
+                if (value instanceof GenericFixed) {
+                    builder.value(((GenericFixed) value).bytes());
+                } else {
+                    writeLogicalValue(builder, value);
+                }
+                break;
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+            case BOOLEAN:
+                if (value instanceof Number || value instanceof Boolean) {
+                    // the boxed value, written as a number or a boolean
+                    builder.value(value);
+                } else {
+                    writeLogicalValue(builder, value);
+                }
+                break;
+            default:
+                // ENUM, the symbol of a generic record or the constant of a specific one
+                builder.value(value.toString());
+        }
+    }
+
+    /**
+     * Write the value of a logical type converted by the specific records, e.g. the {@link Instant} of a
+     * {@code timestamp-millis} as epoch milliseconds, the others, like a decimal or a date, as their string.
+     */
+    private static void writeLogicalValue(XContentBuilder builder, Object value) throws IOException {
+        if (value instanceof Instant) {
+            builder.value(((Instant) value).toEpochMilli());
+        } else {
+            builder.value(value.toString());
+        }
+    }
+
+    @Override
+    public String describe(IndexedRecord record) {
+        return record == null ? null : record.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "AvroDocumentFormat{schemaRegistryUrl=" + schemaRegistryUrl + ", idField=" + String.join(".", idPath) + '}';
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.felipegutierrez.kafka.elasticsearch.avro;
+
+import com.github.felipegutierrez.kafka.elasticsearch.sink.ElasticSearchSinkConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.ProjectableTweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetProjection;
+import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
+import io.confluent.kafka.schemaregistry.client.SchemaRegistryClient;
+import io.confluent.kafka.serializers.KafkaAvroDeserializer;
+import io.confluent.kafka.serializers.KafkaAvroSerializer;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.util.Utf8;
+import org.elasticsearch.action.index.IndexRequest;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class AvroDocumentFormatTest {
+    private static final Schema COURSE_STATISTIC = new Schema.Parser().parse("{\"type\":\"record\",\"name\":\"CourseStatistic\"," +
+            "\"namespace\":\"com.github.felipegutierrez.kafka.stream.avro.udemy\",\"fields\":[" +
+            "{\"name\":\"course_id\",\"type\":\"long\"}," +
+            "{\"name\":\"course_title\",\"type\":\"string\"}," +
+            "{\"name\":\"average_rating\",\"type\":\"double\"}," +
+            "{\"name\":\"count_reviews\",\"type\":\"long\"}," +
+            "{\"name\":\"last_review_time\",\"type\":{\"type\":\"long\",\"logicalType\":\"timestamp-millis\"}}]}");
+    private static final Schema REVIEW = new Schema.Parser().parse("{\"type\":\"record\",\"name\":\"Review\",\"fields\":[" +
+            "{\"name\":\"id\",\"type\":\"long\"}," +
+            "{\"name\":\"content\",\"type\":[\"null\",\"string\"],\"default\":null}," +
+            "{\"name\":\"tags\",\"type\":{\"type\":\"array\",\"items\":\"string\"}}," +
+            "{\"name\":\"scores\",\"type\":{\"type\":\"map\",\"values\":\"int\"}}," +
+            "{\"name\":\"user\",\"type\":{\"type\":\"record\",\"name\":\"User\",\"fields\":[" +
+            "{\"name\":\"id\",\"type\":\"string\"},{\"name\":\"verified\",\"type\":\"boolean\"}]}}]}");
+
+    @Test
+    public void writesTheFieldsOfTheRecord() {
+        GenericRecord statistic = new GenericData.Record(COURSE_STATISTIC);
+        statistic.put("course_id", 1294188L);
+        statistic.put("course_title", new Utf8("Apache Kafka Series"));
+        statistic.put("average_rating", 4.5);
+        statistic.put("count_reviews", 42L);
+        statistic.put("last_review_time", 1600000000000L);
+        AvroDocumentFormat format = new AvroDocumentFormat("http://localhost:8081", "course_id");
+
+        IndexRequest request = format.source(new IndexRequest("recent-stats").id(format.extractId(statistic)), statistic);
+
+        assertEquals("1294188", request.id());
+        assertEquals("{\"course_id\":1294188,\"course_title\":\"Apache Kafka Series\",\"average_rating\":4.5," +
+                "\"count_reviews\":42,\"last_review_time\":1600000000000}", request.source().utf8ToString());
+    }
+
+    @Test
+    public void writesNestedRecordsArraysMapsAndUnions() {
+        GenericRecord user = new GenericData.Record(REVIEW.getField("user").schema());
+        user.put("id", "u-7");
+        user.put("verified", true);
+        GenericRecord review = new GenericData.Record(REVIEW);
+        review.put("id", 7L);
+        review.put("content", null);
+        review.put("tags", Arrays.asList(new Utf8("kafka"), "avro"));
+        review.put("scores", Collections.singletonMap(new Utf8("clarity"), 5));
+        review.put("user", user);
+        AvroDocumentFormat format = new AvroDocumentFormat("http://localhost:8081", "user.id");
+
+        String source = format.source(new IndexRequest("reviews"), review).source().utf8ToString();
+
+        assertEquals("{\"id\":7,\"content\":null,\"tags\":[\"kafka\",\"avro\"],\"scores\":{\"clarity\":5}," +
+                "\"user\":{\"id\":\"u-7\",\"verified\":true}}", source);
+        assertEquals("u-7", format.extractId(review));
+        // the buffer is reused, the request keeps its own copy
+        review.put("id", 8L);
+        assertTrue(format.source(new IndexRequest("reviews"), review).source().utf8ToString().startsWith("{\"id\":8,"));
+        assertNull(new AvroDocumentFormat("http://localhost:8081", "course_id").extractId(review));
+    }
+
+    @Test
+    public void indexesTheRecordsReadFromTheSchemaRegistry() {
+        GenericRecord statistic = new GenericData.Record(COURSE_STATISTIC);
+        statistic.put("course_id", 1294188L);
+        statistic.put("course_title", "Apache Kafka Series");
+        statistic.put("average_rating", 4.5);
+        statistic.put("count_reviews", 42L);
+        statistic.put("last_review_time", 1600000000000L);
+        AvroDocumentFormat format = new AvroDocumentFormat("http://registry:8081", "course_id");
+        Properties properties = new Properties();
+        format.configure(properties);
+        Map<String, Object> configs = new HashMap<String, Object>();
+        for (String name : properties.stringPropertyNames()) {
+            configs.put(name, properties.getProperty(name));
+        }
+        // the same registry for both, as the producer and the consumer of the course statistics share theirs
+        SchemaRegistryClient registry = new MockSchemaRegistryClient();
+        byte[] bytes = new KafkaAvroSerializer(registry, configs).serialize("recent-stats", statistic);
+
+        Object value = new KafkaAvroDeserializer(registry, configs).deserialize("recent-stats", bytes);
+
+        // no class generated from the schema is needed
+        assertTrue(value instanceof GenericRecord);
+        IndexedRecord record = (IndexedRecord) value;
+        IndexRequest request = format.source(new IndexRequest("recent-stats").id(format.extractId(record)), record);
+        assertEquals("1294188", request.id());
+        assertEquals("{\"course_id\":1294188,\"course_title\":\"Apache Kafka Series\",\"average_rating\":4.5," +
+                "\"count_reviews\":42,\"last_review_time\":1600000000000}", request.source().utf8ToString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cannotBeProjected() {
+        AvroDocumentFormat format = new AvroDocumentFormat("http://registry:8081", "id");
+        assertFalse(format instanceof ProjectableTweetFormat);
+
+        new ElasticSearchSinkConfig().setProjection(new TweetProjection("id")).validate(format);
+    }
+}
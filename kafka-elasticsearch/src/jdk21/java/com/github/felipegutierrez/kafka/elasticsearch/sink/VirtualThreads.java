@@ -0,0 +1,21 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual threads for the {@link ConcurrentDocumentIndexer}, compiled with the {@code jdk21} profile only and loaded by
+ * name, so the rest of the module still builds and runs on Java 8.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return an executor that starts a new virtual thread for each task, named with the prefix and a counter
+     */
+    public static ExecutorService newExecutor(String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+    }
+}
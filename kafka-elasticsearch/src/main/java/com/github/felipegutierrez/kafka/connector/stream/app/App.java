@@ -1,21 +1,53 @@
 package com.github.felipegutierrez.kafka.connector.stream.app;
 
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.AdaptiveBulkSizer;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.BulkPipelineConfig;
 import com.github.felipegutierrez.kafka.elasticsearch.consumer.ElasticSearchConsumer;
 import com.github.felipegutierrez.kafka.elasticsearch.consumer.ElasticSearchConsumerWithBulkRequest;
 import com.github.felipegutierrez.kafka.elasticsearch.consumer.ElasticSearchConsumerWithIdempotentRequests;
 import com.github.felipegutierrez.kafka.elasticsearch.consumer.ElasticSearchConsumerWithIdempotentRequestsAndSyncbatchCommit;
+import com.github.felipegutierrez.kafka.elasticsearch.consumer.ElasticSearchConsumerWithPartitionWorkers;
+import com.github.felipegutierrez.kafka.elasticsearch.consumer.ElasticSearchConsumerWithPipelinedBulkRequest;
+import com.github.felipegutierrez.kafka.elasticsearch.consumer.ElasticSearchSinkBenchmark;
+import com.github.felipegutierrez.kafka.elasticsearch.consumer.ElasticSearchSinkConsumer;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.CommitStrategy;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.ElasticSearchSinkConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.IndexingMode;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.RecentlyIndexedIdCache;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.ByteArrayTweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.StringTweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetProjection;
 import com.github.felipegutierrez.kafka.util.Parameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+
 public class App {
     private static final Logger logger = LoggerFactory.getLogger(App.class);
+    // built with the avro profile only, see the pom
+    private static final String AVRO_FORMAT = "com.github.felipegutierrez.kafka.elasticsearch.avro.AvroDocumentFormat";
 
     public static void main(String[] args) {
         int app = 0;
         if (args != null && args.length > 0) {
             int size = args.length;
             String elements = "";
+            IndexingMode indexingMode = IndexingMode.BULK;
+            CommitStrategy commitStrategy = CommitStrategy.ASYNC;
+            int records = 1000;
+            int cacheMb = 0;
+            int metricsPort = -1;
+            String fields = "";
+            boolean gzip = false;
+            int connections = 0;
+            int budgetMb = 0;
+            String topic = "recent-stats";
+            String idField = "course_id";
+            String registry = "http://localhost:8081";
+            int concurrency = 0;
+            boolean resetOffsets = false;
             for (int i = 0; i < size; i++) {
                 if (Parameters.APP.equals(String.valueOf(args[i])) && i + 1 < size) {
                     i++;
@@ -23,6 +55,48 @@ public class App {
                 } else if (Parameters.ELEMENTS.equals(String.valueOf(args[i])) && i + 1 < size) {
                     i++;
                     elements = args[i];
+                } else if (Parameters.MODE.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    indexingMode = IndexingMode.valueOf(args[i].toUpperCase());
+                } else if (Parameters.COMMIT.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    commitStrategy = CommitStrategy.valueOf(args[i].toUpperCase());
+                } else if (Parameters.RECORDS.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    records = Integer.parseInt(args[i]);
+                } else if (Parameters.CACHE.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    cacheMb = Integer.parseInt(args[i]);
+                } else if (Parameters.METRICS.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    metricsPort = Integer.parseInt(args[i]);
+                } else if (Parameters.FIELDS.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    fields = args[i];
+                } else if (Parameters.GZIP.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    gzip = Boolean.parseBoolean(args[i]);
+                } else if (Parameters.CONNECTIONS.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    connections = Integer.parseInt(args[i]);
+                } else if (Parameters.BUDGET.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    budgetMb = Integer.parseInt(args[i]);
+                } else if (Parameters.TOPIC.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    topic = args[i];
+                } else if (Parameters.ID_FIELD.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    idField = args[i];
+                } else if (Parameters.REGISTRY.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    registry = args[i];
+                } else if (Parameters.CONCURRENCY.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    concurrency = Integer.parseInt(args[i]);
+                } else if (Parameters.RESET_OFFSETS.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    resetOffsets = Boolean.parseBoolean(args[i]);
                 }
             }
             System.out.println();
@@ -41,8 +115,13 @@ public class App {
                     app = 0;
                     break;
                 case 2:
-                    System.out.println("App 2 selected: " + ElasticSearchConsumerWithIdempotentRequests.class.getSimpleName());
-                    new ElasticSearchConsumerWithIdempotentRequests();
+                    if (concurrency > 0) {
+                        System.out.println("App 2 selected: " + ElasticSearchConsumerWithIdempotentRequests.class.getSimpleName() + " with " + records + " records and " + concurrency + " requests in flight");
+                        new ElasticSearchConsumerWithIdempotentRequests(concurrency, records);
+                    } else {
+                        System.out.println("App 2 selected: " + ElasticSearchConsumerWithIdempotentRequests.class.getSimpleName());
+                        new ElasticSearchConsumerWithIdempotentRequests();
+                    }
                     app = 0;
                     break;
                 case 3:
@@ -55,6 +134,67 @@ public class App {
                     new ElasticSearchConsumerWithBulkRequest();
                     app = 0;
                     break;
+                case 5:
+                    System.out.println("App 5 selected: " + ElasticSearchConsumerWithPipelinedBulkRequest.class.getSimpleName());
+                    new ElasticSearchConsumerWithPipelinedBulkRequest();
+                    app = 0;
+                    break;
+                case 6:
+                    System.out.println("App 6 selected: " + ElasticSearchConsumerWithPipelinedBulkRequest.class.getSimpleName() + " with " + ByteArrayTweetFormat.class.getSimpleName());
+                    new ElasticSearchConsumerWithPipelinedBulkRequest(-1,
+                            new BulkPipelineConfig().setAdaptiveBulkSizer(new AdaptiveBulkSizer(100, 2000, 1000)),
+                            new ByteArrayTweetFormat());
+                    app = 0;
+                    break;
+                case 7:
+                    System.out.println("App 7 selected: " + ElasticSearchConsumerWithPartitionWorkers.class.getSimpleName());
+                    ElasticSearchSinkConfig workersConfig = new ElasticSearchSinkConfig().setMetricsPort(metricsPort)
+                            .setBulkPipelineConfig(new BulkPipelineConfig().setFlushActions(200));
+                    workersConfig.getClientConfig().setCompression(gzip);
+                    if (connections > 0) {
+                        workersConfig.getClientConfig().setMaxConnectionsPerRoute(connections).setMaxConnectionsTotal(connections);
+                    }
+                    new ElasticSearchConsumerWithPartitionWorkers(workersConfig, 1000, new StringTweetFormat());
+                    app = 0;
+                    break;
+                case 8:
+                    System.out.println("App 8 selected: " + ElasticSearchSinkConsumer.class.getSimpleName() + " with " + indexingMode + " indexing and " + commitStrategy + " commits");
+                    ElasticSearchSinkConfig sinkConfig = new ElasticSearchSinkConfig().setIndexingMode(indexingMode)
+                            .setCommitStrategy(commitStrategy).setMetricsPort(metricsPort).setResetStoredOffsets(resetOffsets);
+                    if (cacheMb > 0) {
+                        sinkConfig.setRecentlyIndexedIdCache(new RecentlyIndexedIdCache(cacheMb * 1024L * 1024L));
+                    }
+                    if (!fields.isEmpty()) {
+                        sinkConfig.setProjection(new TweetProjection(fields));
+                    }
+                    sinkConfig.getClientConfig().setCompression(gzip);
+                    if (connections > 0) {
+                        sinkConfig.getClientConfig().setMaxConnectionsPerRoute(connections).setMaxConnectionsTotal(connections);
+                    }
+                    if (budgetMb > 0) {
+                        sinkConfig.getBulkPipelineConfig().setMemoryBudgetBytes(budgetMb * 1024L * 1024L);
+                    }
+                    if (concurrency > 0) {
+                        sinkConfig.setMaxInFlightDocuments(concurrency);
+                    }
+                    new ElasticSearchSinkConsumer(sinkConfig);
+                    app = 0;
+                    break;
+                case 9:
+                    System.out.println("App 9 selected: " + ElasticSearchSinkBenchmark.class.getSimpleName() + " with " + records + " records");
+                    new ElasticSearchSinkBenchmark(records, 100);
+                    app = 0;
+                    break;
+                case 10:
+                    System.out.println("App 10 selected: " + ElasticSearchSinkConsumer.class.getSimpleName() + " with the Avro records of " + topic + " identified by " + idField);
+                    TweetFormat<?> avroFormat = avroFormat(registry, idField);
+                    if (avroFormat != null) {
+                        new ElasticSearchSinkConsumer(new ElasticSearchSinkConfig().setIndex(topic, "_doc")
+                                .setIndexingMode(indexingMode).setCommitStrategy(commitStrategy).setMetricsPort(metricsPort),
+                                avroFormat, topic);
+                    }
+                    app = 0;
+                    break;
                 default:
                     args = null;
                     System.out.println("No application selected [" + app + "] ");
@@ -63,10 +203,27 @@ public class App {
         } else {
             logger.info("Applications available");
             logger.info("1 - " + ElasticSearchConsumer.class.getSimpleName());
-            logger.info("2 - " + ElasticSearchConsumerWithIdempotentRequests.class.getSimpleName());
+            logger.info("2 - " + ElasticSearchConsumerWithIdempotentRequests.class.getSimpleName() + " [-concurrency REQUESTS_IN_FLIGHT -records 1000]");
             logger.info("3 - " + ElasticSearchConsumerWithIdempotentRequestsAndSyncbatchCommit.class.getSimpleName());
-            logger.info("3 - " + ElasticSearchConsumerWithBulkRequest.class.getSimpleName());
-            logger.info("use: java -jar kafka-elasticsearch/target/kafka-elasticsearch-1.0.jar -app [1|2|3|4]");
+            logger.info("4 - " + ElasticSearchConsumerWithBulkRequest.class.getSimpleName());
+            logger.info("5 - " + ElasticSearchConsumerWithPipelinedBulkRequest.class.getSimpleName());
+            logger.info("6 - " + ElasticSearchConsumerWithPipelinedBulkRequest.class.getSimpleName() + " with " + ByteArrayTweetFormat.class.getSimpleName());
+            logger.info("7 - " + ElasticSearchConsumerWithPartitionWorkers.class.getSimpleName() + " [-metrics PROMETHEUS_PORT] [-gzip true] [-connections PER_ROUTE]");
+            logger.info("8 - " + ElasticSearchSinkConsumer.class.getSimpleName() + " -mode " + Arrays.toString(IndexingMode.values()) + " -commit " + Arrays.toString(CommitStrategy.values()) + " [-cache MB_PER_PARTITION] [-metrics PROMETHEUS_PORT] [-fields id,created_at,text,...] [-gzip true] [-connections PER_ROUTE] [-budget MB] [-concurrency REQUESTS_IN_FLIGHT] [-resetOffsets true]");
+            logger.info("9 - " + ElasticSearchSinkBenchmark.class.getSimpleName() + " -records 1000");
+            logger.info("10 - " + ElasticSearchSinkConsumer.class.getSimpleName() + " -topic recent-stats -id course_id [-registry http://localhost:8081] -mode ... -commit ..., built with: mvn package -Pavro");
+            logger.info("use: java -jar kafka-elasticsearch/target/kafka-elasticsearch-1.0.jar -app [1|2|3|4|5|6|7|8|9|10]");
+        }
+    }
+
+    private static TweetFormat<?> avroFormat(String registry, String idField) {
+        try {
+            return (TweetFormat<?>) Class.forName(AVRO_FORMAT).getConstructor(String.class, String.class).newInstance(registry, idField);
+        } catch (ClassNotFoundException e) {
+            System.out.println("The Avro format is missing, build the jar with: mvn package -Pavro");
+        } catch (ReflectiveOperationException e) {
+            logger.error("Could not create the Avro format", e);
         }
+        return null;
     }
 }
@@ -0,0 +1,155 @@
+package com.github.felipegutierrez.kafka.elasticsearch.bulk;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Choose the number of documents per bulk from what the cluster is able to absorb, with an AIMD policy (additive
+ * increase, multiplicative decrease) like TCP congestion control:
+ * <ul>
+ * <li>a bulk that completed under the target latency without rejections grows the size by {@code additiveIncrease}</li>
+ * <li>a bulk slower than the target latency, or with documents rejected by a full write thread pool
+ * ({@code es_rejected_execution_exception}, HTTP 429), multiplies the size by {@code decreaseFactor}</li>
+ * </ul>
+ * The size always stays between the min and max bounds. The current value is exposed over JMX as
+ * {@code com.github.felipegutierrez.kafka.elasticsearch:type=AdaptiveBulkSizer,name=<name>}.
+ */
+public class AdaptiveBulkSizer implements AdaptiveBulkSizerMBean {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveBulkSizer.class);
+    private final int minSize;
+    private final int maxSize;
+    private final long targetLatencyMs;
+    private final int additiveIncrease;
+    private final double decreaseFactor;
+    private volatile int currentSize;
+    private volatile long lastLatencyMs;
+    private volatile long rejectedDocuments;
+    private volatile long decreases;
+
+    public AdaptiveBulkSizer(int minSize, int maxSize, long targetLatencyMs) {
+        this(minSize, maxSize, minSize, targetLatencyMs, Math.max(1, minSize / 2), 0.5);
+    }
+
+    public AdaptiveBulkSizer(int minSize, int maxSize, int initialSize, long targetLatencyMs, int additiveIncrease,
+                             double decreaseFactor) {
+        if (minSize < 1 || maxSize < minSize || initialSize < minSize || initialSize > maxSize) {
+            throw new IllegalArgumentException("Bulk size bounds must satisfy 1 <= minSize <= initialSize <= maxSize");
+        }
+        if (additiveIncrease < 1 || decreaseFactor <= 0 || decreaseFactor >= 1) {
+            throw new IllegalArgumentException("additiveIncrease must be positive and decreaseFactor in ]0, 1[");
+        }
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.currentSize = initialSize;
+        this.targetLatencyMs = targetLatencyMs;
+        this.additiveIncrease = additiveIncrease;
+        this.decreaseFactor = decreaseFactor;
+    }
+
+    /**
+     * @return the number of rejected documents of the response
+     */
+    public static int countRejections(BulkResponse bulkResponse) {
+        if (!bulkResponse.hasFailures()) {
+            return 0;
+        }
+        int rejections = 0;
+        for (BulkItemResponse item : bulkResponse.getItems()) {
+            if (item.isFailed() && (item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS
+                    || String.valueOf(item.getFailureMessage()).contains("es_rejected_execution_exception"))) {
+                rejections++;
+            }
+        }
+        return rejections;
+    }
+
+    /**
+     * Adapt the size after a bulk completed. Called from the threads of the Elasticsearch client.
+     *
+     * @param latencyMs  time between sending the bulk and receiving its response
+     * @param rejections number of documents rejected because the cluster is overloaded
+     */
+    public synchronized void onBulkCompleted(long latencyMs, int rejections) {
+        lastLatencyMs = latencyMs;
+        int size = currentSize;
+        if (rejections > 0 || latencyMs > targetLatencyMs) {
+            rejectedDocuments += rejections;
+            decreases++;
+            currentSize = Math.max(minSize, (int) (size * decreaseFactor));
+            logger.debug("Bulk size decreased from " + size + " to " + currentSize + " (latency " + latencyMs +
+                    " ms, " + rejections + " rejections)");
+        } else {
+            currentSize = Math.min(maxSize, size + additiveIncrease);
+        }
+    }
+
+    /**
+     * Register this sizer in the platform MBean server.
+     */
+    public AdaptiveBulkSizer registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("com.github.felipegutierrez.kafka.elasticsearch:type=AdaptiveBulkSizer,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            logger.warn("Could not register the AdaptiveBulkSizer MBean: " + e.getMessage());
+        }
+        return this;
+    }
+
+    @Override
+    public int getCurrentSize() {
+        return currentSize;
+    }
+
+    @Override
+    public int getMinSize() {
+        return minSize;
+    }
+
+    @Override
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public long getTargetLatencyMs() {
+        return targetLatencyMs;
+    }
+
+    @Override
+    public long getLastLatencyMs() {
+        return lastLatencyMs;
+    }
+
+    @Override
+    public long getRejectedDocuments() {
+        return rejectedDocuments;
+    }
+
+    @Override
+    public long getDecreases() {
+        return decreases;
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveBulkSizer{" +
+                "minSize=" + minSize +
+                ", maxSize=" + maxSize +
+                ", currentSize=" + currentSize +
+                ", targetLatencyMs=" + targetLatencyMs +
+                '}';
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.felipegutierrez.kafka.elasticsearch.bulk;
+
+/**
+ * JMX view of the {@link AdaptiveBulkSizer}.
+ */
+public interface AdaptiveBulkSizerMBean {
+
+    int getCurrentSize();
+
+    int getMinSize();
+
+    int getMaxSize();
+
+    long getTargetLatencyMs();
+
+    long getLastLatencyMs();
+
+    long getRejectedDocuments();
+
+    long getDecreases();
+}
@@ -0,0 +1,437 @@
+package com.github.felipegutierrez.kafka.elasticsearch.bulk;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Accumulates index requests into bulks and sends them asynchronously, so polling, indexing and committing overlap.
+ * <p>
+ * A bulk is flushed when it reaches the configured number of documents, size in bytes or age. The number of documents
+ * is either fixed or chosen by an {@link AdaptiveBulkSizer} fed with the latency and rejections of each bulk. At most
+ * {@link BulkPipelineConfig#getMaxInFlightBulks()} bulks execute at the same time, {@link #add} blocks the caller
+ * when all of them are busy. The offsets of a bulk are acknowledged in the {@link OffsetTracker} only when
+ * Elasticsearch accepted the document, hence committing {@link #committableOffsets()} keeps at-least-once delivery.
+ * <p>
+ * The response of each bulk is inspected per document: the documents rejected with a retryable status (429, 5xx) are
+ * sent again in a smaller bulk after an exponential backoff with jitter, while the bulk keeps its in-flight slot so the
+ * retries do not add load to a cluster that is already overloaded. Documents that fail permanently, or still fail after
+ * {@link BulkPipelineConfig#getMaxRetries()} retries, go to the {@link DeadLetterPublisher} from the retry thread and
+ * are acknowledged once stored there. Without a dead-letter topic, or when a bulk cannot be sent at all, the failure is
+ * reported by {@link #checkFailure()} and the offsets are never committed.
+ * <p>
+ * The bytes of the documents are counted from the moment they are added until their bulk completes, retries included.
+ * With a {@link BulkPipelineConfig#getMemoryBudgetBytes()}, {@link #isOverBudget()} tells the poll loop to stop
+ * fetching once the budget is exceeded and until half of it is drained, so a slow cluster does not fill the heap.
+ * <p>
+ * This class is used from the poll thread only, the callbacks of the Elasticsearch client touch only thread-safe state.
+ */
+public class BulkPipeline implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(BulkPipeline.class);
+    private final RestHighLevelClient client;
+    private final BulkPipelineConfig config;
+    private final OffsetTracker offsetTracker = new OffsetTracker();
+    private final Semaphore inFlightBulks;
+    private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+    private final RetryBackoff retryBackoff;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final ScheduledExecutorService retryScheduler;
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private boolean overBudget;
+    private BulkRequest bulkRequest = new BulkRequest();
+    private List<RecordPosition> positions = new ArrayList<RecordPosition>();
+    private long firstAddedAt;
+
+    public BulkPipeline(RestHighLevelClient client, BulkPipelineConfig config) {
+        this(client, config, null);
+    }
+
+    /**
+     * @param deadLetterPublisher where the documents rejected permanently are sent, if null they fail the pipeline
+     */
+    public BulkPipeline(RestHighLevelClient client, BulkPipelineConfig config, DeadLetterPublisher deadLetterPublisher) {
+        this.client = client;
+        this.config = config;
+        this.inFlightBulks = new Semaphore(config.getMaxInFlightBulks());
+        this.retryBackoff = config.retryBackoff();
+        this.deadLetterPublisher = deadLetterPublisher;
+        config.getMetrics().setMemoryBudgetBytes(config.getMemoryBudgetBytes());
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "bulk-pipeline-retry");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Add the document of a record to the current bulk, sending it if one of the flush thresholds is reached.
+     */
+    public void add(ConsumerRecord<?, ?> record, DocWriteRequest<?> request) throws IOException, InterruptedException {
+        checkFailure();
+        RecordPosition position = RecordPosition.of(record);
+        offsetTracker.register(position.getTopicPartition(), position.getOffset());
+        if (positions.isEmpty()) {
+            firstAddedAt = System.currentTimeMillis();
+        }
+        buffer(request);
+        positions.add(position);
+        if (positions.size() >= config.currentFlushActions() || bulkRequest.estimatedSizeInBytes() >= config.getFlushBytes()) {
+            flush();
+        }
+    }
+
+    /**
+     * Add a document that belongs to no record, e.g. the position of the sink, to the current bulk. It is retried like
+     * the others, but it is neither acknowledged nor dead-lettered: when it fails, a later write replaces it.
+     */
+    public void stage(DocWriteRequest<?> request) throws IOException {
+        checkFailure();
+        if (positions.isEmpty()) {
+            firstAddedAt = System.currentTimeMillis();
+        }
+        buffer(request);
+        positions.add(null);
+    }
+
+    private void buffer(DocWriteRequest<?> request) {
+        long sizeBefore = bulkRequest.estimatedSizeInBytes();
+        bulkRequest.add(request);
+        long bytes = bulkRequest.estimatedSizeInBytes() - sizeBefore;
+        bufferedBytes.addAndGet(bytes);
+        config.getMetrics().recordBufferedBytes(bytes);
+    }
+
+    /**
+     * Tell whether the documents buffered and in flight exceed the memory budget, with hysteresis: once exceeded, the
+     * pipeline stays over budget until half of the budget is drained, so the partitions are not paused and resumed
+     * at every poll. Call it from the poll thread.
+     *
+     * @return false if there is no budget
+     */
+    public boolean isOverBudget() {
+        long budget = config.getMemoryBudgetBytes();
+        if (budget == -1) {
+            return false;
+        }
+        long bytes = bufferedBytes.get();
+        if (!overBudget && bytes > budget) {
+            overBudget = true;
+        } else if (overBudget && bytes <= budget / 2) {
+            overBudget = false;
+        }
+        return overBudget;
+    }
+
+    /**
+     * @return bytes of the documents added and not completed yet, buffered or in flight
+     */
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    /**
+     * Mark a record that will not be indexed (e.g. bad data) as processed, so it does not hold back the commits.
+     */
+    public void skip(ConsumerRecord<?, ?> record) {
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        offsetTracker.register(partition, record.offset());
+        offsetTracker.acknowledge(partition, record.offset());
+    }
+
+    /**
+     * Send the current bulk if it is older than the flush interval. Call it after every poll.
+     */
+    public void maybeFlush() throws IOException, InterruptedException {
+        checkFailure();
+        if (!positions.isEmpty() && System.currentTimeMillis() - firstAddedAt >= config.getFlushIntervalMs()) {
+            flush();
+        }
+    }
+
+    /**
+     * Send the current bulk, waiting for a free in-flight slot.
+     */
+    public void flush() throws InterruptedException {
+        if (positions.isEmpty()) {
+            return;
+        }
+        final BulkRequest request = bulkRequest;
+        final List<RecordPosition> requestPositions = positions;
+        bulkRequest = new BulkRequest();
+        positions = new ArrayList<RecordPosition>();
+
+        inFlightBulks.acquire();
+        logger.debug("Sending bulk with " + request.numberOfActions() + " documents and " + request.estimatedSizeInBytes() + " bytes");
+        send(request, requestPositions, 1, request.estimatedSizeInBytes());
+    }
+
+    /**
+     * Send a bulk that holds an in-flight slot. The slot is kept while its failed documents are retried and released
+     * once every document is either acknowledged, dead-lettered or reported as a failure.
+     *
+     * @param bulkBytes bytes the original bulk added to the buffered ones, released with the slot
+     */
+    private void send(final BulkRequest request, final List<RecordPosition> requestPositions, final int attempt,
+                      final long bulkBytes) {
+        final long startNanos = System.nanoTime();
+        client.bulkAsync(request, RequestOptions.DEFAULT, new ActionListener<BulkResponse>() {
+            @Override
+            public void onResponse(BulkResponse bulkResponse) {
+                int rejections = AdaptiveBulkSizer.countRejections(bulkResponse);
+                config.getMetrics().recordBulk(request.estimatedSizeInBytes(), System.nanoTime() - startNanos, rejections);
+                if (config.getAdaptiveBulkSizer() != null) {
+                    config.getAdaptiveBulkSizer().onBulkCompleted(elapsedMs(startNanos), rejections);
+                }
+                try {
+                    handleResponse(request, requestPositions, attempt, bulkBytes, bulkResponse);
+                } catch (RuntimeException e) {
+                    onFailure(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                config.getMetrics().recordFailedBulk(request.estimatedSizeInBytes(), System.nanoTime() - startNanos);
+                if (config.getAdaptiveBulkSizer() != null && RetryBackoff.isRetryable(e)) {
+                    // the whole bulk was rejected or timed out
+                    config.getAdaptiveBulkSizer().onBulkCompleted(elapsedMs(startNanos), request.numberOfActions());
+                }
+                if (attempt <= retryBackoff.getMaxRetries() && RetryBackoff.isRetryable(e) && !retryScheduler.isShutdown()) {
+                    long delay = retryBackoff.delayMs(attempt);
+                    logger.warn("Bulk request failed (" + e.getMessage() + "), retrying in " + delay + " ms");
+                    config.getMetrics().recordRetried(request.numberOfActions());
+                    retry(request, requestPositions, attempt, bulkBytes, delay);
+                } else {
+                    failure.compareAndSet(null, e);
+                    complete(bulkBytes);
+                }
+            }
+        });
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Release the in-flight slot and the bytes of a bulk.
+     */
+    private void complete(long bytes) {
+        bufferedBytes.addAndGet(-bytes);
+        config.getMetrics().recordBufferedBytes(-bytes);
+        inFlightBulks.release();
+    }
+
+    private void handleResponse(BulkRequest request, List<RecordPosition> requestPositions, int attempt, final long bulkBytes,
+                                BulkResponse bulkResponse) {
+        long now = System.currentTimeMillis();
+        if (!bulkResponse.hasFailures()) {
+            int indexed = 0;
+            for (RecordPosition position : requestPositions) {
+                if (position != null) {
+                    acknowledge(position, now);
+                    indexed++;
+                }
+            }
+            config.getMetrics().recordIndexed(indexed);
+            complete(bulkBytes);
+            return;
+        }
+        final BulkRequest retryRequest = new BulkRequest();
+        final List<RecordPosition> retryPositions = new ArrayList<RecordPosition>();
+        List<FailedDocument> deadLetters = new ArrayList<FailedDocument>();
+        List<RecordPosition> deadLetterPositions = new ArrayList<RecordPosition>();
+        int indexed = 0;
+        for (BulkItemResponse item : bulkResponse.getItems()) {
+            RecordPosition position = requestPositions.get(item.getItemId());
+            if (!item.isFailed()) {
+                if (position != null) {
+                    acknowledge(position, now);
+                    indexed++;
+                }
+            } else if (attempt <= retryBackoff.getMaxRetries() && RetryBackoff.isRetryable(item.getFailure().getStatus())) {
+                retryRequest.add(request.requests().get(item.getItemId()));
+                retryPositions.add(position);
+            } else if (position == null) {
+                if (item.getFailure().getStatus() == RestStatus.CONFLICT) {
+                    logger.debug("Staged document older than the stored one " + request.requests().get(item.getItemId()) + ": " + item.getFailureMessage());
+                } else {
+                    logger.warn("Could not write the staged document " + request.requests().get(item.getItemId()) + ": " + item.getFailureMessage());
+                    config.getMetrics().recordStagedFailure();
+                }
+            } else {
+                deadLetters.add(new FailedDocument(deadLetterPositions.size(), request.requests().get(item.getItemId()),
+                        item.getFailureMessage(), item.getFailure().getStatus().getStatus(), attempt));
+                deadLetterPositions.add(position);
+            }
+        }
+        config.getMetrics().recordIndexed(indexed);
+        Runnable next;
+        if (retryPositions.isEmpty() || retryScheduler.isShutdown()) {
+            if (!retryPositions.isEmpty()) {
+                failure.compareAndSet(null, new IOException("Pipeline closed with " + retryPositions.size() + " documents to retry"));
+            }
+            next = new Runnable() {
+                @Override
+                public void run() {
+                    complete(bulkBytes);
+                }
+            };
+        } else {
+            final long delay = retryBackoff.delayMs(attempt);
+            final int retryAttempt = attempt;
+            logger.warn("Retrying " + retryPositions.size() + " of " + requestPositions.size() + " documents in " + delay + " ms");
+            config.getMetrics().recordRetried(retryPositions.size());
+            next = new Runnable() {
+                @Override
+                public void run() {
+                    retry(retryRequest, retryPositions, retryAttempt, bulkBytes, delay);
+                }
+            };
+        }
+        deadLetterAll(deadLetters, deadLetterPositions, next);
+    }
+
+    private void acknowledge(RecordPosition position, long now) {
+        offsetTracker.acknowledge(position.getTopicPartition(), position.getOffset());
+        config.getMetrics().recordEndToEnd(position.getTimestamp(), now);
+    }
+
+    private void retry(final BulkRequest request, final List<RecordPosition> requestPositions, final int attempt,
+                       final long bulkBytes, long delay) {
+        retryScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                send(request, requestPositions, attempt + 1, bulkBytes);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send the permanently failed documents of a bulk to the dead-letter topic, then run {@code next}, which releases
+     * the in-flight slot or retries the other documents. The producer blocks while its buffer is full or the metadata
+     * of the topic is missing, so the documents are handed to it from the retry thread rather than from the thread of
+     * the Elasticsearch client that delivers the responses of every bulk.
+     *
+     * @param positions where each document was read from, by the {@link FailedDocument#getIndex()} of the document
+     */
+    private void deadLetterAll(final List<FailedDocument> deadLetters, final List<RecordPosition> positions, final Runnable next) {
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (FailedDocument deadLetter : deadLetters) {
+                        deadLetter(positions.get(deadLetter.getIndex()), deadLetter.getRequest(), deadLetter.getReason(),
+                                deadLetter.getStatus(), deadLetter.getAttempts());
+                    }
+                } finally {
+                    next.run();
+                }
+            }
+        };
+        if (deadLetters.isEmpty() || deadLetterPublisher == null || retryScheduler.isShutdown()) {
+            task.run();
+        } else {
+            retryScheduler.execute(task);
+        }
+    }
+
+    /**
+     * Send a permanently failed document to the dead-letter topic and acknowledge it once it is stored there. Without
+     * a dead-letter topic the failure stops the pipeline and the offset is never committed.
+     */
+    private void deadLetter(final RecordPosition position, DocWriteRequest<?> request, String reason, int status, int attempts) {
+        if (deadLetterPublisher == null) {
+            failure.compareAndSet(null, new IOException("Document " + position + " failed after " + attempts + " attempts: " + reason));
+            return;
+        }
+        logger.warn("Sending document " + position + " to the dead-letter topic: " + reason);
+        try {
+            deadLetterPublisher.publish(position, request, reason, status, attempts, new Callback() {
+                @Override
+                public void onCompletion(RecordMetadata metadata, Exception e) {
+                    if (e == null) {
+                        config.getMetrics().recordDeadLettered(1);
+                        offsetTracker.acknowledge(position.getTopicPartition(), position.getOffset());
+                    } else {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // e.g. the buffer of the producer stayed full longer than max.block.ms
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    /**
+     * @return the offsets that can be committed because every record before them was indexed
+     */
+    public Map<TopicPartition, OffsetAndMetadata> committableOffsets() {
+        return offsetTracker.committableOffsets();
+    }
+
+    /**
+     * Throw the first failure of a bulk request, if any. The records of a failed bulk are never acknowledged.
+     */
+    public void checkFailure() throws IOException {
+        Exception e = failure.get();
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e != null) {
+            throw new IOException("Bulk request failed", e);
+        }
+    }
+
+    /**
+     * Send the current bulk and wait until all the in-flight bulks, including their retries, are completed.
+     */
+    public void awaitCompletion() throws InterruptedException {
+        flush();
+        inFlightBulks.acquire(config.getMaxInFlightBulks());
+        inFlightBulks.release(config.getMaxInFlightBulks());
+        if (deadLetterPublisher != null) {
+            deadLetterPublisher.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            awaitCompletion();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the in-flight bulks", e);
+        } finally {
+            retryScheduler.shutdown();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.github.felipegutierrez.kafka.elasticsearch.bulk;
+
+import com.github.felipegutierrez.kafka.elasticsearch.metrics.SinkMetrics;
+
+/**
+ * Settings of the {@link BulkPipeline}. A bulk is sent as soon as one of the flush thresholds is reached.
+ */
+public class BulkPipelineConfig {
+    private int maxInFlightBulks = 2;
+    private int flushActions = 500;
+    private long flushBytes = 5 * 1024 * 1024; // 5MB
+    private long flushIntervalMs = 1000;
+    private int maxRetries = 5;
+    private long initialBackoffMs = 100;
+    private long maxBackoffMs = 10000;
+    private long memoryBudgetBytes = -1;
+    private AdaptiveBulkSizer adaptiveBulkSizer;
+    private SinkMetrics metrics = new SinkMetrics();
+
+    public int getMaxInFlightBulks() {
+        return maxInFlightBulks;
+    }
+
+    /**
+     * Number of bulk requests that can be executing concurrently. The poll loop blocks when all of them are busy.
+     */
+    public BulkPipelineConfig setMaxInFlightBulks(int maxInFlightBulks) {
+        if (maxInFlightBulks < 1) {
+            throw new IllegalArgumentException("maxInFlightBulks must be at least 1");
+        }
+        this.maxInFlightBulks = maxInFlightBulks;
+        return this;
+    }
+
+    public int getFlushActions() {
+        return flushActions;
+    }
+
+    /**
+     * Send the bulk once it holds this number of documents.
+     */
+    public BulkPipelineConfig setFlushActions(int flushActions) {
+        if (flushActions < 1) {
+            throw new IllegalArgumentException("flushActions must be at least 1");
+        }
+        this.flushActions = flushActions;
+        return this;
+    }
+
+    public long getFlushBytes() {
+        return flushBytes;
+    }
+
+    /**
+     * Send the bulk once its estimated size reaches this number of bytes.
+     */
+    public BulkPipelineConfig setFlushBytes(long flushBytes) {
+        if (flushBytes < 1) {
+            throw new IllegalArgumentException("flushBytes must be at least 1");
+        }
+        this.flushBytes = flushBytes;
+        return this;
+    }
+
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    /**
+     * Send the bulk once its first document has been waiting for this amount of time.
+     */
+    public BulkPipelineConfig setFlushIntervalMs(long flushIntervalMs) {
+        if (flushIntervalMs < 0) {
+            throw new IllegalArgumentException("flushIntervalMs cannot be negative");
+        }
+        this.flushIntervalMs = flushIntervalMs;
+        return this;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Number of times a document rejected with a retryable status (429, 5xx) is sent again before being dead-lettered.
+     */
+    public BulkPipelineConfig setMaxRetries(int maxRetries) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries cannot be negative");
+        }
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    public long getInitialBackoffMs() {
+        return initialBackoffMs;
+    }
+
+    public long getMaxBackoffMs() {
+        return maxBackoffMs;
+    }
+
+    /**
+     * Bounds of the exponential backoff with jitter applied between two attempts, see {@link RetryBackoff}.
+     */
+    public BulkPipelineConfig setBackoffMs(long initialBackoffMs, long maxBackoffMs) {
+        if (initialBackoffMs < 1 || maxBackoffMs < initialBackoffMs) {
+            throw new IllegalArgumentException("backoff must satisfy 1 <= initialBackoffMs <= maxBackoffMs");
+        }
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        return this;
+    }
+
+    public long getMemoryBudgetBytes() {
+        return memoryBudgetBytes;
+    }
+
+    /**
+     * Bytes of documents the pipeline may hold, buffered or in flight, before the sink pauses the partitions until
+     * half of them are drained. It should leave room for {@link #getMaxInFlightBulks()} bulks of
+     * {@link #getFlushBytes()} and the current one, otherwise the sink pauses before the in-flight slots are used.
+     * -1, the default, for no budget: only the in-flight slots block the poll loop.
+     */
+    public BulkPipelineConfig setMemoryBudgetBytes(long memoryBudgetBytes) {
+        if (memoryBudgetBytes < 1 && memoryBudgetBytes != -1) {
+            throw new IllegalArgumentException("memoryBudgetBytes must be -1 or positive");
+        }
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        return this;
+    }
+
+    public AdaptiveBulkSizer getAdaptiveBulkSizer() {
+        return adaptiveBulkSizer;
+    }
+
+    /**
+     * Let the sizer choose the number of documents per bulk instead of the fixed {@link #getFlushActions()}.
+     */
+    public BulkPipelineConfig setAdaptiveBulkSizer(AdaptiveBulkSizer adaptiveBulkSizer) {
+        this.adaptiveBulkSizer = adaptiveBulkSizer;
+        return this;
+    }
+
+    public SinkMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Where the indexers record the latency of the bulks, the retries and the indexed documents.
+     */
+    public BulkPipelineConfig setMetrics(SinkMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics cannot be null");
+        }
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * @return the number of documents that triggers a flush right now
+     */
+    public int currentFlushActions() {
+        return adaptiveBulkSizer == null ? flushActions : adaptiveBulkSizer.getCurrentSize();
+    }
+
+    /**
+     * @return the largest number of documents a bulk can hold, e.g. to size {@code max.poll.records}
+     */
+    public int maxFlushActions() {
+        return adaptiveBulkSizer == null ? flushActions : adaptiveBulkSizer.getMaxSize();
+    }
+
+    public RetryBackoff retryBackoff() {
+        return new RetryBackoff(maxRetries, initialBackoffMs, maxBackoffMs);
+    }
+
+    @Override
+    public String toString() {
+        return "BulkPipelineConfig{" +
+                "maxInFlightBulks=" + maxInFlightBulks +
+                ", flushActions=" + (adaptiveBulkSizer == null ? flushActions : adaptiveBulkSizer) +
+                ", flushBytes=" + flushBytes +
+                ", flushIntervalMs=" + flushIntervalMs +
+                ", maxRetries=" + maxRetries +
+                ", initialBackoffMs=" + initialBackoffMs +
+                ", maxBackoffMs=" + maxBackoffMs +
+                (memoryBudgetBytes == -1 ? "" : ", memoryBudgetBytes=" + memoryBudgetBytes) +
+                '}';
+    }
+}
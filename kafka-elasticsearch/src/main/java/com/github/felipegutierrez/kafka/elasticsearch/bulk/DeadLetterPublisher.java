@@ -0,0 +1,117 @@
+package com.github.felipegutierrez.kafka.elasticsearch.bulk;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Send the documents that Elasticsearch rejected permanently to a dead-letter topic, so the consumer can commit past
+ * them. The value is the document as it was sent to Elasticsearch and the headers tell why and where it came from.
+ */
+public class DeadLetterPublisher implements Closeable {
+    public static final String HEADER_REASON = "es.failure.reason";
+    public static final String HEADER_STATUS = "es.failure.status";
+    public static final String HEADER_ATTEMPTS = "es.failure.attempts";
+    public static final String HEADER_TOPIC = "source.topic";
+    public static final String HEADER_PARTITION = "source.partition";
+    public static final String HEADER_OFFSET = "source.offset";
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterPublisher.class);
+    private final String topic;
+    private final Producer<String, byte[]> producer;
+
+    public DeadLetterPublisher(String bootstrapServers, String topic) {
+        this(createProducer(bootstrapServers), topic);
+    }
+
+    public DeadLetterPublisher(Producer<String, byte[]> producer, String topic) {
+        this.producer = producer;
+        this.topic = topic;
+    }
+
+    private static Producer<String, byte[]> createProducer(String bootstrapServers) {
+        Properties properties = new Properties();
+        properties.setProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        properties.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        properties.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+        // a lost dead letter is a lost tweet
+        properties.setProperty(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, Boolean.TRUE.toString());
+        properties.setProperty(ProducerConfig.ACKS_CONFIG, "all");
+        return new KafkaProducer<String, byte[]>(properties);
+    }
+
+    /**
+     * @param position where the document was read from
+     * @param request  the rejected document
+     * @param reason   failure message returned by Elasticsearch
+     * @param status   HTTP status of the failure
+     * @param attempts number of times the document was sent
+     * @param callback invoked once the dead letter is stored in Kafka
+     */
+    public Future<RecordMetadata> publish(RecordPosition position, DocWriteRequest<?> request, String reason,
+                                          int status, int attempts, Callback callback) {
+        byte[] value = request instanceof IndexRequest && ((IndexRequest) request).source() != null
+                ? BytesReference.toBytes(((IndexRequest) request).source())
+                : null;
+        ProducerRecord<String, byte[]> record = new ProducerRecord<String, byte[]>(topic, request.id(), value);
+        record.headers()
+                .add(HEADER_REASON, String.valueOf(reason).getBytes(StandardCharsets.UTF_8))
+                .add(HEADER_STATUS, Integer.toString(status).getBytes(StandardCharsets.UTF_8))
+                .add(HEADER_ATTEMPTS, Integer.toString(attempts).getBytes(StandardCharsets.UTF_8))
+                .add(HEADER_TOPIC, position.getTopicPartition().topic().getBytes(StandardCharsets.UTF_8))
+                .add(HEADER_PARTITION, Integer.toString(position.getTopicPartition().partition()).getBytes(StandardCharsets.UTF_8))
+                .add(HEADER_OFFSET, Long.toString(position.getOffset()).getBytes(StandardCharsets.UTF_8));
+        return producer.send(record, callback);
+    }
+
+    /**
+     * Send the documents of a bulk that failed permanently and wait until all of them are stored, so their offsets
+     * can be acknowledged.
+     *
+     * @param positions where each document of the bulk was read from, by its position in the bulk
+     * @throws IOException if one of them could not be stored
+     */
+    public void publishAll(List<FailedDocument> failedDocuments, List<RecordPosition> positions) throws IOException, InterruptedException {
+        List<Future<RecordMetadata>> sent = new ArrayList<Future<RecordMetadata>>();
+        for (FailedDocument failedDocument : failedDocuments) {
+            RecordPosition position = positions.get(failedDocument.getIndex());
+            logger.warn("Sending document " + position + " to the dead-letter topic: " + failedDocument.getReason());
+            sent.add(publish(position, failedDocument.getRequest(), failedDocument.getReason(),
+                    failedDocument.getStatus(), failedDocument.getAttempts(), null));
+        }
+        try {
+            for (Future<RecordMetadata> future : sent) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Could not send the failed documents to the dead-letter topic", e.getCause());
+        }
+    }
+
+    public void flush() {
+        producer.flush();
+    }
+
+    @Override
+    public void close() {
+        producer.close();
+    }
+}
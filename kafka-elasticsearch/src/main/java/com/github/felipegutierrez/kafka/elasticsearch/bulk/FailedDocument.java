@@ -0,0 +1,45 @@
+package com.github.felipegutierrez.kafka.elasticsearch.bulk;
+
+import org.elasticsearch.action.DocWriteRequest;
+
+/**
+ * A document that Elasticsearch rejected permanently, or that was still rejected after all the retries.
+ */
+public final class FailedDocument {
+    private final int index;
+    private final DocWriteRequest<?> request;
+    private final String reason;
+    private final int status;
+    private final int attempts;
+
+    public FailedDocument(int index, DocWriteRequest<?> request, String reason, int status, int attempts) {
+        this.index = index;
+        this.request = request;
+        this.reason = reason;
+        this.status = status;
+        this.attempts = attempts;
+    }
+
+    /**
+     * @return position of the document in the original bulk request
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public DocWriteRequest<?> getRequest() {
+        return request;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.felipegutierrez.kafka.elasticsearch.bulk;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps track of the offsets handed to Elasticsearch and of the ones already acknowledged.
+ * <p>
+ * Bulk requests can complete out of order, so the offset that is safe to commit for a partition is the one right
+ * after the highest offset whose predecessors (in the order they were registered) have all been acknowledged.
+ * Kafka offsets may have gaps (compaction, transaction markers), that is why we walk the registered offsets instead
+ * of assuming offset + 1.
+ */
+public class OffsetTracker {
+    private final Map<TopicPartition, TreeMap<Long, Boolean>> pending = new HashMap<TopicPartition, TreeMap<Long, Boolean>>();
+    private final Map<TopicPartition, Long> committable = new HashMap<TopicPartition, Long>();
+
+    /**
+     * Register an offset that was polled and is about to be indexed.
+     */
+    public synchronized void register(TopicPartition partition, long offset) {
+        TreeMap<Long, Boolean> offsets = pending.get(partition);
+        if (offsets == null) {
+            offsets = new TreeMap<Long, Boolean>();
+            pending.put(partition, offsets);
+        }
+        offsets.put(offset, Boolean.FALSE);
+    }
+
+    /**
+     * Mark an offset as processed and advance the contiguous acknowledged offset of its partition.
+     */
+    public synchronized void acknowledge(TopicPartition partition, long offset) {
+        TreeMap<Long, Boolean> offsets = pending.get(partition);
+        if (offsets == null || !offsets.containsKey(offset)) {
+            return;
+        }
+        offsets.put(offset, Boolean.TRUE);
+        Long next = null;
+        while (!offsets.isEmpty() && offsets.firstEntry().getValue()) {
+            next = offsets.pollFirstEntry().getKey() + 1;
+        }
+        if (next != null) {
+            committable.put(partition, next);
+        }
+    }
+
+    /**
+     * Return the offsets that advanced since the last call, ready to be passed to {@code commitSync}/{@code commitAsync}.
+     */
+    public synchronized Map<TopicPartition, OffsetAndMetadata> committableOffsets() {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<TopicPartition, OffsetAndMetadata>();
+        for (Map.Entry<TopicPartition, Long> entry : committable.entrySet()) {
+            offsets.put(entry.getKey(), new OffsetAndMetadata(entry.getValue()));
+        }
+        committable.clear();
+        return offsets;
+    }
+
+    /**
+     * @return the number of registered offsets that are not part of a committable prefix yet
+     */
+    public synchronized int pendingCount() {
+        int count = 0;
+        for (TreeMap<Long, Boolean> offsets : pending.values()) {
+            count += offsets.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.felipegutierrez.kafka.elasticsearch.bulk;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * Where a document of a bulk request came from in Kafka.
+ */
+public final class RecordPosition {
+    private final TopicPartition topicPartition;
+    private final long offset;
+    private final long timestamp;
+
+    public RecordPosition(TopicPartition topicPartition, long offset) {
+        this(topicPartition, offset, -1L);
+    }
+
+    /**
+     * @param timestamp of the record in milliseconds, -1 if unknown
+     */
+    public RecordPosition(TopicPartition topicPartition, long offset, long timestamp) {
+        this.topicPartition = topicPartition;
+        this.offset = offset;
+        this.timestamp = timestamp;
+    }
+
+    public static RecordPosition of(ConsumerRecord<?, ?> record) {
+        return new RecordPosition(new TopicPartition(record.topic(), record.partition()), record.offset(), record.timestamp());
+    }
+
+    public TopicPartition getTopicPartition() {
+        return topicPartition;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the timestamp of the record in milliseconds, -1 if unknown
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return topicPartition + "@" + offset;
+    }
+}
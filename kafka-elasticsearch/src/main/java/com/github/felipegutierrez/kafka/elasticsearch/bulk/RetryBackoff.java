@@ -0,0 +1,70 @@
+package com.github.felipegutierrez.kafka.elasticsearch.bulk;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter: the n-th retry waits a random time between 0 and
+ * {@code min(maxBackoffMs, initialBackoffMs * 2^(n-1))}, so the consumers that were rejected together by an
+ * overloaded cluster do not come back at the same time.
+ */
+public class RetryBackoff {
+    private final int maxRetries;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    public RetryBackoff(int maxRetries, long initialBackoffMs, long maxBackoffMs) {
+        if (maxRetries < 0 || initialBackoffMs < 1 || maxBackoffMs < initialBackoffMs) {
+            throw new IllegalArgumentException("Invalid backoff: maxRetries=" + maxRetries +
+                    ", initialBackoffMs=" + initialBackoffMs + ", maxBackoffMs=" + maxBackoffMs);
+        }
+        this.maxRetries = maxRetries;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    /**
+     * @return true if a document rejected with this status can succeed later: 429 (the bulk queue of the node is
+     * full) and the 5xx caused by an unavailable node. Mapping errors and the other 4xx are permanent.
+     */
+    public static boolean isRetryable(RestStatus status) {
+        return status == RestStatus.TOO_MANY_REQUESTS
+                || status == RestStatus.INTERNAL_SERVER_ERROR
+                || status == RestStatus.BAD_GATEWAY
+                || status == RestStatus.SERVICE_UNAVAILABLE
+                || status == RestStatus.GATEWAY_TIMEOUT;
+    }
+
+    /**
+     * @return true if a whole bulk request that failed with this exception can be sent again
+     */
+    public static boolean isRetryable(Exception e) {
+        if (e instanceof ElasticsearchException) {
+            // the high level client turns error responses into ElasticsearchStatusException
+            return isRetryable(((ElasticsearchException) e).status());
+        }
+        if (e instanceof ResponseException) {
+            return isRetryable(RestStatus.fromCode(((ResponseException) e).getResponse().getStatusLine().getStatusCode()));
+        }
+        // connection refused, reset or timed out
+        return e instanceof IOException;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @param retry number of the retry, starting at 1
+     * @return how long to wait before the retry
+     */
+    public long delayMs(int retry) {
+        int exponent = Math.min(Math.max(retry - 1, 0), 30);
+        long ceiling = Math.min(maxBackoffMs, initialBackoffMs << exponent);
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.felipegutierrez.kafka.elasticsearch.bulk;
+
+import com.github.felipegutierrez.kafka.elasticsearch.metrics.SinkMetrics;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Execute a bulk request synchronously and send again only the documents that failed with a retryable status,
+ * waiting for the {@link RetryBackoff} between the attempts.
+ */
+public class RetryingBulkExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(RetryingBulkExecutor.class);
+    private final RestHighLevelClient client;
+    private final RetryBackoff retryBackoff;
+    private final AdaptiveBulkSizer adaptiveBulkSizer;
+    private final SinkMetrics metrics;
+
+    public RetryingBulkExecutor(RestHighLevelClient client, RetryBackoff retryBackoff) {
+        this(client, retryBackoff, null);
+    }
+
+    /**
+     * @param adaptiveBulkSizer if not null, informed of the latency and rejections of every attempt
+     */
+    public RetryingBulkExecutor(RestHighLevelClient client, RetryBackoff retryBackoff, AdaptiveBulkSizer adaptiveBulkSizer) {
+        this(client, retryBackoff, adaptiveBulkSizer, new SinkMetrics());
+    }
+
+    /**
+     * @param metrics where the latency, rejections and retries of every attempt are recorded
+     */
+    public RetryingBulkExecutor(RestHighLevelClient client, RetryBackoff retryBackoff, AdaptiveBulkSizer adaptiveBulkSizer,
+                                SinkMetrics metrics) {
+        this.client = client;
+        this.retryBackoff = retryBackoff;
+        this.adaptiveBulkSizer = adaptiveBulkSizer;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the documents that failed permanently or exhausted their retries, empty if everything was indexed
+     */
+    public List<FailedDocument> execute(BulkRequest bulkRequest) throws IOException, InterruptedException {
+        List<FailedDocument> failedDocuments = new ArrayList<FailedDocument>();
+        BulkRequest request = bulkRequest;
+        // position in the original bulk of each document of the current attempt
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (int i = 0; i < bulkRequest.numberOfActions(); i++) {
+            indexes.add(i);
+        }
+        int attempt = 1;
+        while (true) {
+            BulkResponse bulkResponse;
+            long startNanos = System.nanoTime();
+            try {
+                bulkResponse = client.bulk(request, RequestOptions.DEFAULT);
+                int rejections = AdaptiveBulkSizer.countRejections(bulkResponse);
+                metrics.recordBulk(request.estimatedSizeInBytes(), System.nanoTime() - startNanos, rejections);
+                if (adaptiveBulkSizer != null) {
+                    adaptiveBulkSizer.onBulkCompleted(elapsedMs(startNanos), rejections);
+                }
+            } catch (IOException | ElasticsearchException e) {
+                metrics.recordFailedBulk(request.estimatedSizeInBytes(), System.nanoTime() - startNanos);
+                if (adaptiveBulkSizer != null && RetryBackoff.isRetryable(e)) {
+                    adaptiveBulkSizer.onBulkCompleted(elapsedMs(startNanos), request.numberOfActions());
+                }
+                if (attempt > retryBackoff.getMaxRetries() || !RetryBackoff.isRetryable(e)) {
+                    throw e;
+                }
+                long delay = retryBackoff.delayMs(attempt);
+                logger.warn("Bulk request failed (" + e.getMessage() + "), retrying in " + delay + " ms");
+                metrics.recordRetried(request.numberOfActions());
+                Thread.sleep(delay);
+                attempt++;
+                continue;
+            }
+            if (!bulkResponse.hasFailures()) {
+                return failedDocuments;
+            }
+            BulkRequest retryRequest = new BulkRequest();
+            List<Integer> retryIndexes = new ArrayList<Integer>();
+            for (BulkItemResponse item : bulkResponse.getItems()) {
+                if (!item.isFailed()) {
+                    continue;
+                }
+                int index = indexes.get(item.getItemId());
+                if (attempt <= retryBackoff.getMaxRetries() && RetryBackoff.isRetryable(item.getFailure().getStatus())) {
+                    retryRequest.add(request.requests().get(item.getItemId()));
+                    retryIndexes.add(index);
+                } else {
+                    failedDocuments.add(new FailedDocument(index, request.requests().get(item.getItemId()),
+                            item.getFailureMessage(), item.getFailure().getStatus().getStatus(), attempt));
+                }
+            }
+            if (retryIndexes.isEmpty()) {
+                return failedDocuments;
+            }
+            long delay = retryBackoff.delayMs(attempt);
+            logger.warn("Retrying " + retryIndexes.size() + " failed documents in " + delay + " ms");
+            metrics.recordRetried(retryIndexes.size());
+            Thread.sleep(delay);
+            request = retryRequest;
+            indexes = retryIndexes;
+            attempt++;
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,170 @@
+package com.github.felipegutierrez.kafka.elasticsearch.client;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.protocol.HttpContext;
+import org.elasticsearch.client.RestClientBuilder;
+
+/**
+ * Settings of the HTTP client behind the {@link org.elasticsearch.client.RestHighLevelClient}: gzip compression of
+ * the request bodies, size of the connection pool, number of IO reactor threads and keep-alive of the idle
+ * connections. The defaults are the ones of the {@link RestClientBuilder}.
+ * <p>
+ * Elasticsearch decompresses the requests sent with {@code Content-Encoding: gzip}, and tweets are JSON with many
+ * repeated field names, so a bulk shrinks to a fraction of its size at the cost of some CPU on the sender. The
+ * {@link RestClientBuilder} of this version cannot compress requests, so the HTTP client is wrapped to replace the
+ * bodies larger than {@link #getCompressionMinBytes()} with their gzip version.
+ */
+public class ElasticSearchClientConfig {
+    private boolean compression = false;
+    private int compressionMinBytes = 1024;
+    private int maxConnectionsPerRoute = RestClientBuilder.DEFAULT_MAX_CONN_PER_ROUTE;
+    private int maxConnectionsTotal = RestClientBuilder.DEFAULT_MAX_CONN_TOTAL;
+    private int ioThreadCount = 0;
+    private long keepAliveMs = -1;
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * Send the request bodies compressed with gzip.
+     */
+    public ElasticSearchClientConfig setCompression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public int getCompressionMinBytes() {
+        return compressionMinBytes;
+    }
+
+    /**
+     * Smaller bodies, e.g. a single document, are sent as they are because gzip would barely shrink them.
+     */
+    public ElasticSearchClientConfig setCompressionMinBytes(int compressionMinBytes) {
+        if (compressionMinBytes < 0) {
+            throw new IllegalArgumentException("compressionMinBytes cannot be negative");
+        }
+        this.compressionMinBytes = compressionMinBytes;
+        return this;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * Connections opened to each node, it bounds the number of requests in flight to a node.
+     */
+    public ElasticSearchClientConfig setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        if (maxConnectionsPerRoute < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerRoute must be at least 1");
+        }
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        return this;
+    }
+
+    public int getMaxConnectionsTotal() {
+        return maxConnectionsTotal;
+    }
+
+    public ElasticSearchClientConfig setMaxConnectionsTotal(int maxConnectionsTotal) {
+        if (maxConnectionsTotal < 1) {
+            throw new IllegalArgumentException("maxConnectionsTotal must be at least 1");
+        }
+        this.maxConnectionsTotal = maxConnectionsTotal;
+        return this;
+    }
+
+    public int getIoThreadCount() {
+        return ioThreadCount;
+    }
+
+    /**
+     * Threads of the IO reactor that send the requests and parse the responses, 0 for one per processor.
+     */
+    public ElasticSearchClientConfig setIoThreadCount(int ioThreadCount) {
+        if (ioThreadCount < 0) {
+            throw new IllegalArgumentException("ioThreadCount cannot be negative");
+        }
+        this.ioThreadCount = ioThreadCount;
+        return this;
+    }
+
+    public long getKeepAliveMs() {
+        return keepAliveMs;
+    }
+
+    /**
+     * Close the connections idle for longer than this, before a load balancer or a firewall drops them silently. -1
+     * keeps them as long as the {@code Keep-Alive} header of the server says, forever without header.
+     */
+    public ElasticSearchClientConfig setKeepAliveMs(long keepAliveMs) {
+        if (keepAliveMs < -1) {
+            throw new IllegalArgumentException("keepAliveMs must be -1 or positive");
+        }
+        this.keepAliveMs = keepAliveMs;
+        return this;
+    }
+
+    /**
+     * Apply the settings to the builder of the HTTP client, from a {@link RestClientBuilder.HttpClientConfigCallback}.
+     *
+     * @return the builder to return from the callback, which is not the given one with compression
+     */
+    public HttpAsyncClientBuilder customize(final HttpAsyncClientBuilder builder) {
+        builder.setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setMaxConnTotal(maxConnectionsTotal);
+        if (ioThreadCount > 0) {
+            builder.setDefaultIOReactorConfig(IOReactorConfig.custom().setIoThreadCount(ioThreadCount).build());
+        }
+        if (keepAliveMs != -1) {
+            builder.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+                @Override
+                public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                    long serverKeepAliveMs = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return serverKeepAliveMs > 0 ? Math.min(serverKeepAliveMs, keepAliveMs) : keepAliveMs;
+                }
+            });
+        }
+        if (!compression) {
+            return builder;
+        }
+        // the RestClientBuilder only calls build(), the given builder keeps all its other settings
+        return new HttpAsyncClientBuilder() {
+            @Override
+            public CloseableHttpAsyncClient build() {
+                return new GzipHttpAsyncClient(builder.build(), compressionMinBytes);
+            }
+        };
+    }
+
+    /**
+     * @return a callback that only applies these settings
+     */
+    public RestClientBuilder.HttpClientConfigCallback httpClientConfigCallback() {
+        return new RestClientBuilder.HttpClientConfigCallback() {
+            @Override
+            public HttpAsyncClientBuilder customizeHttpClient(HttpAsyncClientBuilder httpClientBuilder) {
+                return customize(httpClientBuilder);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "ElasticSearchClientConfig{" +
+                "compression=" + compression +
+                (compression ? ", compressionMinBytes=" + compressionMinBytes : "") +
+                ", maxConnectionsPerRoute=" + maxConnectionsPerRoute +
+                ", maxConnectionsTotal=" + maxConnectionsTotal +
+                ", ioThreadCount=" + (ioThreadCount == 0 ? "default" : ioThreadCount) +
+                ", keepAliveMs=" + keepAliveMs +
+                '}';
+    }
+}
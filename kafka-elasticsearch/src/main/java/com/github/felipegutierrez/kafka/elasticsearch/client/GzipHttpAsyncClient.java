@@ -0,0 +1,88 @@
+package com.github.felipegutierrez.kafka.elasticsearch.client;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compress the request bodies with gzip before handing the requests to the wrapped client.
+ * <p>
+ * The body cannot be replaced by a request interceptor: the producer of the request already holds the original
+ * entity when the interceptors run. The request is compressed on the calling thread, e.g. the poll loop for a bulk,
+ * and only once: a request retried on another node already has its {@code Content-Encoding}.
+ */
+class GzipHttpAsyncClient extends CloseableHttpAsyncClient {
+    private final CloseableHttpAsyncClient client;
+    private final int minBytes;
+
+    GzipHttpAsyncClient(CloseableHttpAsyncClient client, int minBytes) {
+        this.client = client;
+        this.minBytes = minBytes;
+    }
+
+    @Override
+    public <T> Future<T> execute(HttpAsyncRequestProducer requestProducer, HttpAsyncResponseConsumer<T> responseConsumer,
+                                 HttpContext context, FutureCallback<T> callback) {
+        HttpRequest request;
+        try {
+            request = requestProducer.generateRequest();
+        } catch (IOException | HttpException e) {
+            // let the client fail the request as usual
+            return client.execute(requestProducer, responseConsumer, context, callback);
+        }
+        if (request instanceof HttpEntityEnclosingRequest && !request.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+            HttpEntityEnclosingRequest entityRequest = (HttpEntityEnclosingRequest) request;
+            HttpEntity entity = entityRequest.getEntity();
+            if (entity != null && entity.getContentLength() >= minBytes) {
+                try {
+                    entityRequest.setEntity(gzip(entity));
+                    request.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+                    requestProducer = HttpAsyncMethods.create(requestProducer.getTarget(), request);
+                } catch (IOException e) {
+                    // not compressed, the original entity is still there
+                }
+            }
+        }
+        return client.execute(requestProducer, responseConsumer, context, callback);
+    }
+
+    private static HttpEntity gzip(HttpEntity entity) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(entity.getContentLength() / 4 + 64, Integer.MAX_VALUE));
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes, 8192)) {
+            entity.writeTo(out);
+        }
+        Header contentType = entity.getContentType();
+        return new NByteArrayEntity(bytes.toByteArray(), contentType == null ? null : ContentType.parse(contentType.getValue()));
+    }
+
+    @Override
+    public boolean isRunning() {
+        return client.isRunning();
+    }
+
+    @Override
+    public void start() {
+        client.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+}
@@ -0,0 +1,174 @@
+package com.github.felipegutierrez.kafka.elasticsearch.consumer;
+
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.BulkPipelineConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.DeadLetterPublisher;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.RetryingBulkExecutor;
+import com.github.felipegutierrez.kafka.elasticsearch.client.ElasticSearchClientFactory;
+import com.github.felipegutierrez.kafka.elasticsearch.metrics.MetricsHttpServer;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.ElasticSearchSinkConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.ByteArrayTweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.StringTweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.worker.PartitionWorker;
+import com.github.felipegutierrez.kafka.elasticsearch.worker.PartitionWorkerPoller;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * One poller thread hands the records to a {@link PartitionWorker} per assigned partition, so a slow bulk of one
+ * partition does not stall the others and the JVM can index on all its cores while the order inside each partition
+ * is kept, see {@link PartitionWorkerPoller}.
+ * <p>
+ * The offset committed for a partition is the one after the last record its worker indexed: asynchronously after
+ * each poll, synchronously when the partition is revoked or the consumer stops (Ctrl+C wakes up the poll). The
+ * documents rejected permanently are sent to the {@code twitter_tweets_dlq} topic.
+ */
+public class ElasticSearchConsumerWithPartitionWorkers {
+    private static final Logger logger = LoggerFactory.getLogger(ElasticSearchConsumerWithPartitionWorkers.class);
+    private final String bootstrapServers = "127.0.0.1:9092";
+    private final String groupId = "kafka-demo-elasticsearch";
+    private final String topic = "twitter_tweets";
+    // one worker thread per assigned partition
+    private final int maxWorkers = 32;
+    private final ElasticSearchSinkConfig config;
+    private final int queueCapacity;
+
+    public ElasticSearchConsumerWithPartitionWorkers() {
+        this(-1);
+    }
+
+    public ElasticSearchConsumerWithPartitionWorkers(int maxInsert) {
+        this(maxInsert, 1000, 200, new StringTweetFormat());
+    }
+
+    /**
+     * @param queueCapacity number of records each worker buffers before its partition is paused
+     * @param maxBatch      maximum number of documents of a bulk request sent by a worker
+     * @param tweetFormat   use {@link ByteArrayTweetFormat} to pass the record bytes to the bulk body without decoding them
+     */
+    public ElasticSearchConsumerWithPartitionWorkers(int maxInsert, int queueCapacity, int maxBatch, TweetFormat<?> tweetFormat) {
+        this(new ElasticSearchSinkConfig().setMaxBatches(maxInsert)
+                .setBulkPipelineConfig(new BulkPipelineConfig().setFlushActions(maxBatch)), queueCapacity, tweetFormat);
+    }
+
+    /**
+     * @param config        documents, bulk size, retries, Elasticsearch client and metrics of the workers, the
+     *                      indexing mode and the commit strategy are not used
+     * @param queueCapacity number of records each worker buffers before its partition is paused
+     */
+    public ElasticSearchConsumerWithPartitionWorkers(ElasticSearchSinkConfig config, int queueCapacity, TweetFormat<?> tweetFormat) {
+        this.config = config;
+        this.queueCapacity = queueCapacity;
+        config.validate(tweetFormat);
+        try {
+            disclaimer();
+            ElasticSearchClientFactory clientFactory = new ElasticSearchClientFactory().setClientConfig(config.getClientConfig());
+            if (clientFactory.loadCredentials()) {
+                consume(clientFactory.createClient(), tweetFormat);
+            }
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private <V> void consume(RestHighLevelClient client, TweetFormat<V> tweetFormat) throws IOException, InterruptedException {
+        KafkaConsumer<String, V> consumer = createConsumer(tweetFormat);
+        // the documents still rejected after the retries go to the dead-letter topic, so the offsets can move past them
+        DeadLetterPublisher deadLetterPublisher = new DeadLetterPublisher(bootstrapServers, topic + "_dlq");
+        BulkPipelineConfig bulkConfig = config.getBulkPipelineConfig();
+        config.getMetrics().registerMBean(groupId);
+        MetricsHttpServer metricsServer = config.getMetricsPort() == -1 ? null :
+                new MetricsHttpServer(config.getMetrics(), config.getMetricsPort());
+        logger.info("Indexing with " + config + ", " + queueCapacity + " records per worker queue and " +
+                tweetFormat.getClass().getSimpleName());
+        final PartitionWorkerPoller<V> poller = new PartitionWorkerPoller<V>(consumer,
+                new RetryingBulkExecutor(client, bulkConfig.retryBackoff(), null, bulkConfig.getMetrics()),
+                deadLetterPublisher, tweetFormat, config, queueCapacity, maxWorkers);
+        consumer.subscribe(Arrays.asList(topic), poller.rebalanceListener());
+
+        // on Ctrl+C, wake up the poll and wait for the last synchronous commit
+        final Thread mainThread = Thread.currentThread();
+        Thread shutdownHook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                logger.info("Stopping the consumer");
+                poller.stop();
+                try {
+                    mainThread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        try {
+            poller.run();
+        } finally {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // the JVM is shutting down, the hook is waiting for us
+            }
+            consumer.close();
+            deadLetterPublisher.close();
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
+            // close the elasticsearch client
+            client.close();
+        }
+    }
+
+    private <V> KafkaConsumer<String, V> createConsumer(TweetFormat<V> tweetFormat) {
+        // create properties
+        Properties properties = new Properties();
+        properties.setProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        properties.setProperty(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        properties.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, tweetFormat.deserializer().getName());
+        properties.setProperty(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        properties.setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        tweetFormat.configure(properties);
+        // disable auto commit of offsets
+        properties.setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, Boolean.FALSE.toString());
+        // one poll fills at most one batch of each worker
+        properties.setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, Integer.toString(config.getBulkPipelineConfig().getFlushActions()));
+
+        // mechanism to detect a consumer application being down
+        // heartbeats are sent periodically to the broker.
+        // If no heartbeat is sent during that period the consumer is considered dead.
+        // set even lower to faster consumer balances
+        // properties.setProperty(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, "3000"); // default: 10,000 milliseconds
+        // how ofter to send heartbeats. Usually it is set to 1/3 of the SESSION_TIMEOUT_MS_CONFIG
+        // properties.setProperty(ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG, "1000"); // default: 3,000 milliseconds
+
+        // when using a bigData process engine decrease this parameter
+        // maximum amount of time between two poll() calls before declaring the consumer dead.
+        // properties.setProperty(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, "1000"); // default: 5,000 milliseconds
+
+        // create consumer
+        KafkaConsumer<String, V> consumer = new KafkaConsumer<String, V>(properties);
+
+        return consumer;
+    }
+
+    private void disclaimer() {
+        logger.info("Start zookeeper: ./bin/zookeeper-server-start.sh config/zookeeper.properties");
+        logger.info("Start the broker: ./bin/kafka-server-start.sh config/server.properties");
+        logger.info("remove the topic: ./bin/kafka-topics.sh --delete --topic twitter_tweets --zookeeper localhost:2181");
+        logger.info("create the topic: ./bin/kafka-topics.sh --create --topic twitter_tweets --zookeeper localhost:2181 --partitions 6 --replication-factor 1");
+        logger.info("Start the consumer: java -jar kafka-twitter/target/kafka-twitter-1.0.jar -app 1 -elements \"felipe\"");
+        logger.info("start the consumer from console: ./bin/kafka-console-consumer.sh --bootstrap-server localhost:9092 --topic twitter_tweets");
+        logger.info("describe the group-id to check that the offset is idempotent: ./bin/kafka-consumer-groups.sh --bootstrap-server localhost:9092 --group kafka-demo-elasticsearch --describe");
+        logger.info("reset the offsets: ./bin/kafka-consumer-groups.sh --bootstrap-server localhost:9092 --group kafka-demo-elasticsearch --reset-offsets --execute --to-earliest --topic twitter_tweets");
+        logger.info("");
+        logger.info("");
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.felipegutierrez.kafka.elasticsearch.consumer;
+
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.BulkPipeline;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.BulkPipelineConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.CommitStrategy;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.ElasticSearchSinkConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.IndexingMode;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.ByteArrayTweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.StringTweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetFormat;
+
+/**
+ * Index tweets using a {@link BulkPipeline}: the bulks are sent asynchronously while the consumer keeps polling, and
+ * only the offsets of records that Elasticsearch acknowledged are committed, asynchronously too. This removes the
+ * idle time of {@link ElasticSearchConsumerWithBulkRequest} that waits for every bulk.
+ */
+public class ElasticSearchConsumerWithPipelinedBulkRequest extends ElasticSearchSinkConsumer {
+
+    public ElasticSearchConsumerWithPipelinedBulkRequest() {
+        this(-1);
+    }
+
+    public ElasticSearchConsumerWithPipelinedBulkRequest(int maxInsert) {
+        this(maxInsert, new BulkPipelineConfig());
+    }
+
+    public ElasticSearchConsumerWithPipelinedBulkRequest(int maxInsert, BulkPipelineConfig bulkPipelineConfig) {
+        this(maxInsert, bulkPipelineConfig, new StringTweetFormat());
+    }
+
+    /**
+     * @param maxInsert   number of polls before stopping, -1 to never stop
+     * @param tweetFormat use {@link ByteArrayTweetFormat} to pass the record bytes to the bulk body without decoding them
+     */
+    public ElasticSearchConsumerWithPipelinedBulkRequest(int maxInsert, BulkPipelineConfig bulkPipelineConfig, TweetFormat<?> tweetFormat) {
+        super(new ElasticSearchSinkConfig()
+                .setIndexingMode(IndexingMode.PIPELINED)
+                .setCommitStrategy(CommitStrategy.ASYNC)
+                .setBulkPipelineConfig(bulkPipelineConfig)
+                // one poll fills at most one bulk
+                .setMaxPollRecords(bulkPipelineConfig.maxFlushActions())
+                .setMaxBatches(maxInsert), tweetFormat);
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.felipegutierrez.kafka.elasticsearch.consumer;
+
+import com.github.felipegutierrez.kafka.elasticsearch.client.ElasticSearchClientFactory;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.SinkBenchmark;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Read a sample of the topic once and replay it with every indexing mode and commit strategy of the
+ * {@link com.github.felipegutierrez.kafka.elasticsearch.sink.ElasticSearchSink}, see {@link SinkBenchmark}.
+ */
+public class ElasticSearchSinkBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(ElasticSearchSinkBenchmark.class);
+    private final String bootstrapServers = "127.0.0.1:9092";
+    private final String topic = "twitter_tweets";
+
+    public ElasticSearchSinkBenchmark() {
+        this(1000, 100);
+    }
+
+    /**
+     * @param maxRecords number of records read from the beginning of the topic
+     * @param batchSize  number of records of each poll and bulk
+     */
+    public ElasticSearchSinkBenchmark(int maxRecords, int batchSize) {
+        try {
+            ElasticSearchClientFactory clientFactory = new ElasticSearchClientFactory();
+            if (!clientFactory.loadCredentials()) {
+                return;
+            }
+            List<ConsumerRecord<String, String>> input = readTopic(maxRecords);
+            logger.info("Benchmarking the sink with " + input.size() + " records of [" + topic + "] in batches of " + batchSize);
+            if (input.isEmpty()) {
+                return;
+            }
+            RestHighLevelClient client = clientFactory.createClient();
+            try {
+                List<SinkBenchmark.Result> results = new SinkBenchmark(client, input, batchSize).runAll();
+                logger.info("Results:\n" + SinkBenchmark.report(results));
+            } finally {
+                client.close();
+            }
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private List<ConsumerRecord<String, String>> readTopic(int maxRecords) {
+        Properties properties = new Properties();
+        properties.setProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        properties.setProperty(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        properties.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        properties.setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, Boolean.FALSE.toString());
+
+        List<ConsumerRecord<String, String>> records = new ArrayList<ConsumerRecord<String, String>>();
+        // no group: read the partitions from the beginning without touching the offsets of the real consumers
+        try (KafkaConsumer<String, String> consumer = new KafkaConsumer<String, String>(properties)) {
+            List<TopicPartition> partitions = new ArrayList<TopicPartition>();
+            for (PartitionInfo partitionInfo : consumer.partitionsFor(topic)) {
+                partitions.add(new TopicPartition(topic, partitionInfo.partition()));
+            }
+            consumer.assign(partitions);
+            consumer.seekToBeginning(partitions);
+            int emptyPolls = 0;
+            while (records.size() < maxRecords && emptyPolls < 3) {
+                ConsumerRecords<String, String> polled = consumer.poll(Duration.ofSeconds(1));
+                emptyPolls = polled.isEmpty() ? emptyPolls + 1 : 0;
+                for (ConsumerRecord<String, String> record : polled) {
+                    if (records.size() < maxRecords) {
+                        records.add(record);
+                    }
+                }
+            }
+        }
+        return records;
+    }
+}
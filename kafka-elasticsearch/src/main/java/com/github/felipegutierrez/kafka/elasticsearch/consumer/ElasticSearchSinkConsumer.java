@@ -0,0 +1,152 @@
+package com.github.felipegutierrez.kafka.elasticsearch.consumer;
+
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.DeadLetterPublisher;
+import com.github.felipegutierrez.kafka.elasticsearch.client.ElasticSearchClientFactory;
+import com.github.felipegutierrez.kafka.elasticsearch.metrics.MetricsHttpServer;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.ElasticSearchOffsetStore;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.ElasticSearchSink;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.ElasticSearchSinkConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.IndexingMode;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.StringTweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetFormat;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Index the tweets of the topic with an {@link ElasticSearchSink}, the indexing mode and the commit strategy are
+ * chosen by the {@link ElasticSearchSinkConfig}. Another topic can be indexed with the {@link TweetFormat} of its
+ * records, e.g. the Avro course statistics of the Udemy pipeline.
+ */
+public class ElasticSearchSinkConsumer {
+    private static final Logger logger = LoggerFactory.getLogger(ElasticSearchSinkConsumer.class);
+    private final String bootstrapServers = "127.0.0.1:9092";
+    private final String groupId = "kafka-demo-elasticsearch";
+    private final String topic;
+    private final String deadLetterTopic;
+    private final ElasticSearchSinkConfig config;
+
+    public ElasticSearchSinkConsumer() {
+        this(new ElasticSearchSinkConfig());
+    }
+
+    public ElasticSearchSinkConsumer(ElasticSearchSinkConfig config) {
+        this(config, new StringTweetFormat());
+    }
+
+    public ElasticSearchSinkConsumer(ElasticSearchSinkConfig config, TweetFormat<?> tweetFormat) {
+        this(config, tweetFormat, "twitter_tweets");
+    }
+
+    /**
+     * @param topic topic to index, its failed documents go to the topic with the {@code _dlq} suffix
+     */
+    public ElasticSearchSinkConsumer(ElasticSearchSinkConfig config, TweetFormat<?> tweetFormat, String topic) {
+        this.config = config;
+        this.topic = topic;
+        this.deadLetterTopic = topic + "_dlq";
+        config.validate(tweetFormat);
+        try {
+            disclaimer();
+            ElasticSearchClientFactory clientFactory = new ElasticSearchClientFactory().setClientConfig(config.getClientConfig());
+            if (clientFactory.loadCredentials()) {
+                consume(clientFactory.createClient(), tweetFormat);
+            }
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private <V> void consume(RestHighLevelClient client, TweetFormat<V> tweetFormat) throws IOException, InterruptedException {
+        KafkaConsumer<String, V> consumer = createConsumer(tweetFormat);
+        // a single document that cannot be indexed fails the consumer, the bulks send it to the dead-letter topic
+        DeadLetterPublisher deadLetterPublisher = !config.getIndexingMode().isBulk() ? null :
+                new DeadLetterPublisher(bootstrapServers, deadLetterTopic);
+        if (config.getBulkPipelineConfig().getAdaptiveBulkSizer() != null) {
+            config.getBulkPipelineConfig().getAdaptiveBulkSizer().registerMBean(groupId);
+        }
+        if (config.getRecentlyIndexedIdCache() != null) {
+            config.getRecentlyIndexedIdCache().registerMBean(groupId);
+        }
+        config.getMetrics().registerMBean(groupId);
+        MetricsHttpServer metricsServer = config.getMetricsPort() == -1 ? null :
+                new MetricsHttpServer(config.getMetrics(), config.getMetricsPort());
+        logger.info("Indexing with " + config + " and " + tweetFormat.getClass().getSimpleName());
+        final ElasticSearchSink<V> sink = new ElasticSearchSink<V>(consumer,
+                config.getIndexingMode().createIndexer(client, config, deadLetterPublisher),
+                tweetFormat, config);
+        if (config.getCommitStrategy().isStoredInElasticsearch()) {
+            sink.setOffsetStore(new ElasticSearchOffsetStore(client, config.getOffsetsIndex(), groupId));
+        }
+        // commit the processed offsets of the partitions given to another consumer
+        consumer.subscribe(Arrays.asList(topic), sink.rebalanceListener());
+
+        // on Ctrl+C, wake up the poll and wait for the last synchronous commit
+        final Thread mainThread = Thread.currentThread();
+        Thread shutdownHook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                logger.info("Stopping the consumer");
+                sink.stop();
+                try {
+                    mainThread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        try {
+            sink.run();
+        } finally {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // the JVM is shutting down, the hook is waiting for us
+            }
+            consumer.close();
+            if (deadLetterPublisher != null) {
+                deadLetterPublisher.close();
+            }
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
+            // close the elasticsearch client
+            client.close();
+        }
+    }
+
+    private <V> KafkaConsumer<String, V> createConsumer(TweetFormat<V> tweetFormat) {
+        // create properties
+        Properties properties = new Properties();
+        properties.setProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        properties.setProperty(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        properties.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, tweetFormat.deserializer().getName());
+        properties.setProperty(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        properties.setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        tweetFormat.configure(properties);
+        // auto commit and max poll records
+        config.configure(properties);
+
+        // create consumer, it is subscribed with the rebalance listener of the sink
+        return new KafkaConsumer<String, V>(properties);
+    }
+
+    private void disclaimer() {
+        logger.info("Start zookeeper: ./bin/zookeeper-server-start.sh config/zookeeper.properties");
+        logger.info("Start the broker: ./bin/kafka-server-start.sh config/server.properties");
+        logger.info("create the topic: ./bin/kafka-topics.sh --create --topic twitter_tweets --zookeeper localhost:2181 --partitions 6 --replication-factor 1");
+        logger.info("Start the producer: java -jar kafka-twitter/target/kafka-twitter-1.0.jar -app 1 -elements \"felipe\"");
+        logger.info("start the consumer from console: ./bin/kafka-console-consumer.sh --bootstrap-server localhost:9092 --topic twitter_tweets");
+        logger.info("describe the group-id to check that the offset is idempotent: ./bin/kafka-consumer-groups.sh --bootstrap-server localhost:9092 --group kafka-demo-elasticsearch --describe");
+        logger.info("reset the offsets: ./bin/kafka-consumer-groups.sh --bootstrap-server localhost:9092 --group kafka-demo-elasticsearch --reset-offsets --execute --to-earliest --topic twitter_tweets");
+        logger.info("");
+    }
+}
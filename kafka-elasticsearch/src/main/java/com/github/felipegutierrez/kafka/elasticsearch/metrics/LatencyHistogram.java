@@ -0,0 +1,133 @@
+package com.github.felipegutierrez.kafka.elasticsearch.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A latency distribution that any thread can record into without locking, read by the metric reporters.
+ * <p>
+ * The values go to an HdrHistogram {@link Recorder} in microseconds with 3 significant digits, which is wait-free and
+ * does not allocate. The readers drain it into the histogram of the current window and into the total since the
+ * start. The percentiles are computed over the last complete window and the current one, so they follow the recent
+ * latencies without jumping to zero when a window starts. The benchmarks read the distribution of the whole run with
+ * {@link #getTotalPercentileMs(double)} and {@link #getTotalBuckets()}.
+ */
+public class LatencyHistogram {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private final long windowNanos;
+    private final Histogram total = newHistogram();
+    private final Histogram recent = newHistogram();
+    private Histogram previousWindow = newHistogram();
+    private Histogram currentWindow = newHistogram();
+    private Histogram interval;
+    private long windowStartNanos = System.nanoTime();
+
+    public LatencyHistogram() {
+        this(60000);
+    }
+
+    /**
+     * @param windowMs width of the windows the percentiles are computed over
+     */
+    public LatencyHistogram(long windowMs) {
+        if (windowMs < 1) {
+            throw new IllegalArgumentException("windowMs must be at least 1");
+        }
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+    }
+
+    private static Histogram newHistogram() {
+        return new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * Record a latency, values beyond one hour are recorded as one hour. Safe to call from any thread.
+     */
+    public void record(long latencyNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+        recorder.recordValue(micros < 0 ? 0 : Math.min(micros, HIGHEST_TRACKABLE_MICROS));
+    }
+
+    private void drain() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        long now = System.nanoTime();
+        if (now - windowStartNanos >= windowNanos) {
+            Histogram completed = currentWindow;
+            currentWindow = previousWindow;
+            currentWindow.reset();
+            previousWindow = completed;
+            windowStartNanos = now;
+        }
+        currentWindow.add(interval);
+        recent.reset();
+        recent.add(previousWindow);
+        recent.add(currentWindow);
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the recent latency below which this percentage of the values falls, in milliseconds
+     */
+    public synchronized double getPercentileMs(double percentile) {
+        drain();
+        return recent.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the latency below which this percentage of the values recorded since the start falls, in milliseconds,
+     * 0 if none was recorded
+     */
+    public synchronized double getTotalPercentileMs(double percentile) {
+        drain();
+        return total.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * @return the number of latencies recorded since the start in buckets of milliseconds doubling in width, e.g.
+     * {@code <1ms:12 <2ms:30 <8ms:7}, without the empty buckets
+     */
+    public synchronized String getTotalBuckets() {
+        drain();
+        StringBuilder buckets = new StringBuilder();
+        long bucketMs = 1;
+        for (HistogramIterationValue bucket : total.logarithmicBucketValues(TimeUnit.MILLISECONDS.toMicros(1), 2)) {
+            if (bucket.getCountAddedInThisIterationStep() > 0) {
+                buckets.append(buckets.length() == 0 ? "" : " ").append("<").append(bucketMs).append("ms:")
+                        .append(bucket.getCountAddedInThisIterationStep());
+            }
+            bucketMs *= 2;
+        }
+        return buckets.toString();
+    }
+
+    /**
+     * @return the highest recent latency in milliseconds
+     */
+    public synchronized double getMaxMs() {
+        drain();
+        return recent.getMaxValue() / 1000.0;
+    }
+
+    /**
+     * @return the number of latencies recorded since the start
+     */
+    public synchronized long getTotalCount() {
+        drain();
+        return total.getTotalCount();
+    }
+
+    /**
+     * @return the sum of the latencies recorded since the start, in seconds
+     */
+    public synchronized double getTotalSeconds() {
+        drain();
+        return total.getMean() * total.getTotalCount() / TimeUnit.SECONDS.toMicros(1);
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.felipegutierrez.kafka.elasticsearch.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serve the {@link SinkMetrics} in the Prometheus text format on {@code http://host:port/metrics}. The scrapes are
+ * answered by the single dispatcher thread of the server, which keeps the JVM alive until {@link #close()}.
+ */
+public class MetricsHttpServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsHttpServer.class);
+    private final HttpServer server;
+
+    /**
+     * @param port port to listen on, 0 for a free one
+     */
+    public MetricsHttpServer(final SinkMetrics metrics, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    StringBuilder body = new StringBuilder();
+                    metrics.writePrometheus(body);
+                    byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, bytes.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(bytes);
+                    }
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        logger.info("Serving the metrics on http://localhost:" + getPort() + "/metrics");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,499 @@
+package com.github.felipegutierrez.kafka.elasticsearch.metrics;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters, rates, latency percentiles and consumer lag of the Elasticsearch sink, exposed over JMX with
+ * {@link #registerMBean(String)} and in the Prometheus text format with {@link #writePrometheus(StringBuilder)}.
+ * <p>
+ * The {@code record*} methods are called on the per-record path, from the poll thread and from the callbacks of the
+ * Elasticsearch client: they only add to {@link LongAdder}s and {@link LatencyHistogram}s, without locking nor
+ * allocating. The rates and percentiles are computed when the metrics are read.
+ * <p>
+ * The latency of the bulks is measured for every attempt, including the failed ones. With
+ * {@link com.github.felipegutierrez.kafka.elasticsearch.sink.IndexingMode#SINGLE} and
+ * {@link com.github.felipegutierrez.kafka.elasticsearch.sink.IndexingMode#CONCURRENT} each index request counts as a
+ * bulk of one document. The end-to-end latency goes from the timestamp of the record to the moment Elasticsearch
+ * acknowledged its document.
+ */
+public class SinkMetrics implements SinkMetricsMBean {
+    private static final Logger logger = LoggerFactory.getLogger(SinkMetrics.class);
+    private static final String PREFIX = "es_sink_";
+    private final LongAdder polledRecords = new LongAdder();
+    private final LongAdder skippedRecords = new LongAdder();
+    private final LongAdder indexedDocuments = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+    private final LongAdder receivedDocumentBytes = new LongAdder();
+    private final LongAdder indexedDocumentBytes = new LongAdder();
+    private final LongAdder sizedDocuments = new LongAdder();
+    private final LongAdder bulkRequests = new LongAdder();
+    private final LongAdder failedBulkRequests = new LongAdder();
+    private final LongAdder rejectedDocuments = new LongAdder();
+    private final LongAdder retriedDocuments = new LongAdder();
+    private final LongAdder deadLetteredDocuments = new LongAdder();
+    private final LongAdder failedStagedDocuments = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder failedCommits = new LongAdder();
+    private final LongAdder pauses = new LongAdder();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicLong maxBufferedBytes = new AtomicLong();
+    private volatile long memoryBudgetBytes = -1;
+    private final LatencyHistogram bulkLatency = new LatencyHistogram();
+    private final LatencyHistogram endToEndLatency = new LatencyHistogram();
+    private final Map<TopicPartition, Long> partitionLag = new ConcurrentHashMap<TopicPartition, Long>();
+    private final long lagIntervalMs;
+    private long lastLagUpdateMs;
+    // last sample of the rates, guarded by this
+    private long rateSampleNanos = System.nanoTime();
+    private long rateSampleDocuments;
+    private long rateSampleBytes;
+    private double documentsPerSecond;
+    private double bytesPerSecond;
+
+    public SinkMetrics() {
+        this(5000);
+    }
+
+    /**
+     * @param lagIntervalMs minimum time between two updates of the lag by {@link #updateLag(Consumer)}
+     */
+    public SinkMetrics(long lagIntervalMs) {
+        if (lagIntervalMs < 0) {
+            throw new IllegalArgumentException("lagIntervalMs cannot be negative");
+        }
+        this.lagIntervalMs = lagIntervalMs;
+    }
+
+    public SinkMetrics registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("com.github.felipegutierrez.kafka.elasticsearch:type=SinkMetrics,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            logger.warn("Could not register the SinkMetrics MBean: " + e.getMessage());
+        }
+        return this;
+    }
+
+    public void recordPolled(int records) {
+        polledRecords.add(records);
+    }
+
+    /**
+     * A record that was not indexed, e.g. bad data or a tweet indexed recently.
+     */
+    public void recordSkipped() {
+        skippedRecords.increment();
+    }
+
+    /**
+     * Size of a document as consumed and as sent to Elasticsearch, smaller when a projection drops fields.
+     */
+    public void recordDocumentBytes(int receivedBytes, int indexedBytes) {
+        sizedDocuments.increment();
+        receivedDocumentBytes.add(receivedBytes);
+        indexedDocumentBytes.add(indexedBytes);
+    }
+
+    /**
+     * An attempt of a bulk request that got a response, some of its documents may have been rejected.
+     */
+    public void recordBulk(long bytes, long latencyNanos, int rejected) {
+        bulkRequests.increment();
+        sentBytes.add(bytes);
+        rejectedDocuments.add(rejected);
+        bulkLatency.record(latencyNanos);
+    }
+
+    /**
+     * An attempt of a bulk request that failed as a whole, e.g. a 503 or a timeout.
+     */
+    public void recordFailedBulk(long bytes, long latencyNanos) {
+        bulkRequests.increment();
+        failedBulkRequests.increment();
+        sentBytes.add(bytes);
+        bulkLatency.record(latencyNanos);
+    }
+
+    public void recordRetried(int documents) {
+        retriedDocuments.add(documents);
+    }
+
+    public void recordDeadLettered(int documents) {
+        deadLetteredDocuments.add(documents);
+    }
+
+    /**
+     * A staged document, e.g. a stored offset, could not be written for another reason than a newer version.
+     */
+    public void recordStagedFailure() {
+        failedStagedDocuments.increment();
+    }
+
+    /**
+     * Documents acknowledged by Elasticsearch.
+     */
+    public void recordIndexed(int documents) {
+        indexedDocuments.add(documents);
+    }
+
+    /**
+     * @param recordTimestampMs timestamp of the record whose document was acknowledged, ignored if negative
+     * @param nowMs             when the document was acknowledged
+     */
+    public void recordEndToEnd(long recordTimestampMs, long nowMs) {
+        if (recordTimestampMs >= 0) {
+            endToEndLatency.record(TimeUnit.MILLISECONDS.toNanos(nowMs - recordTimestampMs));
+        }
+    }
+
+    public void recordCommit(boolean success) {
+        if (success) {
+            commits.increment();
+        } else {
+            failedCommits.increment();
+        }
+    }
+
+    /**
+     * @param memoryBudgetBytes bytes of documents the sink may buffer before pausing the partitions, -1 for no budget
+     */
+    public void setMemoryBudgetBytes(long memoryBudgetBytes) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    /**
+     * Bytes of documents added to the buffer, or released from it when negative, once their bulk completed.
+     */
+    public void recordBufferedBytes(long bytes) {
+        long buffered = bufferedBytes.addAndGet(bytes);
+        long max = maxBufferedBytes.get();
+        while (buffered > max && !maxBufferedBytes.compareAndSet(max, buffered)) {
+            max = maxBufferedBytes.get();
+        }
+    }
+
+    /**
+     * The partitions were paused because the buffered documents exceeded the memory budget.
+     */
+    public void recordPause() {
+        pauses.increment();
+    }
+
+    /**
+     * Refresh the lag of the partitions assigned to the consumer, at most once per lag interval. Call it from the
+     * poll thread after every poll.
+     * <p>
+     * The lag comes from the {@code records-lag} metric of the consumer. The partitions that were not fetched yet
+     * have no such metric, their lag is the distance between {@code endOffsets()} and the position.
+     */
+    public void updateLag(Consumer<?, ?> consumer) {
+        long now = System.currentTimeMillis();
+        if (now - lastLagUpdateMs < lagIntervalMs) {
+            return;
+        }
+        lastLagUpdateMs = now;
+        Set<TopicPartition> assignment = consumer.assignment();
+        Map<TopicPartition, Long> lags = new HashMap<TopicPartition, Long>();
+        for (Map.Entry<MetricName, ? extends Metric> metric : consumer.metrics().entrySet()) {
+            MetricName name = metric.getKey();
+            if (!"records-lag".equals(name.name()) || !"consumer-fetch-manager-metrics".equals(name.group())) {
+                continue;
+            }
+            String topic = name.tags().get("topic");
+            String partition = name.tags().get("partition");
+            Object value = metric.getValue().metricValue();
+            if (topic != null && partition != null && value instanceof Double && !((Double) value).isNaN()) {
+                lags.put(new TopicPartition(topic, Integer.parseInt(partition)), ((Double) value).longValue());
+            }
+        }
+        Set<TopicPartition> missing = new HashSet<TopicPartition>(assignment);
+        missing.removeAll(lags.keySet());
+        if (!missing.isEmpty()) {
+            try {
+                Map<TopicPartition, Long> endOffsets = consumer.endOffsets(missing);
+                for (TopicPartition partition : missing) {
+                    Long endOffset = endOffsets.get(partition);
+                    if (endOffset != null) {
+                        lags.put(partition, Math.max(0L, endOffset - consumer.position(partition)));
+                    }
+                }
+            } catch (KafkaException | IllegalStateException e) {
+                logger.debug("Could not compute the lag of " + missing + ": " + e.getMessage());
+            }
+        }
+        partitionLag.keySet().retainAll(assignment);
+        for (Map.Entry<TopicPartition, Long> lag : lags.entrySet()) {
+            if (assignment.contains(lag.getKey())) {
+                partitionLag.put(lag.getKey(), lag.getValue());
+            }
+        }
+    }
+
+    private synchronized void updateRates() {
+        long now = System.nanoTime();
+        long elapsed = now - rateSampleNanos;
+        if (elapsed < TimeUnit.SECONDS.toNanos(1)) {
+            return;
+        }
+        long documents = indexedDocuments.sum();
+        long bytes = sentBytes.sum();
+        documentsPerSecond = (documents - rateSampleDocuments) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        bytesPerSecond = (bytes - rateSampleBytes) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        rateSampleNanos = now;
+        rateSampleDocuments = documents;
+        rateSampleBytes = bytes;
+    }
+
+    /**
+     * Append all the metrics in the Prometheus text exposition format.
+     */
+    public void writePrometheus(StringBuilder out) {
+        counter(out, "polled_records_total", "Records returned by the polls", getPolledRecords());
+        counter(out, "skipped_records_total", "Records not indexed, bad data or indexed recently", getSkippedRecords());
+        counter(out, "indexed_documents_total", "Documents acknowledged by Elasticsearch", getIndexedDocuments());
+        counter(out, "sent_bytes_total", "Bytes of the bulk requests, retries included", getSentBytes());
+        counter(out, "received_document_bytes_total", "Bytes of the documents as consumed", getReceivedDocumentBytes());
+        counter(out, "indexed_document_bytes_total", "Bytes of the documents as sent, after the projection", getIndexedDocumentBytes());
+        gauge(out, "documents_per_second", "Documents acknowledged per second", getDocumentsPerSecond());
+        gauge(out, "bytes_per_second", "Bytes sent per second", getBytesPerSecond());
+        counter(out, "bulk_requests_total", "Attempts of bulk requests", getBulkRequests());
+        counter(out, "failed_bulk_requests_total", "Attempts of bulk requests that failed as a whole", getFailedBulkRequests());
+        counter(out, "rejected_documents_total", "Documents rejected with 429", getRejectedDocuments());
+        counter(out, "retried_documents_total", "Documents sent again after a failure", getRetriedDocuments());
+        counter(out, "dead_lettered_documents_total", "Documents sent to the dead-letter topic", getDeadLetteredDocuments());
+        counter(out, "failed_staged_documents_total", "Staged documents, e.g. stored offsets, that could not be written", getFailedStagedDocuments());
+        counter(out, "commits_total", "Successful offset commits", getCommits());
+        counter(out, "failed_commits_total", "Failed offset commits", getFailedCommits());
+        gauge(out, "memory_budget_bytes", "Bytes of documents buffered before pausing the partitions, -1 without budget", getMemoryBudgetBytes());
+        gauge(out, "buffered_bytes", "Bytes of documents buffered or in flight", getBufferedBytes());
+        gauge(out, "max_buffered_bytes", "Largest number of bytes of documents buffered or in flight", getMaxBufferedBytes());
+        counter(out, "pauses_total", "Times the partitions were paused over the memory budget", getPauses());
+        summary(out, "bulk_latency_seconds", "Latency of the bulk requests", bulkLatency);
+        summary(out, "end_to_end_latency_seconds", "From the record timestamp to its acknowledgement by Elasticsearch", endToEndLatency);
+        out.append("# HELP ").append(PREFIX).append("consumer_lag Records behind the end of the partition\n");
+        out.append("# TYPE ").append(PREFIX).append("consumer_lag gauge\n");
+        for (Map.Entry<TopicPartition, Long> lag : partitionLag.entrySet()) {
+            out.append(PREFIX).append("consumer_lag{topic=\"").append(lag.getKey().topic())
+                    .append("\",partition=\"").append(lag.getKey().partition()).append("\"} ").append(lag.getValue()).append('\n');
+        }
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(" counter\n");
+        out.append(PREFIX).append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, double value) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(" gauge\n");
+        out.append(PREFIX).append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(" summary\n");
+        for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            out.append(PREFIX).append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getPercentileMs(quantile * 100) / 1000.0).append('\n');
+        }
+        out.append(PREFIX).append(name).append("_sum ").append(histogram.getTotalSeconds()).append('\n');
+        out.append(PREFIX).append(name).append("_count ").append(histogram.getTotalCount()).append('\n');
+    }
+
+    @Override
+    public long getPolledRecords() {
+        return polledRecords.sum();
+    }
+
+    @Override
+    public long getSkippedRecords() {
+        return skippedRecords.sum();
+    }
+
+    @Override
+    public long getIndexedDocuments() {
+        return indexedDocuments.sum();
+    }
+
+    @Override
+    public long getSentBytes() {
+        return sentBytes.sum();
+    }
+
+    @Override
+    public long getReceivedDocumentBytes() {
+        return receivedDocumentBytes.sum();
+    }
+
+    @Override
+    public long getIndexedDocumentBytes() {
+        return indexedDocumentBytes.sum();
+    }
+
+    @Override
+    public double getReceivedBytesPerDocument() {
+        long documents = sizedDocuments.sum();
+        return documents == 0 ? 0.0 : receivedDocumentBytes.sum() / (double) documents;
+    }
+
+    @Override
+    public double getIndexedBytesPerDocument() {
+        long documents = sizedDocuments.sum();
+        return documents == 0 ? 0.0 : indexedDocumentBytes.sum() / (double) documents;
+    }
+
+    @Override
+    public synchronized double getDocumentsPerSecond() {
+        updateRates();
+        return documentsPerSecond;
+    }
+
+    @Override
+    public synchronized double getBytesPerSecond() {
+        updateRates();
+        return bytesPerSecond;
+    }
+
+    @Override
+    public long getBulkRequests() {
+        return bulkRequests.sum();
+    }
+
+    @Override
+    public long getFailedBulkRequests() {
+        return failedBulkRequests.sum();
+    }
+
+    @Override
+    public long getRejectedDocuments() {
+        return rejectedDocuments.sum();
+    }
+
+    @Override
+    public long getRetriedDocuments() {
+        return retriedDocuments.sum();
+    }
+
+    @Override
+    public long getDeadLetteredDocuments() {
+        return deadLetteredDocuments.sum();
+    }
+
+    @Override
+    public long getFailedStagedDocuments() {
+        return failedStagedDocuments.sum();
+    }
+
+    @Override
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    @Override
+    public long getFailedCommits() {
+        return failedCommits.sum();
+    }
+
+    @Override
+    public long getMemoryBudgetBytes() {
+        return memoryBudgetBytes;
+    }
+
+    @Override
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    @Override
+    public long getMaxBufferedBytes() {
+        return maxBufferedBytes.get();
+    }
+
+    @Override
+    public long getPauses() {
+        return pauses.sum();
+    }
+
+    @Override
+    public double getBulkLatencyP50Ms() {
+        return bulkLatency.getPercentileMs(50);
+    }
+
+    @Override
+    public double getBulkLatencyP99Ms() {
+        return bulkLatency.getPercentileMs(99);
+    }
+
+    @Override
+    public double getBulkLatencyP999Ms() {
+        return bulkLatency.getPercentileMs(99.9);
+    }
+
+    @Override
+    public double getBulkLatencyMaxMs() {
+        return bulkLatency.getMaxMs();
+    }
+
+    @Override
+    public double getEndToEndLatencyP50Ms() {
+        return endToEndLatency.getPercentileMs(50);
+    }
+
+    @Override
+    public double getEndToEndLatencyP99Ms() {
+        return endToEndLatency.getPercentileMs(99);
+    }
+
+    @Override
+    public double getEndToEndLatencyP999Ms() {
+        return endToEndLatency.getPercentileMs(99.9);
+    }
+
+    @Override
+    public double getEndToEndLatencyMaxMs() {
+        return endToEndLatency.getMaxMs();
+    }
+
+    @Override
+    public long getTotalLag() {
+        long total = 0;
+        for (Long lag : partitionLag.values()) {
+            total += lag;
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getPartitionLag() {
+        Map<String, Long> lags = new TreeMap<String, Long>();
+        for (Map.Entry<TopicPartition, Long> lag : partitionLag.entrySet()) {
+            lags.put(lag.getKey().toString(), lag.getValue());
+        }
+        return lags;
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.felipegutierrez.kafka.elasticsearch.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link SinkMetrics}.
+ */
+public interface SinkMetricsMBean {
+
+    long getPolledRecords();
+
+    long getSkippedRecords();
+
+    long getIndexedDocuments();
+
+    long getSentBytes();
+
+    long getReceivedDocumentBytes();
+
+    long getIndexedDocumentBytes();
+
+    double getReceivedBytesPerDocument();
+
+    double getIndexedBytesPerDocument();
+
+    double getDocumentsPerSecond();
+
+    double getBytesPerSecond();
+
+    long getBulkRequests();
+
+    long getFailedBulkRequests();
+
+    long getRejectedDocuments();
+
+    long getRetriedDocuments();
+
+    long getDeadLetteredDocuments();
+
+    long getFailedStagedDocuments();
+
+    long getCommits();
+
+    long getFailedCommits();
+
+    long getMemoryBudgetBytes();
+
+    long getBufferedBytes();
+
+    long getMaxBufferedBytes();
+
+    long getPauses();
+
+    double getBulkLatencyP50Ms();
+
+    double getBulkLatencyP99Ms();
+
+    double getBulkLatencyP999Ms();
+
+    double getBulkLatencyMaxMs();
+
+    double getEndToEndLatencyP50Ms();
+
+    double getEndToEndLatencyP99Ms();
+
+    double getEndToEndLatencyP999Ms();
+
+    double getEndToEndLatencyMaxMs();
+
+    long getTotalLag();
+
+    Map<String, Long> getPartitionLag();
+}
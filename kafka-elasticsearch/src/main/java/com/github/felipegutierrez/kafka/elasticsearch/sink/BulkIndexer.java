@@ -0,0 +1,157 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.BulkPipelineConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.DeadLetterPublisher;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.FailedDocument;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.OffsetTracker;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.RecordPosition;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.RetryingBulkExecutor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulate the documents of a poll and send them in synchronous bulks of
+ * {@link BulkPipelineConfig#currentFlushActions()} documents. The documents that fail are retried by the
+ * {@link RetryingBulkExecutor} and then sent to the {@link DeadLetterPublisher}.
+ */
+public class BulkIndexer implements Indexer {
+    private static final Logger logger = LoggerFactory.getLogger(BulkIndexer.class);
+    private final BulkPipelineConfig config;
+    private final RetryingBulkExecutor bulkExecutor;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final OffsetTracker offsetTracker = new OffsetTracker();
+    private BulkRequest bulkRequest = new BulkRequest();
+    private List<RecordPosition> positions = new ArrayList<RecordPosition>();
+
+    /**
+     * @param deadLetterPublisher where the documents rejected permanently are sent, if null they fail the indexer
+     */
+    public BulkIndexer(RestHighLevelClient client, BulkPipelineConfig config, DeadLetterPublisher deadLetterPublisher) {
+        this.config = config;
+        this.bulkExecutor = new RetryingBulkExecutor(client, config.retryBackoff(), config.getAdaptiveBulkSizer(), config.getMetrics());
+        this.deadLetterPublisher = deadLetterPublisher;
+    }
+
+    @Override
+    public void index(ConsumerRecord<?, ?> record, DocWriteRequest<?> request) throws IOException, InterruptedException {
+        RecordPosition position = RecordPosition.of(record);
+        offsetTracker.register(position.getTopicPartition(), position.getOffset());
+        bulkRequest.add(request);
+        positions.add(position);
+        // a poll can return more records than the bulk size
+        if (positions.size() >= config.currentFlushActions() || bulkRequest.estimatedSizeInBytes() >= config.getFlushBytes()) {
+            flush();
+        }
+    }
+
+    /**
+     * The document is added to the current bulk, which is sent with the documents of the next records or by
+     * {@link #flush()}.
+     */
+    @Override
+    public void stage(DocWriteRequest<?> request) {
+        bulkRequest.add(request);
+        // no record behind this document
+        positions.add(null);
+    }
+
+    @Override
+    public void skip(ConsumerRecord<?, ?> record) {
+        RecordPosition position = RecordPosition.of(record);
+        offsetTracker.register(position.getTopicPartition(), position.getOffset());
+        offsetTracker.acknowledge(position.getTopicPartition(), position.getOffset());
+    }
+
+    @Override
+    public void afterPoll() throws IOException, InterruptedException {
+        flush();
+    }
+
+    /**
+     * @return false, the bulk is sent synchronously after every poll so it holds one poll of documents at most
+     */
+    @Override
+    public boolean isOverBudget() {
+        return false;
+    }
+
+    @Override
+    public void flush() throws IOException, InterruptedException {
+        if (positions.isEmpty()) {
+            return;
+        }
+        BulkRequest request = bulkRequest;
+        List<RecordPosition> requestPositions = positions;
+        bulkRequest = new BulkRequest();
+        positions = new ArrayList<RecordPosition>();
+
+        logger.debug("Sending bulk with " + request.numberOfActions() + " documents");
+        List<FailedDocument> failedDocuments = new ArrayList<FailedDocument>();
+        for (FailedDocument failedDocument : bulkExecutor.execute(request)) {
+            if (requestPositions.get(failedDocument.getIndex()) != null) {
+                failedDocuments.add(failedDocument);
+            } else if (failedDocument.getStatus() == RestStatus.CONFLICT.getStatus()) {
+                logger.debug("Staged document older than the stored one " + failedDocument.getRequest() + ": " + failedDocument.getReason());
+            } else {
+                logger.warn("Could not write the staged document " + failedDocument.getRequest() + ": " + failedDocument.getReason());
+                config.getMetrics().recordStagedFailure();
+            }
+        }
+        deadLetter(failedDocuments, requestPositions);
+        boolean[] failed = new boolean[requestPositions.size()];
+        for (FailedDocument failedDocument : failedDocuments) {
+            failed[failedDocument.getIndex()] = true;
+        }
+        long now = System.currentTimeMillis();
+        int documents = 0;
+        for (int i = 0; i < requestPositions.size(); i++) {
+            RecordPosition position = requestPositions.get(i);
+            if (position == null) {
+                continue;
+            }
+            documents++;
+            offsetTracker.acknowledge(position.getTopicPartition(), position.getOffset());
+            if (!failed[i]) {
+                config.getMetrics().recordEndToEnd(position.getTimestamp(), now);
+            }
+        }
+        config.getMetrics().recordIndexed(documents - failedDocuments.size());
+        config.getMetrics().recordDeadLettered(failedDocuments.size());
+    }
+
+    /**
+     * Store the failed documents in the dead-letter topic before their offsets are acknowledged.
+     */
+    private void deadLetter(List<FailedDocument> failedDocuments, List<RecordPosition> requestPositions) throws IOException, InterruptedException {
+        if (failedDocuments.isEmpty()) {
+            return;
+        }
+        if (deadLetterPublisher == null) {
+            FailedDocument first = failedDocuments.get(0);
+            throw new IOException(failedDocuments.size() + " documents failed, first " +
+                    requestPositions.get(first.getIndex()) + ": " + first.getReason());
+        }
+        deadLetterPublisher.publishAll(failedDocuments, requestPositions);
+    }
+
+    @Override
+    public Map<TopicPartition, OffsetAndMetadata> committableOffsets() {
+        return offsetTracker.committableOffsets();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+/**
+ * When the {@link ElasticSearchSink} commits the offsets of the indexed records. Only the offsets the {@link Indexer}
+ * reports as indexed are committed, whatever the strategy.
+ */
+public enum CommitStrategy {
+    /**
+     * Let the consumer commit in background ({@code enable.auto.commit=true}). Cheapest, but the offsets of records
+     * that are still being indexed can be committed, so a crash may lose them.
+     */
+    AUTO(true, false, false, false),
+    /**
+     * {@code commitSync()} as soon as a record is indexed: one round trip to the broker per record (per bulk when the
+     * records are indexed in bulks).
+     */
+    PER_RECORD(false, true, false, false),
+    /**
+     * {@code commitSync()} once per poll, after the records of the poll were handed to the indexer.
+     */
+    PER_BATCH_SYNC(false, false, false, false),
+    /**
+     * {@code commitAsync()} once per poll, the poll loop does not wait for the broker. The last commit on shutdown
+     * is synchronous.
+     */
+    ASYNC(false, false, true, false),
+    /**
+     * Nothing is committed to Kafka: the offsets of each poll are written as documents by the
+     * {@link ElasticSearchOffsetStore}, in the bulk that carries the documents of the next poll, and the consumer
+     * seeks to them when it gets the partitions. The position and the documents are stored in the same place, so a
+     * replay after a crash is at most one bulk long, and overwrites the same document IDs. On revocation and on
+     * shutdown the position is written synchronously. The stored position only moves forward, a reset of the consumer
+     * group is applied with {@link ElasticSearchSinkConfig#setResetStoredOffsets(boolean)}.
+     */
+    ELASTICSEARCH(false, false, false, true);
+
+    private final boolean autoCommit;
+    private final boolean perRecord;
+    private final boolean async;
+    private final boolean storedInElasticsearch;
+
+    CommitStrategy(boolean autoCommit, boolean perRecord, boolean async, boolean storedInElasticsearch) {
+        this.autoCommit = autoCommit;
+        this.perRecord = perRecord;
+        this.async = async;
+        this.storedInElasticsearch = storedInElasticsearch;
+    }
+
+    public boolean isAutoCommit() {
+        return autoCommit;
+    }
+
+    public boolean isPerRecord() {
+        return perRecord;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public boolean isStoredInElasticsearch() {
+        return storedInElasticsearch;
+    }
+}
@@ -0,0 +1,206 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.OffsetTracker;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.RecordPosition;
+import com.github.felipegutierrez.kafka.elasticsearch.metrics.SinkMetrics;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Send one blocking index request per record, each on a thread of its own, so the requests of a poll overlap instead
+ * of paying the round trip one after the other. It suits the clients that cannot use bulks, e.g. because of routing
+ * rules per document.
+ * <p>
+ * At most {@code maxInFlightDocuments} requests execute at the same time, {@link #index} blocks the poll loop when all
+ * of them are busy. {@link #afterPoll()} waits for every request of the poll, so the offsets of a poll are committed
+ * only once all its documents are acknowledged. Like {@link SingleDocumentIndexer}, a document that cannot be indexed
+ * fails the indexer.
+ * <p>
+ * The threads are virtual ones when the module is built with the {@code jdk21} profile and runs on Java 21: a thread
+ * per request then costs almost nothing and there is no pool to size. Otherwise they come from a cached pool of
+ * platform threads, which the limit of requests in flight bounds.
+ */
+public class ConcurrentDocumentIndexer implements Indexer {
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrentDocumentIndexer.class);
+    // compiled with the jdk21 profile only, see the pom
+    private static final String VIRTUAL_THREADS = "com.github.felipegutierrez.kafka.elasticsearch.sink.VirtualThreads";
+    private final RestHighLevelClient client;
+    private final SinkMetrics metrics;
+    private final int maxInFlightDocuments;
+    private final Semaphore inFlightDocuments;
+    private final ExecutorService executor;
+    private final OffsetTracker offsetTracker = new OffsetTracker();
+    private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+    public ConcurrentDocumentIndexer(RestHighLevelClient client, int maxInFlightDocuments, SinkMetrics metrics) {
+        this(client, maxInFlightDocuments, metrics, newExecutor());
+    }
+
+    /**
+     * @param maxInFlightDocuments number of index requests that can be executing concurrently
+     * @param metrics              where each index request is recorded as a bulk of one document
+     * @param executor             runs each request on a thread of its own, shut down with the indexer
+     */
+    public ConcurrentDocumentIndexer(RestHighLevelClient client, int maxInFlightDocuments, SinkMetrics metrics, ExecutorService executor) {
+        if (maxInFlightDocuments < 1) {
+            throw new IllegalArgumentException("maxInFlightDocuments must be at least 1");
+        }
+        this.client = client;
+        this.metrics = metrics;
+        this.maxInFlightDocuments = maxInFlightDocuments;
+        this.inFlightDocuments = new Semaphore(maxInFlightDocuments);
+        this.executor = executor;
+    }
+
+    /**
+     * @return an executor that starts a virtual thread per task if they are available, a cached pool of daemon
+     * platform threads otherwise
+     */
+    public static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Class.forName(VIRTUAL_THREADS).getMethod("newExecutor", String.class).invoke(null, "concurrent-indexer-");
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // built without the jdk21 profile, or running on an older JVM
+            logger.debug("Virtual threads not available, using platform threads: " + e);
+        }
+        final AtomicInteger threads = new AtomicInteger();
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "concurrent-indexer-" + threads.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void index(final ConsumerRecord<?, ?> record, DocWriteRequest<?> request) throws IOException, InterruptedException {
+        if (!(request instanceof IndexRequest)) {
+            throw new IllegalArgumentException("Only index requests can be sent one by one: " + request);
+        }
+        checkFailure();
+        final IndexRequest indexRequest = (IndexRequest) request;
+        final RecordPosition position = RecordPosition.of(record);
+        offsetTracker.register(position.getTopicPartition(), position.getOffset());
+        inFlightDocuments.acquire();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long startNanos = System.nanoTime();
+                try {
+                    client.index(indexRequest, RequestOptions.DEFAULT);
+                    metrics.recordBulk(indexRequest.source().length(), System.nanoTime() - startNanos, 0);
+                    metrics.recordIndexed(1);
+                    metrics.recordEndToEnd(record.timestamp(), System.currentTimeMillis());
+                    offsetTracker.acknowledge(position.getTopicPartition(), position.getOffset());
+                } catch (IOException | ElasticsearchException e) {
+                    metrics.recordFailedBulk(indexRequest.source().length(), System.nanoTime() - startNanos);
+                    failure.compareAndSet(null, e);
+                } finally {
+                    inFlightDocuments.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * There is no bulk to join, the document is indexed right away on the poll thread.
+     */
+    @Override
+    public void stage(DocWriteRequest<?> request) {
+        if (!(request instanceof IndexRequest)) {
+            throw new IllegalArgumentException("Only index requests can be sent one by one: " + request);
+        }
+        try {
+            client.index((IndexRequest) request, RequestOptions.DEFAULT);
+        } catch (ElasticsearchException e) {
+            if (e.status() == RestStatus.CONFLICT) {
+                logger.debug("Staged document older than the stored one " + request + ": " + e.getMessage());
+            } else {
+                logger.warn("Could not write the staged document " + request + ": " + e.getMessage());
+                metrics.recordStagedFailure();
+            }
+        } catch (IOException e) {
+            // e.g. the connection failed, the position is written again with the next poll
+            logger.warn("Could not write the staged document " + request + ": " + e.getMessage());
+            metrics.recordStagedFailure();
+        }
+    }
+
+    @Override
+    public void skip(ConsumerRecord<?, ?> record) {
+        RecordPosition position = RecordPosition.of(record);
+        offsetTracker.register(position.getTopicPartition(), position.getOffset());
+        offsetTracker.acknowledge(position.getTopicPartition(), position.getOffset());
+    }
+
+    /**
+     * Wait for every request of the poll, so its offsets are committed as a whole.
+     */
+    @Override
+    public void afterPoll() throws IOException, InterruptedException {
+        flush();
+    }
+
+    /**
+     * @return false, {@link #afterPoll()} drains the requests of every poll
+     */
+    @Override
+    public boolean isOverBudget() {
+        return false;
+    }
+
+    @Override
+    public void flush() throws IOException, InterruptedException {
+        inFlightDocuments.acquire(maxInFlightDocuments);
+        inFlightDocuments.release(maxInFlightDocuments);
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        Exception e = failure.get();
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e != null) {
+            throw new IOException("Index request failed", e);
+        }
+    }
+
+    @Override
+    public Map<TopicPartition, OffsetAndMetadata> committableOffsets() {
+        return offsetTracker.committableOffsets();
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Index requests still running after 30 seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the index requests", e);
+        }
+    }
+}
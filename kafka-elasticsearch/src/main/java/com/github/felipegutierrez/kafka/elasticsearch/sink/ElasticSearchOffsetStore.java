@@ -0,0 +1,185 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import com.google.gson.JsonObject;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keep the position of the sink in Elasticsearch instead of committing it to Kafka, as one document per consumer
+ * group and partition in a dedicated index, see {@link CommitStrategy#ELASTICSEARCH}.
+ * <p>
+ * The documents are written with the offset as external version ({@code version_type=external_gte}), so a document
+ * written late, e.g. by a bulk retried after a newer one, cannot move the position back: Elasticsearch rejects it with
+ * a version conflict, which the sink ignores.
+ * <p>
+ * For the same reason a plain write can never store a lower offset, e.g. after the consumer group was reset to
+ * reprocess a topic, it would be ignored and the sink would keep resuming from the old position. A reset goes through
+ * {@link #reset(Map)}, which overwrites the documents with the next generation: the version is the generation in the
+ * high bits and the offset in the low {@value #OFFSET_BITS} bits, so any offset of a newer generation wins over the
+ * offsets of the older ones.
+ */
+public class ElasticSearchOffsetStore {
+    private static final Logger logger = LoggerFactory.getLogger(ElasticSearchOffsetStore.class);
+    static final int OFFSET_BITS = 48;
+    private final RestHighLevelClient client;
+    private final String index;
+    private final String groupId;
+    // generation of the stored position of each partition, 0 until a reset
+    private final Map<TopicPartition, Long> generations = new ConcurrentHashMap<TopicPartition, Long>();
+
+    /**
+     * @param index   index of the offset documents, e.g. {@code kafka_offsets}
+     * @param groupId consumer group whose position is stored, part of the document IDs
+     */
+    public ElasticSearchOffsetStore(RestHighLevelClient client, String index, String groupId) {
+        this.client = client;
+        this.index = index;
+        this.groupId = groupId;
+    }
+
+    /**
+     * @param offset next offset to consume from the partition, like a Kafka commit
+     * @return the write of the position, to be sent with the next bulk of documents
+     */
+    public IndexRequest indexRequest(TopicPartition partition, OffsetAndMetadata offset) {
+        if (offset.offset() >= 1L << OFFSET_BITS) {
+            throw new IllegalArgumentException("offset must be below 2^" + OFFSET_BITS + ": " + offset.offset());
+        }
+        long generation = generation(partition);
+        JsonObject source = new JsonObject();
+        source.addProperty("group", groupId);
+        source.addProperty("topic", partition.topic());
+        source.addProperty("partition", partition.partition());
+        source.addProperty("offset", offset.offset());
+        source.addProperty("generation", generation);
+        source.addProperty("updated_at", System.currentTimeMillis());
+        return new IndexRequest(index)
+                .id(documentId(partition))
+                .source(source.toString(), XContentType.JSON)
+                .versionType(VersionType.EXTERNAL_GTE)
+                .version((generation << OFFSET_BITS) + offset.offset());
+    }
+
+    /**
+     * Read the stored positions, the next writes of these partitions keep the generation of their document.
+     *
+     * @return the stored offset of each partition, the partitions without a document are missing
+     */
+    public Map<TopicPartition, Long> load(Collection<TopicPartition> partitions) throws IOException {
+        Map<TopicPartition, Long> offsets = new HashMap<TopicPartition, Long>();
+        if (partitions.isEmpty()) {
+            return offsets;
+        }
+        List<TopicPartition> requested = new ArrayList<TopicPartition>(partitions);
+        MultiGetRequest request = new MultiGetRequest();
+        for (TopicPartition partition : requested) {
+            request.add(index, documentId(partition));
+        }
+        MultiGetResponse response = client.mget(request, RequestOptions.DEFAULT);
+        MultiGetItemResponse[] items = response.getResponses();
+        for (int i = 0; i < items.length; i++) {
+            if (items[i].isFailed()) {
+                // e.g. the index does not exist yet
+                logger.debug("No stored offset for " + requested.get(i) + ": " + items[i].getFailure().getMessage());
+            } else if (items[i].getResponse().isExists()) {
+                Map<String, Object> source = items[i].getResponse().getSourceAsMap();
+                Object offset = source.get("offset");
+                if (offset instanceof Number) {
+                    offsets.put(requested.get(i), ((Number) offset).longValue());
+                }
+                // the documents written before the generations are generation 0
+                Object generation = source.get("generation");
+                generations.put(requested.get(i), generation instanceof Number ? ((Number) generation).longValue() : 0L);
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Write the positions in a bulk of their own and wait for it, e.g. before the partitions are revoked.
+     *
+     * @throws IOException if a position could not be stored, a position older than the stored one is not a failure
+     */
+    public void store(Map<TopicPartition, OffsetAndMetadata> offsets) throws IOException {
+        write(offsets, true);
+    }
+
+    /**
+     * Overwrite the stored positions even with lower offsets, e.g. after the consumer group was reset, by writing
+     * them with the next generation. The positions of the previous generations still in flight, e.g. staged in a bulk
+     * that is retried, are rejected with a version conflict.
+     *
+     * @throws IOException if a position could not be stored, including a conflict with another reset
+     */
+    public void reset(Map<TopicPartition, OffsetAndMetadata> offsets) throws IOException {
+        if (offsets.isEmpty()) {
+            return;
+        }
+        // the generation of the stored documents
+        Map<TopicPartition, Long> stored = load(offsets.keySet());
+        for (TopicPartition partition : offsets.keySet()) {
+            generations.put(partition, generation(partition) + 1);
+        }
+        write(offsets, false);
+        logger.info("Reset the offsets stored in " + this + " from " + stored + " to " + offsets);
+    }
+
+    private void write(Map<TopicPartition, OffsetAndMetadata> offsets, boolean ignoreConflicts) throws IOException {
+        if (offsets.isEmpty()) {
+            return;
+        }
+        BulkRequest request = new BulkRequest();
+        for (Map.Entry<TopicPartition, OffsetAndMetadata> offset : offsets.entrySet()) {
+            request.add(indexRequest(offset.getKey(), offset.getValue()));
+        }
+        BulkResponse response = client.bulk(request, RequestOptions.DEFAULT);
+        for (BulkItemResponse item : response.getItems()) {
+            if (item.isFailed() && !(ignoreConflicts && isConflict(item))) {
+                throw new IOException("Could not store the offset " + item.getId() + ": " + item.getFailureMessage());
+            }
+        }
+    }
+
+    /**
+     * @return true if the item failed because a newer position is already stored
+     */
+    public static boolean isConflict(BulkItemResponse item) {
+        return item.isFailed() && item.getFailure().getStatus() == RestStatus.CONFLICT;
+    }
+
+    private long generation(TopicPartition partition) {
+        Long generation = generations.get(partition);
+        return generation == null ? 0 : generation;
+    }
+
+    private String documentId(TopicPartition partition) {
+        return groupId + "-" + partition.topic() + "-" + partition.partition();
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + groupId;
+    }
+}
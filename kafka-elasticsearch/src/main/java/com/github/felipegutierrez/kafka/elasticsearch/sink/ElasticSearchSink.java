@@ -0,0 +1,400 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import com.github.felipegutierrez.kafka.elasticsearch.metrics.SinkMetrics;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetFormat;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.elasticsearch.action.index.IndexRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Poll tweets and index them in Elasticsearch with the {@link Indexer} of an {@link IndexingMode}, committing the
+ * offsets with a {@link CommitStrategy}. The consumer must already be subscribed or assigned. With a
+ * {@link RecentlyIndexedIdCache}, the tweets indexed recently from the same partition are skipped.
+ * <p>
+ * The sink remembers the offsets it processed (indexed, skipped or dead-lettered) for each partition. With
+ * {@link CommitStrategy#ASYNC} the poll loop never waits for the broker: each {@code commitAsync()} gets a sequence
+ * number and a failed commit is only retried, with all the processed offsets, if no later commit was sent since. The
+ * processed offsets are committed synchronously when partitions are revoked, see {@link #rebalanceListener()}, and
+ * when the sink stops, see {@link #stop()}, so a rebalance or a shutdown does not replay indexed records. With
+ * {@link CommitStrategy#ELASTICSEARCH} the same happens with the {@link ElasticSearchOffsetStore} instead of Kafka.
+ * <p>
+ * When the documents buffered by the indexer exceed its memory budget, see {@link Indexer#isOverBudget()}, the sink
+ * pauses all the assigned partitions and keeps polling, so the consumer stays in the group while the bulks in flight
+ * drain, then resumes them. The partitions assigned in the meantime are paused as well.
+ *
+ * @param <V> type of the record value
+ */
+public class ElasticSearchSink<V> {
+    private static final Logger logger = LoggerFactory.getLogger(ElasticSearchSink.class);
+    private final Consumer<String, V> consumer;
+    private final Indexer indexer;
+    private final IndexRequestFactory<V> indexRequestFactory;
+    private final ElasticSearchSinkConfig config;
+    private final CommitStrategy commitStrategy;
+    private final RecentlyIndexedIdCache recentlyIndexedIdCache;
+    private final SinkMetrics metrics;
+    private final Map<TopicPartition, OffsetAndMetadata> processedOffsets = new HashMap<TopicPartition, OffsetAndMetadata>();
+    private OffsetCommitCallback commitListener;
+    private ElasticSearchOffsetStore offsetStore;
+    // partitions whose stored offset was reset in this run
+    private final Set<TopicPartition> resetPartitions = new HashSet<TopicPartition>();
+    private long commitSequence;
+    private boolean retryCommit;
+    private boolean paused;
+    private volatile boolean running = true;
+    private long recordsCount;
+    private long batchesCount;
+
+    public ElasticSearchSink(Consumer<String, V> consumer, Indexer indexer, TweetFormat<V> tweetFormat, ElasticSearchSinkConfig config) {
+        this.consumer = consumer;
+        this.indexer = indexer;
+        this.indexRequestFactory = new IndexRequestFactory<V>(tweetFormat, config);
+        this.config = config;
+        this.commitStrategy = config.getCommitStrategy();
+        this.recentlyIndexedIdCache = indexRequestFactory.getRecentlyIndexedIdCache();
+        this.metrics = config.getMetrics();
+    }
+
+    /**
+     * @param commitListener told about the offsets once they are committed, with {@link CommitStrategy#AUTO} once
+     *                       they are indexed because the commit itself happens in background, with
+     *                       {@link CommitStrategy#ELASTICSEARCH} once they are handed to the next bulk
+     */
+    public ElasticSearchSink<V> setCommitListener(OffsetCommitCallback commitListener) {
+        this.commitListener = commitListener;
+        return this;
+    }
+
+    /**
+     * @param offsetStore where the position is kept with {@link CommitStrategy#ELASTICSEARCH}, required by it
+     */
+    public ElasticSearchSink<V> setOffsetStore(ElasticSearchOffsetStore offsetStore) {
+        this.offsetStore = offsetStore;
+        return this;
+    }
+
+    /**
+     * @return the listener to subscribe the consumer with, it commits the processed offsets of the revoked partitions
+     * and, with {@link CommitStrategy#ELASTICSEARCH}, seeks the assigned partitions to their stored offsets
+     */
+    public ConsumerRebalanceListener rebalanceListener() {
+        return new ConsumerRebalanceListener() {
+            @Override
+            public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                logger.info("Partitions revoked: " + partitions);
+                try {
+                    // the documents in flight belong to the revoked partitions too
+                    indexer.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (InterruptedException e) {
+                    throw new InterruptException(e);
+                }
+                commitRevoked(partitions);
+            }
+
+            @Override
+            public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                logger.info("Partitions assigned: " + partitions);
+                if (paused) {
+                    consumer.pause(partitions);
+                }
+                if (commitStrategy.isStoredInElasticsearch()) {
+                    try {
+                        seekToStoredOffsets(partitions);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Poll and index until {@link #stop()} is called or one of the limits of the config is reached, then wait for
+     * the documents in flight, commit their offsets and close the indexer. The consumer is not closed.
+     */
+    public void run() throws IOException, InterruptedException {
+        if (commitStrategy.isStoredInElasticsearch()) {
+            if (offsetStore == null) {
+                throw new IllegalStateException("The " + commitStrategy + " commit strategy needs an offset store");
+            }
+            // the partitions assigned manually, the subscribed ones are sought by the rebalance listener
+            seekToStoredOffsets(consumer.assignment());
+        }
+        try {
+            try {
+                poll();
+            } catch (WakeupException e) {
+                // stop() interrupted a poll or a commit, the records not indexed yet are not committed
+                if (running) {
+                    throw e;
+                }
+            }
+            // wait for the documents in flight before the last commit
+            indexer.flush();
+            Map<TopicPartition, OffsetAndMetadata> offsets = indexer.committableOffsets();
+            try {
+                commitProcessed(offsets);
+            } catch (WakeupException e) {
+                // stop() was called after the last poll, the wakeup is consumed now
+                commitProcessed(new HashMap<TopicPartition, OffsetAndMetadata>());
+            }
+        } finally {
+            indexer.close();
+        }
+    }
+
+    private void poll() throws IOException, InterruptedException {
+        while (running) {
+            ConsumerRecords<String, V> records = consumer.poll(Duration.ofMillis(config.getPollTimeoutMs()));
+            logger.debug("Received: " + records.count() + " records");
+            metrics.recordPolled(records.count());
+
+            for (ConsumerRecord<String, V> record : records) {
+                IndexRequest indexRequest = indexRequestFactory.create(record);
+                if (indexRequest == null) {
+                    indexer.skip(record);
+                    metrics.recordSkipped();
+                } else {
+                    indexer.index(record, indexRequest);
+                }
+                if (commitStrategy.isPerRecord()) {
+                    commit(indexer.committableOffsets());
+                }
+                recordsCount++;
+                if (config.getMaxRecords() != -1 && recordsCount >= config.getMaxRecords()) {
+                    running = false;
+                    break;
+                }
+            }
+            indexer.afterPoll();
+            commit(indexer.committableOffsets());
+            applyBackpressure();
+            metrics.updateLag(consumer);
+            if (!records.isEmpty()) {
+                batchesCount++;
+                if (config.getMaxBatches() != -1 && batchesCount >= config.getMaxBatches()) {
+                    running = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Pause the partitions while the indexer is over its memory budget. The paused partitions return no records but
+     * {@code poll()} still sends the heartbeats and runs the rebalances.
+     */
+    private void applyBackpressure() {
+        boolean overBudget = indexer.isOverBudget();
+        if (overBudget && !paused) {
+            logger.info("Pausing " + consumer.assignment() + ", the indexer is over its memory budget");
+            consumer.pause(consumer.assignment());
+            metrics.recordPause();
+            paused = true;
+        } else if (!overBudget && paused) {
+            logger.info("Resuming " + consumer.paused());
+            consumer.resume(consumer.paused());
+            paused = false;
+        }
+    }
+
+    private void seekToStoredOffsets(Collection<TopicPartition> partitions) throws IOException {
+        List<TopicPartition> toSeek = new ArrayList<TopicPartition>(partitions);
+        if (config.isResetStoredOffsets()) {
+            // the consumer starts from its own position the first time, which becomes the stored one
+            Map<TopicPartition, OffsetAndMetadata> positions = new HashMap<TopicPartition, OffsetAndMetadata>();
+            for (TopicPartition partition : partitions) {
+                if (resetPartitions.add(partition)) {
+                    positions.put(partition, new OffsetAndMetadata(consumer.position(partition)));
+                }
+            }
+            offsetStore.reset(positions);
+            toSeek.removeAll(positions.keySet());
+        }
+        Map<TopicPartition, Long> storedOffsets = offsetStore.load(toSeek);
+        for (Map.Entry<TopicPartition, Long> storedOffset : storedOffsets.entrySet()) {
+            consumer.seek(storedOffset.getKey(), storedOffset.getValue());
+        }
+        logger.info("Resuming from the offsets stored in " + offsetStore + ": " + storedOffsets);
+    }
+
+    /**
+     * Record the offsets that became committable and commit them with the strategy of the config.
+     */
+    private void commit(Map<TopicPartition, OffsetAndMetadata> offsets) throws IOException, InterruptedException {
+        processed(offsets);
+        if (commitStrategy.isStoredInElasticsearch()) {
+            if (!offsets.isEmpty()) {
+                stage(offsets);
+            }
+        } else if (commitStrategy.isAutoCommit()) {
+            if (!offsets.isEmpty()) {
+                committed(offsets, null);
+            }
+        } else if (commitStrategy.isAsync()) {
+            if (retryCommit) {
+                // the last commit failed, its partitions may not be part of the new offsets
+                offsets = new HashMap<TopicPartition, OffsetAndMetadata>(processedOffsets);
+                retryCommit = false;
+            }
+            if (!offsets.isEmpty()) {
+                commitAsync(offsets);
+            }
+        } else if (!offsets.isEmpty()) {
+            commitSync(offsets);
+        }
+    }
+
+    private void commitAsync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        final long sequence = ++commitSequence;
+        consumer.commitAsync(offsets, new OffsetCommitCallback() {
+            @Override
+            public void onComplete(Map<TopicPartition, OffsetAndMetadata> offsets, Exception exception) {
+                metrics.recordCommit(exception == null);
+                if (exception == null) {
+                    committed(offsets, null);
+                } else if (sequence == commitSequence) {
+                    logger.warn("Could not commit the offsets " + offsets + ", retrying with the next commit: " + exception.getMessage());
+                    retryCommit = true;
+                } else {
+                    // a later commit, sent after this one, covers these offsets
+                    logger.debug("Could not commit the offsets " + offsets + ": " + exception.getMessage());
+                }
+            }
+        });
+    }
+
+    private void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        logger.debug("Committing the offsets " + offsets);
+        try {
+            consumer.commitSync(offsets);
+        } catch (RuntimeException e) {
+            metrics.recordCommit(false);
+            throw e;
+        }
+        metrics.recordCommit(true);
+        committed(offsets, null);
+    }
+
+    /**
+     * Hand the offsets to the indexer, they are stored with the next bulk.
+     */
+    private void stage(Map<TopicPartition, OffsetAndMetadata> offsets) throws IOException, InterruptedException {
+        for (Map.Entry<TopicPartition, OffsetAndMetadata> offset : offsets.entrySet()) {
+            indexer.stage(offsetStore.indexRequest(offset.getKey(), offset.getValue()));
+        }
+        committed(offsets, null);
+    }
+
+    private void store(Map<TopicPartition, OffsetAndMetadata> offsets) throws IOException {
+        logger.debug("Storing the offsets " + offsets + " in " + offsetStore);
+        try {
+            offsetStore.store(offsets);
+        } catch (IOException | RuntimeException e) {
+            metrics.recordCommit(false);
+            throw e;
+        }
+        metrics.recordCommit(true);
+        committed(offsets, null);
+    }
+
+    private void processed(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        if (offsets.isEmpty()) {
+            return;
+        }
+        if (recentlyIndexedIdCache != null) {
+            recentlyIndexedIdCache.acknowledge(offsets);
+        }
+        processedOffsets.putAll(offsets);
+    }
+
+    /**
+     * Commit synchronously all the processed offsets, whatever failed before.
+     */
+    private void commitProcessed(Map<TopicPartition, OffsetAndMetadata> offsets) throws IOException {
+        processed(offsets);
+        if (commitStrategy.isStoredInElasticsearch()) {
+            if (!processedOffsets.isEmpty()) {
+                store(new HashMap<TopicPartition, OffsetAndMetadata>(processedOffsets));
+            }
+        } else if (commitStrategy.isAutoCommit()) {
+            if (!offsets.isEmpty()) {
+                committed(offsets, null);
+            }
+        } else if (!processedOffsets.isEmpty()) {
+            commitSync(new HashMap<TopicPartition, OffsetAndMetadata>(processedOffsets));
+        }
+    }
+
+    private void commitRevoked(Collection<TopicPartition> partitions) {
+        processed(indexer.committableOffsets());
+        Map<TopicPartition, OffsetAndMetadata> revokedOffsets = new HashMap<TopicPartition, OffsetAndMetadata>();
+        for (TopicPartition partition : partitions) {
+            OffsetAndMetadata offset = processedOffsets.remove(partition);
+            if (offset != null) {
+                revokedOffsets.put(partition, offset);
+            }
+            if (recentlyIndexedIdCache != null) {
+                recentlyIndexedIdCache.remove(partition);
+            }
+        }
+        if (revokedOffsets.isEmpty()) {
+            return;
+        }
+        if (commitStrategy.isStoredInElasticsearch()) {
+            try {
+                store(revokedOffsets);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else if (commitStrategy.isAutoCommit()) {
+            // the consumer commits before giving the partitions away
+            committed(revokedOffsets, null);
+        } else {
+            commitSync(revokedOffsets);
+        }
+    }
+
+    private void committed(Map<TopicPartition, OffsetAndMetadata> offsets, Exception exception) {
+        if (commitListener != null) {
+            commitListener.onComplete(offsets, exception);
+        }
+    }
+
+    /**
+     * Stop the sink, interrupting the poll with {@code wakeup()}. Can be called from any thread, e.g. a shutdown hook.
+     * {@link #run()} then commits the processed offsets synchronously before returning.
+     */
+    public void stop() {
+        running = false;
+        consumer.wakeup();
+    }
+
+    /**
+     * @return the number of records polled so far
+     */
+    public long getRecordsCount() {
+        return recordsCount;
+    }
+}
@@ -0,0 +1,278 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.BulkPipelineConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.client.ElasticSearchClientConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.metrics.SinkMetrics;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.ProjectableTweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetProjection;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+
+import java.util.Properties;
+
+/**
+ * Settings of the {@link ElasticSearchSink}: how the documents are indexed, when the offsets are committed and when
+ * the sink stops.
+ */
+public class ElasticSearchSinkConfig {
+    private IndexingMode indexingMode = IndexingMode.BULK;
+    private int maxInFlightDocuments = 64;
+    private CommitStrategy commitStrategy = CommitStrategy.ASYNC;
+    private BulkPipelineConfig bulkPipelineConfig = new BulkPipelineConfig();
+    private int maxPollRecords = 500;
+    private long pollTimeoutMs = 100;
+    private String index = "twitter";
+    private String type = "tweets";
+    private String offsetsIndex = "kafka_offsets";
+    private boolean resetStoredOffsets;
+    private boolean idempotent = true;
+    private long maxRecords = -1;
+    private long maxBatches = -1;
+    private RecentlyIndexedIdCache recentlyIndexedIdCache;
+    private TweetProjection projection;
+    private int metricsPort = -1;
+    private ElasticSearchClientConfig clientConfig = new ElasticSearchClientConfig();
+
+    public IndexingMode getIndexingMode() {
+        return indexingMode;
+    }
+
+    public ElasticSearchSinkConfig setIndexingMode(IndexingMode indexingMode) {
+        this.indexingMode = indexingMode;
+        return this;
+    }
+
+    public int getMaxInFlightDocuments() {
+        return maxInFlightDocuments;
+    }
+
+    /**
+     * Number of single index requests that can be executing concurrently with {@link IndexingMode#CONCURRENT}.
+     */
+    public ElasticSearchSinkConfig setMaxInFlightDocuments(int maxInFlightDocuments) {
+        if (maxInFlightDocuments < 1) {
+            throw new IllegalArgumentException("maxInFlightDocuments must be at least 1");
+        }
+        this.maxInFlightDocuments = maxInFlightDocuments;
+        return this;
+    }
+
+    public CommitStrategy getCommitStrategy() {
+        return commitStrategy;
+    }
+
+    public ElasticSearchSinkConfig setCommitStrategy(CommitStrategy commitStrategy) {
+        this.commitStrategy = commitStrategy;
+        return this;
+    }
+
+    public BulkPipelineConfig getBulkPipelineConfig() {
+        return bulkPipelineConfig;
+    }
+
+    /**
+     * Size and retries of the bulks of the {@link IndexingMode#BULK} and {@link IndexingMode#PIPELINED} modes.
+     */
+    public ElasticSearchSinkConfig setBulkPipelineConfig(BulkPipelineConfig bulkPipelineConfig) {
+        this.bulkPipelineConfig = bulkPipelineConfig;
+        return this;
+    }
+
+    public int getMaxPollRecords() {
+        return maxPollRecords;
+    }
+
+    public ElasticSearchSinkConfig setMaxPollRecords(int maxPollRecords) {
+        if (maxPollRecords < 1) {
+            throw new IllegalArgumentException("maxPollRecords must be at least 1");
+        }
+        this.maxPollRecords = maxPollRecords;
+        return this;
+    }
+
+    public long getPollTimeoutMs() {
+        return pollTimeoutMs;
+    }
+
+    public ElasticSearchSinkConfig setPollTimeoutMs(long pollTimeoutMs) {
+        if (pollTimeoutMs < 0) {
+            throw new IllegalArgumentException("pollTimeoutMs cannot be negative");
+        }
+        this.pollTimeoutMs = pollTimeoutMs;
+        return this;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public ElasticSearchSinkConfig setIndex(String index, String type) {
+        this.index = index;
+        this.type = type;
+        return this;
+    }
+
+    public String getOffsetsIndex() {
+        return offsetsIndex;
+    }
+
+    /**
+     * Index of the positions stored with {@link CommitStrategy#ELASTICSEARCH}.
+     */
+    public ElasticSearchSinkConfig setOffsetsIndex(String offsetsIndex) {
+        this.offsetsIndex = offsetsIndex;
+        return this;
+    }
+
+    public boolean isResetStoredOffsets() {
+        return resetStoredOffsets;
+    }
+
+    /**
+     * With {@link CommitStrategy#ELASTICSEARCH}, overwrite the stored position of each partition the first time it is
+     * assigned with the position of the consumer, e.g. the offsets of a consumer group reset with
+     * {@code kafka-consumer-groups --reset-offsets} or the {@code auto.offset.reset} policy, instead of seeking to it.
+     * The stored position can then move back, which the writes of the sink never do, see
+     * {@link ElasticSearchOffsetStore#reset(java.util.Map)}. Run a single instance of the sink with it.
+     */
+    public ElasticSearchSinkConfig setResetStoredOffsets(boolean resetStoredOffsets) {
+        this.resetStoredOffsets = resetStoredOffsets;
+        return this;
+    }
+
+    public boolean isIdempotent() {
+        return idempotent;
+    }
+
+    /**
+     * Use the {@code id_str} of the tweet as document ID, so a replayed tweet overwrites its document. Otherwise
+     * Elasticsearch generates an ID and every replay creates a duplicate.
+     */
+    public ElasticSearchSinkConfig setIdempotent(boolean idempotent) {
+        this.idempotent = idempotent;
+        return this;
+    }
+
+    public long getMaxRecords() {
+        return maxRecords;
+    }
+
+    /**
+     * Stop after this number of records, -1 to never stop.
+     */
+    public ElasticSearchSinkConfig setMaxRecords(long maxRecords) {
+        this.maxRecords = maxRecords;
+        return this;
+    }
+
+    public long getMaxBatches() {
+        return maxBatches;
+    }
+
+    /**
+     * Stop after this number of polls that returned records, -1 to never stop.
+     */
+    public ElasticSearchSinkConfig setMaxBatches(long maxBatches) {
+        this.maxBatches = maxBatches;
+        return this;
+    }
+
+    public RecentlyIndexedIdCache getRecentlyIndexedIdCache() {
+        return recentlyIndexedIdCache;
+    }
+
+    /**
+     * Skip the tweets whose ID was indexed recently from the same partition, only with {@link #isIdempotent()}.
+     */
+    public ElasticSearchSinkConfig setRecentlyIndexedIdCache(RecentlyIndexedIdCache recentlyIndexedIdCache) {
+        this.recentlyIndexedIdCache = recentlyIndexedIdCache;
+        return this;
+    }
+
+    public TweetProjection getProjection() {
+        return projection;
+    }
+
+    /**
+     * Index only the fields of the tweets kept by the projection, null (the default) to index the whole tweets.
+     */
+    public ElasticSearchSinkConfig setProjection(TweetProjection projection) {
+        this.projection = projection;
+        return this;
+    }
+
+    /**
+     * @return the metrics of the sink, shared with the indexers through the {@link BulkPipelineConfig}
+     */
+    public SinkMetrics getMetrics() {
+        return bulkPipelineConfig.getMetrics();
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    /**
+     * Serve the metrics in the Prometheus format on this port, -1 to expose them over JMX only.
+     */
+    public ElasticSearchSinkConfig setMetricsPort(int metricsPort) {
+        if (metricsPort < -1 || metricsPort > 65535) {
+            throw new IllegalArgumentException("metricsPort must be -1 or a port number");
+        }
+        this.metricsPort = metricsPort;
+        return this;
+    }
+
+    public ElasticSearchClientConfig getClientConfig() {
+        return clientConfig;
+    }
+
+    /**
+     * Compression, connection pool and keep-alive of the Elasticsearch client created by the consumer.
+     */
+    public ElasticSearchSinkConfig setClientConfig(ElasticSearchClientConfig clientConfig) {
+        this.clientConfig = clientConfig;
+        return this;
+    }
+
+    /**
+     * Check that the records of the format can be indexed with these settings.
+     *
+     * @throws IllegalArgumentException if a projection is set and the format is not a {@link ProjectableTweetFormat}
+     */
+    public void validate(TweetFormat<?> tweetFormat) {
+        if (projection != null && !(tweetFormat instanceof ProjectableTweetFormat)) {
+            throw new IllegalArgumentException(tweetFormat + " cannot project its records with " + projection);
+        }
+    }
+
+    /**
+     * Set the consumer properties that depend on the sink settings.
+     */
+    public void configure(Properties properties) {
+        properties.setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, Boolean.toString(commitStrategy.isAutoCommit()));
+        properties.setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, Integer.toString(maxPollRecords));
+    }
+
+    @Override
+    public String toString() {
+        return "ElasticSearchSinkConfig{" +
+                "indexingMode=" + indexingMode +
+                ", commitStrategy=" + commitStrategy +
+                (commitStrategy.isStoredInElasticsearch() ? ", offsetsIndex=" + offsetsIndex +
+                        (resetStoredOffsets ? ", resetStoredOffsets=true" : "") : "") +
+                (indexingMode.isBulk() ? ", bulkPipelineConfig=" + bulkPipelineConfig : "") +
+                (indexingMode == IndexingMode.CONCURRENT ? ", maxInFlightDocuments=" + maxInFlightDocuments : "") +
+                ", maxPollRecords=" + maxPollRecords +
+                ", index=" + index + "/" + type +
+                ", idempotent=" + idempotent +
+                (recentlyIndexedIdCache == null ? "" : ", recentlyIndexedIdCache=" + recentlyIndexedIdCache) +
+                (projection == null ? "" : ", projection=" + projection) +
+                ", clientConfig=" + clientConfig +
+                '}';
+    }
+}
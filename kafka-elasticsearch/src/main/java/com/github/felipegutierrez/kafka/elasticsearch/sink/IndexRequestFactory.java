@@ -0,0 +1,91 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import com.github.felipegutierrez.kafka.elasticsearch.metrics.SinkMetrics;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.ProjectableTweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetProjection;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.elasticsearch.action.index.IndexRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Turn the records into the index requests of an {@link ElasticSearchSinkConfig}: the document ID of
+ * {@link ElasticSearchSinkConfig#isIdempotent()}, the {@link TweetProjection} and the {@link RecentlyIndexedIdCache}.
+ * Shared by the {@link ElasticSearchSink} and the partition workers, so both index the same documents.
+ * <p>
+ * The IDs are registered in the cache when the request is created, the caller acknowledges them with
+ * {@link RecentlyIndexedIdCache#acknowledge} once their offsets are committable and removes the partitions it loses.
+ *
+ * @param <V> type of the record value
+ */
+public class IndexRequestFactory<V> {
+    private static final Logger logger = LoggerFactory.getLogger(IndexRequestFactory.class);
+    private final TweetFormat<V> tweetFormat;
+    private final ProjectableTweetFormat<V> projectableFormat;
+    private final ElasticSearchSinkConfig config;
+    private final RecentlyIndexedIdCache recentlyIndexedIdCache;
+    private final SinkMetrics metrics;
+
+    /**
+     * @throws IllegalArgumentException if the records of the format cannot be indexed with the config, see
+     *                                  {@link ElasticSearchSinkConfig#validate(TweetFormat)}
+     */
+    public IndexRequestFactory(TweetFormat<V> tweetFormat, ElasticSearchSinkConfig config) {
+        config.validate(tweetFormat);
+        this.tweetFormat = tweetFormat;
+        // validated above: a projection is only set for a projectable format
+        this.projectableFormat = config.getProjection() == null ? null : (ProjectableTweetFormat<V>) tweetFormat;
+        this.config = config;
+        this.recentlyIndexedIdCache = config.isIdempotent() ? config.getRecentlyIndexedIdCache() : null;
+        this.metrics = config.getMetrics();
+    }
+
+    /**
+     * @return the request indexing the record, or null if it must be skipped: the tweet has no ID or it was indexed
+     * recently from the same partition
+     */
+    public IndexRequest create(ConsumerRecord<String, V> record) {
+        if (!config.isIdempotent()) {
+            return source(new IndexRequest(config.getIndex(), config.getType()), record);
+        }
+        String id = tweetFormat.extractId(record.value());
+        if (id == null) {
+            logger.warn("Skipping bad data due to null twitter ID: " + tweetFormat.describe(record.value()));
+            return null;
+        }
+        if (recentlyIndexedIdCache != null) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            if (recentlyIndexedIdCache.contains(partition, id)) {
+                // replayed tweet, the document is already in Elasticsearch
+                return null;
+            }
+            recentlyIndexedIdCache.register(partition, record.offset(), id);
+        }
+        return source(new IndexRequest(config.getIndex(), config.getType(), id), record);
+    }
+
+    /**
+     * @return the cache of the recently indexed IDs, null if the config has none or is not idempotent
+     */
+    public RecentlyIndexedIdCache getRecentlyIndexedIdCache() {
+        return recentlyIndexedIdCache;
+    }
+
+    /**
+     * Set the tweet, projected if the config has a {@link TweetProjection}, as the source of the request. The ID was
+     * extracted from the whole tweet, so the projection does not need to keep it.
+     */
+    private IndexRequest source(IndexRequest request, ConsumerRecord<String, V> record) {
+        V tweet = record.value();
+        if (projectableFormat != null) {
+            tweet = projectableFormat.project(config.getProjection(), tweet);
+        }
+        tweetFormat.source(request, tweet);
+        int indexedBytes = request.source().length();
+        int receivedBytes = record.serializedValueSize() < 0 ? indexedBytes : record.serializedValueSize();
+        metrics.recordDocumentBytes(receivedBytes, indexedBytes);
+        return request;
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.elasticsearch.action.DocWriteRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * How the {@link ElasticSearchSink} sends the documents to Elasticsearch. An indexer tells which offsets can be
+ * committed, the {@link CommitStrategy} decides when they are committed.
+ */
+public interface Indexer extends Closeable {
+
+    /**
+     * Index the document of a record, now or later depending on the implementation.
+     */
+    void index(ConsumerRecord<?, ?> record, DocWriteRequest<?> request) throws IOException, InterruptedException;
+
+    /**
+     * Send a document that belongs to no record, e.g. the position of the sink, with the next documents of the
+     * records. It does not hold back the commits and its failure does not fail the indexer: a later write replaces it.
+     */
+    void stage(DocWriteRequest<?> request) throws IOException, InterruptedException;
+
+    /**
+     * Mark a record that will not be indexed (e.g. bad data) as processed, so it does not hold back the commits.
+     */
+    void skip(ConsumerRecord<?, ?> record);
+
+    /**
+     * Called once all the records of a poll were handed over.
+     */
+    void afterPoll() throws IOException, InterruptedException;
+
+    /**
+     * @return true while the documents buffered or in flight exceed the memory budget, the sink then pauses the
+     * partitions and keeps polling until it returns false
+     */
+    boolean isOverBudget();
+
+    /**
+     * Index everything that is buffered or in flight and wait for it.
+     */
+    void flush() throws IOException, InterruptedException;
+
+    /**
+     * @return the offsets that can be committed because every record before them was indexed, each offset is returned
+     * only once
+     */
+    Map<TopicPartition, OffsetAndMetadata> committableOffsets();
+}
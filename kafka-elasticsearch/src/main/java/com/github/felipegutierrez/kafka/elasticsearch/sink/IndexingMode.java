@@ -0,0 +1,61 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.BulkPipeline;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.DeadLetterPublisher;
+import org.elasticsearch.client.RestHighLevelClient;
+
+/**
+ * How the {@link ElasticSearchSink} sends the documents to Elasticsearch.
+ */
+public enum IndexingMode {
+    /**
+     * One synchronous index request per record.
+     */
+    SINGLE {
+        @Override
+        public Indexer createIndexer(RestHighLevelClient client, ElasticSearchSinkConfig config, DeadLetterPublisher deadLetterPublisher) {
+            return new SingleDocumentIndexer(client, config.getMetrics());
+        }
+    },
+    /**
+     * One synchronous index request per record, the requests of a poll run concurrently on threads of their own.
+     */
+    CONCURRENT {
+        @Override
+        public Indexer createIndexer(RestHighLevelClient client, ElasticSearchSinkConfig config, DeadLetterPublisher deadLetterPublisher) {
+            return new ConcurrentDocumentIndexer(client, config.getMaxInFlightDocuments(), config.getMetrics());
+        }
+    },
+    /**
+     * Synchronous bulk requests, the poll loop waits for each bulk.
+     */
+    BULK {
+        @Override
+        public Indexer createIndexer(RestHighLevelClient client, ElasticSearchSinkConfig config, DeadLetterPublisher deadLetterPublisher) {
+            return new BulkIndexer(client, config.getBulkPipelineConfig(), deadLetterPublisher);
+        }
+    },
+    /**
+     * Asynchronous bulk requests that overlap with the next polls.
+     */
+    PIPELINED {
+        @Override
+        public Indexer createIndexer(RestHighLevelClient client, ElasticSearchSinkConfig config, DeadLetterPublisher deadLetterPublisher) {
+            return new PipelinedIndexer(new BulkPipeline(client, config.getBulkPipelineConfig(), deadLetterPublisher));
+        }
+    };
+
+    /**
+     * @return true if the documents are sent in bulks, which can dead-letter the documents rejected permanently
+     */
+    public boolean isBulk() {
+        return this != SINGLE && this != CONCURRENT;
+    }
+
+    /**
+     * @param config              size and retries of the bulks and the metrics, only the metrics are used by {@link #SINGLE}
+     *                            and the metrics and the requests in flight by {@link #CONCURRENT}
+     * @param deadLetterPublisher where the documents rejected permanently are sent, may be null
+     */
+    public abstract Indexer createIndexer(RestHighLevelClient client, ElasticSearchSinkConfig config, DeadLetterPublisher deadLetterPublisher);
+}
@@ -0,0 +1,62 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.BulkPipeline;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.elasticsearch.action.DocWriteRequest;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Send the bulks asynchronously with a {@link BulkPipeline}, so polling and indexing overlap.
+ */
+public class PipelinedIndexer implements Indexer {
+    private final BulkPipeline bulkPipeline;
+
+    public PipelinedIndexer(BulkPipeline bulkPipeline) {
+        this.bulkPipeline = bulkPipeline;
+    }
+
+    @Override
+    public void index(ConsumerRecord<?, ?> record, DocWriteRequest<?> request) throws IOException, InterruptedException {
+        bulkPipeline.add(record, request);
+    }
+
+    @Override
+    public void stage(DocWriteRequest<?> request) throws IOException {
+        bulkPipeline.stage(request);
+    }
+
+    @Override
+    public void skip(ConsumerRecord<?, ?> record) {
+        bulkPipeline.skip(record);
+    }
+
+    @Override
+    public void afterPoll() throws IOException, InterruptedException {
+        bulkPipeline.maybeFlush();
+    }
+
+    @Override
+    public boolean isOverBudget() {
+        return bulkPipeline.isOverBudget();
+    }
+
+    @Override
+    public void flush() throws IOException, InterruptedException {
+        bulkPipeline.awaitCompletion();
+        bulkPipeline.checkFailure();
+    }
+
+    @Override
+    public Map<TopicPartition, OffsetAndMetadata> committableOffsets() {
+        return bulkPipeline.committableOffsets();
+    }
+
+    @Override
+    public void close() throws IOException {
+        bulkPipeline.close();
+    }
+}
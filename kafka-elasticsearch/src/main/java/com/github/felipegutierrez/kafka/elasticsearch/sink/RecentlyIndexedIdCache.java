@@ -0,0 +1,197 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remember the IDs of the tweets recently indexed from each partition, so the tweets replayed after a rebalance or a
+ * restart are not written again to a cluster that is often recovering at that moment.
+ * <p>
+ * An ID enters the cache only once the offset of its record is committable, i.e. Elasticsearch acknowledged the
+ * document (or it was dead-lettered). Each partition keeps an LRU of at most {@link #getMaxEntriesPerPartition()}
+ * IDs, derived from the memory cap with {@link #ESTIMATED_ENTRY_BYTES} per ID, which should cover the number of
+ * records replayed after a failure (records polled since the last commit). The IDs of a revoked partition are
+ * dropped with {@link #remove(TopicPartition)} because another consumer indexes them now.
+ * <p>
+ * The hits, misses and evictions are exposed over JMX as
+ * {@code com.github.felipegutierrez.kafka.elasticsearch:type=RecentlyIndexedIdCache,name=<name>}.
+ */
+public class RecentlyIndexedIdCache implements RecentlyIndexedIdCacheMBean {
+    /**
+     * Approximate heap used by one 19 digits tweet ID in the LRU: String and its byte[] (~64 bytes) plus the
+     * LinkedHashMap entry and its table slot (~56 bytes).
+     */
+    public static final int ESTIMATED_ENTRY_BYTES = 120;
+    private static final Logger logger = LoggerFactory.getLogger(RecentlyIndexedIdCache.class);
+    private final int maxEntriesPerPartition;
+    private final Map<TopicPartition, LinkedHashMap<String, Boolean>> indexedIds = new HashMap<TopicPartition, LinkedHashMap<String, Boolean>>();
+    // IDs of the records that are not acknowledged yet, in offset order
+    private final Map<TopicPartition, ArrayDeque<PendingId>> pendingIds = new HashMap<TopicPartition, ArrayDeque<PendingId>>();
+    private long hits;
+    private long misses;
+    private long evictions;
+    private int size;
+
+    /**
+     * @param maxBytesPerPartition memory cap of the IDs kept for each partition
+     */
+    public RecentlyIndexedIdCache(long maxBytesPerPartition) {
+        if (maxBytesPerPartition < ESTIMATED_ENTRY_BYTES) {
+            throw new IllegalArgumentException("maxBytesPerPartition must be at least " + ESTIMATED_ENTRY_BYTES);
+        }
+        this.maxEntriesPerPartition = (int) Math.min(Integer.MAX_VALUE, maxBytesPerPartition / ESTIMATED_ENTRY_BYTES);
+    }
+
+    /**
+     * @return true if the document was indexed recently and can be skipped, counted as a hit or a miss
+     */
+    public synchronized boolean contains(TopicPartition partition, String id) {
+        LinkedHashMap<String, Boolean> ids = indexedIds.get(partition);
+        // get() moves the ID to the end of the access order
+        if (ids != null && ids.get(id) != null) {
+            hits++;
+            return true;
+        }
+        misses++;
+        return false;
+    }
+
+    /**
+     * Remember the ID of a record handed to the indexer, it is cached once the offset is acknowledged.
+     */
+    public synchronized void register(TopicPartition partition, long offset, String id) {
+        ArrayDeque<PendingId> pending = pendingIds.get(partition);
+        if (pending == null) {
+            pending = new ArrayDeque<PendingId>();
+            pendingIds.put(partition, pending);
+        }
+        pending.add(new PendingId(offset, id));
+    }
+
+    /**
+     * Cache the IDs of the records before the committable offsets.
+     */
+    public synchronized void acknowledge(Map<TopicPartition, OffsetAndMetadata> committableOffsets) {
+        for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : committableOffsets.entrySet()) {
+            acknowledge(entry.getKey(), entry.getValue().offset());
+        }
+    }
+
+    /**
+     * Cache the IDs of the records of the partition before {@code committableOffset}.
+     */
+    public synchronized void acknowledge(TopicPartition partition, long committableOffset) {
+        ArrayDeque<PendingId> pending = pendingIds.get(partition);
+        if (pending == null) {
+            return;
+        }
+        LinkedHashMap<String, Boolean> ids = indexedIds.get(partition);
+        if (ids == null) {
+            ids = new LinkedHashMap<String, Boolean>(16, 0.75f, true);
+            indexedIds.put(partition, ids);
+        }
+        while (!pending.isEmpty() && pending.peek().offset < committableOffset) {
+            if (ids.put(pending.poll().id, Boolean.TRUE) == null) {
+                size++;
+            }
+        }
+        Iterator<String> eldest = ids.keySet().iterator();
+        while (ids.size() > maxEntriesPerPartition) {
+            eldest.next();
+            eldest.remove();
+            size--;
+            evictions++;
+        }
+    }
+
+    /**
+     * Forget the IDs of a partition, e.g. when it is revoked.
+     */
+    public synchronized void remove(TopicPartition partition) {
+        LinkedHashMap<String, Boolean> ids = indexedIds.remove(partition);
+        if (ids != null) {
+            size -= ids.size();
+        }
+        pendingIds.remove(partition);
+    }
+
+    /**
+     * Register this cache in the platform MBean server.
+     */
+    public RecentlyIndexedIdCache registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("com.github.felipegutierrez.kafka.elasticsearch:type=RecentlyIndexedIdCache,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            logger.warn("Could not register the RecentlyIndexedIdCache MBean: " + e.getMessage());
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return size;
+    }
+
+    @Override
+    public int getMaxEntriesPerPartition() {
+        return maxEntriesPerPartition;
+    }
+
+    @Override
+    public synchronized long getEstimatedBytes() {
+        return (long) size * ESTIMATED_ENTRY_BYTES;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RecentlyIndexedIdCache{" +
+                "maxEntriesPerPartition=" + maxEntriesPerPartition +
+                ", size=" + size +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+
+    private static final class PendingId {
+        private final long offset;
+        private final String id;
+
+        private PendingId(long offset, String id) {
+            this.offset = offset;
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+/**
+ * JMX view of the {@link RecentlyIndexedIdCache}.
+ */
+public interface RecentlyIndexedIdCacheMBean {
+
+    long getHits();
+
+    long getMisses();
+
+    long getEvictions();
+
+    int getSize();
+
+    int getMaxEntriesPerPartition();
+
+    long getEstimatedBytes();
+}
@@ -0,0 +1,113 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.OffsetTracker;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.RecordPosition;
+import com.github.felipegutierrez.kafka.elasticsearch.metrics.SinkMetrics;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Send one index request per record and wait for its response, the simplest and slowest way to index.
+ */
+public class SingleDocumentIndexer implements Indexer {
+    private static final Logger logger = LoggerFactory.getLogger(SingleDocumentIndexer.class);
+    private final RestHighLevelClient client;
+    private final SinkMetrics metrics;
+    private final OffsetTracker offsetTracker = new OffsetTracker();
+
+    public SingleDocumentIndexer(RestHighLevelClient client) {
+        this(client, new SinkMetrics());
+    }
+
+    /**
+     * @param metrics where each index request is recorded as a bulk of one document
+     */
+    public SingleDocumentIndexer(RestHighLevelClient client, SinkMetrics metrics) {
+        this.client = client;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void index(ConsumerRecord<?, ?> record, DocWriteRequest<?> request) throws IOException {
+        if (!(request instanceof IndexRequest)) {
+            throw new IllegalArgumentException("Only index requests can be sent one by one: " + request);
+        }
+        IndexRequest indexRequest = (IndexRequest) request;
+        long startNanos = System.nanoTime();
+        try {
+            client.index(indexRequest, RequestOptions.DEFAULT);
+        } catch (IOException | ElasticsearchException e) {
+            metrics.recordFailedBulk(indexRequest.source().length(), System.nanoTime() - startNanos);
+            throw e;
+        }
+        metrics.recordBulk(indexRequest.source().length(), System.nanoTime() - startNanos, 0);
+        metrics.recordIndexed(1);
+        metrics.recordEndToEnd(record.timestamp(), System.currentTimeMillis());
+        skip(record);
+    }
+
+    /**
+     * There is no bulk to join, the document is indexed right away.
+     */
+    @Override
+    public void stage(DocWriteRequest<?> request) {
+        if (!(request instanceof IndexRequest)) {
+            throw new IllegalArgumentException("Only index requests can be sent one by one: " + request);
+        }
+        try {
+            client.index((IndexRequest) request, RequestOptions.DEFAULT);
+        } catch (ElasticsearchException e) {
+            if (e.status() == RestStatus.CONFLICT) {
+                logger.debug("Staged document older than the stored one " + request + ": " + e.getMessage());
+            } else {
+                logger.warn("Could not write the staged document " + request + ": " + e.getMessage());
+                metrics.recordStagedFailure();
+            }
+        } catch (IOException e) {
+            // e.g. the connection failed, the position is written again with the next poll
+            logger.warn("Could not write the staged document " + request + ": " + e.getMessage());
+            metrics.recordStagedFailure();
+        }
+    }
+
+    @Override
+    public void skip(ConsumerRecord<?, ?> record) {
+        RecordPosition position = RecordPosition.of(record);
+        offsetTracker.register(position.getTopicPartition(), position.getOffset());
+        offsetTracker.acknowledge(position.getTopicPartition(), position.getOffset());
+    }
+
+    @Override
+    public void afterPoll() {
+    }
+
+    @Override
+    public boolean isOverBudget() {
+        return false;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public Map<TopicPartition, OffsetAndMetadata> committableOffsets() {
+        return offsetTracker.committableOffsets();
+    }
+
+    @Override
+    public void close() {
+    }
+}
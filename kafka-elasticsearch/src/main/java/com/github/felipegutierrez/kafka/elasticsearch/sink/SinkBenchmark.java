@@ -0,0 +1,277 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.BulkPipelineConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.metrics.LatencyHistogram;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.StringTweetFormat;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run the {@link ElasticSearchSink} with every combination of {@link IndexingMode} and {@link CommitStrategy} over
+ * the same input, and report the throughput and the end-to-end latency of each one.
+ * <p>
+ * The input is replayed through a {@link MockConsumer} that receives {@code batchSize} records right before each
+ * poll, so the sink always has work and the broker is out of the measure. The end-to-end latency of a record goes
+ * from the moment it becomes available to the poll until its offset is committed (indexed, with
+ * {@link CommitStrategy#AUTO}, handed to the next bulk with {@link CommitStrategy#ELASTICSEARCH}), hence it includes
+ * the waiting time of the commit strategy.
+ * <p>
+ * A subclass driving a cluster that counts its writes can report, for each run, the latency of the bulk requests, the
+ * number of documents written more than once and the bytes sent, see {@link #afterRun}.
+ */
+public class SinkBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(SinkBenchmark.class);
+    private final RestHighLevelClient client;
+    private final List<ConsumerRecord<String, String>> input;
+    private final int batchSize;
+
+    /**
+     * @param client    cluster to index into, the same document IDs are written by every run
+     * @param input     records to index, their offsets are renumbered per partition
+     * @param batchSize number of records returned by each poll, also used as bulk size
+     */
+    public SinkBenchmark(RestHighLevelClient client, List<ConsumerRecord<String, String>> input, int batchSize) {
+        if (input.isEmpty()) {
+            throw new IllegalArgumentException("The benchmark needs at least one record");
+        }
+        this.client = client;
+        this.input = input;
+        this.batchSize = batchSize;
+    }
+
+    public List<Result> runAll() throws IOException, InterruptedException {
+        List<Result> results = new ArrayList<Result>();
+        for (IndexingMode indexingMode : IndexingMode.values()) {
+            for (CommitStrategy commitStrategy : CommitStrategy.values()) {
+                Result result = run(indexingMode, commitStrategy);
+                logger.info(result.toString());
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    public Result run(IndexingMode indexingMode, CommitStrategy commitStrategy) throws IOException, InterruptedException {
+        final MockConsumer<String, String> consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST);
+        // when each offset became available to the poll
+        final Map<TopicPartition, ArrayDeque<long[]>> available = new HashMap<TopicPartition, ArrayDeque<long[]>>();
+        List<ConsumerRecord<String, String>> records = renumber(input, available);
+        consumer.assign(available.keySet());
+        Map<TopicPartition, Long> beginningOffsets = new HashMap<TopicPartition, Long>();
+        for (TopicPartition partition : available.keySet()) {
+            beginningOffsets.put(partition, 0L);
+        }
+        consumer.updateBeginningOffsets(beginningOffsets);
+
+        for (int from = 0; from < records.size(); from += batchSize) {
+            final List<ConsumerRecord<String, String>> batch = records.subList(from, Math.min(records.size(), from + batchSize));
+            consumer.schedulePollTask(new Runnable() {
+                @Override
+                public void run() {
+                    long now = System.nanoTime();
+                    for (ConsumerRecord<String, String> record : batch) {
+                        consumer.addRecord(record);
+                        available.get(new TopicPartition(record.topic(), record.partition())).add(new long[]{record.offset(), now});
+                    }
+                }
+            });
+        }
+
+        ElasticSearchSinkConfig config = new ElasticSearchSinkConfig()
+                .setIndexingMode(indexingMode)
+                .setCommitStrategy(commitStrategy)
+                .setBulkPipelineConfig(new BulkPipelineConfig().setFlushActions(batchSize))
+                .setMaxPollRecords(batchSize)
+                .setMaxRecords(records.size());
+        final LatencyHistogram latencies = new LatencyHistogram();
+        ElasticSearchSink<String> sink = new ElasticSearchSink<String>(consumer,
+                indexingMode.createIndexer(client, config, null), new StringTweetFormat(), config);
+        if (commitStrategy.isStoredInElasticsearch()) {
+            // a group of its own, so the run does not resume from the offsets stored by a previous one
+            sink.setOffsetStore(new ElasticSearchOffsetStore(client, config.getOffsetsIndex(), "sink-benchmark-" + System.nanoTime()));
+        }
+        sink.setCommitListener(new OffsetCommitCallback() {
+            @Override
+            public void onComplete(Map<TopicPartition, OffsetAndMetadata> offsets, Exception exception) {
+                if (exception != null) {
+                    return;
+                }
+                long now = System.nanoTime();
+                for (Map.Entry<TopicPartition, OffsetAndMetadata> offset : offsets.entrySet()) {
+                    ArrayDeque<long[]> pending = available.get(offset.getKey());
+                    while (!pending.isEmpty() && pending.peek()[0] < offset.getValue().offset()) {
+                        latencies.record(now - pending.poll()[1]);
+                    }
+                }
+            }
+        });
+
+        beforeRun();
+        long start = System.nanoTime();
+        sink.run();
+        long elapsedNanos = System.nanoTime() - start;
+        consumer.close();
+        Result result = new Result(indexingMode, commitStrategy, records.size(), elapsedNanos, latencies);
+        afterRun(result, config);
+        return result;
+    }
+
+    /**
+     * Called right before the sink of each run starts, e.g. to reset the counters of the cluster.
+     */
+    protected void beforeRun() {
+    }
+
+    /**
+     * Called once the sink of each run stopped, e.g. to add the counters of the cluster to the result with
+     * {@link Result#setClusterStats}.
+     *
+     * @param config the settings of the run
+     */
+    protected void afterRun(Result result, ElasticSearchSinkConfig config) {
+    }
+
+    /**
+     * Copy the records with consecutive offsets starting at 0 in each partition, so they can be replayed by a fresh
+     * {@link MockConsumer}.
+     */
+    private static List<ConsumerRecord<String, String>> renumber(List<ConsumerRecord<String, String>> input,
+                                                                 Map<TopicPartition, ArrayDeque<long[]>> partitions) {
+        Map<TopicPartition, Long> nextOffsets = new HashMap<TopicPartition, Long>();
+        List<ConsumerRecord<String, String>> records = new ArrayList<ConsumerRecord<String, String>>(input.size());
+        for (ConsumerRecord<String, String> record : input) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            Long offset = nextOffsets.get(partition);
+            if (offset == null) {
+                offset = 0L;
+                partitions.put(partition, new ArrayDeque<long[]>());
+            }
+            nextOffsets.put(partition, offset + 1);
+            records.add(new ConsumerRecord<String, String>(record.topic(), record.partition(), offset, record.key(), record.value()));
+        }
+        return records;
+    }
+
+    /**
+     * @return a table with one line per combination
+     */
+    public static String report(List<Result> results) {
+        StringBuilder report = new StringBuilder(String.format("%-10s %-15s %10s %10s %10s %10s %10s %10s %12s %12s%n",
+                "mode", "commit", "records", "records/s", "p50 ms", "p99 ms", "duplicates", "KB sent", "bulk p50 ms", "bulk p99 ms"));
+        StringBuilder histograms = new StringBuilder();
+        for (Result result : results) {
+            report.append(String.format("%-10s %-15s %10d %10.0f %10.1f %10.1f", result.getIndexingMode(),
+                    result.getCommitStrategy(), result.getRecords(), result.getRecordsPerSecond(),
+                    result.getLatencyMs(50), result.getLatencyMs(99)));
+            if (result.getBulkLatencies() != null) {
+                report.append(String.format(" %10d %10.1f", result.getDuplicates(), result.getSentBytes() / 1024.0));
+                if (result.getBulkLatencies().getTotalCount() > 0) {
+                    report.append(String.format(" %12.1f %12.1f", result.getBulkLatencies().getTotalPercentileMs(50),
+                            result.getBulkLatencies().getTotalPercentileMs(99)));
+                    histograms.append(String.format("%-10s %-15s %s%n", result.getIndexingMode(), result.getCommitStrategy(),
+                            result.getBulkLatencies().getTotalBuckets()));
+                }
+            }
+            report.append(String.format("%n"));
+        }
+        if (histograms.length() > 0) {
+            report.append(String.format("%nBulk latencies:%n")).append(histograms);
+        }
+        return report.toString();
+    }
+
+    public static class Result {
+        private final IndexingMode indexingMode;
+        private final CommitStrategy commitStrategy;
+        private final int records;
+        private final long elapsedNanos;
+        private final LatencyHistogram latencies;
+        private long duplicates = -1;
+        private LatencyHistogram bulkLatencies;
+        private long sentBytes = -1;
+
+        Result(IndexingMode indexingMode, CommitStrategy commitStrategy, int records, long elapsedNanos, LatencyHistogram latencies) {
+            this.indexingMode = indexingMode;
+            this.commitStrategy = commitStrategy;
+            this.records = records;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+        }
+
+        public IndexingMode getIndexingMode() {
+            return indexingMode;
+        }
+
+        public CommitStrategy getCommitStrategy() {
+            return commitStrategy;
+        }
+
+        public int getRecords() {
+            return records;
+        }
+
+        public double getRecordsPerSecond() {
+            return records * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         */
+        public double getLatencyMs(double percentile) {
+            return latencies.getTotalPercentileMs(percentile);
+        }
+
+        /**
+         * @param duplicates    number of documents written more than once
+         * @param bulkLatencies time the cluster spent serving each bulk
+         * @param sentBytes     bytes of the request bodies as sent over the wire
+         */
+        void setClusterStats(long duplicates, LatencyHistogram bulkLatencies, long sentBytes) {
+            this.duplicates = duplicates;
+            this.bulkLatencies = bulkLatencies;
+            this.sentBytes = sentBytes;
+        }
+
+        /**
+         * @return the number of documents written more than once, -1 if the cluster does not count them
+         */
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * @return the time the cluster spent serving each bulk, null if the cluster does not measure it
+         */
+        public LatencyHistogram getBulkLatencies() {
+            return bulkLatencies;
+        }
+
+        /**
+         * @return the bytes of the request bodies as sent over the wire, -1 if the cluster does not count them
+         */
+        public long getSentBytes() {
+            return sentBytes;
+        }
+
+        @Override
+        public String toString() {
+            return indexingMode + "/" + commitStrategy + ": " + records + " records, " +
+                    String.format("%.0f records/s, p99 %.1f ms", getRecordsPerSecond(), getLatencyMs(99));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.felipegutierrez.kafka.elasticsearch.tweet;
+
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Keep the tweets as the UTF-8 bytes read from Kafka. The same array is wrapped as the source of the index request and
+ * written to the bulk body, so the payload is neither decoded into a String nor encoded again.
+ */
+public class ByteArrayTweetFormat implements ProjectableTweetFormat<byte[]> {
+
+    @Override
+    public Class<? extends Deserializer<byte[]>> deserializer() {
+        return ByteArrayDeserializer.class;
+    }
+
+    @Override
+    public void configure(Properties consumerProperties) {
+    }
+
+    @Override
+    public String extractId(byte[] tweet) {
+        return TweetIdExtractor.extractId(tweet);
+    }
+
+    @Override
+    public byte[] project(TweetProjection projection, byte[] tweet) {
+        return projection.project(tweet);
+    }
+
+    @Override
+    public IndexRequest source(IndexRequest request, byte[] tweet) {
+        return request.source(tweet, XContentType.JSON);
+    }
+
+    @Override
+    public String describe(byte[] tweet) {
+        return tweet == null ? null : new String(tweet, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,14 @@
+package com.github.felipegutierrez.kafka.elasticsearch.tweet;
+
+/**
+ * A {@link TweetFormat} whose values can be reduced to the fields kept by a {@link TweetProjection} before indexing.
+ *
+ * @param <V> type of the record value
+ */
+public interface ProjectableTweetFormat<V> extends TweetFormat<V> {
+
+    /**
+     * @return the tweet with the fields kept by the projection only
+     */
+    V project(TweetProjection projection, V tweet);
+}
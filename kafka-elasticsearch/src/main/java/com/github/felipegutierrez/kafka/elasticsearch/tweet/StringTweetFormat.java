@@ -0,0 +1,43 @@
+package com.github.felipegutierrez.kafka.elasticsearch.tweet;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.util.Properties;
+
+/**
+ * Decode the tweets into Strings. The Elasticsearch client encodes them back to UTF-8 when building the request.
+ */
+public class StringTweetFormat implements ProjectableTweetFormat<String> {
+
+    @Override
+    public Class<? extends Deserializer<String>> deserializer() {
+        return StringDeserializer.class;
+    }
+
+    @Override
+    public void configure(Properties consumerProperties) {
+    }
+
+    @Override
+    public String extractId(String tweet) {
+        return TweetIdExtractor.extractId(tweet);
+    }
+
+    @Override
+    public String project(TweetProjection projection, String tweet) {
+        return projection.project(tweet);
+    }
+
+    @Override
+    public IndexRequest source(IndexRequest request, String tweet) {
+        return request.source(tweet, XContentType.JSON);
+    }
+
+    @Override
+    public String describe(String tweet) {
+        return tweet;
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.felipegutierrez.kafka.elasticsearch.tweet;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.elasticsearch.action.index.IndexRequest;
+
+import java.util.Properties;
+
+/**
+ * How the value of a Kafka record is decoded and handed to Elasticsearch. The formats that can apply a
+ * {@link TweetProjection} implement {@link ProjectableTweetFormat}.
+ *
+ * @param <V> type of the record value produced by {@link #deserializer()}
+ */
+public interface TweetFormat<V> {
+
+    /**
+     * @return the Kafka deserializer of the record values
+     */
+    Class<? extends Deserializer<V>> deserializer();
+
+    /**
+     * Add the consumer settings the deserializer needs, e.g. the URL of the schema registry.
+     */
+    void configure(Properties consumerProperties);
+
+    /**
+     * @return the tweet ID used as document ID, or null if the tweet has none
+     */
+    String extractId(V tweet);
+
+    /**
+     * Set the tweet as the source of the request.
+     */
+    IndexRequest source(IndexRequest request, V tweet);
+
+    /**
+     * @return a human readable version of the tweet, only used for logging
+     */
+    String describe(V tweet);
+}
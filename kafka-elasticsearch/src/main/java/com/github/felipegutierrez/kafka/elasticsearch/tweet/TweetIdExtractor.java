@@ -0,0 +1,195 @@
+package com.github.felipegutierrez.kafka.elasticsearch.tweet;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Extract the {@code id_str} of a tweet reading the JSON tokens instead of building the whole Gson tree.
+ * <p>
+ * The reader stops at the first top-level {@code id_str}, which Twitter writes right after {@code created_at} and
+ * {@code id}, so the rest of the 4-6 KB payload is never tokenized. Nested objects that come before it (e.g. the
+ * {@code id_str} of the {@code user}) are skipped without being materialized.
+ */
+public class TweetIdExtractor {
+    private static final String ID_FIELD = "id_str";
+    private static final byte[] ID_FIELD_BYTES = ID_FIELD.getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * @return the top-level {@code id_str} of the tweet, or null if the tweet has none or is not valid JSON
+     */
+    public static String extractId(String tweetJson) {
+        if (tweetJson == null) {
+            return null;
+        }
+        try (JsonReader reader = new JsonReader(new StringReader(tweetJson))) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return null;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (ID_FIELD.equals(reader.nextName())) {
+                    return reader.peek() == JsonToken.STRING ? reader.nextString() : null;
+                }
+                reader.skipValue();
+            }
+            return null;
+        } catch (IOException | IllegalStateException e) {
+            // MalformedJsonException is an IOException
+            return null;
+        }
+    }
+
+    /**
+     * Same as {@link #extractId(String)} but scanning the UTF-8 bytes of the record, so the payload never has to be
+     * decoded into a String. Only the ID itself is allocated. Field names are compared byte by byte, so an
+     * {@code id_str} name written with escape sequences is not recognized (Twitter never does that).
+     *
+     * @return the top-level {@code id_str} of the tweet, or null if the tweet has none or is not valid JSON
+     */
+    public static String extractId(byte[] tweetJson) {
+        if (tweetJson == null) {
+            return null;
+        }
+        int pos = skipWhitespace(tweetJson, 0);
+        if (pos >= tweetJson.length || tweetJson[pos] != '{') {
+            return null;
+        }
+        pos++;
+        while (true) {
+            pos = skipWhitespace(tweetJson, pos);
+            if (pos >= tweetJson.length || tweetJson[pos] != '"') {
+                return null;
+            }
+            int nameStart = pos + 1;
+            int nameEnd = skipString(tweetJson, pos);
+            if (nameEnd < 0) {
+                return null;
+            }
+            pos = skipWhitespace(tweetJson, nameEnd);
+            if (pos >= tweetJson.length || tweetJson[pos] != ':') {
+                return null;
+            }
+            pos = skipWhitespace(tweetJson, pos + 1);
+            if (pos >= tweetJson.length) {
+                return null;
+            }
+            if (isIdField(tweetJson, nameStart, nameEnd - 1)) {
+                if (tweetJson[pos] != '"') {
+                    return null;
+                }
+                int valueEnd = skipString(tweetJson, pos);
+                return valueEnd < 0 ? null : decodeString(tweetJson, pos + 1, valueEnd - 1);
+            }
+            pos = skipValue(tweetJson, pos);
+            if (pos < 0) {
+                return null;
+            }
+            pos = skipWhitespace(tweetJson, pos);
+            if (pos >= tweetJson.length || tweetJson[pos] != ',') {
+                // end of the object (or garbage) without an id
+                return null;
+            }
+            pos++;
+        }
+    }
+
+    private static boolean isIdField(byte[] json, int start, int end) {
+        if (end - start != ID_FIELD_BYTES.length) {
+            return false;
+        }
+        for (int i = 0; i < ID_FIELD_BYTES.length; i++) {
+            if (json[start + i] != ID_FIELD_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(byte[] json, int pos) {
+        while (pos < json.length && (json[pos] == ' ' || json[pos] == '\n' || json[pos] == '\r' || json[pos] == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * @param pos position of the opening quote
+     * @return the position right after the closing quote, or -1 if the string is not terminated
+     */
+    private static int skipString(byte[] json, int pos) {
+        pos++;
+        while (pos < json.length) {
+            byte b = json[pos];
+            if (b == '\\') {
+                pos += 2;
+            } else if (b == '"') {
+                return pos + 1;
+            } else {
+                pos++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the position right after the value starting at {@code pos}, or -1 if the value is not terminated
+     */
+    private static int skipValue(byte[] json, int pos) {
+        byte first = json[pos];
+        if (first == '"') {
+            return skipString(json, pos);
+        }
+        if (first == '{' || first == '[') {
+            int depth = 0;
+            while (pos < json.length) {
+                byte b = json[pos];
+                if (b == '"') {
+                    pos = skipString(json, pos);
+                    if (pos < 0) {
+                        return -1;
+                    }
+                    continue;
+                }
+                if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        return pos + 1;
+                    }
+                }
+                pos++;
+            }
+            return -1;
+        }
+        // number, true, false or null
+        while (pos < json.length && json[pos] != ',' && json[pos] != '}' && json[pos] != ']'
+                && json[pos] != ' ' && json[pos] != '\n' && json[pos] != '\r' && json[pos] != '\t') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static String decodeString(byte[] json, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (json[i] == '\\') {
+                // rare: let the Gson reader deal with the escape sequences
+                return extractEscaped(new String(json, start - 1, end - start + 2, StandardCharsets.UTF_8));
+            }
+        }
+        return new String(json, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static String extractEscaped(String quoted) {
+        try (JsonReader reader = new JsonReader(new StringReader(quoted))) {
+            reader.setLenient(true);
+            return reader.nextString();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
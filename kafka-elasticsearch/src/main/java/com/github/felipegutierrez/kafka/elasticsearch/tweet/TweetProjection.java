@@ -0,0 +1,208 @@
+package com.github.felipegutierrez.kafka.elasticsearch.tweet;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keep only a whitelist of fields of the tweets, so the bulks carry what the dashboards query instead of the whole
+ * 4-6 KB payload with the {@code user}, {@code entities} and {@code extended_tweet} objects.
+ * <p>
+ * The fields are JSON paths separated by commas, like the {@code fields.whitelist} of the JDBC sink connector, e.g.
+ * {@code id,created_at,text,lang,user.screen_name}. A path keeps the whole value of its last field, an intermediate
+ * field that holds an array of objects is projected element by element ({@code entities.hashtags.text}). The tweet is
+ * copied token by token in one streaming pass, the fields that are not kept are skipped without being materialized.
+ * An intermediate object without any kept field is written as {@code {}}. A value that is not a valid JSON object is
+ * returned unchanged, so Elasticsearch rejects it like the raw tweet.
+ */
+public class TweetProjection {
+    private final Node root = new Node();
+    private final String fields;
+
+    /**
+     * @param fields JSON paths separated by commas
+     */
+    public TweetProjection(String fields) {
+        this(Arrays.asList(fields.split(",")));
+    }
+
+    public TweetProjection(Collection<String> fields) {
+        StringBuilder description = new StringBuilder();
+        for (String field : fields) {
+            String path = field.trim();
+            if (path.isEmpty()) {
+                continue;
+            }
+            Node node = root;
+            for (String name : path.split("\\.")) {
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("Invalid field path [" + path + "]");
+                }
+                node = node.child(name);
+            }
+            node.whole = true;
+            description.append(description.length() == 0 ? "" : ",").append(path);
+        }
+        if (root.children.isEmpty()) {
+            throw new IllegalArgumentException("The projection needs at least one field");
+        }
+        this.fields = description.toString();
+    }
+
+    /**
+     * @return the tweet with the kept fields only, or the tweet itself if it is not a valid JSON object
+     */
+    public String project(String tweetJson) {
+        if (tweetJson == null) {
+            return null;
+        }
+        StringWriter out = new StringWriter(Math.min(tweetJson.length(), 1024));
+        return project(new StringReader(tweetJson), out) ? out.toString() : tweetJson;
+    }
+
+    /**
+     * Same as {@link #project(String)} for the UTF-8 bytes of the tweet.
+     */
+    public byte[] project(byte[] tweetJson) {
+        if (tweetJson == null) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(tweetJson.length, 1024));
+        boolean projected = project(new InputStreamReader(new ByteArrayInputStream(tweetJson), StandardCharsets.UTF_8),
+                new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        return projected ? out.toByteArray() : tweetJson;
+    }
+
+    private boolean project(Reader in, Writer out) {
+        try (JsonReader reader = new JsonReader(in); JsonWriter writer = new JsonWriter(out)) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return false;
+            }
+            projectObject(reader, writer, root);
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                return false;
+            }
+            writer.flush();
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // MalformedJsonException is an IOException
+            return false;
+        }
+    }
+
+    private static void projectObject(JsonReader reader, JsonWriter writer, Node node) throws IOException {
+        reader.beginObject();
+        writer.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            Node child = node.children.get(name);
+            if (child == null) {
+                reader.skipValue();
+            } else {
+                writer.name(name);
+                project(reader, writer, child);
+            }
+        }
+        reader.endObject();
+        writer.endObject();
+    }
+
+    private static void project(JsonReader reader, JsonWriter writer, Node node) throws IOException {
+        if (node.whole) {
+            copy(reader, writer);
+            return;
+        }
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                projectObject(reader, writer, node);
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) {
+                    project(reader, writer, node);
+                }
+                reader.endArray();
+                writer.endArray();
+                break;
+            default:
+                // a scalar where the path expects an object, e.g. null
+                copy(reader, writer);
+        }
+    }
+
+    private static void copy(JsonReader reader, JsonWriter writer) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                writer.beginObject();
+                while (reader.hasNext()) {
+                    writer.name(reader.nextName());
+                    copy(reader, writer);
+                }
+                reader.endObject();
+                writer.endObject();
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) {
+                    copy(reader, writer);
+                }
+                reader.endArray();
+                writer.endArray();
+                break;
+            case STRING:
+                writer.value(reader.nextString());
+                break;
+            case NUMBER:
+                // keep the literal, tweet IDs do not fit in a double
+                writer.jsonValue(reader.nextString());
+                break;
+            case BOOLEAN:
+                writer.value(reader.nextBoolean());
+                break;
+            case NULL:
+                reader.nextNull();
+                writer.nullValue();
+                break;
+            default:
+                throw new IllegalStateException("Unexpected token " + reader.peek());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return fields;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<String, Node>();
+        // keep the whole value, a shorter path wins over a longer one
+        private boolean whole;
+
+        private Node child(String name) {
+            Node child = children.get(name);
+            if (child == null) {
+                child = new Node();
+                children.put(name, child);
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.github.felipegutierrez.kafka.elasticsearch.worker;
+
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.DeadLetterPublisher;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.FailedDocument;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.RecordPosition;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.RetryingBulkExecutor;
+import com.github.felipegutierrez.kafka.elasticsearch.metrics.SinkMetrics;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.ElasticSearchSinkConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.IndexRequestFactory;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.RecentlyIndexedIdCache;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index the records of one partition on its own thread, in the order they were polled.
+ * <p>
+ * The poller thread hands records over with {@link #submit}. When the queue is full the records are kept in an
+ * overflow list that only the poller touches, and {@link #isBacklogged()} tells the poller to {@code pause()} the
+ * partition until the worker catches up. The worker publishes the offset right after the last record it indexed,
+ * which is the only offset the poller commits for this partition.
+ * <p>
+ * The documents rejected with a retryable status are sent again by the {@link RetryingBulkExecutor}, the ones that
+ * still fail go to the {@link DeadLetterPublisher} before the offset moves past them. The IDs of the records before
+ * the published offset are acknowledged in the {@link RecentlyIndexedIdCache} of the {@link IndexRequestFactory}.
+ *
+ * @param <V> type of the record value
+ */
+public class PartitionWorker<V> implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(PartitionWorker.class);
+    private final TopicPartition topicPartition;
+    private final RetryingBulkExecutor bulkExecutor;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final IndexRequestFactory<V> indexRequestFactory;
+    private final RecentlyIndexedIdCache recentlyIndexedIdCache;
+    private final SinkMetrics metrics;
+    private final BlockingQueue<ConsumerRecord<String, V>> queue;
+    private final ArrayDeque<ConsumerRecord<String, V>> overflow = new ArrayDeque<ConsumerRecord<String, V>>();
+    private final int maxBatch;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean running = true;
+    private volatile long completedOffset = -1L;
+    private volatile Exception failure;
+
+    /**
+     * @param deadLetterPublisher where the documents rejected permanently are sent, if null they fail the worker
+     * @param indexRequestFactory builds the documents of the records, shared by the workers of the poller
+     * @param config              size of the bulks and metrics
+     * @param queueCapacity       number of records buffered before the partition is paused
+     */
+    public PartitionWorker(TopicPartition topicPartition, RetryingBulkExecutor bulkExecutor,
+                           DeadLetterPublisher deadLetterPublisher, IndexRequestFactory<V> indexRequestFactory,
+                           ElasticSearchSinkConfig config, int queueCapacity) {
+        this.topicPartition = topicPartition;
+        this.bulkExecutor = bulkExecutor;
+        this.deadLetterPublisher = deadLetterPublisher;
+        this.indexRequestFactory = indexRequestFactory;
+        this.recentlyIndexedIdCache = indexRequestFactory.getRecentlyIndexedIdCache();
+        this.metrics = config.getMetrics();
+        this.queue = new ArrayBlockingQueue<ConsumerRecord<String, V>>(queueCapacity);
+        this.maxBatch = config.getBulkPipelineConfig().getFlushActions();
+    }
+
+    @Override
+    public void run() {
+        List<ConsumerRecord<String, V>> batch = new ArrayList<ConsumerRecord<String, V>>(maxBatch);
+        try {
+            while (running) {
+                ConsumerRecord<String, V> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                index(batch);
+                long offset = batch.get(batch.size() - 1).offset() + 1;
+                if (recentlyIndexedIdCache != null) {
+                    recentlyIndexedIdCache.acknowledge(topicPartition, offset);
+                }
+                completedOffset = offset;
+                batch.clear();
+            }
+        } catch (IOException | ElasticsearchException e) {
+            logger.error("Worker of " + topicPartition + " failed: " + e.getMessage());
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+            stopped.countDown();
+        }
+    }
+
+    private void index(List<ConsumerRecord<String, V>> batch) throws IOException, InterruptedException {
+        BulkRequest bulkRequest = new BulkRequest();
+        List<RecordPosition> positions = new ArrayList<RecordPosition>(batch.size());
+        for (ConsumerRecord<String, V> record : batch) {
+            IndexRequest indexRequest = indexRequestFactory.create(record);
+            if (indexRequest == null) {
+                metrics.recordSkipped();
+                continue;
+            }
+            bulkRequest.add(indexRequest);
+            positions.add(RecordPosition.of(record));
+        }
+        if (bulkRequest.numberOfActions() == 0) {
+            return;
+        }
+        List<FailedDocument> failedDocuments = bulkExecutor.execute(bulkRequest);
+        if (!failedDocuments.isEmpty()) {
+            if (deadLetterPublisher == null) {
+                FailedDocument first = failedDocuments.get(0);
+                throw new IOException(failedDocuments.size() + " documents failed, first " +
+                        positions.get(first.getIndex()) + ": " + first.getReason());
+            }
+            deadLetterPublisher.publishAll(failedDocuments, positions);
+        }
+        boolean[] failed = new boolean[positions.size()];
+        for (FailedDocument failedDocument : failedDocuments) {
+            failed[failedDocument.getIndex()] = true;
+        }
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < positions.size(); i++) {
+            if (!failed[i]) {
+                metrics.recordEndToEnd(positions.get(i).getTimestamp(), now);
+            }
+        }
+        metrics.recordIndexed(positions.size() - failedDocuments.size());
+        metrics.recordDeadLettered(failedDocuments.size());
+    }
+
+    /**
+     * Hand a record to the worker. Called by the poller thread only.
+     */
+    public void submit(ConsumerRecord<String, V> record) {
+        if (!overflow.isEmpty() || !queue.offer(record)) {
+            overflow.add(record);
+        }
+    }
+
+    /**
+     * Move the records waiting in the overflow list to the queue while it has room. Called by the poller thread only.
+     */
+    public void drainOverflow() {
+        while (!overflow.isEmpty() && queue.offer(overflow.peek())) {
+            overflow.poll();
+        }
+    }
+
+    /**
+     * @return true if the queue is full and records are waiting in the overflow list, the partition should be paused
+     */
+    public boolean isBacklogged() {
+        return !overflow.isEmpty() || queue.remainingCapacity() == 0;
+    }
+
+    /**
+     * @return true once the queue is drained below half of its capacity, a paused partition can be resumed
+     */
+    public boolean canResume() {
+        return overflow.isEmpty() && queue.size() <= (queue.size() + queue.remainingCapacity()) / 2;
+    }
+
+    /**
+     * @return the offset after the last indexed record, or -1 if nothing was indexed yet
+     */
+    public long getCompletedOffset() {
+        return completedOffset;
+    }
+
+    public Exception getFailure() {
+        return failure;
+    }
+
+    public TopicPartition getTopicPartition() {
+        return topicPartition;
+    }
+
+    /**
+     * Stop the worker after the batch it is indexing, the queued records are dropped and will be polled again by the
+     * next owner of the partition because their offsets are not committed.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+}
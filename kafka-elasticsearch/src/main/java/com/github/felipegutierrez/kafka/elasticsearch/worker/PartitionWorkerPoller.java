@@ -0,0 +1,307 @@
+package com.github.felipegutierrez.kafka.elasticsearch.worker;
+
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.DeadLetterPublisher;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.RetryingBulkExecutor;
+import com.github.felipegutierrez.kafka.elasticsearch.metrics.SinkMetrics;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.ElasticSearchSinkConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.IndexRequestFactory;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.RecentlyIndexedIdCache;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetFormat;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Poll the records and hand them to a {@link PartitionWorker} per assigned partition, so a slow bulk of one partition
+ * does not stall the others while the order inside each partition is kept. The consumer must be subscribed with the
+ * {@link #rebalanceListener()}, which starts and stops the workers.
+ * <p>
+ * A partition is paused when its worker queue is full and resumed once the worker drained half of it, the poller
+ * keeps calling {@code poll()} in the meantime so the consumer stays in the group. The offset committed for a
+ * partition is the one after the last record its worker indexed: asynchronously after each poll, synchronously when
+ * the partition is revoked, once its worker finished the batch it was indexing, and when the poller stops.
+ * <p>
+ * The documents are built like the ones of the {@code ElasticSearchSink}, see {@link IndexRequestFactory}. Each worker
+ * runs on a daemon thread of a pool bounded by the maximum number of partitions the poller accepts.
+ *
+ * @param <V> type of the record value
+ */
+public class PartitionWorkerPoller<V> {
+    private static final Logger logger = LoggerFactory.getLogger(PartitionWorkerPoller.class);
+    private final Consumer<String, V> consumer;
+    private final RetryingBulkExecutor bulkExecutor;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final IndexRequestFactory<V> indexRequestFactory;
+    private final ElasticSearchSinkConfig config;
+    private final SinkMetrics metrics;
+    private final int queueCapacity;
+    private final int maxWorkers;
+    private final ExecutorService executor;
+    private final Map<TopicPartition, PartitionWorker<V>> workers = new HashMap<TopicPartition, PartitionWorker<V>>();
+    // last offset sent to the broker for each partition
+    private final Map<TopicPartition, Long> committed = new HashMap<TopicPartition, Long>();
+    private long commitSequence;
+    private volatile boolean running = true;
+
+    /**
+     * @param deadLetterPublisher where the documents rejected permanently are sent, if null they fail the workers
+     * @param config              documents, size of the bulks, poll settings and metrics
+     * @param queueCapacity       number of records each worker buffers before its partition is paused
+     * @param maxWorkers          number of worker threads, an assignment of more partitions fails the poll
+     * @throws IllegalArgumentException if the records of the format cannot be indexed with the config
+     */
+    public PartitionWorkerPoller(Consumer<String, V> consumer, RetryingBulkExecutor bulkExecutor,
+                                 DeadLetterPublisher deadLetterPublisher, TweetFormat<V> tweetFormat,
+                                 ElasticSearchSinkConfig config, int queueCapacity, int maxWorkers) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+        if (maxWorkers < 1) {
+            throw new IllegalArgumentException("maxWorkers must be at least 1");
+        }
+        this.consumer = consumer;
+        this.bulkExecutor = bulkExecutor;
+        this.deadLetterPublisher = deadLetterPublisher;
+        this.indexRequestFactory = new IndexRequestFactory<V>(tweetFormat, config);
+        this.config = config;
+        this.metrics = config.getMetrics();
+        this.queueCapacity = queueCapacity;
+        this.maxWorkers = maxWorkers;
+        final AtomicInteger threads = new AtomicInteger();
+        // a revoked worker may still be leaving its thread when the next one is submitted, the queue holds it meanwhile
+        this.executor = Executors.newFixedThreadPool(maxWorkers, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "partition-worker-" + threads.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return the listener that starts a worker for each assigned partition and, for each revoked one, stops its
+     * worker after the batch in flight and commits the offset of the records it indexed
+     */
+    public ConsumerRebalanceListener rebalanceListener() {
+        return new ConsumerRebalanceListener() {
+            @Override
+            public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                List<PartitionWorker<V>> revoked = new ArrayList<PartitionWorker<V>>();
+                for (TopicPartition partition : partitions) {
+                    PartitionWorker<V> worker = workers.remove(partition);
+                    if (worker != null) {
+                        worker.stop();
+                        revoked.add(worker);
+                    }
+                }
+                try {
+                    awaitStop(revoked);
+                } catch (InterruptedException e) {
+                    throw new InterruptException(e);
+                }
+                // commit synchronously even the offsets sent by a commitAsync() that may still fail
+                for (TopicPartition partition : partitions) {
+                    committed.remove(partition);
+                }
+                commitCompletedOffsets(revoked, false);
+                RecentlyIndexedIdCache recentlyIndexedIdCache = indexRequestFactory.getRecentlyIndexedIdCache();
+                for (TopicPartition partition : partitions) {
+                    committed.remove(partition);
+                    if (recentlyIndexedIdCache != null) {
+                        // another consumer indexes them now
+                        recentlyIndexedIdCache.remove(partition);
+                    }
+                }
+                logger.info("Workers stopped for revoked partitions " + partitions);
+            }
+
+            @Override
+            public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                if (workers.size() + partitions.size() > maxWorkers) {
+                    throw new IllegalStateException("Cannot start a worker for each of the " + partitions +
+                            " assigned partitions, " + workers.size() + " workers out of " + maxWorkers + " are running");
+                }
+                for (TopicPartition partition : partitions) {
+                    PartitionWorker<V> worker = new PartitionWorker<V>(partition, bulkExecutor, deadLetterPublisher,
+                            indexRequestFactory, config, queueCapacity);
+                    workers.put(partition, worker);
+                    executor.submit(worker);
+                }
+                logger.info("Workers started for assigned partitions " + partitions);
+            }
+        };
+    }
+
+    /**
+     * Poll until {@link #stop()} is called, a worker fails or the max batches of the config are reached, then stop the
+     * workers after their batch in flight and commit the offsets of the records they indexed. The consumer is not
+     * closed.
+     */
+    public void run() throws IOException, InterruptedException {
+        try {
+            try {
+                poll();
+            } catch (WakeupException e) {
+                // stop() woke up the poll
+                if (running) {
+                    throw e;
+                }
+            }
+            stopWorkers();
+            // commit synchronously even the offsets sent by a commitAsync() that may still fail
+            committed.clear();
+            try {
+                commitCompletedOffsets(workers.values(), false);
+            } catch (WakeupException e) {
+                // stop() was called after the last poll, the wakeup is consumed now
+                commitCompletedOffsets(workers.values(), false);
+            }
+        } finally {
+            stopWorkers();
+            executor.shutdown();
+        }
+    }
+
+    private void poll() throws IOException {
+        long batches = 0;
+        while (running) {
+            ConsumerRecords<String, V> records = consumer.poll(Duration.ofMillis(config.getPollTimeoutMs()));
+            logger.debug("Received: " + records.count() + " records");
+            metrics.recordPolled(records.count());
+
+            for (ConsumerRecord<String, V> record : records) {
+                workers.get(new TopicPartition(record.topic(), record.partition())).submit(record);
+            }
+
+            // backpressure: stop fetching partitions whose worker cannot keep up
+            Set<TopicPartition> paused = consumer.paused();
+            List<TopicPartition> toPause = new ArrayList<TopicPartition>();
+            List<TopicPartition> toResume = new ArrayList<TopicPartition>();
+            for (PartitionWorker<V> worker : workers.values()) {
+                if (worker.getFailure() != null) {
+                    throw new IOException("Worker of " + worker.getTopicPartition() + " failed", worker.getFailure());
+                }
+                worker.drainOverflow();
+                boolean isPaused = paused.contains(worker.getTopicPartition());
+                if (!isPaused && worker.isBacklogged()) {
+                    toPause.add(worker.getTopicPartition());
+                } else if (isPaused && worker.canResume()) {
+                    toResume.add(worker.getTopicPartition());
+                }
+            }
+            if (!toPause.isEmpty()) {
+                logger.debug("Pausing " + toPause);
+                consumer.pause(toPause);
+                metrics.recordPause();
+            }
+            if (!toResume.isEmpty()) {
+                logger.debug("Resuming " + toResume);
+                consumer.resume(toResume);
+            }
+
+            metrics.updateLag(consumer);
+            commitCompletedOffsets(workers.values(), true);
+            if (records.count() > 0) {
+                batches++;
+                if (config.getMaxBatches() != -1 && batches >= config.getMaxBatches()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void stopWorkers() throws InterruptedException {
+        for (PartitionWorker<V> worker : workers.values()) {
+            worker.stop();
+        }
+        awaitStop(workers.values());
+    }
+
+    private void awaitStop(Collection<PartitionWorker<V>> stopped) throws InterruptedException {
+        for (PartitionWorker<V> worker : stopped) {
+            worker.awaitStop();
+        }
+    }
+
+    /**
+     * Commit, for each partition, the offset after the last record its worker indexed, if it advanced.
+     *
+     * @param async use {@code commitAsync()}, a failed commit is sent again after the next poll if no later commit
+     *              was sent in the meantime
+     */
+    private void commitCompletedOffsets(Collection<PartitionWorker<V>> workers, boolean async) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<TopicPartition, OffsetAndMetadata>();
+        for (PartitionWorker<V> worker : workers) {
+            long completedOffset = worker.getCompletedOffset();
+            Long lastCommitted = committed.get(worker.getTopicPartition());
+            if (completedOffset >= 0 && (lastCommitted == null || completedOffset > lastCommitted)) {
+                offsets.put(worker.getTopicPartition(), new OffsetAndMetadata(completedOffset));
+            }
+        }
+        if (offsets.isEmpty()) {
+            return;
+        }
+        logger.debug("Committing the offsets " + offsets);
+        // before the commit, whose callback may forget them right away
+        for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : offsets.entrySet()) {
+            committed.put(entry.getKey(), entry.getValue().offset());
+        }
+        if (async) {
+            final long sequence = ++commitSequence;
+            consumer.commitAsync(offsets, new OffsetCommitCallback() {
+                @Override
+                public void onComplete(Map<TopicPartition, OffsetAndMetadata> offsets, Exception exception) {
+                    metrics.recordCommit(exception == null);
+                    if (exception != null && sequence == commitSequence) {
+                        logger.warn("Could not commit the offsets " + offsets + ", retrying after the next poll: " + exception.getMessage());
+                        for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : offsets.entrySet()) {
+                            committed.remove(entry.getKey());
+                        }
+                    }
+                }
+            });
+        } else {
+            try {
+                consumer.commitSync(offsets);
+                metrics.recordCommit(true);
+            } catch (RuntimeException e) {
+                metrics.recordCommit(false);
+                for (TopicPartition partition : offsets.keySet()) {
+                    committed.remove(partition);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Stop polling, from another thread, e.g. a shutdown hook. {@link #run()} returns once the workers finished
+     * their batch in flight and their offsets are committed.
+     */
+    public void stop() {
+        running = false;
+        consumer.wakeup();
+    }
+}
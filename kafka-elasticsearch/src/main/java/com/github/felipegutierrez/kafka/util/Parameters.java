@@ -3,4 +3,18 @@ package com.github.felipegutierrez.kafka.util;
 public class Parameters {
     public final static String APP = "-app";
     public final static String ELEMENTS = "-elements";
+    public final static String MODE = "-mode";
+    public final static String COMMIT = "-commit";
+    public final static String RECORDS = "-records";
+    public final static String CACHE = "-cache";
+    public final static String METRICS = "-metrics";
+    public final static String FIELDS = "-fields";
+    public final static String GZIP = "-gzip";
+    public final static String CONNECTIONS = "-connections";
+    public final static String BUDGET = "-budget";
+    public final static String TOPIC = "-topic";
+    public final static String ID_FIELD = "-id";
+    public final static String REGISTRY = "-registry";
+    public final static String CONCURRENCY = "-concurrency";
+    public final static String RESET_OFFSETS = "-resetOffsets";
 }
@@ -0,0 +1,122 @@
+package com.github.felipegutierrez.kafka.elasticsearch.benchmark;
+
+import com.github.felipegutierrez.kafka.elasticsearch.client.ElasticSearchClientConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.local.LocalElasticsearch;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.CommitStrategy;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.IndexingMode;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.LocalSinkBenchmark;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.SinkBenchmark;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replay the same input with the bulk indexing modes against a {@link LocalElasticsearch}, once with plain request
+ * bodies and once compressed with gzip, and report the bytes sent and the throughput of each run. The other settings
+ * of the client, e.g. the connection pool, are the ones of the given {@link ElasticSearchClientConfig}.
+ * <p>
+ * On loopback the bandwidth is free, so the throughput shows the CPU cost of the compression. With a latency per
+ * byte on a real network, the gain is roughly the ratio of the bytes. Input that repeats itself, e.g. a few sample
+ * tweets replayed many times, compresses far better than a live stream, so measure the ratio on real tweets.
+ */
+public class CompressionBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(CompressionBenchmark.class);
+    private final LocalElasticsearch server;
+    private final List<ConsumerRecord<String, String>> input;
+    private final int batchSize;
+    private final ElasticSearchClientConfig clientConfig;
+
+    public CompressionBenchmark(LocalElasticsearch server, List<ConsumerRecord<String, String>> input, int batchSize) {
+        this(server, input, batchSize, new ElasticSearchClientConfig());
+    }
+
+    public CompressionBenchmark(LocalElasticsearch server, List<ConsumerRecord<String, String>> input, int batchSize,
+                                ElasticSearchClientConfig clientConfig) {
+        this.server = server;
+        this.input = input;
+        this.batchSize = batchSize;
+        this.clientConfig = clientConfig;
+    }
+
+    public List<Result> runAll() throws IOException, InterruptedException {
+        List<Result> results = new ArrayList<Result>();
+        for (IndexingMode indexingMode : new IndexingMode[]{IndexingMode.BULK, IndexingMode.PIPELINED}) {
+            for (boolean compression : new boolean[]{false, true}) {
+                Result result = run(indexingMode, compression);
+                logger.info(result.toString());
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    public Result run(IndexingMode indexingMode, boolean compression) throws IOException, InterruptedException {
+        boolean configured = clientConfig.isCompression();
+        clientConfig.setCompression(compression);
+        RestHighLevelClient client = server.createClient(clientConfig);
+        clientConfig.setCompression(configured);
+        try {
+            SinkBenchmark benchmark = new LocalSinkBenchmark(server, client, input, batchSize);
+            return new Result(compression, benchmark.run(indexingMode, CommitStrategy.ASYNC), server.getCompressedRequests());
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * @return a table with one line per run
+     */
+    public static String report(List<Result> results) {
+        StringBuilder report = new StringBuilder(String.format("%-10s %-6s %10s %10s %10s %12s %10s%n",
+                "mode", "gzip", "records", "records/s", "KB sent", "bytes/record", "p99 ms"));
+        for (Result result : results) {
+            SinkBenchmark.Result run = result.getRun();
+            report.append(String.format("%-10s %-6s %10d %10.0f %10.1f %12.1f %10.1f%n", run.getIndexingMode(),
+                    result.isCompression(), run.getRecords(), run.getRecordsPerSecond(), run.getSentBytes() / 1024.0,
+                    result.getBytesPerRecord(), run.getLatencyMs(99)));
+        }
+        return report.toString();
+    }
+
+    public static class Result {
+        private final boolean compression;
+        private final SinkBenchmark.Result run;
+        private final long compressedRequests;
+
+        Result(boolean compression, SinkBenchmark.Result run, long compressedRequests) {
+            this.compression = compression;
+            this.run = run;
+            this.compressedRequests = compressedRequests;
+        }
+
+        public boolean isCompression() {
+            return compression;
+        }
+
+        public SinkBenchmark.Result getRun() {
+            return run;
+        }
+
+        /**
+         * @return number of requests the server received compressed, the small ones are sent as they are
+         */
+        public long getCompressedRequests() {
+            return compressedRequests;
+        }
+
+        public double getBytesPerRecord() {
+            return run.getSentBytes() / (double) run.getRecords();
+        }
+
+        @Override
+        public String toString() {
+            return run.getIndexingMode() + (compression ? " with gzip: " : " without gzip: ") + run.getRecords() + " records, " +
+                    String.format("%.0f records/s, %.1f bytes/record", run.getRecordsPerSecond(), getBytesPerRecord());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.felipegutierrez.kafka.elasticsearch.benchmark;
+
+import com.github.felipegutierrez.kafka.elasticsearch.client.ElasticSearchClientConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.local.LocalElasticsearch;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.IndexingMode;
+import com.github.felipegutierrez.kafka.tweet.TweetSamples;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CompressionBenchmarkTest {
+    private static final Logger logger = LoggerFactory.getLogger(CompressionBenchmarkTest.class);
+    private static final int RECORDS = 240;
+    private LocalElasticsearch server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalElasticsearch(4).start();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void sendsTheBulksCompressed() throws Exception {
+        ElasticSearchClientConfig clientConfig = new ElasticSearchClientConfig()
+                .setMaxConnectionsPerRoute(4)
+                .setIoThreadCount(2)
+                .setKeepAliveMs(30000);
+        List<CompressionBenchmark.Result> results = new CompressionBenchmark(server, input(), 40, clientConfig).runAll();
+        logger.info("Results:\n" + CompressionBenchmark.report(results));
+
+        assertEquals(4, results.size());
+        for (int i = 0; i < results.size(); i += 2) {
+            CompressionBenchmark.Result plain = results.get(i);
+            CompressionBenchmark.Result gzip = results.get(i + 1);
+            assertFalse(plain.isCompression());
+            assertEquals(0, plain.getCompressedRequests());
+            assertTrue(gzip.isCompression());
+            assertTrue(gzip.getCompressedRequests() > 0);
+            // the tweets repeat the same field names, a bulk shrinks to a fraction
+            assertTrue(gzip.getBytesPerRecord() * 3 < plain.getBytesPerRecord());
+            assertEquals(0, gzip.getRun().getDuplicates());
+        }
+        // every document of the last run was decompressed and written
+        assertEquals(RECORDS, server.getIndexedDocuments());
+        assertFalse(clientConfig.isCompression());
+    }
+
+    @Test
+    public void sendsTheSmallRequestsAsTheyAre() throws Exception {
+        CompressionBenchmark benchmark = new CompressionBenchmark(server, input(), 40,
+                new ElasticSearchClientConfig().setCompressionMinBytes(Integer.MAX_VALUE));
+        CompressionBenchmark.Result result = benchmark.run(IndexingMode.BULK, true);
+
+        assertEquals(0, result.getCompressedRequests());
+        assertEquals(RECORDS, server.getIndexedDocuments());
+    }
+
+    private static List<ConsumerRecord<String, String>> input() {
+        List<String> tweets = TweetSamples.load();
+        List<ConsumerRecord<String, String>> input = new ArrayList<ConsumerRecord<String, String>>(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            // a distinct ID per record, so every record is indexed
+            String tweet = tweets.get(i % tweets.size()).replaceFirst("\"id_str\":\"\\d+\"", "\"id_str\":\"" + i + "\"");
+            input.add(new ConsumerRecord<String, String>("twitter_tweets", i % 3, i / 3, null, tweet));
+        }
+        return input;
+    }
+}
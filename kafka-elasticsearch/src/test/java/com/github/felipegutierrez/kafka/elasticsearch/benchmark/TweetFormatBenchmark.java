@@ -0,0 +1,85 @@
+package com.github.felipegutierrez.kafka.elasticsearch.benchmark;
+
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.ByteArrayTweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.StringTweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetFormat;
+import com.github.felipegutierrez.kafka.tweet.TweetSamples;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.elasticsearch.action.index.IndexRequest;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot path of the sink for each {@link TweetFormat}: deserialize the record value, extract the ID and set the source
+ * of the index request. Run it with the GC profiler ({@code -prof gc}) to compare the allocation rate of both modes,
+ * the {@code gc.alloc.rate.norm} column is the number of bytes allocated per batch of sample tweets.
+ * <p>
+ * Run it from the IDE or with:
+ * # mvn -pl kafka-elasticsearch -am test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * # java -cp kafka-elasticsearch/target/test-classes:kafka-elasticsearch/target/classes:$(cat kafka-elasticsearch/cp.txt) \
+ * org.openjdk.jmh.Main TweetFormatBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TweetFormatBenchmark {
+    private final StringTweetFormat stringTweetFormat = new StringTweetFormat();
+    private final ByteArrayTweetFormat byteArrayTweetFormat = new ByteArrayTweetFormat();
+    private List<byte[]> records;
+    private Deserializer<String> stringDeserializer;
+    private Deserializer<byte[]> byteArrayDeserializer;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TweetFormatBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        records = new ArrayList<byte[]>();
+        for (String tweet : TweetSamples.load()) {
+            records.add(tweet.getBytes(StandardCharsets.UTF_8));
+        }
+        // once, so the reflection and the deserializers are not part of the measure
+        stringDeserializer = stringTweetFormat.deserializer().getDeclaredConstructor().newInstance();
+        byteArrayDeserializer = byteArrayTweetFormat.deserializer().getDeclaredConstructor().newInstance();
+    }
+
+    @TearDown
+    public void tearDown() {
+        stringDeserializer.close();
+        byteArrayDeserializer.close();
+    }
+
+    @Benchmark
+    public void stringFormat(Blackhole blackhole) {
+        index(stringTweetFormat, stringDeserializer, blackhole);
+    }
+
+    @Benchmark
+    public void byteArrayFormat(Blackhole blackhole) {
+        index(byteArrayTweetFormat, byteArrayDeserializer, blackhole);
+    }
+
+    private <V> void index(TweetFormat<V> tweetFormat, Deserializer<V> deserializer, Blackhole blackhole) {
+        for (byte[] record : records) {
+            V tweet = deserializer.deserialize("twitter_tweets", record);
+            String id = tweetFormat.extractId(tweet);
+            IndexRequest request = tweetFormat.source(new IndexRequest("twitter", "tweets", id), tweet);
+            blackhole.consume(request.source());
+        }
+    }
+}
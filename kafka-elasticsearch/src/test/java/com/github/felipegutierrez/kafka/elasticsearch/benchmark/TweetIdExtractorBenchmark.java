@@ -0,0 +1,55 @@
+package com.github.felipegutierrez.kafka.elasticsearch.benchmark;
+
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetIdExtractor;
+import com.github.felipegutierrez.kafka.tweet.TweetSamples;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the streaming {@link TweetIdExtractor} with the Gson tree that the consumers used to build for every record,
+ * over the synthetic {@link TweetSamples}.
+ * <p>
+ * Run it from the IDE or with:
+ * # mvn -pl kafka-elasticsearch -am test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * # java -cp kafka-elasticsearch/target/test-classes:kafka-elasticsearch/target/classes:$(cat kafka-elasticsearch/cp.txt) \
+ * com.github.felipegutierrez.kafka.elasticsearch.benchmark.TweetIdExtractorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TweetIdExtractorBenchmark {
+    private List<String> tweets;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TweetIdExtractorBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        tweets = TweetSamples.load();
+    }
+
+    @Benchmark
+    public void gsonTree(Blackhole blackhole) {
+        for (String tweet : tweets) {
+            blackhole.consume(JsonParser.parseString(tweet).getAsJsonObject().get("id_str").getAsString());
+        }
+    }
+
+    @Benchmark
+    public void streamingReader(Blackhole blackhole) {
+        for (String tweet : tweets) {
+            blackhole.consume(TweetIdExtractor.extractId(tweet));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.felipegutierrez.kafka.elasticsearch.bulk;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveBulkSizerTest {
+
+    @Test
+    public void growsAdditivelyUpToTheMaxSize() {
+        AdaptiveBulkSizer sizer = new AdaptiveBulkSizer(100, 250, 100, 1000, 50, 0.5);
+        sizer.onBulkCompleted(200, 0);
+        assertEquals(150, sizer.getCurrentSize());
+        sizer.onBulkCompleted(200, 0);
+        sizer.onBulkCompleted(200, 0);
+        sizer.onBulkCompleted(200, 0);
+        assertEquals(250, sizer.getCurrentSize());
+    }
+
+    @Test
+    public void shrinksMultiplicativelyOnRejections() {
+        AdaptiveBulkSizer sizer = new AdaptiveBulkSizer(50, 1000, 800, 1000, 50, 0.5);
+        sizer.onBulkCompleted(200, 3);
+        assertEquals(400, sizer.getCurrentSize());
+        assertEquals(3, sizer.getRejectedDocuments());
+        assertEquals(1, sizer.getDecreases());
+    }
+
+    @Test
+    public void shrinksWhenSlowerThanTheTargetLatency() {
+        AdaptiveBulkSizer sizer = new AdaptiveBulkSizer(50, 1000, 800, 1000, 50, 0.5);
+        sizer.onBulkCompleted(1500, 0);
+        assertEquals(400, sizer.getCurrentSize());
+        assertEquals(1500, sizer.getLastLatencyMs());
+        assertEquals(0, sizer.getRejectedDocuments());
+    }
+
+    @Test
+    public void neverGoesBelowTheMinSize() {
+        AdaptiveBulkSizer sizer = new AdaptiveBulkSizer(50, 1000, 80, 1000, 50, 0.5);
+        sizer.onBulkCompleted(200, 10);
+        sizer.onBulkCompleted(200, 10);
+        assertEquals(50, sizer.getCurrentSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvertedBounds() {
+        new AdaptiveBulkSizer(500, 100, 1000);
+    }
+}
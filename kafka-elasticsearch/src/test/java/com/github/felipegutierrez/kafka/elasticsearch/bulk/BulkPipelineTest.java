@@ -0,0 +1,138 @@
+package com.github.felipegutierrez.kafka.elasticsearch.bulk;
+
+import com.github.felipegutierrez.kafka.elasticsearch.local.LocalElasticsearch;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class BulkPipelineTest {
+    private LocalElasticsearch server;
+    private RestHighLevelClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalElasticsearch(2).start();
+        client = server.createClient();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void isOverBudgetWhileTheBulksAreInFlight() throws Exception {
+        server.setLatencyMs(300);
+        BulkPipelineConfig config = new BulkPipelineConfig()
+                .setFlushActions(10)
+                .setMemoryBudgetBytes(1000);
+        BulkPipeline bulkPipeline = new BulkPipeline(client, config);
+        try {
+            add(bulkPipeline, 0, 20);
+            // both bulks wait for the server
+            assertTrue(bulkPipeline.getBufferedBytes() > 1000);
+            assertTrue(bulkPipeline.isOverBudget());
+            assertEquals(bulkPipeline.getBufferedBytes(), config.getMetrics().getBufferedBytes());
+
+            bulkPipeline.awaitCompletion();
+            assertEquals(0, bulkPipeline.getBufferedBytes());
+            assertFalse(bulkPipeline.isOverBudget());
+        } finally {
+            bulkPipeline.close();
+        }
+        assertEquals(1000, config.getMetrics().getMemoryBudgetBytes());
+        assertEquals(0, config.getMetrics().getBufferedBytes());
+        assertTrue(config.getMetrics().getMaxBufferedBytes() > 1000);
+        assertEquals(20, server.getDistinctDocuments());
+    }
+
+    @Test
+    public void staysOverBudgetUntilHalfOfItIsDrained() throws Exception {
+        BulkPipelineConfig config = new BulkPipelineConfig()
+                .setFlushActions(100)
+                .setMemoryBudgetBytes(1000);
+        BulkPipeline bulkPipeline = new BulkPipeline(client, config);
+        try {
+            // documents buffered in the current bulk count as well
+            add(bulkPipeline, 0, 5);
+            long bytesPerDocument = bulkPipeline.getBufferedBytes() / 5;
+            assertFalse(bulkPipeline.isOverBudget());
+            add(bulkPipeline, 5, (int) (1000 / bytesPerDocument));
+            assertTrue(bulkPipeline.isOverBudget());
+
+            bulkPipeline.awaitCompletion();
+            assertFalse(bulkPipeline.isOverBudget());
+        } finally {
+            bulkPipeline.close();
+        }
+    }
+
+    @Test
+    public void hasNoBudgetByDefault() throws Exception {
+        BulkPipeline bulkPipeline = new BulkPipeline(client, new BulkPipelineConfig().setFlushActions(1000));
+        try {
+            add(bulkPipeline, 0, 100);
+            assertTrue(bulkPipeline.getBufferedBytes() > 0);
+            assertFalse(bulkPipeline.isOverBudget());
+        } finally {
+            bulkPipeline.close();
+        }
+    }
+
+    @Test
+    public void sendsTheDeadLettersFromTheRetryThread() throws Exception {
+        server.setRejectionRate(1.0);
+        final List<String> sendingThreads = Collections.synchronizedList(new ArrayList<String>());
+        MockProducer<String, byte[]> producer = new MockProducer<String, byte[]>(true, new StringSerializer(), new ByteArraySerializer()) {
+            @Override
+            public synchronized Future<RecordMetadata> send(ProducerRecord<String, byte[]> record, Callback callback) {
+                sendingThreads.add(Thread.currentThread().getName());
+                return super.send(record, callback);
+            }
+        };
+        BulkPipelineConfig config = new BulkPipelineConfig()
+                .setFlushActions(2)
+                .setMaxRetries(0);
+        BulkPipeline bulkPipeline = new BulkPipeline(client, config, new DeadLetterPublisher(producer, "twitter_tweets_dlq"));
+        try {
+            add(bulkPipeline, 0, 4);
+            bulkPipeline.awaitCompletion();
+            bulkPipeline.checkFailure();
+        } finally {
+            bulkPipeline.close();
+        }
+        assertEquals(Arrays.asList("bulk-pipeline-retry", "bulk-pipeline-retry", "bulk-pipeline-retry", "bulk-pipeline-retry"),
+                sendingThreads);
+        assertEquals(4, config.getMetrics().getDeadLetteredDocuments());
+        assertEquals(4, bulkPipeline.committableOffsets().get(new TopicPartition("twitter_tweets", 0)).offset());
+    }
+
+    private static void add(BulkPipeline bulkPipeline, int from, int count) throws IOException, InterruptedException {
+        for (int offset = from; offset < from + count; offset++) {
+            String tweet = "{\"id_str\":\"" + offset + "\",\"text\":\"tweet " + offset + "\"}";
+            bulkPipeline.add(new ConsumerRecord<String, String>("twitter_tweets", 0, offset, null, tweet),
+                    new IndexRequest("twitter").id(String.valueOf(offset)).source(tweet, XContentType.JSON));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.felipegutierrez.kafka.elasticsearch.bulk;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DeadLetterPublisherTest {
+
+    @Test
+    public void sendsTheDocumentWithTheFailureInTheHeaders() {
+        MockProducer<String, byte[]> producer = new MockProducer<String, byte[]>(true, new StringSerializer(), new ByteArraySerializer());
+        DeadLetterPublisher deadLetterPublisher = new DeadLetterPublisher(producer, "twitter_tweets_dlq");
+        String tweet = "{\"id_str\":\"42\",\"text\":\"hello\"}";
+        IndexRequest request = new IndexRequest("twitter", "tweets", "42").source(tweet, XContentType.JSON);
+
+        deadLetterPublisher.publish(new RecordPosition(new TopicPartition("twitter_tweets", 3), 17L), request,
+                "mapper_parsing_exception", 400, 1, null);
+
+        assertEquals(1, producer.history().size());
+        ProducerRecord<String, byte[]> record = producer.history().get(0);
+        assertEquals("twitter_tweets_dlq", record.topic());
+        assertEquals("42", record.key());
+        assertArrayEquals(tweet.getBytes(StandardCharsets.UTF_8), record.value());
+        assertEquals("mapper_parsing_exception", header(record, DeadLetterPublisher.HEADER_REASON));
+        assertEquals("400", header(record, DeadLetterPublisher.HEADER_STATUS));
+        assertEquals("1", header(record, DeadLetterPublisher.HEADER_ATTEMPTS));
+        assertEquals("twitter_tweets", header(record, DeadLetterPublisher.HEADER_TOPIC));
+        assertEquals("3", header(record, DeadLetterPublisher.HEADER_PARTITION));
+        assertEquals("17", header(record, DeadLetterPublisher.HEADER_OFFSET));
+    }
+
+    private String header(ProducerRecord<String, byte[]> record, String key) {
+        return new String(record.headers().lastHeader(key).value(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.felipegutierrez.kafka.elasticsearch.bulk;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class OffsetTrackerTest {
+    private final TopicPartition partition0 = new TopicPartition("twitter_tweets", 0);
+    private final TopicPartition partition1 = new TopicPartition("twitter_tweets", 1);
+
+    @Test
+    public void commitsOnlyTheContiguousAcknowledgedOffsets() {
+        OffsetTracker offsetTracker = new OffsetTracker();
+        offsetTracker.register(partition0, 10L);
+        offsetTracker.register(partition0, 11L);
+        offsetTracker.register(partition0, 12L);
+
+        // the second bulk completes before the first one
+        offsetTracker.acknowledge(partition0, 11L);
+        offsetTracker.acknowledge(partition0, 12L);
+        assertTrue(offsetTracker.committableOffsets().isEmpty());
+        assertEquals(3, offsetTracker.pendingCount());
+
+        offsetTracker.acknowledge(partition0, 10L);
+        Map<TopicPartition, OffsetAndMetadata> offsets = offsetTracker.committableOffsets();
+        assertEquals(13L, offsets.get(partition0).offset());
+        assertEquals(0, offsetTracker.pendingCount());
+
+        // nothing advanced since the last call
+        assertTrue(offsetTracker.committableOffsets().isEmpty());
+    }
+
+    @Test
+    public void toleratesGapsInTheOffsets() {
+        OffsetTracker offsetTracker = new OffsetTracker();
+        offsetTracker.register(partition0, 5L);
+        offsetTracker.register(partition0, 9L);
+        offsetTracker.acknowledge(partition0, 5L);
+        offsetTracker.acknowledge(partition0, 9L);
+
+        assertEquals(10L, offsetTracker.committableOffsets().get(partition0).offset());
+    }
+
+    @Test
+    public void tracksPartitionsIndependently() {
+        OffsetTracker offsetTracker = new OffsetTracker();
+        offsetTracker.register(partition0, 0L);
+        offsetTracker.register(partition1, 0L);
+        offsetTracker.register(partition1, 1L);
+        offsetTracker.acknowledge(partition1, 0L);
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = offsetTracker.committableOffsets();
+        assertFalse(offsets.containsKey(partition0));
+        assertEquals(1L, offsets.get(partition1).offset());
+    }
+
+    @Test
+    public void ignoresUnknownOffsets() {
+        OffsetTracker offsetTracker = new OffsetTracker();
+        offsetTracker.acknowledge(partition0, 42L);
+        assertTrue(offsetTracker.committableOffsets().isEmpty());
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.felipegutierrez.kafka.elasticsearch.bulk;
+
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.Test;
+
+import java.net.ConnectException;
+
+import static org.junit.Assert.*;
+
+public class RetryBackoffTest {
+
+    @Test
+    public void delayGrowsExponentiallyUpToTheMaximum() {
+        RetryBackoff retryBackoff = new RetryBackoff(10, 100, 1000);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(retryBackoff.delayMs(1) <= 100);
+            assertTrue(retryBackoff.delayMs(3) <= 400);
+            assertTrue(retryBackoff.delayMs(10) <= 1000);
+            assertTrue(retryBackoff.delayMs(64) <= 1000);
+            assertTrue(retryBackoff.delayMs(1) >= 0);
+        }
+    }
+
+    @Test
+    public void delayIsJittered() {
+        RetryBackoff retryBackoff = new RetryBackoff(10, 100, 10000);
+        long first = retryBackoff.delayMs(8);
+        boolean different = false;
+        for (int i = 0; i < 100 && !different; i++) {
+            different = retryBackoff.delayMs(8) != first;
+        }
+        assertTrue(different);
+    }
+
+    @Test
+    public void onlyOverloadAndUnavailabilityAreRetryable() {
+        assertTrue(RetryBackoff.isRetryable(RestStatus.TOO_MANY_REQUESTS));
+        assertTrue(RetryBackoff.isRetryable(RestStatus.SERVICE_UNAVAILABLE));
+        assertFalse(RetryBackoff.isRetryable(RestStatus.BAD_REQUEST));
+        assertFalse(RetryBackoff.isRetryable(RestStatus.CONFLICT));
+
+        assertTrue(RetryBackoff.isRetryable(new ElasticsearchStatusException("rejected", RestStatus.TOO_MANY_REQUESTS)));
+        assertFalse(RetryBackoff.isRetryable(new ElasticsearchStatusException("mapping", RestStatus.BAD_REQUEST)));
+        assertTrue(RetryBackoff.isRetryable(new ConnectException("Connection refused")));
+        assertFalse(RetryBackoff.isRetryable(new IllegalStateException()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidBounds() {
+        new RetryBackoff(3, 1000, 100);
+    }
+}
@@ -0,0 +1,653 @@
+package com.github.felipegutierrez.kafka.elasticsearch.local;
+
+import com.github.felipegutierrez.kafka.elasticsearch.client.ElasticSearchClientConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.metrics.LatencyHistogram;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An in-process stand-in of an Elasticsearch cluster, so the consumers can be run and measured without network.
+ * <p>
+ * It serves the {@code _bulk} endpoint and the single document index endpoints ({@code /index/_doc/id},
+ * {@code /index/type/id}, {@code /index/_create/id}) with the response bodies of Elasticsearch 7, which the
+ * {@link RestHighLevelClient} parses as usual. The documents are not stored, only the number of times each ID was
+ * written, which gives the duplicates produced by retries and replays.
+ * <p>
+ * The behaviour of a real cluster under load is emulated with:
+ * <ul>
+ * <li>a fixed latency per request plus a latency per document,</li>
+ * <li>a number of write threads, further requests wait for a free one,</li>
+ * <li>a throughput limit in documents per second, the documents over the limit are rejected with 429 like a full
+ * write queue,</li>
+ * <li>random rejections (429) of single documents and random failures (503) of whole requests.</li>
+ * </ul>
+ * The last source of each document is kept for {@code _mget}, and the writes with an external version
+ * ({@code version_type=external} or {@code external_gte}) that is older than the stored one fail with 409 like in
+ * Elasticsearch. The settings can be changed while the server runs. The request bodies sent with {@code Content-Encoding: gzip}
+ * are decompressed like Elasticsearch does, {@link #getReceivedBytes()} counts their compressed size.
+ */
+public class LocalElasticsearch implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(LocalElasticsearch.class);
+    private final int writeThreads;
+    private final Map<String, AtomicLong> writesById = new ConcurrentHashMap<String, AtomicLong>();
+    private final Map<String, String> sourcesById = new ConcurrentHashMap<String, String>();
+    // external versions of the documents written with one, guarded by itself
+    private final Map<String, Long> externalVersionsById = new HashMap<String, Long>();
+    private final AtomicLong bulkRequests = new AtomicLong();
+    private final AtomicLong indexRequests = new AtomicLong();
+    private final AtomicLong indexedDocuments = new AtomicLong();
+    private final AtomicLong duplicateDocuments = new AtomicLong();
+    private final AtomicLong rejectedDocuments = new AtomicLong();
+    private final AtomicLong versionConflicts = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong compressedRequests = new AtomicLong();
+    private final AtomicLong generatedIds = new AtomicLong();
+    private volatile LatencyHistogram bulkLatencies = new LatencyHistogram();
+    private final Random random;
+    private volatile long latencyMs;
+    private volatile long latencyMicrosPerDocument;
+    private volatile double rejectionRate;
+    private volatile double errorRate;
+    private volatile long maxDocumentsPerSecond;
+    private HttpServer server;
+    private ExecutorService executor;
+    // token bucket of the throughput limit
+    private double availableDocuments;
+    private long lastRefillNanos = System.nanoTime();
+
+    public LocalElasticsearch() {
+        this(4);
+    }
+
+    /**
+     * @param writeThreads number of requests served concurrently, like the write thread pool of a node
+     */
+    public LocalElasticsearch(int writeThreads) {
+        this(writeThreads, 42L);
+    }
+
+    /**
+     * @param seed of the random rejections and failures, so a run can be reproduced
+     */
+    public LocalElasticsearch(int writeThreads, long seed) {
+        if (writeThreads < 1) {
+            throw new IllegalArgumentException("writeThreads must be at least 1");
+        }
+        this.writeThreads = writeThreads;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Listen on a free port of the loopback interface.
+     */
+    public LocalElasticsearch start() throws IOException {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            // otherwise Nagle and the delayed ACKs add ~40 ms to each small response, only read by the first HttpServer of the JVM
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newFixedThreadPool(writeThreads);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } catch (RuntimeException e) {
+                    logger.error("Could not serve " + exchange.getRequestURI() + ": " + e);
+                    respond(exchange, 500, error("exception", String.valueOf(e.getMessage()), 500));
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        logger.info("Local Elasticsearch listening on port " + getPort() + " with " + writeThreads + " write threads");
+        return this;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return a plain http client of this server, to be closed by the caller
+     */
+    public RestHighLevelClient createClient() {
+        return createClient(new ElasticSearchClientConfig());
+    }
+
+    /**
+     * @return a plain http client of this server with the given compression and connection pool, to be closed by the
+     * caller
+     */
+    public RestHighLevelClient createClient(ElasticSearchClientConfig clientConfig) {
+        return new RestHighLevelClient(RestClient.builder(new HttpHost(server.getAddress().getHostString(), getPort(), "http"))
+                .setHttpClientConfigCallback(clientConfig.httpClientConfigCallback()));
+    }
+
+    /**
+     * Time spent in every request before it is answered.
+     */
+    public LocalElasticsearch setLatencyMs(long latencyMs) {
+        if (latencyMs < 0) {
+            throw new IllegalArgumentException("latencyMs cannot be negative");
+        }
+        this.latencyMs = latencyMs;
+        return this;
+    }
+
+    /**
+     * Time spent for each document of a request, on top of {@link #setLatencyMs(long)}.
+     */
+    public LocalElasticsearch setLatencyMicrosPerDocument(long latencyMicrosPerDocument) {
+        if (latencyMicrosPerDocument < 0) {
+            throw new IllegalArgumentException("latencyMicrosPerDocument cannot be negative");
+        }
+        this.latencyMicrosPerDocument = latencyMicrosPerDocument;
+        return this;
+    }
+
+    /**
+     * Probability that a document is rejected with 429, independently of the others of its bulk.
+     */
+    public LocalElasticsearch setRejectionRate(double rejectionRate) {
+        if (rejectionRate < 0 || rejectionRate > 1) {
+            throw new IllegalArgumentException("rejectionRate must be between 0 and 1");
+        }
+        this.rejectionRate = rejectionRate;
+        return this;
+    }
+
+    /**
+     * Probability that a whole request fails with 503 before any of its documents is written.
+     */
+    public LocalElasticsearch setErrorRate(double errorRate) {
+        if (errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("errorRate must be between 0 and 1");
+        }
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Documents accepted per second, with bursts up to the same amount. 0 means unlimited.
+     */
+    public synchronized LocalElasticsearch setMaxDocumentsPerSecond(long maxDocumentsPerSecond) {
+        if (maxDocumentsPerSecond < 0) {
+            throw new IllegalArgumentException("maxDocumentsPerSecond cannot be negative");
+        }
+        this.maxDocumentsPerSecond = maxDocumentsPerSecond;
+        this.availableDocuments = maxDocumentsPerSecond;
+        this.lastRefillNanos = System.nanoTime();
+        return this;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/+");
+        byte[] body = readBody(exchange.getRequestBody());
+        receivedBytes.addAndGet(body.length);
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            compressedRequests.incrementAndGet();
+            body = readBody(new GZIPInputStream(new ByteArrayInputStream(body)));
+        }
+
+        if (("POST".equals(method) || "PUT".equals(method)) && "_bulk".equals(path[path.length - 1]) && path.length <= 3) {
+            long start = System.nanoTime();
+            bulkRequests.incrementAndGet();
+            int status = 200;
+            String response;
+            if (shouldFail()) {
+                status = 503;
+                response = error("unavailable_shards_exception", "primary shard is not active", 503);
+            } else {
+                String defaultIndex = path.length > 1 ? path[0] : null;
+                String defaultType = path.length > 2 ? path[1] : "_doc";
+                try {
+                    response = bulk(defaultIndex, defaultType, body);
+                } catch (IllegalArgumentException e) {
+                    status = 400;
+                    response = error("parse_exception", e.getMessage(), 400);
+                }
+            }
+            // before responding, so the client sees the latency as soon as it has the response
+            long elapsed = System.nanoTime() - start;
+            bulkLatencies.record(elapsed);
+            respond(exchange, status, response);
+        } else if (("POST".equals(method) || "PUT".equals(method)) && (path.length == 2 || path.length == 3) && !path[0].startsWith("_")) {
+            // index/_doc, index/_doc/id, index/_create/id or index/type/id
+            String id = path.length == 3 ? path[2] : generateId();
+            indexRequests.incrementAndGet();
+            if (shouldFail()) {
+                respond(exchange, 503, error("unavailable_shards_exception", "primary shard is not active", 503));
+            } else {
+                Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+                index(exchange, path[0], "_create".equals(path[1]) ? "_doc" : path[1], id,
+                        new String(body, StandardCharsets.UTF_8), query.get("version"), query.get("version_type"));
+            }
+        } else if (("GET".equals(method) || "POST".equals(method)) && "_mget".equals(path[path.length - 1]) && path.length <= 2) {
+            try {
+                respond(exchange, 200, multiGet(path.length > 1 ? path[0] : null, body));
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, error("parse_exception", e.getMessage(), 400));
+            }
+        } else if (("GET".equals(method) || "HEAD".equals(method)) && path.length == 1 && path[0].isEmpty()) {
+            respond(exchange, 200, "{\"name\":\"local\",\"cluster_name\":\"local\",\"version\":{\"number\":\"7.8.1\"},\"tagline\":\"You Know, for Search\"}");
+        } else {
+            respond(exchange, 400, error("illegal_argument_exception", "Unsupported request " + method + " " + exchange.getRequestURI(), 400));
+        }
+    }
+
+    /**
+     * @return the response of the bulk, every document is either written or rejected
+     * @throws IllegalArgumentException if an action line is not valid
+     */
+    private String bulk(String defaultIndex, String defaultType, byte[] body) {
+        String[] lines = new String(body, StandardCharsets.UTF_8).split("\n");
+        StringBuilder items = new StringBuilder();
+        boolean errors = false;
+        int documents = 0;
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].trim().isEmpty()) {
+                continue;
+            }
+            Map.Entry<String, JsonElement> operation;
+            try {
+                operation = JsonParser.parseString(lines[i]).getAsJsonObject().entrySet().iterator().next();
+            } catch (JsonParseException | IllegalStateException | NoSuchElementException e) {
+                throw new IllegalArgumentException("Malformed action/metadata line [" + (i + 1) + "]");
+            }
+            JsonObject metadata = operation.getValue().getAsJsonObject();
+            String index = metadata.has("_index") ? metadata.get("_index").getAsString() : defaultIndex;
+            String type = metadata.has("_type") ? metadata.get("_type").getAsString() : defaultType;
+            String id = metadata.has("_id") ? metadata.get("_id").getAsString() : generateId();
+            String source = null;
+            if (!"delete".equals(operation.getKey())) {
+                // the source follows the action
+                i++;
+                source = i < lines.length ? lines[i] : null;
+            }
+            if (documents++ > 0) {
+                items.append(',');
+            }
+            items.append("{\"").append(operation.getKey()).append("\":");
+            if (!acquire() || random() < rejectionRate) {
+                errors = true;
+                rejectedDocuments.incrementAndGet();
+                items.append("{\"_index\":\"").append(index).append("\",\"_type\":\"").append(type)
+                        .append("\",\"_id\":\"").append(id).append("\",\"status\":429,\"error\":")
+                        .append(cause("es_rejected_execution_exception", "rejected execution of bulk item, write queue is full"))
+                        .append('}');
+            } else if (!acceptVersion(index, id, metadata.has("version") ? metadata.get("version").getAsString() : null,
+                    metadata.has("version_type") ? metadata.get("version_type").getAsString() : null)) {
+                errors = true;
+                items.append("{\"_index\":\"").append(index).append("\",\"_type\":\"").append(type)
+                        .append("\",\"_id\":\"").append(id).append("\",\"status\":409,\"error\":")
+                        .append(cause("version_conflict_engine_exception", "[" + id + "]: version conflict, current version is higher"))
+                        .append('}');
+            } else {
+                long version = write(index, id, source);
+                items.append(writeResult(index, type, id, version, ",\"status\":" + (version == 1 ? 201 : 200)));
+            }
+            items.append('}');
+        }
+        sleep(latencyMs + TimeUnit.MICROSECONDS.toMillis(latencyMicrosPerDocument * documents));
+        return "{\"took\":" + latencyMs + ",\"errors\":" + errors + ",\"items\":[" + items + "]}";
+    }
+
+    private void index(HttpExchange exchange, String index, String type, String id, String source,
+                       String externalVersion, String versionType) throws IOException {
+        if (!acquire() || random() < rejectionRate) {
+            rejectedDocuments.incrementAndGet();
+            respond(exchange, 429, error("es_rejected_execution_exception", "rejected execution of index request, write queue is full", 429));
+            return;
+        }
+        sleep(latencyMs + TimeUnit.MICROSECONDS.toMillis(latencyMicrosPerDocument));
+        if (!acceptVersion(index, id, externalVersion, versionType)) {
+            respond(exchange, 409, error("version_conflict_engine_exception", "[" + id + "]: version conflict, current version is higher", 409));
+            return;
+        }
+        long version = write(index, id, source);
+        respond(exchange, version == 1 ? 201 : 200, writeResult(index, type, id, version, ""));
+    }
+
+    /**
+     * @return false if the write has an external version older than the one of the stored document
+     */
+    private boolean acceptVersion(String index, String id, String externalVersion, String versionType) {
+        if (externalVersion == null || versionType == null || !versionType.startsWith("external")) {
+            return true;
+        }
+        long version = Long.parseLong(externalVersion);
+        synchronized (externalVersionsById) {
+            Long current = externalVersionsById.get(index + '/' + id);
+            if (current != null && (version < current || (version == current && !"external_gte".equals(versionType)))) {
+                versionConflicts.incrementAndGet();
+                return false;
+            }
+            externalVersionsById.put(index + '/' + id, version);
+            return true;
+        }
+    }
+
+    /**
+     * @return the response with the last source of each requested document
+     * @throws IllegalArgumentException if the body is not a valid request
+     */
+    private String multiGet(String defaultIndex, byte[] body) {
+        JsonObject request;
+        try {
+            request = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IllegalArgumentException("Malformed multi get request");
+        }
+        StringBuilder docs = new StringBuilder();
+        if (request.has("docs")) {
+            for (JsonElement doc : request.getAsJsonArray("docs")) {
+                JsonObject metadata = doc.getAsJsonObject();
+                String index = metadata.has("_index") ? metadata.get("_index").getAsString() : defaultIndex;
+                appendDocument(docs, index, metadata.get("_id").getAsString());
+            }
+        } else if (request.has("ids")) {
+            for (JsonElement id : request.getAsJsonArray("ids")) {
+                appendDocument(docs, defaultIndex, id.getAsString());
+            }
+        }
+        return "{\"docs\":[" + docs + "]}";
+    }
+
+    private void appendDocument(StringBuilder docs, String index, String id) {
+        if (docs.length() > 0) {
+            docs.append(',');
+        }
+        String source = sourcesById.get(index + '/' + id);
+        AtomicLong writes = writesById.get(index + '/' + id);
+        docs.append("{\"_index\":\"").append(index).append("\",\"_type\":\"_doc\",\"_id\":\"").append(id).append('"');
+        if (source == null || writes == null) {
+            docs.append(",\"found\":false}");
+        } else {
+            docs.append(",\"_version\":").append(writes.get()).append(",\"_seq_no\":").append(writes.get() - 1)
+                    .append(",\"_primary_term\":1,\"found\":true,\"_source\":").append(source).append('}');
+        }
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(parameter.substring(0, equals), parameter.substring(equals + 1));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private long write(String index, String id, String source) {
+        if (source != null) {
+            sourcesById.put(index + '/' + id, source);
+        }
+        AtomicLong writes = writesById.get(index + '/' + id);
+        if (writes == null) {
+            AtomicLong first = new AtomicLong();
+            writes = writesById.putIfAbsent(index + '/' + id, first);
+            if (writes == null) {
+                writes = first;
+            }
+        }
+        long version = writes.incrementAndGet();
+        indexedDocuments.incrementAndGet();
+        if (version > 1) {
+            duplicateDocuments.incrementAndGet();
+        }
+        return version;
+    }
+
+    private String writeResult(String index, String type, String id, long version, String extraFields) {
+        return "{\"_index\":\"" + index + "\",\"_type\":\"" + type + "\",\"_id\":\"" + id + "\",\"_version\":" + version +
+                ",\"result\":\"" + (version == 1 ? "created" : "updated") + "\"," +
+                "\"_shards\":{\"total\":2,\"successful\":1,\"failed\":0},\"_seq_no\":" + (version - 1) +
+                ",\"_primary_term\":1" + extraFields + "}";
+    }
+
+    private String generateId() {
+        return "local-" + generatedIds.incrementAndGet();
+    }
+
+    private boolean shouldFail() {
+        if (errorRate > 0 && random() < errorRate) {
+            failedRequests.incrementAndGet();
+            sleep(latencyMs);
+            return true;
+        }
+        return false;
+    }
+
+    private double random() {
+        synchronized (random) {
+            return random.nextDouble();
+        }
+    }
+
+    /**
+     * @return true if one more document fits in the throughput limit, otherwise it must be rejected
+     */
+    private synchronized boolean acquire() {
+        if (maxDocumentsPerSecond == 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        availableDocuments = Math.min(maxDocumentsPerSecond,
+                availableDocuments + (now - lastRefillNanos) * maxDocumentsPerSecond / (double) TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+        if (availableDocuments < 1) {
+            return false;
+        }
+        availableDocuments--;
+        return true;
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String cause(String type, String reason) {
+        return "{\"type\":\"" + type + "\",\"reason\":\"" + reason.replace("\"", "'") + "\"}";
+    }
+
+    private static String error(String type, String reason, int status) {
+        return "{\"error\":{\"root_cause\":[" + cause(type, reason) + "],\"type\":\"" + type + "\",\"reason\":\"" +
+                reason.replace("\"", "'") + "\"},\"status\":" + status + "}";
+    }
+
+    public long getBulkRequests() {
+        return bulkRequests.get();
+    }
+
+    public long getIndexRequests() {
+        return indexRequests.get();
+    }
+
+    /**
+     * @return number of document writes, including the duplicates
+     */
+    public long getIndexedDocuments() {
+        return indexedDocuments.get();
+    }
+
+    /**
+     * @return number of distinct document IDs written
+     */
+    public int getDistinctDocuments() {
+        return writesById.size();
+    }
+
+    /**
+     * @return number of distinct document IDs written in the index
+     */
+    public int getDistinctDocuments(String index) {
+        int documents = 0;
+        for (String id : writesById.keySet()) {
+            if (id.startsWith(index + '/')) {
+                documents++;
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * @return number of writes of an ID that was already written, e.g. a record indexed again after a replay
+     */
+    public long getDuplicateDocuments() {
+        return duplicateDocuments.get();
+    }
+
+    /**
+     * @return number of writes of an ID that was already written in the index
+     */
+    public long getDuplicateDocuments(String index) {
+        long duplicates = 0;
+        for (Map.Entry<String, AtomicLong> writes : writesById.entrySet()) {
+            if (writes.getKey().startsWith(index + '/')) {
+                duplicates += writes.getValue().get() - 1;
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * @return the last source written with this ID, null if there is none
+     */
+    public String getSource(String index, String id) {
+        return sourcesById.get(index + '/' + id);
+    }
+
+    /**
+     * @return number of writes refused because their external version was older than the stored one
+     */
+    public long getVersionConflicts() {
+        return versionConflicts.get();
+    }
+
+    public long getRejectedDocuments() {
+        return rejectedDocuments.get();
+    }
+
+    public long getFailedRequests() {
+        return failedRequests.get();
+    }
+
+    /**
+     * @return number of bytes of the request bodies as sent, compressed or not
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * @return number of requests sent with {@code Content-Encoding: gzip}
+     */
+    public long getCompressedRequests() {
+        return compressedRequests.get();
+    }
+
+    /**
+     * @return the time spent serving each bulk request since the last {@link #reset()}, injected latency included,
+     * the caller can keep it because the reset starts a new one
+     */
+    public LatencyHistogram getBulkLatencies() {
+        return bulkLatencies;
+    }
+
+    /**
+     * Forget the written documents and the counters, e.g. between two benchmark runs.
+     */
+    public void reset() {
+        writesById.clear();
+        sourcesById.clear();
+        synchronized (externalVersionsById) {
+            externalVersionsById.clear();
+        }
+        versionConflicts.set(0);
+        bulkRequests.set(0);
+        indexRequests.set(0);
+        indexedDocuments.set(0);
+        duplicateDocuments.set(0);
+        rejectedDocuments.set(0);
+        failedRequests.set(0);
+        receivedBytes.set(0);
+        compressedRequests.set(0);
+        bulkLatencies = new LatencyHistogram();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+}
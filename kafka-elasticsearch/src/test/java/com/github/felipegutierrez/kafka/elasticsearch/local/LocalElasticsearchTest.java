@@ -0,0 +1,190 @@
+package com.github.felipegutierrez.kafka.elasticsearch.local;
+
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.RetryBackoff;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class LocalElasticsearchTest {
+    private LocalElasticsearch server;
+    private RestHighLevelClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalElasticsearch(2).start();
+        client = server.createClient();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void indexesBulksAndCountsTheDuplicates() throws IOException {
+        BulkResponse first = client.bulk(bulk("1", "2", "3"), RequestOptions.DEFAULT);
+        assertFalse(first.hasFailures());
+        assertEquals(3, first.getItems().length);
+        assertEquals(DocWriteResponse.Result.CREATED, first.getItems()[0].getResponse().getResult());
+        assertEquals("2", first.getItems()[1].getId());
+
+        BulkResponse replay = client.bulk(bulk("3", "4"), RequestOptions.DEFAULT);
+        assertEquals(DocWriteResponse.Result.UPDATED, replay.getItems()[0].getResponse().getResult());
+        assertEquals(2L, replay.getItems()[0].getVersion());
+
+        assertEquals(2, server.getBulkRequests());
+        assertEquals(5, server.getIndexedDocuments());
+        assertEquals(4, server.getDistinctDocuments());
+        assertEquals(1, server.getDuplicateDocuments());
+        assertEquals(2, server.getBulkLatencies().getTotalCount());
+    }
+
+    @Test
+    public void indexesSingleDocuments() throws IOException {
+        IndexResponse response = client.index(new IndexRequest("twitter", "tweets", "42")
+                .source("{\"id_str\":\"42\"}", XContentType.JSON), RequestOptions.DEFAULT);
+
+        assertEquals(RestStatus.CREATED, response.status());
+        assertEquals("42", response.getId());
+        assertEquals(1, server.getIndexRequests());
+        assertEquals(1, server.getDistinctDocuments());
+    }
+
+    @Test
+    public void rejectsTheDocumentsWithTooManyRequests() throws IOException {
+        server.setRejectionRate(1.0);
+        BulkResponse response = client.bulk(bulk("1", "2"), RequestOptions.DEFAULT);
+
+        assertTrue(response.hasFailures());
+        for (BulkItemResponse item : response.getItems()) {
+            assertEquals(RestStatus.TOO_MANY_REQUESTS, item.status());
+            assertTrue(RetryBackoff.isRetryable(item.getFailure().getStatus()));
+        }
+        assertEquals(2, server.getRejectedDocuments());
+        assertEquals(0, server.getDistinctDocuments());
+
+        try {
+            client.index(new IndexRequest("twitter", "tweets", "1").source("{}", XContentType.JSON), RequestOptions.DEFAULT);
+            fail("the document should be rejected");
+        } catch (ElasticsearchStatusException e) {
+            assertEquals(RestStatus.TOO_MANY_REQUESTS, e.status());
+        }
+    }
+
+    @Test
+    public void failsWholeRequests() throws IOException {
+        server.setErrorRate(1.0);
+        try {
+            client.bulk(bulk("1"), RequestOptions.DEFAULT);
+            fail("the bulk should fail");
+        } catch (ElasticsearchStatusException e) {
+            assertEquals(RestStatus.SERVICE_UNAVAILABLE, e.status());
+            assertTrue(RetryBackoff.isRetryable(e));
+        }
+        assertEquals(1, server.getFailedRequests());
+        assertEquals(0, server.getIndexedDocuments());
+    }
+
+    @Test
+    public void rejectsTheDocumentsOverTheThroughputLimit() throws IOException {
+        server.setMaxDocumentsPerSecond(10);
+        String[] ids = new String[25];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = String.valueOf(i);
+        }
+        BulkResponse response = client.bulk(bulk(ids), RequestOptions.DEFAULT);
+
+        int rejected = 0;
+        for (BulkItemResponse item : response.getItems()) {
+            if (item.isFailed()) {
+                rejected++;
+            }
+        }
+        // the bucket refills while the bulk is served, hence a little more than the burst may go through
+        assertTrue(rejected >= 13 && rejected <= 15);
+        assertEquals(25 - rejected, server.getDistinctDocuments());
+    }
+
+    @Test
+    public void refusesTheWritesWithAnOlderExternalVersion() throws IOException {
+        BulkRequest bulkRequest = new BulkRequest()
+                .add(versioned("offset", 5, VersionType.EXTERNAL_GTE))
+                .add(versioned("offset", 3, VersionType.EXTERNAL_GTE))
+                .add(versioned("offset", 5, VersionType.EXTERNAL_GTE));
+        BulkResponse response = client.bulk(bulkRequest, RequestOptions.DEFAULT);
+
+        assertFalse(response.getItems()[0].isFailed());
+        assertEquals(RestStatus.CONFLICT, response.getItems()[1].status());
+        assertFalse(response.getItems()[2].isFailed());
+        try {
+            client.index(versioned("offset", 5, VersionType.EXTERNAL), RequestOptions.DEFAULT);
+            fail("the same version should conflict");
+        } catch (ElasticsearchStatusException e) {
+            assertEquals(RestStatus.CONFLICT, e.status());
+        }
+        assertEquals(2, server.getVersionConflicts());
+        assertEquals("{\"offset\":5}", server.getSource("offsets", "offset"));
+    }
+
+    @Test
+    public void getsTheLastSourceOfTheDocuments() throws IOException {
+        client.bulk(bulk("1", "2"), RequestOptions.DEFAULT);
+        client.bulk(new BulkRequest().add(new IndexRequest("twitter").id("2").source("{\"id_str\":\"two\"}", XContentType.JSON)),
+                RequestOptions.DEFAULT);
+        MultiGetResponse response = client.mget(new MultiGetRequest()
+                .add("twitter", "2")
+                .add("twitter", "3")
+                .add("other", "1"), RequestOptions.DEFAULT);
+
+        assertEquals(3, response.getResponses().length);
+        GetResponse found = response.getResponses()[0].getResponse();
+        assertTrue(found.isExists());
+        assertEquals(2L, found.getVersion());
+        assertEquals("two", found.getSourceAsMap().get("id_str"));
+        assertFalse(response.getResponses()[1].getResponse().isExists());
+        assertFalse(response.getResponses()[2].getResponse().isExists());
+    }
+
+    @Test
+    public void addsTheConfiguredLatency() throws IOException {
+        server.setLatencyMs(20).setLatencyMicrosPerDocument(10000);
+        client.bulk(bulk("1", "2"), RequestOptions.DEFAULT);
+
+        assertTrue(server.getBulkLatencies().getTotalPercentileMs(100) >= 40);
+    }
+
+    private static IndexRequest versioned(String id, long version, VersionType versionType) {
+        return new IndexRequest("offsets").id(id)
+                .source("{\"offset\":" + version + "}", XContentType.JSON)
+                .versionType(versionType)
+                .version(version);
+    }
+
+    private static BulkRequest bulk(String... ids) {
+        BulkRequest bulkRequest = new BulkRequest();
+        for (String id : ids) {
+            bulkRequest.add(new IndexRequest("twitter", "tweets", id).source("{\"id_str\":\"" + id + "\"}", XContentType.JSON));
+        }
+        return bulkRequest;
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.felipegutierrez.kafka.elasticsearch.metrics;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SinkMetricsTest {
+    private final TopicPartition partition0 = new TopicPartition("twitter_tweets", 0);
+    private final TopicPartition partition1 = new TopicPartition("twitter_tweets", 1);
+
+    @Test
+    public void computesTheLatencyPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(ms));
+        }
+
+        assertEquals(50.0, histogram.getPercentileMs(50), 0.1);
+        assertEquals(99.0, histogram.getPercentileMs(99), 0.1);
+        assertEquals(100.0, histogram.getMaxMs(), 0.1);
+        assertEquals(100, histogram.getTotalCount());
+        assertEquals(5.05, histogram.getTotalSeconds(), 0.01);
+    }
+
+    @Test
+    public void forgetsTheOldWindowsInThePercentiles() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram(20);
+        histogram.record(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(10000.0, histogram.getMaxMs(), 10);
+
+        // the slow request moves to the previous window, then out
+        Thread.sleep(25);
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.getMaxMs();
+        Thread.sleep(25);
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(2));
+
+        assertEquals(2.0, histogram.getMaxMs(), 0.01);
+        assertEquals(3, histogram.getTotalCount());
+    }
+
+    @Test
+    public void keepsTheWholeRunInTheTotalPercentilesAndBuckets() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram(20);
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(300));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(7));
+        histogram.getMaxMs();
+        // out of the recent windows, not of the total
+        Thread.sleep(50);
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+        histogram.getMaxMs();
+        Thread.sleep(25);
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(40));
+
+        assertEquals("<1ms:1 <2ms:1 <8ms:2 <64ms:1", histogram.getTotalBuckets());
+        assertEquals(5.0, histogram.getTotalPercentileMs(60), 0.01);
+        assertEquals(40.0, histogram.getTotalPercentileMs(100), 0.05);
+        assertEquals(40.0, histogram.getMaxMs(), 0.05);
+        assertEquals("", new LatencyHistogram().getTotalBuckets());
+        assertEquals(0.0, new LatencyHistogram().getTotalPercentileMs(99), 0.0);
+    }
+
+    @Test
+    public void countsFromManyThreads() throws InterruptedException {
+        final SinkMetrics metrics = new SinkMetrics();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        metrics.recordIndexed(1);
+                        metrics.recordBulk(100, TimeUnit.MILLISECONDS.toNanos(5), 1);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, metrics.getIndexedDocuments());
+        assertEquals(40000, metrics.getBulkRequests());
+        assertEquals(40000, metrics.getRejectedDocuments());
+        assertEquals(4000000, metrics.getSentBytes());
+        assertEquals(5.0, metrics.getBulkLatencyP99Ms(), 0.01);
+    }
+
+    @Test
+    public void computesTheLagOfThePartitionsWithoutFetchMetrics() {
+        MockConsumer<String, String> consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(Arrays.asList(partition0, partition1));
+        Map<TopicPartition, Long> offsets = new HashMap<TopicPartition, Long>();
+        offsets.put(partition0, 0L);
+        offsets.put(partition1, 0L);
+        consumer.updateBeginningOffsets(offsets);
+        consumer.addRecord(new ConsumerRecord<String, String>(partition0.topic(), 0, 0L, null, "{}"));
+        consumer.poll(Duration.ZERO);
+        offsets.put(partition0, 10L);
+        offsets.put(partition1, 4L);
+        consumer.updateEndOffsets(offsets);
+
+        SinkMetrics metrics = new SinkMetrics(0);
+        metrics.updateLag(consumer);
+        assertEquals(Long.valueOf(9L), metrics.getPartitionLag().get("twitter_tweets-0"));
+        assertEquals(Long.valueOf(4L), metrics.getPartitionLag().get("twitter_tweets-1"));
+        assertEquals(13, metrics.getTotalLag());
+
+        // a revoked partition disappears
+        consumer.assign(Collections.singletonList(partition0));
+        metrics.updateLag(consumer);
+        assertEquals(1, metrics.getPartitionLag().size());
+    }
+
+    @Test
+    public void servesThePrometheusFormat() throws IOException {
+        SinkMetrics metrics = new SinkMetrics();
+        metrics.recordPolled(3);
+        metrics.recordIndexed(2);
+        metrics.recordSkipped();
+        metrics.recordBulk(512, TimeUnit.MILLISECONDS.toNanos(20), 0);
+        metrics.recordEndToEnd(1000L, 1250L);
+
+        try (MetricsHttpServer server = new MetricsHttpServer(metrics, 0)) {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + "/metrics").openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+            String body = read(connection.getInputStream());
+
+            assertTrue(body.contains("# TYPE es_sink_polled_records_total counter\nes_sink_polled_records_total 3\n"));
+            assertTrue(body.contains("es_sink_indexed_documents_total 2\n"));
+            assertTrue(body.contains("es_sink_skipped_records_total 1\n"));
+            assertTrue(body.contains("es_sink_sent_bytes_total 512\n"));
+            assertTrue(body.contains("es_sink_bulk_latency_seconds_count 1\n"));
+            assertTrue(body.contains("es_sink_end_to_end_latency_seconds{quantile=\"0.5\"} 0.25"));
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
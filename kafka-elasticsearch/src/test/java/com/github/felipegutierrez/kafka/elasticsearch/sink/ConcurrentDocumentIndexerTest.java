@@ -0,0 +1,98 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import com.github.felipegutierrez.kafka.elasticsearch.local.LocalElasticsearch;
+import com.github.felipegutierrez.kafka.elasticsearch.metrics.SinkMetrics;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentDocumentIndexerTest {
+    private final TopicPartition partition = new TopicPartition("twitter_tweets", 0);
+    private LocalElasticsearch server;
+    private RestHighLevelClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalElasticsearch(16).start();
+        client = server.createClient();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void indexesTheDocumentsOfAPollConcurrently() throws Exception {
+        server.setLatencyMs(100);
+        SinkMetrics metrics = new SinkMetrics();
+        ConcurrentDocumentIndexer indexer = new ConcurrentDocumentIndexer(client, 8, metrics);
+        long start = System.nanoTime();
+        try {
+            index(indexer, 16);
+            indexer.afterPoll();
+        } finally {
+            indexer.close();
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // two waves of 8 requests instead of 16 round trips one after the other
+        assertTrue("took " + elapsedMs + " ms", elapsedMs < 16 * 100 / 2);
+        assertEquals(16L, indexer.committableOffsets().get(partition).offset());
+        assertEquals(16, server.getDistinctDocuments());
+        assertEquals(16, metrics.getIndexedDocuments());
+    }
+
+    @Test
+    public void failsThePollWhenADocumentIsRejected() throws Exception {
+        server.setRejectionRate(1.0);
+        ConcurrentDocumentIndexer indexer = new ConcurrentDocumentIndexer(client, 4, new SinkMetrics());
+        try {
+            index(indexer, 3);
+            indexer.afterPoll();
+            fail("the rejected documents should fail the poll");
+        } catch (IOException e) {
+            // nothing of the poll is committed
+            assertTrue(indexer.committableOffsets().isEmpty());
+        } finally {
+            indexer.close();
+        }
+    }
+
+    @Test
+    public void countsTheStagedDocumentsThatCannotBeSent() throws Exception {
+        LocalElasticsearch stopped = new LocalElasticsearch(1).start();
+        RestHighLevelClient stoppedClient = stopped.createClient();
+        stopped.close();
+        SinkMetrics metrics = new SinkMetrics();
+        ConcurrentDocumentIndexer indexer = new ConcurrentDocumentIndexer(stoppedClient, 4, metrics);
+        try {
+            // the connection is refused, the position is written again with the next poll
+            indexer.stage(new IndexRequest("kafka_offsets").id("twitter-group-twitter_tweets-0")
+                    .source("{\"offset\":3}", XContentType.JSON));
+        } finally {
+            indexer.close();
+            stoppedClient.close();
+        }
+        assertEquals(1, metrics.getFailedStagedDocuments());
+    }
+
+    private void index(ConcurrentDocumentIndexer indexer, int count) throws IOException, InterruptedException {
+        for (int offset = 0; offset < count; offset++) {
+            String tweet = "{\"id_str\":\"" + offset + "\",\"text\":\"tweet " + offset + "\"}";
+            indexer.index(new ConsumerRecord<String, String>(partition.topic(), partition.partition(), offset, null, tweet),
+                    new IndexRequest("twitter").id(String.valueOf(offset)).source(tweet, XContentType.JSON));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.BulkPipelineConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.local.LocalElasticsearch;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.StringTweetFormat;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ElasticSearchOffsetStoreTest {
+    private final TopicPartition partition = new TopicPartition("twitter_tweets", 0);
+    private LocalElasticsearch server;
+    private RestHighLevelClient client;
+    private ElasticSearchOffsetStore offsetStore;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalElasticsearch(2).start();
+        client = server.createClient();
+        offsetStore = new ElasticSearchOffsetStore(client, "kafka_offsets", "twitter-group");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void loadsTheStoredOffsetsOnly() throws IOException {
+        TopicPartition partition1 = new TopicPartition("twitter_tweets", 1);
+        offsetStore.store(Collections.singletonMap(partition, new OffsetAndMetadata(42L)));
+
+        Map<TopicPartition, Long> offsets = offsetStore.load(Arrays.asList(partition, partition1));
+        assertEquals(Collections.singletonMap(partition, 42L), offsets);
+        // another group has a position of its own
+        assertTrue(new ElasticSearchOffsetStore(client, "kafka_offsets", "other-group").load(Collections.singleton(partition)).isEmpty());
+    }
+
+    @Test
+    public void doesNotMoveThePositionBack() throws IOException {
+        offsetStore.store(Collections.singletonMap(partition, new OffsetAndMetadata(42L)));
+        // e.g. a bulk retried after a newer one
+        offsetStore.store(Collections.singletonMap(partition, new OffsetAndMetadata(10L)));
+
+        assertEquals(42L, (long) offsetStore.load(Collections.singleton(partition)).get(partition));
+        assertEquals(1, server.getVersionConflicts());
+    }
+
+    @Test
+    public void resetMovesThePositionBackAndRejectsTheOlderGenerations() throws IOException {
+        offsetStore.store(Collections.singletonMap(partition, new OffsetAndMetadata(42L)));
+        offsetStore.reset(Collections.singletonMap(partition, new OffsetAndMetadata(10L)));
+        assertEquals(10L, (long) offsetStore.load(Collections.singleton(partition)).get(partition));
+
+        // a position written before the reset, e.g. by a bulk retried late
+        new ElasticSearchOffsetStore(client, "kafka_offsets", "twitter-group")
+                .store(Collections.singletonMap(partition, new OffsetAndMetadata(50L)));
+        assertEquals(10L, (long) offsetStore.load(Collections.singleton(partition)).get(partition));
+        // the positions of the new generation move forward as usual
+        offsetStore.store(Collections.singletonMap(partition, new OffsetAndMetadata(12L)));
+        assertEquals(12L, (long) offsetStore.load(Collections.singleton(partition)).get(partition));
+        // another store loads the generation with the position
+        ElasticSearchOffsetStore restarted = new ElasticSearchOffsetStore(client, "kafka_offsets", "twitter-group");
+        restarted.load(Collections.singleton(partition));
+        restarted.store(Collections.singletonMap(partition, new OffsetAndMetadata(14L)));
+        assertEquals(14L, (long) offsetStore.load(Collections.singleton(partition)).get(partition));
+    }
+
+    @Test
+    public void countsTheStagedPositionsThatCouldNotBeWritten() throws Exception {
+        offsetStore.store(Collections.singletonMap(partition, new OffsetAndMetadata(42L)));
+        BulkPipelineConfig config = new BulkPipelineConfig().setMaxRetries(1).setBackoffMs(1, 1);
+        BulkIndexer indexer = new BulkIndexer(client, config, null);
+        // older than the stored position, not a failure
+        indexer.stage(offsetStore.indexRequest(partition, new OffsetAndMetadata(10L)));
+        indexer.flush();
+        assertEquals(0, config.getMetrics().getFailedStagedDocuments());
+
+        server.setRejectionRate(1.0);
+        indexer.stage(offsetStore.indexRequest(partition, new OffsetAndMetadata(50L)));
+        indexer.flush();
+        assertEquals(1, config.getMetrics().getFailedStagedDocuments());
+        indexer.close();
+    }
+
+    @Test
+    public void storesThePositionWithTheBulksAndResumesFromIt() throws Exception {
+        run(0, 6);
+        assertEquals(6L, (long) offsetStore.load(Collections.singleton(partition)).get(partition));
+        assertEquals(6, server.getDistinctDocuments("twitter"));
+
+        // a new consumer, without any offset committed to Kafka, starts where the first one stopped
+        MockConsumer<String, String> consumer = run(6, 4);
+        assertEquals(10L, consumer.position(partition));
+        assertEquals(10, server.getDistinctDocuments("twitter"));
+        assertEquals(0, server.getDuplicateDocuments("twitter"));
+        assertNull(consumer.committed(Collections.singleton(partition)).get(partition));
+    }
+
+    @Test
+    public void resetsTheStoredPositionToTheOneOfTheConsumer() throws Exception {
+        run(0, 6);
+        assertEquals(6L, (long) offsetStore.load(Collections.singleton(partition)).get(partition));
+
+        // e.g. the consumer group was reset to the earliest offsets to reindex the topic
+        MockConsumer<String, String> consumer = run(0, 4, true);
+        assertEquals(4L, consumer.position(partition));
+        assertEquals(4L, (long) offsetStore.load(Collections.singleton(partition)).get(partition));
+        // the next run resumes from the new position
+        consumer = run(4, 1);
+        assertEquals(5L, consumer.position(partition));
+    }
+
+    private MockConsumer<String, String> run(int from, int count) throws Exception {
+        return run(from, count, false);
+    }
+
+    private MockConsumer<String, String> run(final int from, final int count, boolean resetStoredOffsets) throws Exception {
+        final MockConsumer<String, String> consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(Collections.singletonList(partition));
+        consumer.updateBeginningOffsets(Collections.singletonMap(partition, 0L));
+        consumer.schedulePollTask(new Runnable() {
+            @Override
+            public void run() {
+                // the records before the stored position are available too, the sink must seek past them
+                for (int offset = 0; offset < from + count; offset++) {
+                    consumer.addRecord(new ConsumerRecord<String, String>(partition.topic(), partition.partition(), offset, null,
+                            "{\"id_str\":\"" + offset + "\",\"text\":\"tweet " + offset + "\"}"));
+                }
+            }
+        });
+        ElasticSearchSinkConfig config = new ElasticSearchSinkConfig()
+                .setIndexingMode(IndexingMode.BULK)
+                .setCommitStrategy(CommitStrategy.ELASTICSEARCH)
+                .setBulkPipelineConfig(new BulkPipelineConfig().setFlushActions(4))
+                .setMaxRecords(count)
+                .setResetStoredOffsets(resetStoredOffsets);
+        new ElasticSearchSink<String>(consumer, new BulkIndexer(client, config.getBulkPipelineConfig(), null),
+                new StringTweetFormat(), config)
+                .setOffsetStore(offsetStore)
+                .run();
+        return consumer;
+    }
+}
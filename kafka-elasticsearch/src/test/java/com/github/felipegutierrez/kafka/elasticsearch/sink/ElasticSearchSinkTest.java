@@ -0,0 +1,394 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.OffsetTracker;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.StringTweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetProjection;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.consumer.RetriableCommitFailedException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class ElasticSearchSinkTest {
+    private final TopicPartition partition = new TopicPartition("twitter_tweets", 0);
+    private MockConsumer<String, String> consumer;
+    private final List<Map<TopicPartition, OffsetAndMetadata>> commits = new ArrayList<Map<TopicPartition, OffsetAndMetadata>>();
+    private final OffsetCommitCallback commitListener = new OffsetCommitCallback() {
+        @Override
+        public void onComplete(Map<TopicPartition, OffsetAndMetadata> offsets, Exception exception) {
+            commits.add(offsets);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(Collections.singletonList(partition));
+        consumer.updateBeginningOffsets(Collections.singletonMap(partition, 0L));
+    }
+
+    @Test
+    public void perBatchSyncCommitsOncePerPoll() throws Exception {
+        schedulePoll(0, 3);
+        schedulePoll(3, 3);
+        run(new RecordingIndexer(true), CommitStrategy.PER_BATCH_SYNC, 6);
+
+        // one per poll and the final one
+        assertEquals(3, commits.size());
+        assertEquals(3L, commits.get(0).get(partition).offset());
+        assertEquals(6L, consumer.committed(Collections.singleton(partition)).get(partition).offset());
+    }
+
+    @Test
+    public void perRecordCommitsEveryIndexedRecord() throws Exception {
+        schedulePoll(0, 3);
+        run(new RecordingIndexer(true), CommitStrategy.PER_RECORD, 3);
+
+        assertEquals(4, commits.size());
+        assertEquals(3L, consumer.committed(Collections.singleton(partition)).get(partition).offset());
+    }
+
+    @Test
+    public void asyncCommitsThePolledRecords() throws Exception {
+        schedulePoll(0, 4);
+        run(new RecordingIndexer(true), CommitStrategy.ASYNC, 4);
+
+        assertEquals(4L, consumer.committed(Collections.singleton(partition)).get(partition).offset());
+    }
+
+    @Test
+    public void asyncRetriesAFailedCommitWithTheNextOne() throws Exception {
+        final TopicPartition partition1 = new TopicPartition("twitter_tweets", 1);
+        consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST) {
+            private boolean failed;
+
+            @Override
+            public synchronized void commitAsync(Map<TopicPartition, OffsetAndMetadata> offsets, OffsetCommitCallback callback) {
+                if (!failed) {
+                    failed = true;
+                    callback.onComplete(offsets, new RetriableCommitFailedException("coordinator not available"));
+                } else {
+                    super.commitAsync(offsets, callback);
+                }
+            }
+        };
+        consumer.assign(Arrays.asList(partition, partition1));
+        consumer.updateBeginningOffsets(Collections.singletonMap(partition, 0L));
+        consumer.updateBeginningOffsets(Collections.singletonMap(partition1, 0L));
+        schedulePoll(0, 2);
+        consumer.schedulePollTask(new Runnable() {
+            @Override
+            public void run() {
+                // only partition 1 advances, the failed commit of partition 0 is retried with it
+                consumer.addRecord(new ConsumerRecord<String, String>(partition1.topic(), partition1.partition(), 0L, null, tweet(10)));
+            }
+        });
+        run(new RecordingIndexer(true), new ElasticSearchSinkConfig()
+                .setCommitStrategy(CommitStrategy.ASYNC)
+                .setMaxBatches(2));
+
+        Map<TopicPartition, OffsetAndMetadata> retried = commits.get(0);
+        assertEquals(2L, retried.get(partition).offset());
+        assertEquals(1L, retried.get(partition1).offset());
+    }
+
+    @Test
+    public void stopWakesUpThePollAndCommitsTheProcessedOffsets() throws Exception {
+        RecordingIndexer indexer = new RecordingIndexer(false);
+        final ElasticSearchSink<String> sink = sink(indexer, new ElasticSearchSinkConfig().setCommitStrategy(CommitStrategy.ASYNC));
+        schedulePoll(0, 3);
+        consumer.schedulePollTask(new Runnable() {
+            @Override
+            public void run() {
+                // e.g. the shutdown hook
+                sink.stop();
+            }
+        });
+        sink.run();
+
+        assertEquals(3L, consumer.committed(Collections.singleton(partition)).get(partition).offset());
+        assertTrue(indexer.closed);
+    }
+
+    @Test
+    public void revocationCommitsTheProcessedOffsetsSynchronously() throws Exception {
+        RecordingIndexer indexer = new RecordingIndexer(false);
+        final RecentlyIndexedIdCache cache = new RecentlyIndexedIdCache(1024 * 1024);
+        final ElasticSearchSink<String> sink = sink(indexer, new ElasticSearchSinkConfig()
+                .setCommitStrategy(CommitStrategy.ASYNC)
+                .setRecentlyIndexedIdCache(cache));
+        schedulePoll(0, 3);
+        consumer.schedulePollTask(new Runnable() {
+            @Override
+            public void run() {
+                sink.rebalanceListener().onPartitionsRevoked(Collections.singletonList(partition));
+                assertEquals(3L, consumer.committed(Collections.singleton(partition)).get(partition).offset());
+                // another consumer indexes the partition now
+                assertFalse(cache.contains(partition, "1000"));
+                sink.stop();
+            }
+        });
+        sink.run();
+
+        assertEquals(1, commits.size());
+    }
+
+    @Test
+    public void autoCommitLeavesTheCommitsToTheConsumer() throws Exception {
+        schedulePoll(0, 2);
+        run(new RecordingIndexer(true), CommitStrategy.AUTO, 2);
+
+        assertNull(consumer.committed(Collections.singleton(partition)).get(partition));
+        // the listener still learns when the records are indexed
+        assertEquals(2L, commits.get(0).get(partition).offset());
+    }
+
+    @Test
+    public void commitsOnlyTheIndexedRecords() throws Exception {
+        schedulePoll(0, 3);
+        RecordingIndexer indexer = new RecordingIndexer(false);
+        run(indexer, CommitStrategy.PER_BATCH_SYNC, 3);
+
+        // nothing was acknowledged before the final flush
+        assertEquals(1, commits.size());
+        assertEquals(3, indexer.indexed.size());
+        assertTrue(indexer.closed);
+    }
+
+    @Test
+    public void skipsTweetsWithoutId() throws Exception {
+        consumer.schedulePollTask(new Runnable() {
+            @Override
+            public void run() {
+                consumer.addRecord(new ConsumerRecord<String, String>(partition.topic(), partition.partition(), 0L, null, tweet(0)));
+                consumer.addRecord(new ConsumerRecord<String, String>(partition.topic(), partition.partition(), 1L, null, "{\"text\":\"no id\"}"));
+            }
+        });
+        RecordingIndexer indexer = new RecordingIndexer(true);
+        run(indexer, CommitStrategy.PER_BATCH_SYNC, 2);
+
+        assertEquals(1, indexer.indexed.size());
+        assertEquals("1000", indexer.indexed.get(0).id());
+        assertEquals(2L, consumer.committed(Collections.singleton(partition)).get(partition).offset());
+    }
+
+    @Test
+    public void skipsTheTweetsIndexedRecently() throws Exception {
+        schedulePoll(0, 3);
+        // the same tweets again, e.g. replayed after a rebalance
+        consumer.schedulePollTask(new Runnable() {
+            @Override
+            public void run() {
+                consumer.seek(partition, 0L);
+            }
+        });
+        schedulePoll(0, 3);
+        RecordingIndexer indexer = new RecordingIndexer(true);
+        RecentlyIndexedIdCache cache = new RecentlyIndexedIdCache(1024 * 1024);
+        run(indexer, new ElasticSearchSinkConfig()
+                .setRecentlyIndexedIdCache(cache)
+                .setMaxRecords(6));
+
+        assertEquals(3, indexer.indexed.size());
+        assertEquals(3, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void indexesTheProjectedTweetsWithTheIdOfTheWholeTweets() throws Exception {
+        schedulePoll(0, 2);
+        RecordingIndexer indexer = new RecordingIndexer(true);
+        ElasticSearchSinkConfig config = new ElasticSearchSinkConfig()
+                .setProjection(new TweetProjection("text"))
+                .setMaxRecords(2);
+        run(indexer, config);
+
+        assertEquals(2, indexer.indexed.size());
+        IndexRequest request = (IndexRequest) indexer.indexed.get(1);
+        assertEquals("1001", request.id());
+        assertEquals("{\"text\":\"tweet 1\"}", request.source().utf8ToString());
+        assertEquals(request.source().length(), config.getMetrics().getIndexedBytesPerDocument(), 1.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAProjectionTheFormatCannotApply() {
+        final StringTweetFormat json = new StringTweetFormat();
+        TweetFormat<String> format = new TweetFormat<String>() {
+            @Override
+            public Class<? extends Deserializer<String>> deserializer() {
+                return json.deserializer();
+            }
+
+            @Override
+            public void configure(Properties consumerProperties) {
+            }
+
+            @Override
+            public String extractId(String tweet) {
+                return json.extractId(tweet);
+            }
+
+            @Override
+            public IndexRequest source(IndexRequest request, String tweet) {
+                return json.source(request, tweet);
+            }
+
+            @Override
+            public String describe(String tweet) {
+                return tweet;
+            }
+        };
+        new ElasticSearchSink<String>(consumer, new RecordingIndexer(true), format,
+                new ElasticSearchSinkConfig().setProjection(new TweetProjection("text")));
+    }
+
+    @Test
+    public void pausesThePartitionsWhileTheIndexerIsOverBudget() throws Exception {
+        final RecordingIndexer indexer = new RecordingIndexer(true);
+        consumer.schedulePollTask(new Runnable() {
+            @Override
+            public void run() {
+                for (int offset = 0; offset < 3; offset++) {
+                    consumer.addRecord(new ConsumerRecord<String, String>(partition.topic(), partition.partition(), offset, null, tweet(offset)));
+                }
+                indexer.overBudget = true;
+            }
+        });
+        consumer.schedulePollTask(new Runnable() {
+            @Override
+            public void run() {
+                assertEquals(Collections.singleton(partition), consumer.paused());
+                // not returned while the partition is paused
+                for (int offset = 3; offset < 6; offset++) {
+                    consumer.addRecord(new ConsumerRecord<String, String>(partition.topic(), partition.partition(), offset, null, tweet(offset)));
+                }
+                indexer.overBudget = false;
+            }
+        });
+        consumer.schedulePollTask(new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(consumer.paused().isEmpty());
+                assertEquals(3, indexer.indexed.size());
+            }
+        });
+        ElasticSearchSinkConfig config = new ElasticSearchSinkConfig().setMaxRecords(6);
+        run(indexer, config);
+
+        assertEquals(6, indexer.indexed.size());
+        assertEquals(1, config.getMetrics().getPauses());
+    }
+
+    private void run(Indexer indexer, CommitStrategy commitStrategy, int maxRecords) throws Exception {
+        run(indexer, new ElasticSearchSinkConfig()
+                .setCommitStrategy(commitStrategy)
+                .setMaxRecords(maxRecords));
+    }
+
+    private void run(Indexer indexer, ElasticSearchSinkConfig config) throws Exception {
+        sink(indexer, config).run();
+    }
+
+    private ElasticSearchSink<String> sink(Indexer indexer, ElasticSearchSinkConfig config) {
+        return new ElasticSearchSink<String>(consumer, indexer, new StringTweetFormat(), config)
+                .setCommitListener(commitListener);
+    }
+
+    private void schedulePoll(final int from, final int count) {
+        consumer.schedulePollTask(new Runnable() {
+            @Override
+            public void run() {
+                for (int offset = from; offset < from + count; offset++) {
+                    consumer.addRecord(new ConsumerRecord<String, String>(partition.topic(), partition.partition(), offset, null, tweet(offset)));
+                }
+            }
+        });
+    }
+
+    private static String tweet(int offset) {
+        return "{\"id\":" + (1000 + offset) + ",\"id_str\":\"" + (1000 + offset) + "\",\"text\":\"tweet " + offset + "\"}";
+    }
+
+    /**
+     * Acknowledge the documents right away, like a synchronous indexer, or only on flush.
+     */
+    private static class RecordingIndexer implements Indexer {
+        private final boolean synchronous;
+        private final OffsetTracker offsetTracker = new OffsetTracker();
+        private final List<ConsumerRecord<?, ?>> pending = new ArrayList<ConsumerRecord<?, ?>>();
+        private final List<DocWriteRequest<?>> indexed = new ArrayList<DocWriteRequest<?>>();
+        private final List<DocWriteRequest<?>> staged = new ArrayList<DocWriteRequest<?>>();
+        private boolean closed;
+        private boolean overBudget;
+
+        RecordingIndexer(boolean synchronous) {
+            this.synchronous = synchronous;
+        }
+
+        @Override
+        public void index(ConsumerRecord<?, ?> record, DocWriteRequest<?> request) {
+            indexed.add(request);
+            offsetTracker.register(new TopicPartition(record.topic(), record.partition()), record.offset());
+            pending.add(record);
+            if (synchronous) {
+                flush();
+            }
+        }
+
+        @Override
+        public void skip(ConsumerRecord<?, ?> record) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            offsetTracker.register(partition, record.offset());
+            offsetTracker.acknowledge(partition, record.offset());
+        }
+
+        @Override
+        public void stage(DocWriteRequest<?> request) {
+            staged.add(request);
+        }
+
+        @Override
+        public void afterPoll() {
+        }
+
+        @Override
+        public boolean isOverBudget() {
+            return overBudget;
+        }
+
+        @Override
+        public void flush() {
+            for (ConsumerRecord<?, ?> record : pending) {
+                offsetTracker.acknowledge(new TopicPartition(record.topic(), record.partition()), record.offset());
+            }
+            pending.clear();
+        }
+
+        @Override
+        public Map<TopicPartition, OffsetAndMetadata> committableOffsets() {
+            return offsetTracker.committableOffsets();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
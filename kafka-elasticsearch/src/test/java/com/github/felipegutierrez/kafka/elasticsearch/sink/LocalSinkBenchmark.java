@@ -0,0 +1,36 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import com.github.felipegutierrez.kafka.elasticsearch.local.LocalElasticsearch;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import java.util.List;
+
+/**
+ * A {@link SinkBenchmark} against a {@link LocalElasticsearch}: the counters of the server are reset before each run,
+ * and each result also reports the latency of the bulk requests, the documents written more than once and the bytes
+ * sent.
+ */
+public class LocalSinkBenchmark extends SinkBenchmark {
+    private final LocalElasticsearch server;
+
+    /**
+     * @param client a client of the server
+     */
+    public LocalSinkBenchmark(LocalElasticsearch server, RestHighLevelClient client,
+                              List<ConsumerRecord<String, String>> input, int batchSize) {
+        super(client, input, batchSize);
+        this.server = server;
+    }
+
+    @Override
+    protected void beforeRun() {
+        server.reset();
+    }
+
+    @Override
+    protected void afterRun(Result result, ElasticSearchSinkConfig config) {
+        result.setClusterStats(server.getDuplicateDocuments(config.getIndex()), server.getBulkLatencies(),
+                server.getReceivedBytes());
+    }
+}
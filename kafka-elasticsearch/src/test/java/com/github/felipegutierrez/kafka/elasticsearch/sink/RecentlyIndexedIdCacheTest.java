@@ -0,0 +1,59 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RecentlyIndexedIdCacheTest {
+    private final TopicPartition partition0 = new TopicPartition("twitter_tweets", 0);
+    private final TopicPartition partition1 = new TopicPartition("twitter_tweets", 1);
+
+    @Test
+    public void cachesTheIdsOnceAcknowledged() {
+        RecentlyIndexedIdCache cache = new RecentlyIndexedIdCache(100 * RecentlyIndexedIdCache.ESTIMATED_ENTRY_BYTES);
+        cache.register(partition0, 10L, "1001");
+        cache.register(partition0, 11L, "1002");
+        assertFalse(cache.contains(partition0, "1001"));
+
+        cache.acknowledge(partition0, 11L);
+        assertTrue(cache.contains(partition0, "1001"));
+        assertFalse(cache.contains(partition0, "1002"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedIds() {
+        RecentlyIndexedIdCache cache = new RecentlyIndexedIdCache(2 * RecentlyIndexedIdCache.ESTIMATED_ENTRY_BYTES);
+        cache.register(partition0, 0L, "1");
+        cache.register(partition0, 1L, "2");
+        cache.acknowledge(partition0, 2L);
+        // touch "1" so "2" is the eldest
+        assertTrue(cache.contains(partition0, "1"));
+        cache.register(partition0, 2L, "3");
+        cache.acknowledge(partition0, 3L);
+
+        assertTrue(cache.contains(partition0, "1"));
+        assertFalse(cache.contains(partition0, "2"));
+        assertTrue(cache.contains(partition0, "3"));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2 * RecentlyIndexedIdCache.ESTIMATED_ENTRY_BYTES, cache.getEstimatedBytes());
+    }
+
+    @Test
+    public void keepsThePartitionsApart() {
+        RecentlyIndexedIdCache cache = new RecentlyIndexedIdCache(10 * RecentlyIndexedIdCache.ESTIMATED_ENTRY_BYTES);
+        cache.register(partition0, 0L, "1");
+        cache.register(partition1, 0L, "2");
+        cache.acknowledge(partition0, 1L);
+        cache.acknowledge(partition1, 1L);
+        assertFalse(cache.contains(partition1, "1"));
+
+        cache.remove(partition0);
+        assertFalse(cache.contains(partition0, "1"));
+        assertTrue(cache.contains(partition1, "2"));
+        assertEquals(1, cache.getSize());
+    }
+}
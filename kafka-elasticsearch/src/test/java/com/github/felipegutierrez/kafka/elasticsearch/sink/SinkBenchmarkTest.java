@@ -0,0 +1,84 @@
+package com.github.felipegutierrez.kafka.elasticsearch.sink;
+
+import com.github.felipegutierrez.kafka.elasticsearch.local.LocalElasticsearch;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drive the sink end to end against a {@link LocalElasticsearch}, so the throughput of every mode and the effect of
+ * rejections can be measured without a broker nor a cluster.
+ */
+public class SinkBenchmarkTest {
+    private static final Logger logger = LoggerFactory.getLogger(SinkBenchmarkTest.class);
+    private static final int RECORDS = 300;
+    private LocalElasticsearch server;
+    private RestHighLevelClient client;
+    private SinkBenchmark benchmark;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalElasticsearch(4).start().setLatencyMs(1);
+        client = server.createClient();
+        benchmark = new LocalSinkBenchmark(server, client, input(RECORDS, 3), 50);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void indexesEveryRecordWithEveryModeAndStrategy() throws Exception {
+        List<SinkBenchmark.Result> results = benchmark.runAll();
+        logger.info("Results:\n" + SinkBenchmark.report(results));
+
+        assertEquals(IndexingMode.values().length * CommitStrategy.values().length, results.size());
+        for (SinkBenchmark.Result result : results) {
+            assertEquals(RECORDS, result.getRecords());
+            assertTrue(result.getRecordsPerSecond() > 0);
+            assertEquals(0, result.getDuplicates());
+            if (result.getIndexingMode().isBulk()) {
+                assertTrue(result.getBulkLatencies().getTotalCount() > 0);
+            }
+        }
+        // the last run, which also stored its offsets in another index
+        assertEquals(RECORDS, server.getDistinctDocuments("twitter"));
+    }
+
+    @Test
+    public void retriesTheRejectedDocumentsWithoutLosingAny() throws Exception {
+        server.setRejectionRate(0.1).setErrorRate(0.05);
+        List<SinkBenchmark.Result> results = new ArrayList<SinkBenchmark.Result>();
+        for (IndexingMode indexingMode : new IndexingMode[]{IndexingMode.BULK, IndexingMode.PIPELINED}) {
+            results.add(benchmark.run(indexingMode, CommitStrategy.ASYNC));
+
+            assertEquals(RECORDS, server.getDistinctDocuments());
+            assertTrue(server.getRejectedDocuments() > 0);
+            // a rejected document is not written, its retry is not a duplicate
+            assertEquals(0, server.getDuplicateDocuments());
+        }
+        logger.info("Results with rejections:\n" + SinkBenchmark.report(results));
+    }
+
+    private static List<ConsumerRecord<String, String>> input(int records, int partitions) {
+        List<ConsumerRecord<String, String>> input = new ArrayList<ConsumerRecord<String, String>>(records);
+        for (int i = 0; i < records; i++) {
+            String tweet = "{\"created_at\":\"Mon Sep 14 12:00:00 +0000 2020\",\"id\":" + i + ",\"id_str\":\"" + i +
+                    "\",\"text\":\"kafka tweet number " + i + "\"}";
+            input.add(new ConsumerRecord<String, String>("twitter_tweets", i % partitions, i / partitions, null, tweet));
+        }
+        return input;
+    }
+}
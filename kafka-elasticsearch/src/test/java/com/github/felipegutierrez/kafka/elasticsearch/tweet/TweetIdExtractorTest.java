@@ -0,0 +1,55 @@
+package com.github.felipegutierrez.kafka.elasticsearch.tweet;
+
+import com.github.felipegutierrez.kafka.tweet.TweetSamples;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TweetIdExtractorTest {
+
+    @Test
+    public void extractsTheSameIdAsTheGsonTree() {
+        for (String tweet : TweetSamples.load()) {
+            String expected = JsonParser.parseString(tweet).getAsJsonObject().get("id_str").getAsString();
+            assertEquals(expected, TweetIdExtractor.extractId(tweet));
+            assertEquals(expected, TweetIdExtractor.extractId(tweet.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Test
+    public void scansTheBytesOfNestedValues() {
+        String tweet = "{ \"text\" : \"a \\\"quoted\\\" }{ ü\", \"user\": {\"id_str\": \"1\", \"tags\": [\"]\", {\"a\": null}]},"
+                + " \"id\": 4, \"truncated\": false, \"id_str\" : \"4\"}";
+        assertEquals("4", TweetIdExtractor.extractId(tweet));
+        assertEquals("4", TweetIdExtractor.extractId(tweet.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("4\"2", TweetIdExtractor.extractId("{\"id_str\":\"4\\\"2\"}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void ignoresNestedIds() {
+        String tweet = "{\"user\":{\"id_str\":\"1\",\"entities\":[{\"id_str\":\"2\"}]},\"retweeted_status\":{\"id_str\":\"3\"},\"id_str\":\"4\"}";
+        assertEquals("4", TweetIdExtractor.extractId(tweet));
+    }
+
+    @Test
+    public void returnsNullForBadData() {
+        assertNull(TweetIdExtractor.extractId((String) null));
+        assertNull(TweetIdExtractor.extractId(""));
+        assertNull(TweetIdExtractor.extractId("[1, 2]"));
+        assertNull(TweetIdExtractor.extractId("{\"id\": 1}"));
+        assertNull(TweetIdExtractor.extractId("{\"id_str\": null}"));
+        assertNull(TweetIdExtractor.extractId("{\"text\": \"truncated"));
+
+        assertNull(TweetIdExtractor.extractId((byte[]) null));
+        assertNull(TweetIdExtractor.extractId(new byte[0]));
+        assertNull(TweetIdExtractor.extractId("[1, 2]".getBytes(StandardCharsets.UTF_8)));
+        assertNull(TweetIdExtractor.extractId("{\"id\": 1}".getBytes(StandardCharsets.UTF_8)));
+        assertNull(TweetIdExtractor.extractId("{\"id_str\": null}".getBytes(StandardCharsets.UTF_8)));
+        assertNull(TweetIdExtractor.extractId("{\"text\": \"truncated".getBytes(StandardCharsets.UTF_8)));
+        assertNull(TweetIdExtractor.extractId("{\"user\": {\"id_str\": \"1\"".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.felipegutierrez.kafka.elasticsearch.tweet;
+
+import com.github.felipegutierrez.kafka.tweet.TweetSamples;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TweetProjectionTest {
+    private final List<String> tweets = TweetSamples.load();
+
+    @Test
+    public void keepsOnlyTheWhitelistedFields() {
+        TweetProjection projection = new TweetProjection("id, created_at,text,lang,is_retweet");
+        for (String tweet : tweets) {
+            JsonObject original = JsonParser.parseString(tweet).getAsJsonObject();
+            JsonObject projected = JsonParser.parseString(projection.project(tweet)).getAsJsonObject();
+
+            assertTrue(new HashSet<String>(Arrays.asList("id", "created_at", "text", "lang")).containsAll(projected.keySet()));
+            assertEquals(original.get("created_at"), projected.get("created_at"));
+            assertEquals(original.get("text"), projected.get("text"));
+            // the number literal is kept, a double would round the ID
+            assertEquals(original.get("id_str").getAsString(), projected.get("id").getAsBigInteger().toString());
+        }
+    }
+
+    @Test
+    public void keepsNestedFieldsAndProjectsTheArraysElementByElement() {
+        TweetProjection projection = new TweetProjection("user.screen_name,entities.hashtags.text");
+        for (String tweet : tweets) {
+            JsonObject original = JsonParser.parseString(tweet).getAsJsonObject();
+            JsonObject projected = JsonParser.parseString(projection.project(tweet)).getAsJsonObject();
+
+            JsonObject user = projected.getAsJsonObject("user");
+            assertEquals(1, user.size());
+            assertEquals(original.getAsJsonObject("user").get("screen_name"), user.get("screen_name"));
+            JsonArray originalHashtags = original.getAsJsonObject("entities").getAsJsonArray("hashtags");
+            JsonArray hashtags = projected.getAsJsonObject("entities").getAsJsonArray("hashtags");
+            assertEquals(originalHashtags.size(), hashtags.size());
+            for (int i = 0; i < hashtags.size(); i++) {
+                JsonObject hashtag = hashtags.get(i).getAsJsonObject();
+                assertEquals(1, hashtag.size());
+                assertEquals(originalHashtags.get(i).getAsJsonObject().get("text"), hashtag.get("text"));
+            }
+        }
+    }
+
+    @Test
+    public void aShorterPathKeepsTheWholeValue() {
+        TweetProjection projection = new TweetProjection("user,user.screen_name");
+        String tweet = tweets.get(0);
+
+        JsonElement user = JsonParser.parseString(projection.project(tweet)).getAsJsonObject().get("user");
+        assertEquals(JsonParser.parseString(tweet).getAsJsonObject().get("user"), user);
+    }
+
+    @Test
+    public void projectsTheBytesLikeTheStrings() {
+        TweetProjection projection = new TweetProjection("id,text,user.name,place");
+        for (String tweet : tweets) {
+            byte[] projected = projection.project(tweet.getBytes(StandardCharsets.UTF_8));
+            assertEquals(projection.project(tweet), new String(projected, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void shrinksTheTweets() {
+        TweetProjection projection = new TweetProjection("id,created_at,text,lang");
+        long original = 0;
+        long projected = 0;
+        for (String tweet : tweets) {
+            original += tweet.getBytes(StandardCharsets.UTF_8).length;
+            projected += projection.project(tweet).getBytes(StandardCharsets.UTF_8).length;
+        }
+        assertTrue("projected " + projected + " of " + original + " bytes", projected * 5 < original);
+    }
+
+    @Test
+    public void returnsTheInvalidTweetsUnchanged() {
+        TweetProjection projection = new TweetProjection("id,text");
+        for (String invalid : new String[]{"", "not json", "[1,2]", "{\"id\":1,\"text\":", "{\"id\":1} trailing"}) {
+            assertSame(invalid, projection.project(invalid));
+            byte[] bytes = invalid.getBytes(StandardCharsets.UTF_8);
+            assertSame(bytes, projection.project(bytes));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnEmptyWhitelist() {
+        new TweetProjection(" , ");
+    }
+}
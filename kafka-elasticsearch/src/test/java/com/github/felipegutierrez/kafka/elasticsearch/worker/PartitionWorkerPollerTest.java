@@ -0,0 +1,333 @@
+package com.github.felipegutierrez.kafka.elasticsearch.worker;
+
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.BulkPipelineConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.DeadLetterPublisher;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.RetryBackoff;
+import com.github.felipegutierrez.kafka.elasticsearch.bulk.RetryingBulkExecutor;
+import com.github.felipegutierrez.kafka.elasticsearch.local.LocalElasticsearch;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.ElasticSearchSinkConfig;
+import com.github.felipegutierrez.kafka.elasticsearch.sink.RecentlyIndexedIdCache;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.StringTweetFormat;
+import com.github.felipegutierrez.kafka.elasticsearch.tweet.TweetProjection;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.consumer.RetriableCommitFailedException;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PartitionWorkerPollerTest {
+    private final TopicPartition partition = new TopicPartition("twitter_tweets", 0);
+    private LocalElasticsearch server;
+    private RestHighLevelClient client;
+    private MockConsumer<String, String> consumer;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalElasticsearch(2).start();
+        client = server.createClient();
+        consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void revocationWaitsForTheBatchInFlightAndCommitsItsOffset() throws Exception {
+        server.setLatencyMs(300);
+        final PartitionWorkerPoller<String> poller = poller(10, 10, null);
+        final long[] revocationMs = new long[1];
+        final int[] indexedWhenRevoked = new int[1];
+        schedulePoll(0, 5);
+        // the worker is sending its first bulk, with the records queued by the time it woke up
+        scheduleWhen(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return server.getBulkRequests() == 1;
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                assertNull(committedOffset());
+                long start = System.nanoTime();
+                poller.rebalanceListener().onPartitionsRevoked(Collections.singletonList(partition));
+                revocationMs[0] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                indexedWhenRevoked[0] = server.getDistinctDocuments();
+                poller.stop();
+            }
+        });
+        poller.run();
+
+        // the revocation waited for the bulk instead of dropping it
+        assertTrue("revoked in " + revocationMs[0] + " ms", revocationMs[0] >= 100);
+        assertTrue(indexedWhenRevoked[0] > 0);
+        assertEquals(Long.valueOf(indexedWhenRevoked[0]), committedOffset());
+        // the records queued behind the bulk are left to the next owner of the partition
+        assertEquals(indexedWhenRevoked[0], server.getDistinctDocuments());
+    }
+
+    @Test
+    public void resumesThePartitionOnceItsWorkerDrained() throws Exception {
+        server.setLatencyMs(20);
+        final PartitionWorkerPoller<String> poller = poller(4, 2, null);
+        schedulePoll(0, 10);
+        consumer.schedulePollTask(new Runnable() {
+            @Override
+            public void run() {
+                // more records than the worker queue holds
+                assertEquals(Collections.singleton(partition), consumer.paused());
+            }
+        });
+        final int[] indexedWhenResumed = new int[1];
+        scheduleWhen(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return consumer.paused().isEmpty();
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                indexedWhenResumed[0] = server.getDistinctDocuments();
+                scheduleWhen(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return server.getDistinctDocuments() == 10;
+                    }
+                }, new Runnable() {
+                    @Override
+                    public void run() {
+                        poller.stop();
+                    }
+                });
+            }
+        });
+        poller.run();
+
+        // resumed with at most half of the queue, 2 records, still to index
+        assertTrue("indexed " + indexedWhenResumed[0] + " when resumed", indexedWhenResumed[0] >= 6);
+        assertEquals(Long.valueOf(10), committedOffset());
+    }
+
+    @Test
+    public void revocationCommitsSynchronouslyTheOffsetWhoseAsyncCommitFailed() throws Exception {
+        final List<Map<TopicPartition, OffsetAndMetadata>> failedCommits = new ArrayList<Map<TopicPartition, OffsetAndMetadata>>();
+        consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST) {
+            @Override
+            public synchronized void commitAsync(Map<TopicPartition, OffsetAndMetadata> offsets, OffsetCommitCallback callback) {
+                if (callback == null) {
+                    // commitSync()
+                    super.commitAsync(offsets, null);
+                    return;
+                }
+                failedCommits.add(offsets);
+                callback.onComplete(offsets, new RetriableCommitFailedException("coordinator moved"));
+            }
+        };
+        final PartitionWorkerPoller<String> poller = poller(10, 10, null);
+        schedulePoll(0, 3);
+        scheduleWhen(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                // the worker indexed the 3 records, maybe in several bulks
+                return !failedCommits.isEmpty() && failedCommits.get(failedCommits.size() - 1).get(partition).offset() == 3;
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                assertNull(committedOffset());
+                poller.rebalanceListener().onPartitionsRevoked(Collections.singletonList(partition));
+                assertEquals(Long.valueOf(3), committedOffset());
+                poller.stop();
+            }
+        });
+        poller.run();
+
+        assertEquals(3, server.getDistinctDocuments());
+    }
+
+    @Test
+    public void deadLettersTheDocumentsStillRejectedAfterTheRetries() throws Exception {
+        server.setRejectionRate(1.0);
+        MockProducer<String, byte[]> producer = new MockProducer<String, byte[]>(true, new StringSerializer(), new ByteArraySerializer());
+        ElasticSearchSinkConfig config = new ElasticSearchSinkConfig();
+        final PartitionWorkerPoller<String> poller = poller(10, new DeadLetterPublisher(producer, "twitter_tweets_dlq"), config);
+        schedulePoll(0, 2);
+        scheduleWhen(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return Long.valueOf(2).equals(committedOffset());
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                poller.stop();
+            }
+        });
+        poller.run();
+
+        // the offset moves past the documents once they are in the dead-letter topic
+        assertEquals(Long.valueOf(2), committedOffset());
+        assertEquals(2, producer.history().size());
+        assertEquals("1001", producer.history().get(1).key());
+        assertEquals("1", new String(producer.history().get(1).headers().lastHeader(DeadLetterPublisher.HEADER_OFFSET).value(),
+                StandardCharsets.UTF_8));
+        assertEquals(0, server.getDistinctDocuments());
+        assertEquals(2, config.getMetrics().getDeadLetteredDocuments());
+        assertEquals(0, config.getMetrics().getIndexedDocuments());
+    }
+
+    @Test
+    public void indexesIntoTheIndexOfTheConfig() throws Exception {
+        ElasticSearchSinkConfig config = new ElasticSearchSinkConfig().setIndex("tweets_v2", "_doc");
+        final PartitionWorkerPoller<String> poller = poller(10, null, config);
+        schedulePoll(0, 3);
+        scheduleWhen(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return server.getDistinctDocuments("tweets_v2") == 3;
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                poller.stop();
+            }
+        });
+        poller.run();
+
+        assertEquals(3, server.getDistinctDocuments());
+        assertEquals(Long.valueOf(3), committedOffset());
+        assertEquals(3, config.getMetrics().getIndexedDocuments());
+    }
+
+    @Test
+    public void indexesTheDocumentsOfTheSinkConfig() throws Exception {
+        final RecentlyIndexedIdCache cache = new RecentlyIndexedIdCache(1024 * 1024);
+        ElasticSearchSinkConfig config = new ElasticSearchSinkConfig()
+                .setProjection(new TweetProjection("text"))
+                .setRecentlyIndexedIdCache(cache);
+        final PartitionWorkerPoller<String> poller = poller(10, null, config);
+        schedulePoll(0, 3);
+        scheduleWhen(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return Long.valueOf(3).equals(committedOffset());
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                // replayed tweets
+                consumer.seek(partition, 0L);
+                schedulePoll(0, 3);
+                scheduleWhen(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return cache.getHits() == 3;
+                    }
+                }, new Runnable() {
+                    @Override
+                    public void run() {
+                        poller.stop();
+                    }
+                });
+            }
+        });
+        poller.run();
+
+        assertEquals(3, server.getIndexedDocuments());
+        assertEquals("{\"text\":\"tweet 1\"}", server.getSource("twitter", "1001"));
+        assertEquals(3, config.getMetrics().getSkippedRecords());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsMorePartitionsThanWorkers() {
+        PartitionWorkerPoller<String> poller = new PartitionWorkerPoller<String>(consumer,
+                new RetryingBulkExecutor(client, new RetryBackoff(1, 1, 1), null, new ElasticSearchSinkConfig().getMetrics()),
+                null, new StringTweetFormat(), new ElasticSearchSinkConfig(), 10, 1);
+        poller.rebalanceListener().onPartitionsAssigned(Arrays.asList(partition, new TopicPartition(partition.topic(), 1)));
+    }
+
+    private PartitionWorkerPoller<String> poller(int queueCapacity, int maxBatch, DeadLetterPublisher deadLetterPublisher) {
+        return poller(queueCapacity, deadLetterPublisher, new ElasticSearchSinkConfig()
+                .setBulkPipelineConfig(new BulkPipelineConfig().setFlushActions(maxBatch)));
+    }
+
+    private PartitionWorkerPoller<String> poller(int queueCapacity, DeadLetterPublisher deadLetterPublisher, ElasticSearchSinkConfig config) {
+        RetryingBulkExecutor bulkExecutor = new RetryingBulkExecutor(client, new RetryBackoff(1, 1, 1), null, config.getMetrics());
+        PartitionWorkerPoller<String> poller = new PartitionWorkerPoller<String>(consumer, bulkExecutor,
+                deadLetterPublisher, new StringTweetFormat(), config, queueCapacity, 4);
+        consumer.subscribe(Collections.singletonList(partition.topic()), poller.rebalanceListener());
+        consumer.rebalance(Collections.singletonList(partition));
+        consumer.updateBeginningOffsets(Collections.singletonMap(partition, 0L));
+        // the mock consumer does not call the listener
+        poller.rebalanceListener().onPartitionsAssigned(Collections.singletonList(partition));
+        return poller;
+    }
+
+    private Long committedOffset() {
+        OffsetAndMetadata offset = consumer.committed(Collections.singleton(partition)).get(partition);
+        return offset == null ? null : offset.offset();
+    }
+
+    private void schedulePoll(final int from, final int count) {
+        consumer.schedulePollTask(new Runnable() {
+            @Override
+            public void run() {
+                for (int offset = from; offset < from + count; offset++) {
+                    consumer.addRecord(new ConsumerRecord<String, String>(partition.topic(), partition.partition(), offset, null, tweet(offset)));
+                }
+            }
+        });
+    }
+
+    /**
+     * Run the action in the first poll where the condition holds, the workers keep indexing in the meantime.
+     */
+    private void scheduleWhen(final Callable<Boolean> condition, final Runnable action) {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        consumer.schedulePollTask(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (condition.call()) {
+                        action.run();
+                        return;
+                    }
+                    assertTrue("condition not met in time", System.nanoTime() < deadline);
+                    Thread.sleep(5);
+                } catch (AssertionError | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                consumer.schedulePollTask(this);
+            }
+        });
+    }
+
+    private static String tweet(int offset) {
+        return "{\"id\":" + (1000 + offset) + ",\"id_str\":\"" + (1000 + offset) + "\",\"text\":\"tweet " + offset + "\"}";
+    }
+}
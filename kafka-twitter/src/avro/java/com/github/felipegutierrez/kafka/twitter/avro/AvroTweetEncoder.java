@@ -0,0 +1,110 @@
+package com.github.felipegutierrez.kafka.twitter.avro;
+
+import com.github.felipegutierrez.kafka.twitter.tweet.TweetEncoder;
+import com.github.felipegutierrez.kafka.twitter.tweet.TweetFieldExtractor;
+import com.github.felipegutierrez.kafka.twitter.tweet.TweetFields;
+import com.github.felipegutierrez.kafka.twitter.tweet.TweetTime;
+import io.confluent.kafka.serializers.KafkaAvroSerializer;
+import io.confluent.kafka.serializers.KafkaAvroSerializerConfig;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Properties;
+
+/**
+ * Project the tweets into the compact Avro {@code Tweet} of {@code avro/tweet.avsc}: the id, text, lang and creation
+ * time, the id and followers of the user, whether it is a retweet and the term matched by the producer. The record
+ * is published with the {@link KafkaAvroSerializer} of the schema registry, as in the Avro modules, so the consumers
+ * read a few hundred bytes of typed fields instead of parsing the 3-5 KB of JSON again.
+ * <p>
+ * The fields are read in one streaming pass of a {@link TweetFieldExtractor}. A message without an id or a text, e.g.
+ * a limit notice of the stream, is skipped.
+ */
+public class AvroTweetEncoder implements TweetEncoder<GenericRecord> {
+    public static final Schema SCHEMA = loadSchema("avro/tweet.avsc");
+    private static final Schema USER_SCHEMA = SCHEMA.getField("user").schema();
+    private static final String FIELDS = "id_str,text,lang,timestamp_ms,created_at,user.id_str,user.followers_count," +
+            "retweeted_status.id_str";
+    private static final int ID = 0;
+    private static final int TEXT = 1;
+    private static final int LANG = 2;
+    private static final int TIMESTAMP_MS = 3;
+    private static final int CREATED_AT = 4;
+    private static final int USER_ID = 5;
+    private static final int FOLLOWERS_COUNT = 6;
+    private static final int RETWEETED_ID = 7;
+    private final String schemaRegistryUrl;
+    private final TweetFieldExtractor extractor = new TweetFieldExtractor(FIELDS);
+    private final ThreadLocal<TweetFields> fields = new ThreadLocal<TweetFields>() {
+        @Override
+        protected TweetFields initialValue() {
+            return extractor.newFields();
+        }
+    };
+
+    /**
+     * @param schemaRegistryUrl where the serializer registers the schema of the tweets
+     */
+    public AvroTweetEncoder(String schemaRegistryUrl) {
+        this.schemaRegistryUrl = schemaRegistryUrl;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Class<? extends Serializer<GenericRecord>> serializer() {
+        // it takes Object, the values are records
+        return (Class) KafkaAvroSerializer.class;
+    }
+
+    @Override
+    public void configure(Properties producerProperties) {
+        producerProperties.setProperty(KafkaAvroSerializerConfig.SCHEMA_REGISTRY_URL_CONFIG, schemaRegistryUrl);
+    }
+
+    @Override
+    public GenericRecord encode(String tweet, String matchedTerm) {
+        TweetFields found = fields.get();
+        if (extractor.extract(tweet, found) < 0 || found.get(ID) == null || found.get(TEXT) == null) {
+            return null;
+        }
+        GenericRecord user = new GenericData.Record(USER_SCHEMA);
+        user.put("id", parseLong(found.get(USER_ID), -1));
+        user.put("followers_count", parseLong(found.get(FOLLOWERS_COUNT), 0));
+        GenericRecord record = new GenericData.Record(SCHEMA);
+        record.put("id", parseLong(found.get(ID), -1));
+        record.put("text", found.get(TEXT));
+        record.put("lang", found.get(LANG));
+        record.put("created_at", TweetTime.parse(found.get(TIMESTAMP_MS), found.get(CREATED_AT)));
+        record.put("user", user);
+        record.put("retweet", found.get(RETWEETED_ID) != null);
+        record.put("matched_term", matchedTerm);
+        return record;
+    }
+
+    private static long parseLong(String value, long missing) {
+        if (value == null) {
+            return missing;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return missing;
+        }
+    }
+
+    private static Schema loadSchema(String resource) {
+        try (InputStream in = AvroTweetEncoder.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalStateException("File [" + resource + "] not found.");
+            }
+            return new Schema.Parser().parse(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.felipegutierrez.kafka.twitter.avro;
+
+import com.github.felipegutierrez.kafka.tweet.TweetSamples;
+import io.confluent.kafka.schemaregistry.client.MockSchemaRegistryClient;
+import io.confluent.kafka.serializers.KafkaAvroSerializer;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class AvroTweetEncoderTest {
+
+    @Test
+    public void projectsTheTweetIntoTheSchema() {
+        String tweet = TweetSamples.load().get(0);
+        GenericRecord record = new AvroTweetEncoder("http://localhost:8081").encode(tweet, "corona");
+
+        assertEquals(1241700000000000000L, record.get("id"));
+        assertTrue(record.get("text").toString().startsWith("RT @data518: corona report"));
+        assertEquals("de", record.get("lang"));
+        assertEquals(1584887400332L, record.get("created_at"));
+        GenericRecord user = (GenericRecord) record.get("user");
+        assertEquals(508157429L, user.get("id"));
+        assertEquals(42834L, user.get("followers_count"));
+        assertEquals(true, record.get("retweet"));
+        assertEquals("corona", record.get("matched_term"));
+    }
+
+    @Test
+    public void skipsTheMessagesThatAreNotTweets() {
+        AvroTweetEncoder encoder = new AvroTweetEncoder("http://localhost:8081");
+        assertNull(encoder.encode("{\"limit\":{\"track\":42,\"timestamp_ms\":\"1584887400332\"}}", null));
+        assertNull(encoder.encode("not json", null));
+    }
+
+    @Test
+    public void serializesFarFewerBytesThanTheJson() {
+        KafkaAvroSerializer serializer = new KafkaAvroSerializer(new MockSchemaRegistryClient(),
+                Collections.singletonMap("schema.registry.url", "http://localhost:8081"));
+        AvroTweetEncoder encoder = new AvroTweetEncoder("http://localhost:8081");
+        for (String tweet : TweetSamples.load()) {
+            byte[] bytes = serializer.serialize("twitter_tweets", encoder.encode(tweet, null));
+            assertTrue(bytes.length * 5 < tweet.getBytes(StandardCharsets.UTF_8).length);
+        }
+    }
+}
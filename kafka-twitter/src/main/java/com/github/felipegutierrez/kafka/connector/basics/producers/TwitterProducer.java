@@ -1,8 +1,24 @@
 package com.github.felipegutierrez.kafka.connector.basics.producers;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.felipegutierrez.kafka.twitter.delivery.DeliveryReporter;
+import com.github.felipegutierrez.kafka.twitter.key.MatchStrategy;
+import com.github.felipegutierrez.kafka.twitter.key.TermMatcher;
+import com.github.felipegutierrez.kafka.twitter.partition.SkewAwarePartitioner;
+import com.github.felipegutierrez.kafka.twitter.pipeline.RecordSender;
+import com.github.felipegutierrez.kafka.twitter.pipeline.TweetMapper;
+import com.github.felipegutierrez.kafka.twitter.pipeline.TweetPipeline;
+import com.github.felipegutierrez.kafka.twitter.pipeline.TweetPipelineConfig;
+import com.github.felipegutierrez.kafka.twitter.pipeline.TweetSource;
+import com.github.felipegutierrez.kafka.twitter.replay.MappedLineReader;
+import com.github.felipegutierrez.kafka.twitter.replay.ReplaySource;
+import com.github.felipegutierrez.kafka.twitter.replay.TweetCapture;
+import com.github.felipegutierrez.kafka.twitter.tweet.FieldOutput;
+import com.github.felipegutierrez.kafka.twitter.tweet.TweetEncoder;
+import com.github.felipegutierrez.kafka.twitter.tweet.TweetFieldExtractor;
+import com.github.felipegutierrez.kafka.twitter.tweet.TweetFields;
+import com.github.felipegutierrez.kafka.twitter.tuning.CalibrationResult;
+import com.github.felipegutierrez.kafka.twitter.tuning.CompressionCalibration;
+import com.github.felipegutierrez.kafka.twitter.tuning.ProducerTuning;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.twitter.hbc.ClientBuilder;
@@ -15,16 +31,21 @@ import com.twitter.hbc.core.processor.StringDelimitedProcessor;
 import com.twitter.hbc.httpclient.auth.Authentication;
 import com.twitter.hbc.httpclient.auth.OAuth1;
 import org.apache.kafka.clients.producer.*;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Serializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
 
 /**
@@ -38,15 +59,41 @@ import java.util.regex.Pattern;
  * # java -jar target/explore-kafka-1.0.jar -app 7 -elements "felipe|simone"
  */
 public class TwitterProducer {
+    private static final long REPORT_INTERVAL_MS = 5000;
+    private static final int CALIBRATION_TWEETS = 10000;
+    /**
+     * Header listing the terms found in the tweet, separated by {@code |}, with {@link MatchStrategy#ALL}.
+     */
+    public static final String MATCHED_TERMS_HEADER = "matched_terms";
+    /**
+     * Fields of the tweets used for routing downstream, see {@link #setFields(String, FieldOutput)}.
+     */
+    public static final String ROUTING_FIELDS = "id_str,lang,user.followers_count";
+    private static final String TEXT_FIELD = "text";
     private final Logger logger = LoggerFactory.getLogger(TwitterProducer.class);
     private final String twitterAccessTokenFile = "twitter.access.token";
     private final String bootstrapServers = "127.0.0.1:9092";
     private final List<String> terms;
-    private final ObjectMapper jsonParser;
+    private final TermMatcher termMatcher;
+    private final ThreadLocal<int[]> matches;
+    private MatchStrategy matchStrategy = MatchStrategy.FIRST;
+    // the text first, then the fields to write to the headers or to the value
+    private TweetFieldExtractor fieldExtractor = new TweetFieldExtractor(TEXT_FIELD);
+    private ThreadLocal<TweetFields> tweetFields = newTweetFields(fieldExtractor);
+    private FieldOutput fieldOutput;
     private final String topic;
     private final boolean extractMsgFromJson;
     private final boolean useKey;
-    private final boolean compress;
+    private ProducerTuning tuning;
+    private final TweetPipelineConfig pipelineConfig;
+    private final DeliveryReporter deliveryReporter = new DeliveryReporter();
+    // counted by the workers, logged with each report of the pipeline
+    private final LongAdder unparsedTweets = new LongAdder();
+    private ReplaySource replay;
+    private TweetCapture capture;
+    private TweetEncoder<?> encoder;
+    private double hotKeyShare;
+    private int hotKeyPartitions;
     private String consumerKey;
     private String consumerSecret;
     private String token;
@@ -61,10 +108,20 @@ public class TwitterProducer {
     }
 
     public TwitterProducer(String elements, String topic, boolean extractMsgFromJson, boolean useKey, boolean compress) {
+        this(elements, topic, extractMsgFromJson, useKey, compress, new TweetPipelineConfig());
+    }
+
+    /**
+     * @param pipelineConfig number of workers extracting the keys and the messages, and size of the queues between
+     *                       the client, the workers and the producer
+     */
+    public TwitterProducer(String elements, String topic, boolean extractMsgFromJson, boolean useKey, boolean compress,
+                           TweetPipelineConfig pipelineConfig) {
         this.topic = topic;
         this.extractMsgFromJson = extractMsgFromJson;
         this.useKey = useKey;
-        this.compress = compress;
+        this.tuning = compress ? ProducerTuning.compressed() : new ProducerTuning();
+        this.pipelineConfig = pipelineConfig;
         this.disclaimer();
         if (Strings.isNullOrEmpty(elements)) {
             // new RuntimeException("the -elements parameter cannot be empty");
@@ -73,84 +130,327 @@ public class TwitterProducer {
             String[] values = elements.toLowerCase().split(Pattern.quote("|"));
             this.terms = Lists.newArrayList(values);
         }
-        this.jsonParser = new ObjectMapper();
+        this.termMatcher = new TermMatcher(terms);
+        this.matches = new ThreadLocal<int[]>() {
+            @Override
+            protected int[] initialValue() {
+                return new int[termMatcher.size()];
+            }
+        };
         loadTokens();
     }
 
+    /**
+     * Which of the terms found in a tweet is its key when the records are keyed, the first one by default.
+     */
+    public TwitterProducer setMatchStrategy(MatchStrategy matchStrategy) {
+        this.matchStrategy = matchStrategy;
+        return this;
+    }
+
+    /**
+     * Extract these fields of the tweets too, in the same pass as the text.
+     *
+     * @param fields JSON paths separated by commas, e.g. {@link #ROUTING_FIELDS}
+     * @param output where to write them, to the headers or as the value of the record
+     */
+    public TwitterProducer setFields(String fields, FieldOutput output) {
+        this.fieldExtractor = new TweetFieldExtractor(TEXT_FIELD + "," + fields);
+        this.tweetFields = newTweetFields(fieldExtractor);
+        this.fieldOutput = output;
+        return this;
+    }
+
+    /**
+     * @return the counts and latencies of the sends, e.g. to log one tweet out of N with
+     * {@link DeliveryReporter#setLogEvery(int)}
+     */
+    public DeliveryReporter getDeliveryReporter() {
+        return deliveryReporter;
+    }
+
+    /**
+     * @return number of tweets whose fields could not be extracted because they are not valid JSON objects
+     */
+    public long getUnparsedTweets() {
+        return unparsedTweets.sum();
+    }
+
+    /**
+     * Codec, linger and batch size of the producer, the settings of the {@code compress} flag by default.
+     */
+    public TwitterProducer setTuning(ProducerTuning tuning) {
+        this.tuning = tuning;
+        return this;
+    }
+
+    public ProducerTuning getTuning() {
+        return tuning;
+    }
+
+    /**
+     * Replay recorded tweets instead of connecting to the Twitter stream.
+     */
+    public TwitterProducer setReplay(ReplaySource replay) {
+        this.replay = replay;
+        return this;
+    }
+
+    /**
+     * Record the tweets received, before they are sent, to replay them later with {@link #setReplay(ReplaySource)}.
+     */
+    public TwitterProducer setCapture(TweetCapture capture) {
+        this.capture = capture;
+        return this;
+    }
+
+    /**
+     * Send the values of this encoder instead of the JSON of the tweets, e.g. a compact Avro record. The fields set
+     * with {@link #setFields(String, FieldOutput)} are not written then, the encoder chooses the fields it keeps.
+     */
+    public TwitterProducer setEncoder(TweetEncoder<?> encoder) {
+        this.encoder = encoder;
+        return this;
+    }
+
+    /**
+     * Spread the keys over {@code hotKeyShare} of the records, e.g. a term in a spike, over up to
+     * {@code hotKeyPartitions} partitions with a {@link SkewAwarePartitioner}. The other keys keep their partition.
+     */
+    public TwitterProducer setSkewAwarePartitioner(double hotKeyShare, int hotKeyPartitions) {
+        if (hotKeyShare <= 0 || hotKeyShare > 1) {
+            throw new IllegalArgumentException("hotKeyShare must be in (0, 1]");
+        }
+        if (hotKeyPartitions < 1) {
+            throw new IllegalArgumentException("hotKeyPartitions must be at least 1");
+        }
+        this.hotKeyShare = hotKeyShare;
+        this.hotKeyPartitions = hotKeyPartitions;
+        return this;
+    }
+
+    private static ThreadLocal<TweetFields> newTweetFields(final TweetFieldExtractor extractor) {
+        return new ThreadLocal<TweetFields>() {
+            @Override
+            protected TweetFields initialValue() {
+                return extractor.newFields();
+            }
+        };
+    }
+
     public void run() {
+        if (encoder == null) {
+            run(new TweetMapper<String>() {
+                @Override
+                public ProducerRecord<String, String> map(String msg) {
+                    return toRecord(msg);
+                }
+            }, StringSerializer.class, null);
+        } else {
+            run(encoder);
+        }
+    }
+
+    private <V> void run(final TweetEncoder<V> encoder) {
+        run(new TweetMapper<V>() {
+            @Override
+            public ProducerRecord<String, V> map(String msg) {
+                return toRecord(msg, encoder);
+            }
+        }, encoder.serializer(), encoder);
+    }
+
+    private <V> void run(final TweetMapper<V> mapper, Class<? extends Serializer<V>> serializer, TweetEncoder<V> encoder) {
         /** Set up your blocking queues: Be sure to size these properly based on expected TPS of your stream */
         BlockingQueue<String> msgQueue = new LinkedBlockingQueue<String>(1000);
 
-        // create a twitter client
-        Client hosebirdClient = createTwitterClient(msgQueue);// Attempts to establish a connection.
-        hosebirdClient.connect();
+        // create a twitter client, or replay the recorded tweets
+        TweetSource source = replay != null ? replay : new HosebirdSource();
+        source.start(msgQueue);
 
         // create a kafka producer
-        KafkaProducer<String, String> producer = createKafkaProducer(this.compress);
+        KafkaProducer<String, V> producer = createKafkaProducer(serializer, encoder);
+
+        // the workers extract the keys and the messages, a single thread sends the records
+        TweetPipeline<V> pipeline = new TweetPipeline<V>(msgQueue, new TweetMapper<V>() {
+            @Override
+            public ProducerRecord<String, V> map(String msg) {
+                if (capture != null) {
+                    capture.write(msg);
+                }
+                return mapper.map(msg);
+            }
+        }, new RecordSender<V>() {
+            @Override
+            public void send(ProducerRecord<String, V> record) {
+                // the callback runs on the I/O thread of the producer, the reporter logs from a thread of its own
+                producer.send(record, deliveryReporter.callback(record));
+            }
+        }, pipelineConfig).registerMBean(topic).start();
+        deliveryReporter.registerMBean(topic).start();
 
         // shutdown hook
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        Thread shutdownHook = new Thread(() -> {
             logger.info("Stopping application with the shutdown hook");
             logger.info("shutting down Twitter client");
-            hosebirdClient.stop();
+            source.stop();
+            logger.info("sending the tweets already received");
+            pipeline.close();
             logger.info("shutting down Kafka producer and sending all messages in-memory");
             producer.close();
+            deliveryReporter.close();
+            closeCapture();
             logger.info("done!");
-        }));
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
 
-        // loop and send tweets to kafka
-        // on a different thread, or multiple different threads....
-        while (!hosebirdClient.isDone()) {
-            String msg = null;
+        // report the queues until the client stops
+        while (!source.isDone()) {
             try {
-                msg = msgQueue.poll(5, TimeUnit.SECONDS);
+                Thread.sleep(REPORT_INTERVAL_MS);
             } catch (InterruptedException e) {
                 logger.error("Error: ", e.getMessage());
-                hosebirdClient.stop();
+                source.stop();
+            }
+            logger.info("Pipeline: " + pipeline + ", dropped by the client: " + source.getDroppedMessages() +
+                    ", unparsed: " + unparsedTweets.sum());
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // the JVM is shutting down, the hook closes everything
+            return;
+        }
+        pipeline.close();
+        producer.close();
+        deliveryReporter.close();
+        closeCapture();
+        logger.info("End of application");
+    }
+
+    private void closeCapture() {
+        if (capture != null) {
+            try {
+                capture.close();
+                logger.info("Captured " + capture.getCapturedMessages() + " tweets into " + capture);
+            } catch (IOException e) {
+                logger.error("Could not close the capture: " + e.getMessage());
             }
-            if (msg != null) {
-                // logger.info("message: " + msg);
-                // extract key
-                String key = null;
-                if (this.useKey) {
-                    for (String k : this.terms) {
-                        if (msg.toLowerCase().contains(k)) {
-                            key = k;
-                        }
+        }
+    }
+
+    /**
+     * Called by the workers of the pipeline.
+     */
+    ProducerRecord<String, String> toRecord(String msg) {
+        RecordHeaders headers = new RecordHeaders();
+        String key = key(msg, headers);
+        String text = msg;
+        if (extractMsgFromJson || fieldOutput != null) {
+            TweetFields fields = tweetFields.get();
+            if (fieldExtractor.extract(msg, fields) < 0) {
+                unparsedTweets.increment();
+                logger.debug("Could not parse the tweet: {}", msg);
+            }
+            if (fieldOutput == FieldOutput.VALUE) {
+                text = fieldExtractor.toJson(fields);
+            } else if (extractMsgFromJson) {
+                // message of tweet
+                text = Strings.nullToEmpty(fields.get(0));
+            }
+            if (fieldOutput == FieldOutput.HEADERS) {
+                for (int i = 1; i < fields.size(); i++) {
+                    if (fields.get(i) != null) {
+                        headers.add(fieldExtractor.path(i), fields.get(i).getBytes(StandardCharsets.UTF_8));
                     }
                 }
-                String text;
-                if (extractMsgFromJson) {
-                    // extract message
-                    text = extractMessage(msg);
-                } else {
-                    text = msg;
-                }
+            }
+        }
+        return new ProducerRecord<String, String>(topic, null, key, text, headers);
+    }
 
+    /**
+     * Called by the workers of the pipeline with an encoder.
+     *
+     * @return null to skip the tweet
+     */
+    <V> ProducerRecord<String, V> toRecord(String msg, TweetEncoder<V> encoder) {
+        RecordHeaders headers = new RecordHeaders();
+        String key = key(msg, headers);
+        V value = encoder.encode(msg, key);
+        if (value == null) {
+            logger.debug("Skipped the message: " + msg);
+            return null;
+        }
+        return new ProducerRecord<String, V>(topic, null, key, value, headers);
+    }
 
-                final ProducerRecord<String, String> record = new ProducerRecord<String, String>(topic, key, text);
-                producer.send(record, new Callback() {
-                    @Override
-                    public void onCompletion(RecordMetadata recordMetadata, Exception e) {
-                        if (e == null) {
-                            // the record was successfully sent
-                            logger.info("message was sent successfully: " + text);
-                        } else {
-                            logger.error("Error on sending message: " + e.getMessage());
-                        }
+    /**
+     * @param headers where the terms found are listed with {@link MatchStrategy#ALL}
+     * @return the term found in the tweet, null if none or if the records are not keyed
+     */
+    private String key(String msg, RecordHeaders headers) {
+        String key = null;
+        if (this.useKey) {
+            if (matchStrategy == MatchStrategy.ALL) {
+                int[] found = matches.get();
+                int count = termMatcher.matchAll(msg, found);
+                if (count > 0) {
+                    key = termMatcher.term(found[0]);
+                    StringBuilder matched = new StringBuilder(key);
+                    for (int i = 1; i < count; i++) {
+                        matched.append('|').append(termMatcher.term(found[i]));
                     }
-                });
+                    headers.add(MATCHED_TERMS_HEADER, matched.toString().getBytes(StandardCharsets.UTF_8));
+                }
+            } else {
+                int term = termMatcher.match(msg, matchStrategy);
+                if (term >= 0) {
+                    key = termMatcher.term(term);
+                }
             }
         }
-        logger.info("End of application");
+        return key;
+    }
+
+    /**
+     * Run recorded tweets, mapped to records as they would be sent, through every codec and batch size, and log what
+     * each combination costs.
+     *
+     * @param files files with one tweet per line, only the first tweets are used
+     */
+    public List<CalibrationResult> calibrate(List<Path> files) throws IOException {
+        List<ProducerRecord<byte[], byte[]>> records = new ArrayList<ProducerRecord<byte[], byte[]>>();
+        for (Path file : files) {
+            try (MappedLineReader reader = new MappedLineReader(file)) {
+                String tweet;
+                while (records.size() < CALIBRATION_TWEETS && (tweet = reader.nextLine()) != null) {
+                    records.add(serialize(toRecord(tweet)));
+                }
+            }
+        }
+        logger.info("Calibrating the producer with " + records.size() + " tweets");
+        List<CalibrationResult> results = new CompressionCalibration(records).run();
+        logger.info("Compression calibration:\n" + CompressionCalibration.report(results));
+        return results;
     }
 
-    private KafkaProducer<String, String> createKafkaProducer(boolean compress) {
+    private static ProducerRecord<byte[], byte[]> serialize(ProducerRecord<String, String> record) {
+        byte[] key = record.key() == null ? null : record.key().getBytes(StandardCharsets.UTF_8);
+        byte[] value = record.value() == null ? null : record.value().getBytes(StandardCharsets.UTF_8);
+        return new ProducerRecord<byte[], byte[]>(record.topic(), null, key, value, record.headers());
+    }
+
+    private <V> KafkaProducer<String, V> createKafkaProducer(Class<? extends Serializer<V>> serializer,
+                                                            TweetEncoder<V> encoder) {
         // create properties
         Properties properties = new Properties();
         properties.setProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         properties.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-        properties.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        properties.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, serializer.getName());
+        if (encoder != null) {
+            encoder.configure(properties);
+        }
 
         // create a safer producer
         properties.setProperty(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, Boolean.TRUE.toString());
@@ -159,33 +459,19 @@ public class TwitterProducer {
         // Kafka 2.5 >= 1.1 so we keep this value as 5. Use 1 otherwise.
         properties.setProperty(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, Integer.toString(5));
 
-        if (compress) {
-            // high throughput producer at the expense of a bit of latency and CPU usage
-            // compression types: none, gzip, snappy, lz4, zstd
-            properties.setProperty(ProducerConfig.COMPRESSION_TYPE_CONFIG, "gzip");
-            properties.setProperty(ProducerConfig.LINGER_MS_CONFIG, "20");
-            properties.setProperty(ProducerConfig.BATCH_SIZE_CONFIG, Integer.toString(32 * 1024)); // 32KB batch size
+        // high throughput producer at the expense of a bit of latency and CPU usage, see calibrate()
+        tuning.apply(properties);
+        logger.info("Producer tuning: " + tuning);
+        if (hotKeyShare > 0) {
+            properties.setProperty(ProducerConfig.PARTITIONER_CLASS_CONFIG, SkewAwarePartitioner.class.getName());
+            properties.setProperty(SkewAwarePartitioner.HOT_SHARE_CONFIG, Double.toString(hotKeyShare));
+            properties.setProperty(SkewAwarePartitioner.MAX_PARTITIONS_CONFIG, Integer.toString(hotKeyPartitions));
         }
 
-        KafkaProducer<String, String> producer = new KafkaProducer<String, String>(properties);
+        KafkaProducer<String, V> producer = new KafkaProducer<String, V>(properties);
         return producer;
     }
 
-    private String extractMessage(String msg) {
-        try {
-            JsonNode jsonNode = jsonParser.readValue(msg, JsonNode.class);
-            boolean hasText = jsonNode.has("text");
-            if (hasText) {
-                // message of tweet
-                String text = jsonNode.get("text").asText();
-                return text;
-            }
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-        }
-        return "";
-    }
-
     private void consume() {
 
     }
@@ -238,6 +524,35 @@ public class TwitterProducer {
         return builder.build();
     }
 
+    /**
+     * The tweets of the Twitter stream with the terms.
+     */
+    private class HosebirdSource implements TweetSource {
+        private Client client;
+
+        @Override
+        public void start(BlockingQueue<String> queue) {
+            client = createTwitterClient(queue);
+            // Attempts to establish a connection.
+            client.connect();
+        }
+
+        @Override
+        public boolean isDone() {
+            return client.isDone();
+        }
+
+        @Override
+        public void stop() {
+            client.stop();
+        }
+
+        @Override
+        public long getDroppedMessages() {
+            return client.getStatsTracker().getNumMessagesDropped();
+        }
+    }
+
     private void disclaimer() {
         logger.info("Start zookeeper: ./bin/zookeeper-server-start.sh config/zookeeper.properties");
         logger.info("Start the broker: ./bin/kafka-server-start.sh config/server.properties");
@@ -1,18 +1,44 @@
 package com.github.felipegutierrez.kafka.connector.stream.app;
 
 import com.github.felipegutierrez.kafka.connector.basics.producers.TwitterProducer;
+import com.github.felipegutierrez.kafka.twitter.key.MatchStrategy;
+import com.github.felipegutierrez.kafka.twitter.pipeline.TweetPipelineConfig;
+import com.github.felipegutierrez.kafka.twitter.replay.ReplayPace;
+import com.github.felipegutierrez.kafka.twitter.replay.ReplaySource;
+import com.github.felipegutierrez.kafka.twitter.replay.TweetCapture;
+import com.github.felipegutierrez.kafka.twitter.tuning.ProducerTuning;
+import com.github.felipegutierrez.kafka.twitter.tweet.FieldOutput;
+import com.github.felipegutierrez.kafka.twitter.tweet.TweetEncoder;
 import com.github.felipegutierrez.kafka.util.Parameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
 public class App {
     private static final Logger logger = LoggerFactory.getLogger(App.class);
+    // built with the avro profile only, see the pom
+    private static final String AVRO_ENCODER = "com.github.felipegutierrez.kafka.twitter.avro.AvroTweetEncoder";
 
     public static void main(String[] args) {
         int app = 0;
         if (args != null && args.length > 0) {
             int size = args.length;
             String elements = "";
+            TweetPipelineConfig pipelineConfig = new TweetPipelineConfig();
+            MatchStrategy matchStrategy = null;
+            String fields = null;
+            FieldOutput fieldOutput = null;
+            int logEvery = 0;
+            String replay = null;
+            String pace = "recorded";
+            String capture = null;
+            ProducerTuning tuning = null;
+            String calibrate = null;
+            String registry = null;
+            double hotKeyShare = 0;
+            int hotKeyPartitions = 3;
             for (int i = 0; i < size; i++) {
                 if (Parameters.APP.equals(String.valueOf(args[i])) && i + 1 < size) {
                     i++;
@@ -20,11 +46,69 @@ public class App {
                 } else if (Parameters.ELEMENTS.equals(String.valueOf(args[i])) && i + 1 < size) {
                     i++;
                     elements = args[i];
+                } else if (Parameters.WORKERS.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    pipelineConfig.setWorkers(Integer.parseInt(args[i]));
+                } else if (Parameters.KEY.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    matchStrategy = MatchStrategy.valueOf(args[i].toUpperCase());
+                } else if (Parameters.HEADERS.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    fields = args[i];
+                    fieldOutput = FieldOutput.HEADERS;
+                } else if (Parameters.COMPACT.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    fields = args[i];
+                    fieldOutput = FieldOutput.VALUE;
+                } else if (Parameters.LOG_EVERY.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    logEvery = Integer.parseInt(args[i]);
+                } else if (Parameters.REPLAY.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    replay = args[i];
+                } else if (Parameters.PACE.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    pace = args[i];
+                } else if (Parameters.CAPTURE.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    capture = args[i];
+                } else if (Parameters.CODEC.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    tuning = (tuning == null ? new ProducerTuning() : tuning).setCompression(args[i]);
+                } else if (Parameters.LINGER.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    tuning = (tuning == null ? new ProducerTuning() : tuning).setLingerMs(Integer.parseInt(args[i]));
+                } else if (Parameters.BATCH.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    tuning = (tuning == null ? new ProducerTuning() : tuning).setBatchSize(Integer.parseInt(args[i]));
+                } else if (Parameters.CALIBRATE.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    calibrate = args[i];
+                } else if (Parameters.AVRO.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    registry = args[i];
+                } else if (Parameters.SKEW.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    hotKeyShare = Double.parseDouble(args[i]);
+                } else if (Parameters.SPREAD.equals(String.valueOf(args[i])) && i + 1 < size) {
+                    i++;
+                    hotKeyPartitions = Integer.parseInt(args[i]);
                 }
             }
             System.out.println();
             System.out.println("Parameters chosen >>");
             System.out.println("Application selected    : " + app);
+            System.out.println("Pipeline                : " + pipelineConfig);
+            System.out.println("Key                     : " + (matchStrategy == null ? "none" : matchStrategy));
+            System.out.println("Log one tweet out of    : " + logEvery);
+            System.out.println("Fields                  : " + (fieldOutput == null ? "none" : fields + " to " + fieldOutput));
+            System.out.println("Replay                  : " + (replay == null ? "none" : replay + " at pace " + pace));
+            System.out.println("Capture                 : " + (capture == null ? "none" : capture));
+            System.out.println("Producer                : " + (tuning == null ? "default" : tuning));
+            System.out.println("Calibrate with          : " + (calibrate == null ? "none" : calibrate));
+            System.out.println("Avro with registry      : " + (registry == null ? "none" : registry));
+            System.out.println("Hot keys                : " + (hotKeyShare == 0 ? "not spread" :
+                    "over " + hotKeyShare + " of the records, spread over " + hotKeyPartitions + " partitions"));
 
             switch (app) {
                 case 0:
@@ -34,7 +118,44 @@ public class App {
                     break;
                 case 1:
                     System.out.println("App 7 selected: " + TwitterProducer.class.getSimpleName());
-                    TwitterProducer twitterProducer = new TwitterProducer(elements);
+                    TwitterProducer twitterProducer = new TwitterProducer(elements, "twitter_tweets", false,
+                            matchStrategy != null, false, pipelineConfig);
+                    if (matchStrategy != null) {
+                        twitterProducer.setMatchStrategy(matchStrategy);
+                    }
+                    if (fieldOutput != null) {
+                        twitterProducer.setFields(fields, fieldOutput);
+                    }
+                    twitterProducer.getDeliveryReporter().setLogEvery(logEvery);
+                    if (tuning != null) {
+                        twitterProducer.setTuning(tuning);
+                    }
+                    if (calibrate != null) {
+                        try {
+                            twitterProducer.calibrate(ReplaySource.files(Paths.get(calibrate)));
+                        } catch (IOException e) {
+                            logger.error("Could not calibrate the producer: " + e.getMessage());
+                        }
+                        app = 0;
+                        break;
+                    }
+                    if (hotKeyShare > 0) {
+                        twitterProducer.setSkewAwarePartitioner(hotKeyShare, hotKeyPartitions);
+                    }
+                    if (registry != null) {
+                        TweetEncoder<?> encoder = avroEncoder(registry);
+                        if (encoder == null) {
+                            app = 0;
+                            break;
+                        }
+                        twitterProducer.setEncoder(encoder);
+                    }
+                    if (replay != null) {
+                        twitterProducer.setReplay(createReplay(replay, pace));
+                    }
+                    if (capture != null) {
+                        twitterProducer.setCapture(new TweetCapture(Paths.get(capture)));
+                    }
                     twitterProducer.run();
                     app = 0;
                     break;
@@ -46,7 +167,34 @@ public class App {
         } else {
             logger.info("Applications available");
             logger.info("1 - " + TwitterProducer.class.getSimpleName());
-            logger.info("use: java -jar kafka-twitter/target/kafka-twitter-1.0.jar -app 1 -elements \"corona|covid|covid-19\"");
+            logger.info("use: java -jar kafka-twitter/target/kafka-twitter-1.0.jar -app 1 -elements \"corona|covid|covid-19\" [-workers 4] [-key first|longest|all] [-log 1000] " +
+                    "[-headers|-compact " + TwitterProducer.ROUTING_FIELDS + "] [-replay tweets.jsonl|dir [-pace recorded|max|<tweets per second>]] [-capture dir] " +
+                    "[-codec none|gzip|snappy|lz4|zstd] [-linger ms] [-batch bytes] [-calibrate tweets.jsonl|dir] " +
+                    "[-avro http://localhost:8081, built with: mvn package -Pavro] [-skew 0.1 [-spread 3]]");
+        }
+    }
+
+    private static TweetEncoder<?> avroEncoder(String registry) {
+        try {
+            return (TweetEncoder<?>) Class.forName(AVRO_ENCODER).getConstructor(String.class).newInstance(registry);
+        } catch (ClassNotFoundException e) {
+            System.out.println("The Avro encoder is missing, build the jar with: mvn package -Pavro");
+        } catch (ReflectiveOperationException e) {
+            logger.error("Could not create the Avro encoder", e);
+        }
+        return null;
+    }
+
+    /**
+     * @param pace {@code recorded}, {@code max} or a number of tweets per second
+     */
+    private static ReplaySource createReplay(String path, String pace) {
+        if ("recorded".equalsIgnoreCase(pace)) {
+            return new ReplaySource(ReplaySource.files(Paths.get(path)), ReplayPace.RECORDED);
+        } else if ("max".equalsIgnoreCase(pace)) {
+            return new ReplaySource(ReplaySource.files(Paths.get(path)), ReplayPace.MAX);
         }
+        return new ReplaySource(ReplaySource.files(Paths.get(path)), ReplayPace.FIXED_RATE)
+                .setRate(Double.parseDouble(pace));
     }
 }
@@ -0,0 +1,340 @@
+package com.github.felipegutierrez.kafka.twitter.delivery;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Record the outcome of the sends of the producer and report them periodically, instead of logging every record
+ * from its callback.
+ * <p>
+ * The callbacks run on the I/O thread of the producer, which sends nothing while a callback runs. The
+ * {@link Callback} of {@link #callback(ProducerRecord)} therefore only does constant work: it records the send-to-ack
+ * latency into an HdrHistogram {@link Recorder}, which is wait-free, adds to {@link LongAdder}s per partition and, for
+ * a sampled record or a failure, offers itself to a bounded queue without waiting. A background thread logs the
+ * counts, the rates and the latency percentiles of each interval, and formats at most
+ * {@link #setMaxLogsPerReport(int)} of the queued deliveries; the others are counted as suppressed.
+ */
+public class DeliveryReporter implements DeliveryReporterMBean, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryReporter.class);
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final int LOG_QUEUE_CAPACITY = 1024;
+    private final long reportIntervalMs;
+    private final Recorder latencies = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private final ConcurrentMap<Integer, PartitionCounts> partitions = new ConcurrentHashMap<Integer, PartitionCounts>();
+    private final LongAdder sentRecords = new LongAdder();
+    private final LongAdder failedRecords = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+    private final LongAdder suppressedLogs = new LongAdder();
+    private final AtomicLong sequence = new AtomicLong();
+    // the sampled and the failed deliveries, formatted by the reporter
+    private final BlockingQueue<DeliveryCallback> logs = new ArrayBlockingQueue<DeliveryCallback>(LOG_QUEUE_CAPACITY);
+    private volatile int logEvery = 0;
+    private volatile int maxLogsPerReport = 10;
+    private ScheduledExecutorService scheduler;
+    // guarded by this, only report() drains the recorder: the latencies of the last report and of all the reports
+    private final Histogram total = newHistogram();
+    private Histogram interval;
+    private long lastReportNanos = System.nanoTime();
+    private long lastSent;
+    private long lastBytes;
+
+    public DeliveryReporter() {
+        this(10000);
+    }
+
+    /**
+     * @param reportIntervalMs time between two reports
+     */
+    public DeliveryReporter(long reportIntervalMs) {
+        if (reportIntervalMs < 1) {
+            throw new IllegalArgumentException("reportIntervalMs must be at least 1");
+        }
+        this.reportIntervalMs = reportIntervalMs;
+    }
+
+    private static Histogram newHistogram() {
+        return new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * Log the value of one record out of this number once it is acknowledged, 0 to log none. The failures are always
+     * logged, within {@link #setMaxLogsPerReport(int)}.
+     */
+    public DeliveryReporter setLogEvery(int logEvery) {
+        if (logEvery < 0) {
+            throw new IllegalArgumentException("logEvery must be at least 0");
+        }
+        this.logEvery = logEvery;
+        return this;
+    }
+
+    /**
+     * Number of sampled records and failures logged by a report at most, which bounds the logging rate.
+     */
+    public DeliveryReporter setMaxLogsPerReport(int maxLogsPerReport) {
+        if (maxLogsPerReport < 0) {
+            throw new IllegalArgumentException("maxLogsPerReport must be at least 0");
+        }
+        this.maxLogsPerReport = maxLogsPerReport;
+        return this;
+    }
+
+    public synchronized DeliveryReporter start() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "delivery-reporter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        report();
+                    } catch (RuntimeException e) {
+                        logger.warn("Could not report the deliveries: " + e.getMessage());
+                    }
+                }
+            }, reportIntervalMs, reportIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    public DeliveryReporter registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("com.github.felipegutierrez.kafka.twitter:type=DeliveryReporter,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            logger.warn("Could not register the DeliveryReporter MBean: " + e.getMessage());
+        }
+        return this;
+    }
+
+    /**
+     * Called when the record is handed to the producer, which starts its latency.
+     *
+     * @return the callback to send the record with
+     */
+    public Callback callback(ProducerRecord<?, ?> record) {
+        int every = logEvery;
+        Object sampled = every > 0 && sequence.getAndIncrement() % every == 0 ? record.value() : null;
+        return new DeliveryCallback(System.nanoTime(), sampled);
+    }
+
+    private void recordDelivery(DeliveryCallback delivery, RecordMetadata metadata, Exception exception) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - delivery.sendNanos);
+        latencies.recordValue(micros < 0 ? 0 : Math.min(micros, HIGHEST_TRACKABLE_MICROS));
+        PartitionCounts counts = partitionCounts(metadata == null ? -1 : metadata.partition());
+        if (exception == null) {
+            sentRecords.increment();
+            counts.sent.increment();
+            long bytes = Math.max(0, metadata.serializedKeySize()) + Math.max(0, metadata.serializedValueSize());
+            sentBytes.add(bytes);
+            counts.bytes.add(bytes);
+            if (delivery.sampled != null) {
+                offerLog(delivery);
+            }
+        } else {
+            failedRecords.increment();
+            counts.failed.increment();
+            offerLog(delivery);
+        }
+    }
+
+    private PartitionCounts partitionCounts(int partition) {
+        PartitionCounts counts = partitions.get(partition);
+        if (counts == null) {
+            PartitionCounts created = new PartitionCounts();
+            counts = partitions.putIfAbsent(partition, created);
+            if (counts == null) {
+                counts = created;
+            }
+        }
+        return counts;
+    }
+
+    private void offerLog(DeliveryCallback delivery) {
+        if (!logs.offer(delivery)) {
+            suppressedLogs.increment();
+        }
+    }
+
+    /**
+     * Log the deliveries since the last report, called periodically by the background thread. The latency getters
+     * read the latencies up to this report.
+     */
+    public synchronized void report() {
+        // recycled, the interval histogram is reset with the latencies since the last report
+        interval = latencies.getIntervalHistogram(interval);
+        total.add(interval);
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - lastReportNanos) / 1e9;
+        long sent = sentRecords.sum();
+        long bytes = sentBytes.sum();
+        StringBuilder partitionReport = new StringBuilder();
+        for (Map.Entry<Integer, long[]> entry : getPartitionCounts().entrySet()) {
+            partitionReport.append(partitionReport.length() == 0 ? "" : ", ").append(entry.getKey()).append('=')
+                    .append(entry.getValue()[0]).append('/').append(entry.getValue()[1]);
+        }
+        logger.info(String.format("Delivered %d records (%.1f/s, %.1f KB/s), %d failed, latency p50 %.1f ms, p99 %.1f ms, " +
+                        "max %.1f ms, sent/failed per partition: {%s}", sent, (sent - lastSent) / seconds,
+                (bytes - lastBytes) / seconds / 1024, failedRecords.sum(), interval.getValueAtPercentile(50) / 1000.0,
+                interval.getValueAtPercentile(99) / 1000.0, interval.getMaxValue() / 1000.0, partitionReport));
+        lastReportNanos = now;
+        lastSent = sent;
+        lastBytes = bytes;
+
+        int logged = 0;
+        DeliveryCallback delivery;
+        while ((delivery = logs.poll()) != null) {
+            if (logged++ >= maxLogsPerReport) {
+                suppressedLogs.increment();
+            } else if (delivery.exception == null) {
+                logger.info("Record sent to partition " + delivery.metadata.partition() + " at offset " +
+                        delivery.metadata.offset() + ": " + delivery.sampled);
+            } else {
+                logger.error("Error on sending message: " + delivery.exception.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stop the background thread and log a last report.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+            }
+        }
+        report();
+    }
+
+    @Override
+    public long getSentRecords() {
+        return sentRecords.sum();
+    }
+
+    @Override
+    public long getFailedRecords() {
+        return failedRecords.sum();
+    }
+
+    /**
+     * @return serialized bytes of the keys and values acknowledged
+     */
+    @Override
+    public long getSentBytes() {
+        return sentBytes.sum();
+    }
+
+    /**
+     * @return number of sampled records and failures not logged, the queue or the report being full
+     */
+    @Override
+    public long getSuppressedLogs() {
+        return suppressedLogs.sum();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return send-to-ack latency in milliseconds below which this percentage of the records from the start to the
+     * last report falls
+     */
+    public synchronized double getLatencyMs(double percentile) {
+        return total.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    @Override
+    public double getLatencyP50Ms() {
+        return getLatencyMs(50);
+    }
+
+    @Override
+    public double getLatencyP99Ms() {
+        return getLatencyMs(99);
+    }
+
+    @Override
+    public synchronized double getLatencyMaxMs() {
+        return total.getMaxValue() / 1000.0;
+    }
+
+    /**
+     * @return number of latencies logged by the last report
+     */
+    synchronized long getReportedLatencies() {
+        return interval == null ? 0 : interval.getTotalCount();
+    }
+
+    /**
+     * @return the acknowledged, failed and bytes counts of each partition, -1 for the records that failed before a
+     * partition was chosen
+     */
+    public Map<Integer, long[]> getPartitionCounts() {
+        Map<Integer, long[]> counts = new TreeMap<Integer, long[]>();
+        for (Map.Entry<Integer, PartitionCounts> entry : partitions.entrySet()) {
+            PartitionCounts partition = entry.getValue();
+            counts.put(entry.getKey(), new long[]{partition.sent.sum(), partition.failed.sum(), partition.bytes.sum()});
+        }
+        return counts;
+    }
+
+    private static final class PartitionCounts {
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+    }
+
+    private final class DeliveryCallback implements Callback {
+        private final long sendNanos;
+        private final Object sampled;
+        // set on completion, read by the reporter after the queue
+        private RecordMetadata metadata;
+        private Exception exception;
+
+        private DeliveryCallback(long sendNanos, Object sampled) {
+            this.sendNanos = sendNanos;
+            this.sampled = sampled;
+        }
+
+        @Override
+        public void onCompletion(RecordMetadata metadata, Exception exception) {
+            this.metadata = metadata;
+            this.exception = exception;
+            recordDelivery(this, metadata, exception);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.felipegutierrez.kafka.twitter.delivery;
+
+/**
+ * JMX view of the {@link DeliveryReporter}.
+ */
+public interface DeliveryReporterMBean {
+
+    long getSentRecords();
+
+    long getFailedRecords();
+
+    long getSentBytes();
+
+    long getSuppressedLogs();
+
+    double getLatencyP50Ms();
+
+    double getLatencyP99Ms();
+
+    double getLatencyMaxMs();
+}
@@ -0,0 +1,21 @@
+package com.github.felipegutierrez.kafka.twitter.key;
+
+/**
+ * Which of the tracked terms found in a tweet becomes the key of its record, see {@link TermMatcher}.
+ */
+public enum MatchStrategy {
+    /**
+     * The first term to end in the message, the scan stops there. Of the terms ending at the same character, the
+     * longest one.
+     */
+    FIRST,
+    /**
+     * The longest term found in the message, the first one found of the same length.
+     */
+    LONGEST,
+    /**
+     * The key is the first term, like {@link #FIRST}, and every distinct term found is listed in a header of the
+     * record.
+     */
+    ALL
+}
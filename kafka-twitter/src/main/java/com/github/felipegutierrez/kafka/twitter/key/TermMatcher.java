@@ -0,0 +1,219 @@
+package com.github.felipegutierrez.kafka.twitter.key;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Find the tracked terms in a message with an Aho-Corasick automaton, ignoring the case.
+ * <p>
+ * The automaton is built once from the terms and compiled into a table with one row per state and one column per
+ * distinct character of the terms, the failure links already followed. A message is then scanned once, one table
+ * lookup per character, whatever the number of terms, and without lowercasing it nor allocating. The characters are
+ * compared with {@link Character#toLowerCase(char)}, which differs from {@link String#toLowerCase()} only for the
+ * few characters lowercased into several ones.
+ * <p>
+ * Instances are immutable and can be shared by the threads.
+ */
+public class TermMatcher {
+    private static final int ASCII = 128;
+    private final String[] terms;
+    private final int[] termLengths;
+    // column of each ASCII character, 0 for the characters of no term
+    private final int[] asciiColumns = new int[ASCII];
+    // sorted lowercase non-ASCII characters of the terms, and their columns
+    private final char[] otherChars;
+    private final int[] otherColumns;
+    private final int columns;
+    private final int[] transitions;
+    // term ending at each state, -1 if none
+    private final int[] stateTerms;
+    // longest term ending at each state, its own term or the one of a suffix, -1 if none
+    private final int[] longestTerms;
+    // next shorter suffix state ending a term, -1 if none
+    private final int[] outputLinks;
+
+    /**
+     * @param terms the terms to find, the empty ones are ignored, the indexes of the duplicates are the ones of the
+     *              first occurrences
+     */
+    public TermMatcher(Collection<String> terms) {
+        this.terms = terms.toArray(new String[0]);
+        this.termLengths = new int[this.terms.length];
+
+        // one column per distinct lowercase character
+        TreeSet<Character> alphabet = new TreeSet<Character>();
+        for (int i = 0; i < this.terms.length; i++) {
+            termLengths[i] = this.terms[i].length();
+            for (int j = 0; j < this.terms[i].length(); j++) {
+                alphabet.add(Character.toLowerCase(this.terms[i].charAt(j)));
+            }
+        }
+        int column = 1;
+        List<Character> others = new ArrayList<Character>();
+        Map<Character, Integer> lowerColumns = new HashMap<Character, Integer>();
+        for (Character c : alphabet) {
+            lowerColumns.put(c, column++);
+            if (c >= ASCII) {
+                others.add(c);
+            }
+        }
+        this.columns = column;
+        for (char c = 0; c < ASCII; c++) {
+            Integer lowerColumn = lowerColumns.get(Character.toLowerCase(c));
+            asciiColumns[c] = lowerColumn == null ? 0 : lowerColumn;
+        }
+        this.otherChars = new char[others.size()];
+        this.otherColumns = new int[others.size()];
+        for (int i = 0; i < others.size(); i++) {
+            otherChars[i] = others.get(i);
+            otherColumns[i] = lowerColumns.get(others.get(i));
+        }
+
+        // the trie of the terms
+        List<int[]> children = new ArrayList<int[]>();
+        List<Integer> ends = new ArrayList<Integer>();
+        children.add(new int[columns]);
+        ends.add(-1);
+        for (int i = 0; i < this.terms.length; i++) {
+            if (this.terms[i].isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int j = 0; j < this.terms[i].length(); j++) {
+                int c = columnOf(this.terms[i].charAt(j));
+                if (children.get(state)[c] == 0) {
+                    children.get(state)[c] = children.size();
+                    children.add(new int[columns]);
+                    ends.add(-1);
+                }
+                state = children.get(state)[c];
+            }
+            if (ends.get(state) < 0) {
+                ends.set(state, i);
+            }
+        }
+
+        // breadth first, the failure state of a state is shallower and already complete
+        int states = children.size();
+        this.transitions = new int[states * columns];
+        this.stateTerms = new int[states];
+        this.longestTerms = new int[states];
+        this.outputLinks = new int[states];
+        int[] failures = new int[states];
+        Deque<Integer> queue = new ArrayDeque<Integer>();
+        queue.add(0);
+        stateTerms[0] = -1;
+        longestTerms[0] = -1;
+        outputLinks[0] = -1;
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int[] next = children.get(state);
+            for (int c = 0; c < columns; c++) {
+                int child = next[c];
+                if (child == 0) {
+                    transitions[state * columns + c] = state == 0 ? 0 : transitions[failures[state] * columns + c];
+                    continue;
+                }
+                transitions[state * columns + c] = child;
+                int failure = state == 0 ? 0 : transitions[failures[state] * columns + c];
+                failures[child] = failure;
+                stateTerms[child] = ends.get(child);
+                outputLinks[child] = stateTerms[failure] >= 0 ? failure : outputLinks[failure];
+                longestTerms[child] = stateTerms[child] >= 0 ? stateTerms[child] : longestTerms[failure];
+                queue.add(child);
+            }
+        }
+    }
+
+    private int columnOf(char c) {
+        if (c < ASCII) {
+            return asciiColumns[c];
+        }
+        // e.g. the Kelvin sign, lowercased into 'k', also when every term is ASCII
+        char lower = Character.toLowerCase(c);
+        if (lower < ASCII) {
+            return asciiColumns[lower];
+        }
+        if (otherChars.length == 0) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(otherChars, lower);
+        return index < 0 ? 0 : otherColumns[index];
+    }
+
+    /**
+     * @param strategy {@link MatchStrategy#FIRST} or {@link MatchStrategy#LONGEST}, {@link MatchStrategy#ALL} is
+     *                 the same as {@link MatchStrategy#FIRST}, see {@link #matchAll(CharSequence, int[])}
+     * @return index of the term found, -1 if none is
+     */
+    public int match(CharSequence text, MatchStrategy strategy) {
+        boolean longest = strategy == MatchStrategy.LONGEST;
+        int found = -1;
+        int state = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            state = transitions[state * columns + columnOf(text.charAt(i))];
+            int term = longestTerms[state];
+            if (term >= 0) {
+                if (!longest) {
+                    return term;
+                }
+                if (found < 0 || termLengths[term] > termLengths[found]) {
+                    found = term;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param matches receives the indexes of the distinct terms found, in the order they end in the message, the
+     *                ones beyond its length are ignored
+     * @return number of indexes written to {@code matches}
+     */
+    public int matchAll(CharSequence text, int[] matches) {
+        int count = 0;
+        int state = 0;
+        for (int i = 0, length = text.length(); i < length && count < matches.length; i++) {
+            state = transitions[state * columns + columnOf(text.charAt(i))];
+            int output = stateTerms[state] >= 0 ? state : outputLinks[state];
+            // the longest term ending here first
+            for (; output >= 0 && count < matches.length; output = outputLinks[output]) {
+                count = add(matches, count, stateTerms[output]);
+            }
+        }
+        return count;
+    }
+
+    private static int add(int[] matches, int count, int term) {
+        for (int i = 0; i < count; i++) {
+            if (matches[i] == term) {
+                return count;
+            }
+        }
+        matches[count] = term;
+        return count + 1;
+    }
+
+    public String term(int index) {
+        return terms[index];
+    }
+
+    public int size() {
+        return terms.length;
+    }
+
+    /**
+     * @return number of states of the automaton, the table holds this number times the number of distinct
+     * characters of the terms
+     */
+    public int getStates() {
+        return stateTerms.length;
+    }
+}
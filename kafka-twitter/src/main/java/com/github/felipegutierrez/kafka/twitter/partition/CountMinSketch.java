@@ -0,0 +1,100 @@
+package com.github.felipegutierrez.kafka.twitter.partition;
+
+import com.github.felipegutierrez.kafka.util.Numbers;
+import org.apache.kafka.common.utils.Utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate counts of the keys in a few KB, whatever the number of distinct keys: each key increments one counter
+ * per row, at a position given by its hash, and its count is the smallest of its counters. A count is never under the
+ * real one, and over it by at most a small share of the total, so the heavy keys stand out.
+ * <p>
+ * {@link #decay()} halves every counter, called once per window it turns the counts into rates decaying over a few
+ * windows. The counters are atomic and can be incremented by several threads, a decay concurrent with increments may
+ * lose some of them, which only shifts the estimates slightly.
+ */
+public class CountMinSketch {
+    private final int depth;
+    private final int mask;
+    private final AtomicLongArray counters;
+    private final AtomicLong total = new AtomicLong();
+
+    /**
+     * @param width number of counters per row, rounded up to a power of two
+     * @param depth number of rows
+     */
+    public CountMinSketch(int width, int depth) {
+        if (width < 1) {
+            throw new IllegalArgumentException("width must be at least 1");
+        }
+        if (depth < 1) {
+            throw new IllegalArgumentException("depth must be at least 1");
+        }
+        int columns = Numbers.ceilPowerOfTwo(width);
+        this.depth = depth;
+        this.mask = columns - 1;
+        this.counters = new AtomicLongArray(columns * depth);
+    }
+
+    /**
+     * Count the key once.
+     *
+     * @return the count of the key, including this one
+     */
+    public long add(byte[] key) {
+        total.incrementAndGet();
+        int h1 = Utils.murmur2(key);
+        int h2 = secondHash(h1);
+        long count = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            count = Math.min(count, counters.incrementAndGet(index(row, h1, h2)));
+        }
+        return count;
+    }
+
+    public long estimate(byte[] key) {
+        int h1 = Utils.murmur2(key);
+        int h2 = secondHash(h1);
+        long count = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            count = Math.min(count, counters.get(index(row, h1, h2)));
+        }
+        return count;
+    }
+
+    /**
+     * @return number of keys counted, decayed as the counters
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * Halve the counts.
+     */
+    public void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            long count;
+            do {
+                count = counters.get(i);
+            } while (count > 0 && !counters.compareAndSet(i, count, count >> 1));
+        }
+        long count;
+        do {
+            count = total.get();
+        } while (!total.compareAndSet(count, count >> 1));
+    }
+
+    // the rows are indexed by h1 + row * h2, which is as good as independent hashes
+    private int index(int row, int h1, int h2) {
+        return row * (mask + 1) + ((h1 + row * h2) & mask);
+    }
+
+    private static int secondHash(int h1) {
+        int h = h1 * 0x9E3779B9;
+        // odd, so every column is reached
+        return (h ^ (h >>> 16)) | 1;
+    }
+}
@@ -0,0 +1,294 @@
+package com.github.felipegutierrez.kafka.twitter.partition;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Spread the records of the hot keys over a few partitions, e.g. the tweets keyed by {@code corona} during a spike,
+ * so a single term does not load a single broker and a single consumer.
+ * <p>
+ * The rate of each key is estimated with a {@link CountMinSketch} halved every window. A key over
+ * {@link #HOT_SHARE_CONFIG} of the records of the window is hot: its records are salted, in turn, over its own
+ * partition and the next ones, as many as its share of the records needs and at most {@link #MAX_PARTITIONS_CONFIG}.
+ * The other keys go to the partition of the murmur2 hash of their key, like with the default partitioner of the
+ * producer, so the partition of a cold key does not change. The records of a hot key are not ordered across its
+ * partitions anymore. The records without a key stick to one available partition of their topic until a batch of
+ * it is full, then move to another one, so they fill large batches.
+ * <p>
+ * Set it as the {@code partitioner.class} of the producer, with the settings below in the same properties. The
+ * skew of the partitions is exposed in JMX under the {@code client.id} of the producer, or {@code producer-N} when
+ * it has none: the id Kafka generates is not part of the configs.
+ */
+public class SkewAwarePartitioner implements Partitioner, SkewAwarePartitionerMBean {
+    /**
+     * Share of the records from which a key is hot, 0.1 by default.
+     */
+    public static final String HOT_SHARE_CONFIG = "skew.hot.share";
+    /**
+     * Number of partitions a hot key is spread over at most, 3 by default.
+     */
+    public static final String MAX_PARTITIONS_CONFIG = "skew.max.partitions";
+    /**
+     * Time after which the rates are halved, 1000 ms by default.
+     */
+    public static final String WINDOW_MS_CONFIG = "skew.window.ms";
+    /**
+     * Number of records of a window under which no key is hot, 100 by default.
+     */
+    public static final String MIN_RECORDS_CONFIG = "skew.min.records";
+    private static final Logger logger = LoggerFactory.getLogger(SkewAwarePartitioner.class);
+    // names the MBeans of the producers without client.id
+    private static final AtomicInteger UNNAMED_PRODUCERS = new AtomicInteger();
+    private final CountMinSketch sketch = new CountMinSketch(2048, 4);
+    private final ConcurrentMap<String, byte[]> hotKeys = new ConcurrentHashMap<String, byte[]>();
+    // records per partition of each topic in the current window
+    private final ConcurrentMap<String, AtomicLongArray> windowCounts = new ConcurrentHashMap<String, AtomicLongArray>();
+    // partition of the records without a key, per topic
+    private final ConcurrentMap<String, Integer> stickyPartitions = new ConcurrentHashMap<String, Integer>();
+    private final AtomicInteger salt = new AtomicInteger();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder saltedRecords = new LongAdder();
+    private double hotShare = 0.1;
+    private int maxPartitions = 3;
+    private long windowNanos = TimeUnit.SECONDS.toNanos(1);
+    private long minRecords = 100;
+    private volatile long windowEnd = System.nanoTime() + windowNanos;
+    private volatile double partitionSkew = 1;
+    private ObjectName objectName;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        hotShare = Double.parseDouble(config(configs, HOT_SHARE_CONFIG, hotShare));
+        if (hotShare <= 0 || hotShare > 1) {
+            throw new IllegalArgumentException(HOT_SHARE_CONFIG + " must be in (0, 1]");
+        }
+        maxPartitions = Integer.parseInt(config(configs, MAX_PARTITIONS_CONFIG, maxPartitions));
+        if (maxPartitions < 1) {
+            throw new IllegalArgumentException(MAX_PARTITIONS_CONFIG + " must be at least 1");
+        }
+        windowNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(config(configs, WINDOW_MS_CONFIG,
+                TimeUnit.NANOSECONDS.toMillis(windowNanos))));
+        if (windowNanos < 1) {
+            throw new IllegalArgumentException(WINDOW_MS_CONFIG + " must be at least 1");
+        }
+        minRecords = Long.parseLong(config(configs, MIN_RECORDS_CONFIG, minRecords));
+        windowEnd = System.nanoTime() + windowNanos;
+        Object clientId = configs.get(ProducerConfig.CLIENT_ID_CONFIG);
+        registerMBean(clientId == null || clientId.toString().isEmpty() ?
+                "producer-" + UNNAMED_PRODUCERS.incrementAndGet() : clientId.toString());
+    }
+
+    private static String config(Map<String, ?> configs, String name, Object defaultValue) {
+        Object value = configs.get(name);
+        return String.valueOf(value == null ? defaultValue : value);
+    }
+
+    private void registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("com.github.felipegutierrez.kafka.twitter:type=SkewAwarePartitioner,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            logger.warn("Could not register the SkewAwarePartitioner MBean: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        int numPartitions = cluster.partitionsForTopic(topic).size();
+        long now = System.nanoTime();
+        if (now - windowEnd >= 0) {
+            roll(now);
+        }
+        records.increment();
+        int partition;
+        if (keyBytes == null) {
+            partition = stickyPartition(topic, cluster, numPartitions);
+        } else {
+            partition = partition(key, keyBytes, numPartitions);
+        }
+        count(topic, partition, numPartitions);
+        return partition;
+    }
+
+    private int partition(Object key, byte[] keyBytes, int numPartitions) {
+        long count = sketch.add(keyBytes);
+        long total = sketch.getTotal();
+        // the partition of the default partitioner of the producer
+        int partition = Utils.toPositive(Utils.murmur2(keyBytes)) % numPartitions;
+        if (total < minRecords || count <= hotShare * total) {
+            return partition;
+        }
+        // enough partitions for a fair share of the records each
+        int spread = Math.min(Math.min(maxPartitions, numPartitions),
+                Math.max(2, (int) Math.ceil((double) count * numPartitions / total)));
+        if (spread < 2) {
+            return partition;
+        }
+        String name = String.valueOf(key);
+        if (hotKeys.putIfAbsent(name, keyBytes) == null) {
+            logger.info("Key " + name + " is hot with " + count + " of " + total + " records, spread over " + spread +
+                    " partitions from " + partition);
+        }
+        saltedRecords.increment();
+        return (partition + (salt.getAndIncrement() & Integer.MAX_VALUE) % spread) % numPartitions;
+    }
+
+    private int stickyPartition(String topic, Cluster cluster, int numPartitions) {
+        Integer partition = stickyPartitions.get(topic);
+        if (partition == null || partition >= numPartitions) {
+            return nextStickyPartition(topic, cluster, -1);
+        }
+        return partition;
+    }
+
+    /**
+     * Move the records without a key of the topic to another available partition than the previous one, if any.
+     */
+    private int nextStickyPartition(String topic, Cluster cluster, int previous) {
+        List<PartitionInfo> partitions = cluster.availablePartitionsForTopic(topic);
+        if (partitions.isEmpty()) {
+            partitions = cluster.partitionsForTopic(topic);
+        }
+        int partition = partitions.get(ThreadLocalRandom.current().nextInt(partitions.size())).partition();
+        if (partition == previous && partitions.size() > 1) {
+            // draw among the others, the last one stands in for the previous
+            int index = ThreadLocalRandom.current().nextInt(partitions.size() - 1);
+            partition = partitions.get(index).partition();
+            if (partition == previous) {
+                partition = partitions.get(partitions.size() - 1).partition();
+            }
+        }
+        stickyPartitions.put(topic, partition);
+        return partition;
+    }
+
+    private void count(String topic, int partition, int numPartitions) {
+        AtomicLongArray counts = windowCounts.get(topic);
+        if (counts == null || counts.length() != numPartitions) {
+            // first record of the window, or partitions added to the topic
+            counts = new AtomicLongArray(numPartitions);
+            AtomicLongArray previous = windowCounts.putIfAbsent(topic, counts);
+            if (previous != null && previous.length() == numPartitions) {
+                counts = previous;
+            } else if (previous != null) {
+                windowCounts.put(topic, counts);
+            }
+        }
+        counts.incrementAndGet(partition);
+    }
+
+    /**
+     * Close the window: measure the skew of the partitions, halve the rates and cool the hot keys down.
+     */
+    private synchronized void roll(long now) {
+        if (now - windowEnd < 0) {
+            return;
+        }
+        windowEnd = now + windowNanos;
+        double skew = 0;
+        for (AtomicLongArray counts : windowCounts.values()) {
+            skew = Math.max(skew, skew(counts));
+        }
+        if (skew > 0) {
+            partitionSkew = skew;
+        }
+        windowCounts.clear();
+        sketch.decay();
+        long total = sketch.getTotal();
+        for (Map.Entry<String, byte[]> hotKey : hotKeys.entrySet()) {
+            if (total < minRecords || sketch.estimate(hotKey.getValue()) <= hotShare * total) {
+                hotKeys.remove(hotKey.getKey());
+                logger.info("Key " + hotKey.getKey() + " is not hot anymore");
+            }
+        }
+    }
+
+    /**
+     * @return the records of the busiest partition per average records, 0 without records
+     */
+    static double skew(AtomicLongArray counts) {
+        long max = 0;
+        long sum = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long count = counts.get(i);
+            max = Math.max(max, count);
+            sum += count;
+        }
+        return sum == 0 ? 0 : (double) max * counts.length() / sum;
+    }
+
+    @Override
+    public void onNewBatch(String topic, Cluster cluster, int prevPartition) {
+        Integer partition = stickyPartitions.get(topic);
+        if (partition == null || partition == prevPartition) {
+            nextStickyPartition(topic, cluster, prevPartition);
+        }
+    }
+
+    @Override
+    public double getPartitionSkew() {
+        return partitionSkew;
+    }
+
+    @Override
+    public String getHotKeys() {
+        StringBuilder keys = new StringBuilder();
+        for (Map.Entry<String, byte[]> hotKey : hotKeys.entrySet()) {
+            if (keys.length() > 0) {
+                keys.append(", ");
+            }
+            keys.append(hotKey.getKey()).append('=').append(sketch.estimate(hotKey.getValue()));
+        }
+        return keys.toString();
+    }
+
+    public boolean isHot(String key) {
+        return hotKeys.containsKey(key);
+    }
+
+    @Override
+    public long getRecords() {
+        return records.sum();
+    }
+
+    @Override
+    public long getSaltedRecords() {
+        return saltedRecords.sum();
+    }
+
+    @Override
+    public void close() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                logger.debug("Could not unregister the SkewAwarePartitioner MBean: " + e.getMessage());
+            }
+        }
+        logger.info("Partitioned " + records.sum() + " records, " + saltedRecords.sum() + " salted, skew of the last " +
+                "window " + partitionSkew);
+    }
+}
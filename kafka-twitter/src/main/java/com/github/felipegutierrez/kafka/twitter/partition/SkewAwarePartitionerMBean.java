@@ -0,0 +1,22 @@
+package com.github.felipegutierrez.kafka.twitter.partition;
+
+/**
+ * JMX view of the {@link SkewAwarePartitioner}.
+ */
+public interface SkewAwarePartitionerMBean {
+
+    /**
+     * @return records of the busiest partition per record of the average partition in the last window, 1 when
+     * balanced
+     */
+    double getPartitionSkew();
+
+    /**
+     * @return the hot keys and their estimated records per window, e.g. {@code corona=812}
+     */
+    String getHotKeys();
+
+    long getRecords();
+
+    long getSaltedRecords();
+}
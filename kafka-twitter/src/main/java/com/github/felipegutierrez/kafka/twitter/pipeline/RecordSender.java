@@ -0,0 +1,12 @@
+package com.github.felipegutierrez.kafka.twitter.pipeline;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+/**
+ * Last stage of the {@link TweetPipeline}, usually {@link org.apache.kafka.clients.producer.Producer#send}. Called by
+ * a single thread.
+ */
+public interface RecordSender<V> {
+
+    void send(ProducerRecord<String, V> record);
+}
@@ -0,0 +1,129 @@
+package com.github.felipegutierrez.kafka.twitter.pipeline;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded lock-free queue between exactly one producer thread and one consumer thread.
+ * <p>
+ * The slots are allocated once, so unlike a {@link java.util.concurrent.LinkedBlockingQueue} no node is allocated
+ * per element. The producer and the consumer only publish their position with an ordered write, and each one keeps
+ * the last position of the other it has seen, so it reads the shared position again only when the ring looks full,
+ * respectively empty. The consumer takes the elements in batches with {@link #drainTo(List, int)}.
+ */
+public class RingBuffer<E> {
+    private final Object[] slots;
+    private final int mask;
+    // next position to read, written by the consumer only
+    private final AtomicLong head = new AtomicLong();
+    // next position to write, written by the producer only
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder fullOffers = new LongAdder();
+    // last head seen by the producer, and high-water mark written by the producer only
+    private long producerHead;
+    private volatile int maxSize;
+    // last tail seen by the consumer
+    private long consumerTail;
+
+    /**
+     * @param capacity number of slots, a power of two
+     */
+    public RingBuffer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two, at least 2");
+        }
+        this.slots = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Called by the producer thread only.
+     *
+     * @return false if the ring is full, the element was not added
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("element");
+        }
+        long position = tail.get();
+        if (position - producerHead >= slots.length) {
+            producerHead = head.get();
+            if (position - producerHead >= slots.length) {
+                fullOffers.increment();
+                return false;
+            }
+        }
+        slots[(int) position & mask] = element;
+        tail.lazySet(position + 1);
+        if (position + 1 - producerHead > maxSize) {
+            // the head seen last may be old, look again before raising the high-water mark
+            producerHead = head.get();
+            int size = (int) (position + 1 - producerHead);
+            if (size > maxSize) {
+                maxSize = size;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Called by the consumer thread only: move up to {@code maxElements} elements, oldest first, to the list.
+     *
+     * @return number of elements moved, 0 if the ring is empty
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(List<? super E> batch, int maxElements) {
+        long position = head.get();
+        long available = consumerTail - position;
+        if (available < maxElements) {
+            consumerTail = tail.get();
+            available = consumerTail - position;
+        }
+        int count = (int) Math.min(available, maxElements);
+        for (int i = 0; i < count; i++) {
+            int index = (int) (position + i) & mask;
+            batch.add((E) slots[index]);
+            slots[index] = null;
+        }
+        if (count > 0) {
+            head.lazySet(position + count);
+        }
+        return count;
+    }
+
+    /**
+     * @return number of elements in the ring, a snapshot when called by neither the producer nor the consumer
+     */
+    public int size() {
+        long position = head.get();
+        return (int) Math.max(0, Math.min(tail.get() - position, slots.length));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return highest number of elements the ring held
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return number of times the producer found the ring full
+     */
+    public long getFullOffers() {
+        return fullOffers.sum();
+    }
+
+    @Override
+    public String toString() {
+        return size() + "/" + capacity();
+    }
+}
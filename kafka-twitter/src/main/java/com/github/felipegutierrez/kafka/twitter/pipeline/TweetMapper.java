@@ -0,0 +1,16 @@
+package com.github.felipegutierrez.kafka.twitter.pipeline;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+/**
+ * Turn a tweet of the stream into the record to send, e.g. extract the key and the text. Called concurrently by the
+ * workers of the {@link TweetPipeline}.
+ */
+public interface TweetMapper<V> {
+
+    /**
+     * @param tweet message as received from the stream, usually the JSON of the tweet
+     * @return the record to send, null to skip the tweet
+     */
+    ProducerRecord<String, V> map(String tweet);
+}
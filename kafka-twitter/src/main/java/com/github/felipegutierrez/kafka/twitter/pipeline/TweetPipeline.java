@@ -0,0 +1,417 @@
+package com.github.felipegutierrez.kafka.twitter.pipeline;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Move the tweets from the queue of the Twitter client to Kafka in three stages, each on threads of its own:
+ * <ol>
+ * <li>ingest: one thread takes the tweets from the source queue in batches and hands them out to the workers in
+ * turn, so the source queue stays nearly empty and the Twitter client does not drop tweets on a spike;</li>
+ * <li>map: {@link TweetPipelineConfig#getWorkers()} threads turn the tweets into records with the
+ * {@link TweetMapper}, e.g. extract the key and parse the JSON, which spreads that work over the cores;</li>
+ * <li>send: one thread hands the records to the {@link RecordSender}, usually the Kafka producer.</li>
+ * </ol>
+ * Each worker has a {@link RingBuffer} in front of it and one behind it, so every ring has a single producer and a
+ * single consumer and no stage takes a lock. A full ring makes the previous stage wait, except the ingest stage with
+ * {@link TweetPipelineConfig#isDropWhenFull()}, which drops and counts the tweet. The tweets of different workers
+ * may be sent in a different order than received.
+ */
+public class TweetPipeline<V> implements TweetPipelineMBean, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(TweetPipeline.class);
+    private static final long POLL_TIMEOUT_MS = 100;
+    private static final int IDLE_SPINS = 100;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long CLOSE_TIMEOUT_MS = 30000;
+    private final BlockingQueue<String> source;
+    private final TweetMapper<V> mapper;
+    private final RecordSender<V> sender;
+    private final TweetPipelineConfig config;
+    private final List<RingBuffer<String>> parseRings = new ArrayList<RingBuffer<String>>();
+    private final List<RingBuffer<ProducerRecord<String, V>>> sendRings = new ArrayList<RingBuffer<ProducerRecord<String, V>>>();
+    private final List<Thread> threads = new ArrayList<Thread>();
+    private final AtomicInteger runningWorkers = new AtomicInteger();
+    private final LongAdder ingestedMessages = new LongAdder();
+    private final LongAdder sentRecords = new LongAdder();
+    private final LongAdder skippedMessages = new LongAdder();
+    private final LongAdder failedMessages = new LongAdder();
+    private final LongAdder droppedMessages = new LongAdder();
+    private volatile boolean running;
+    private volatile boolean ingestDone;
+    private volatile boolean aborted;
+    // guarded by this
+    private boolean started;
+    private boolean closed;
+
+    /**
+     * @param source queue filled by the Twitter client
+     */
+    public TweetPipeline(BlockingQueue<String> source, TweetMapper<V> mapper, RecordSender<V> sender, TweetPipelineConfig config) {
+        this.source = source;
+        this.mapper = mapper;
+        this.sender = sender;
+        this.config = config;
+        for (int i = 0; i < config.getWorkers(); i++) {
+            parseRings.add(new RingBuffer<String>(config.getRingCapacity()));
+            sendRings.add(new RingBuffer<ProducerRecord<String, V>>(config.getRingCapacity()));
+        }
+    }
+
+    public synchronized TweetPipeline<V> start() {
+        if (started) {
+            throw new IllegalStateException("The pipeline was already started");
+        }
+        started = true;
+        running = true;
+        threads.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ingest();
+            }
+        }, "tweet-ingest"));
+        runningWorkers.set(config.getWorkers());
+        for (int i = 0; i < config.getWorkers(); i++) {
+            final int worker = i;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    map(parseRings.get(worker), sendRings.get(worker));
+                }
+            }, "tweet-worker-" + i));
+        }
+        threads.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                send();
+            }
+        }, "tweet-sender"));
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        logger.info("Started the tweet pipeline with " + config);
+        return this;
+    }
+
+    public TweetPipeline<V> registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("com.github.felipegutierrez.kafka.twitter:type=TweetPipeline,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            logger.warn("Could not register the TweetPipeline MBean: " + e.getMessage());
+        }
+        return this;
+    }
+
+    private void ingest() {
+        List<String> batch = new ArrayList<String>(config.getBatchSize());
+        int next = 0;
+        try {
+            while (running) {
+                String first = source.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    next = dispatch(first, batch, next);
+                }
+            }
+            // the tweets the client queued before it was stopped
+            String first;
+            while (!aborted && (first = source.poll()) != null) {
+                next = dispatch(first, batch, next);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            ingestDone = true;
+        }
+    }
+
+    /**
+     * @return the worker to try first for the next batch
+     */
+    private int dispatch(String first, List<String> batch, int next) {
+        batch.add(first);
+        source.drainTo(batch, config.getBatchSize() - 1);
+        ingestedMessages.add(batch.size());
+        for (String message : batch) {
+            next = dispatch(message, next);
+        }
+        batch.clear();
+        return next;
+    }
+
+    private int dispatch(String message, int next) {
+        int workers = parseRings.size();
+        int idle = 0;
+        while (true) {
+            for (int i = 0; i < workers; i++) {
+                int worker = (next + i) % workers;
+                if (parseRings.get(worker).offer(message)) {
+                    return (worker + 1) % workers;
+                }
+            }
+            if (config.isDropWhenFull() || aborted) {
+                droppedMessages.increment();
+                return next;
+            }
+            idle = idle(idle);
+        }
+    }
+
+    private void map(RingBuffer<String> input, RingBuffer<ProducerRecord<String, V>> output) {
+        List<String> batch = new ArrayList<String>(config.getBatchSize());
+        int idle = 0;
+        try {
+            while (!aborted) {
+                if (input.drainTo(batch, config.getBatchSize()) == 0) {
+                    // read the flag first: every tweet was in the ring before it was set
+                    if (ingestDone && input.isEmpty()) {
+                        break;
+                    }
+                    idle = idle(idle);
+                    continue;
+                }
+                idle = 0;
+                for (String message : batch) {
+                    ProducerRecord<String, V> record;
+                    try {
+                        record = mapper.map(message);
+                    } catch (RuntimeException e) {
+                        failedMessages.increment();
+                        logger.warn("Could not map the tweet: " + e.getMessage());
+                        continue;
+                    }
+                    if (record == null) {
+                        skippedMessages.increment();
+                    } else {
+                        publish(output, record);
+                    }
+                }
+                batch.clear();
+            }
+        } finally {
+            runningWorkers.decrementAndGet();
+        }
+    }
+
+    private void publish(RingBuffer<ProducerRecord<String, V>> output, ProducerRecord<String, V> record) {
+        int idle = 0;
+        while (!output.offer(record)) {
+            if (aborted) {
+                droppedMessages.increment();
+                return;
+            }
+            idle = idle(idle);
+        }
+    }
+
+    private void send() {
+        List<ProducerRecord<String, V>> batch = new ArrayList<ProducerRecord<String, V>>(config.getBatchSize());
+        int idle = 0;
+        while (!aborted) {
+            // read before draining: once no worker runs, empty rings stay empty
+            boolean workersDone = runningWorkers.get() == 0;
+            int drained = 0;
+            for (RingBuffer<ProducerRecord<String, V>> ring : sendRings) {
+                drained += ring.drainTo(batch, config.getBatchSize());
+                for (ProducerRecord<String, V> record : batch) {
+                    try {
+                        sender.send(record);
+                        sentRecords.increment();
+                    } catch (RuntimeException e) {
+                        failedMessages.increment();
+                        logger.error("Could not send the record: " + e.getMessage());
+                    }
+                }
+                batch.clear();
+            }
+            if (drained > 0) {
+                idle = 0;
+            } else if (workersDone) {
+                break;
+            } else {
+                idle = idle(idle);
+            }
+        }
+    }
+
+    private static int idle(int idle) {
+        if (idle < IDLE_SPINS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        return idle + 1;
+    }
+
+    /**
+     * Stop taking tweets from the source, send the ones already taken and wait for the stages to finish.
+     */
+    @Override
+    public void close() {
+        close(CLOSE_TIMEOUT_MS);
+    }
+
+    /**
+     * @param timeoutMs time to send the tweets already taken, the remaining ones are dropped
+     */
+    public synchronized void close(long timeoutMs) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        running = false;
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            for (Thread thread : threads) {
+                thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                aborted = true;
+                for (Thread thread : threads) {
+                    thread.join(POLL_TIMEOUT_MS);
+                }
+                logger.warn("The tweet pipeline did not finish within " + timeoutMs + " ms, dropped the remaining tweets");
+            }
+        } catch (InterruptedException e) {
+            aborted = true;
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Closed the tweet pipeline: " + this);
+    }
+
+    @Override
+    public long getIngestedMessages() {
+        return ingestedMessages.sum();
+    }
+
+    @Override
+    public long getSentRecords() {
+        return sentRecords.sum();
+    }
+
+    /**
+     * @return number of tweets the mapper returned no record for
+     */
+    @Override
+    public long getSkippedMessages() {
+        return skippedMessages.sum();
+    }
+
+    /**
+     * @return number of tweets the mapper or the sender failed on
+     */
+    @Override
+    public long getFailedMessages() {
+        return failedMessages.sum();
+    }
+
+    /**
+     * @return number of tweets dropped because all the workers were busy, or because the pipeline was closed before
+     * they were sent
+     */
+    @Override
+    public long getDroppedMessages() {
+        return droppedMessages.sum();
+    }
+
+    @Override
+    public int getSourceQueueSize() {
+        return source.size();
+    }
+
+    @Override
+    public int getParseQueueSize() {
+        int size = 0;
+        for (RingBuffer<String> ring : parseRings) {
+            size += ring.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return sum of the high-water marks of the rings in front of the workers
+     */
+    @Override
+    public int getMaxParseQueueSize() {
+        int size = 0;
+        for (RingBuffer<String> ring : parseRings) {
+            size += ring.getMaxSize();
+        }
+        return size;
+    }
+
+    @Override
+    public int getParseQueueCapacity() {
+        return parseRings.size() * config.getRingCapacity();
+    }
+
+    @Override
+    public long getParseQueueFullOffers() {
+        long offers = 0;
+        for (RingBuffer<String> ring : parseRings) {
+            offers += ring.getFullOffers();
+        }
+        return offers;
+    }
+
+    @Override
+    public int getSendQueueSize() {
+        int size = 0;
+        for (RingBuffer<ProducerRecord<String, V>> ring : sendRings) {
+            size += ring.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return sum of the high-water marks of the rings behind the workers
+     */
+    @Override
+    public int getMaxSendQueueSize() {
+        int size = 0;
+        for (RingBuffer<ProducerRecord<String, V>> ring : sendRings) {
+            size += ring.getMaxSize();
+        }
+        return size;
+    }
+
+    @Override
+    public int getSendQueueCapacity() {
+        return sendRings.size() * config.getRingCapacity();
+    }
+
+    @Override
+    public long getSendQueueFullOffers() {
+        long offers = 0;
+        for (RingBuffer<ProducerRecord<String, V>> ring : sendRings) {
+            offers += ring.getFullOffers();
+        }
+        return offers;
+    }
+
+    @Override
+    public String toString() {
+        return "ingested=" + getIngestedMessages() + ", sent=" + getSentRecords() + ", skipped=" + getSkippedMessages() +
+                ", failed=" + getFailedMessages() + ", dropped=" + getDroppedMessages() +
+                ", source queue=" + getSourceQueueSize() +
+                ", parse queue=" + getParseQueueSize() + "/" + getParseQueueCapacity() + " (max " + getMaxParseQueueSize() + ")" +
+                ", send queue=" + getSendQueueSize() + "/" + getSendQueueCapacity() + " (max " + getMaxSendQueueSize() + ")";
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.felipegutierrez.kafka.twitter.pipeline;
+
+import com.github.felipegutierrez.kafka.util.Numbers;
+
+/**
+ * Settings of the {@link TweetPipeline}.
+ */
+public class TweetPipelineConfig {
+    private int workers = 2;
+    private int ringCapacity = 1024;
+    private int batchSize = 128;
+    private boolean dropWhenFull = false;
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Number of threads extracting the keys and the messages of the tweets.
+     */
+    public TweetPipelineConfig setWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1");
+        }
+        this.workers = workers;
+        return this;
+    }
+
+    public int getRingCapacity() {
+        return ringCapacity;
+    }
+
+    /**
+     * Number of tweets each ring buffer between two stages can hold, rounded up to a power of two. Every worker has
+     * one ring in front of it and one behind it.
+     */
+    public TweetPipelineConfig setRingCapacity(int ringCapacity) {
+        if (ringCapacity < 2) {
+            throw new IllegalArgumentException("ringCapacity must be at least 2");
+        }
+        this.ringCapacity = Numbers.ceilPowerOfTwo(ringCapacity);
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Maximum number of tweets a stage takes from its input at once.
+     */
+    public TweetPipelineConfig setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public boolean isDropWhenFull() {
+        return dropWhenFull;
+    }
+
+    /**
+     * When all the workers are busy, drop the new tweets and count them instead of waiting. Waiting lets the queue of
+     * the Twitter client fill up, so the client drops the tweets itself and stops reading from the stream meanwhile,
+     * which Twitter may answer with a disconnection.
+     */
+    public TweetPipelineConfig setDropWhenFull(boolean dropWhenFull) {
+        this.dropWhenFull = dropWhenFull;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "TweetPipelineConfig{workers=" + workers + ", ringCapacity=" + ringCapacity + ", batchSize=" + batchSize +
+                ", dropWhenFull=" + dropWhenFull + "}";
+    }
+}
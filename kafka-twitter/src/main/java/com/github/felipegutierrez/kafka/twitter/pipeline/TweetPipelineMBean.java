@@ -0,0 +1,35 @@
+package com.github.felipegutierrez.kafka.twitter.pipeline;
+
+/**
+ * JMX view of the {@link TweetPipeline}.
+ */
+public interface TweetPipelineMBean {
+
+    long getIngestedMessages();
+
+    long getSentRecords();
+
+    long getSkippedMessages();
+
+    long getFailedMessages();
+
+    long getDroppedMessages();
+
+    int getSourceQueueSize();
+
+    int getParseQueueSize();
+
+    int getMaxParseQueueSize();
+
+    int getParseQueueCapacity();
+
+    long getParseQueueFullOffers();
+
+    int getSendQueueSize();
+
+    int getMaxSendQueueSize();
+
+    int getSendQueueCapacity();
+
+    long getSendQueueFullOffers();
+}
@@ -0,0 +1,26 @@
+package com.github.felipegutierrez.kafka.twitter.pipeline;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Where the tweets of the {@link TweetPipeline} come from, e.g. the Twitter stream or a replay of recorded tweets.
+ */
+public interface TweetSource {
+
+    /**
+     * Start putting the tweets into the queue, on threads of the source.
+     */
+    void start(BlockingQueue<String> queue);
+
+    /**
+     * @return true once the source stopped or has no more tweets
+     */
+    boolean isDone();
+
+    void stop();
+
+    /**
+     * @return number of tweets the source could not put into the queue
+     */
+    long getDroppedMessages();
+}
@@ -0,0 +1,118 @@
+package com.github.felipegutierrez.kafka.twitter.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read the lines of a UTF-8 file mapped in memory, e.g. recorded tweets with one JSON document per line.
+ * <p>
+ * The line boundaries are found by reading the mapped bytes in place, only the bytes of a line are copied, once, to
+ * decode its {@link String}. The file is mapped by windows of at most {@code windowBytes}, so files over 2 GB can be
+ * read: a line crossing the end of a window is read from a new window starting at the line.
+ */
+public class MappedLineReader implements Closeable {
+    private static final int DEFAULT_WINDOW_BYTES = 256 * 1024 * 1024;
+    private final FileChannel channel;
+    private final long fileBytes;
+    private final int windowBytes;
+    private MappedByteBuffer window;
+    // same bytes, for the bulk copies of the lines
+    private ByteBuffer copier;
+    private long windowStart;
+    // position of the next line in the window
+    private int position;
+    private byte[] line = new byte[8 * 1024];
+    private long lines;
+
+    public MappedLineReader(Path file) throws IOException {
+        this(file, DEFAULT_WINDOW_BYTES);
+    }
+
+    MappedLineReader(Path file, int windowBytes) throws IOException {
+        if (windowBytes < 1) {
+            throw new IllegalArgumentException("windowBytes must be at least 1");
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.fileBytes = channel.size();
+        this.windowBytes = windowBytes;
+        map(0);
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        position = 0;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowBytes, fileBytes - start));
+        copier = window.duplicate();
+    }
+
+    /**
+     * @return the next line that is not blank, without its line terminator, null at the end of the file
+     */
+    public String nextLine() throws IOException {
+        while (windowStart + position < fileBytes) {
+            int limit = window.limit();
+            int end = position;
+            while (end < limit && window.get(end) != '\n') {
+                end++;
+            }
+            if (end == limit && windowStart + limit < fileBytes) {
+                if (position == 0) {
+                    throw new IOException("A line at byte " + windowStart + " is longer than " + windowBytes + " bytes");
+                }
+                map(windowStart + position);
+                continue;
+            }
+            int start = position;
+            position = end + 1;
+            int length = end - start;
+            if (length > 0 && window.get(end - 1) == '\r') {
+                length--;
+            }
+            if (!isBlank(start, length)) {
+                lines++;
+                return decode(start, length);
+            }
+        }
+        return null;
+    }
+
+    private boolean isBlank(int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            byte b = window.get(i);
+            if (b != ' ' && b != '\t' && b != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decode(int start, int length) {
+        if (line.length < length) {
+            line = new byte[Math.max(length, line.length * 2)];
+        }
+        copier.position(start);
+        copier.get(line, 0, length);
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return number of lines returned so far
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * The mapping itself is released when the buffer is garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,20 @@
+package com.github.felipegutierrez.kafka.twitter.replay;
+
+/**
+ * How fast a {@link ReplaySource} hands out the recorded tweets.
+ */
+public enum ReplayPace {
+    /**
+     * Keep the intervals between the tweets as recorded, from their {@code timestamp_ms} or {@code created_at},
+     * divided by {@link ReplaySource#setSpeedup(double)}.
+     */
+    RECORDED,
+    /**
+     * A fixed number of tweets per second, see {@link ReplaySource#setRate(double)}.
+     */
+    FIXED_RATE,
+    /**
+     * As fast as the pipeline takes them.
+     */
+    MAX
+}
@@ -0,0 +1,211 @@
+package com.github.felipegutierrez.kafka.twitter.replay;
+
+import com.github.felipegutierrez.kafka.twitter.pipeline.TweetSource;
+import com.github.felipegutierrez.kafka.twitter.tweet.TweetFieldExtractor;
+import com.github.felipegutierrez.kafka.twitter.tweet.TweetFields;
+import com.github.felipegutierrez.kafka.twitter.tweet.TweetTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replay tweets recorded in files with one JSON document per line, e.g. by a {@link TweetCapture}, instead of
+ * connecting to the Twitter stream, so a load test can be repeated offline at a controlled rate.
+ * <p>
+ * The files are read in turn with a {@link MappedLineReader}, on a thread of the source. The tweets are put into the
+ * queue of the pipeline, waiting when it is full, so a replay drops nothing: at {@link ReplayPace#MAX} the pace is the
+ * one of the pipeline.
+ */
+public class ReplaySource implements TweetSource {
+    private static final Logger logger = LoggerFactory.getLogger(ReplaySource.class);
+    private final List<Path> files;
+    private final ReplayPace pace;
+    private final TweetFieldExtractor timestamps = new TweetFieldExtractor("timestamp_ms,created_at");
+    private final TweetFields fields = timestamps.newFields();
+    private final LongAdder replayedMessages = new LongAdder();
+    private double rate = 1000;
+    private double speedup = 1;
+    private int loops = 1;
+    private volatile boolean running;
+    private volatile boolean done;
+    private Thread thread;
+
+    public ReplaySource(List<Path> files, ReplayPace pace) {
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("The replay needs at least one file");
+        }
+        this.files = new ArrayList<Path>(files);
+        this.pace = pace;
+    }
+
+    /**
+     * @param path a file, or a directory whose {@code *.jsonl} files are replayed in the order of their names
+     */
+    public static List<Path> files(Path path) {
+        if (!Files.isDirectory(path)) {
+            return Collections.singletonList(path);
+        }
+        List<Path> files = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*.jsonl")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Number of tweets per second with {@link ReplayPace#FIXED_RATE}.
+     */
+    public ReplaySource setRate(double rate) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        this.rate = rate;
+        return this;
+    }
+
+    /**
+     * Factor by which the recorded intervals are shortened with {@link ReplayPace#RECORDED}, e.g. 10 replays an hour
+     * in 6 minutes.
+     */
+    public ReplaySource setSpeedup(double speedup) {
+        if (speedup <= 0) {
+            throw new IllegalArgumentException("speedup must be positive");
+        }
+        this.speedup = speedup;
+        return this;
+    }
+
+    /**
+     * Number of times the files are replayed.
+     */
+    public ReplaySource setLoops(int loops) {
+        if (loops < 1) {
+            throw new IllegalArgumentException("loops must be at least 1");
+        }
+        this.loops = loops;
+        return this;
+    }
+
+    @Override
+    public synchronized void start(final BlockingQueue<String> queue) {
+        if (thread != null) {
+            throw new IllegalStateException("The replay was already started");
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    replay(queue);
+                } catch (IOException e) {
+                    logger.error("Could not replay the tweets: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done = true;
+                }
+            }
+        }, "tweet-replay");
+        thread.start();
+    }
+
+    private void replay(BlockingQueue<String> queue) throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+        long count = 0;
+        for (int loop = 0; loop < loops && running; loop++) {
+            // each loop keeps the pace of the recording from where the previous one ended
+            long loopStartNanos = System.nanoTime();
+            long firstTimestamp = -1;
+            for (Path file : files) {
+                try (MappedLineReader reader = new MappedLineReader(file)) {
+                    String tweet;
+                    while (running && (tweet = reader.nextLine()) != null) {
+                        if (pace == ReplayPace.FIXED_RATE) {
+                            await(startNanos + (long) (count * TimeUnit.SECONDS.toNanos(1) / rate));
+                        } else if (pace == ReplayPace.RECORDED) {
+                            long timestamp = timestamp(tweet);
+                            if (timestamp >= 0) {
+                                if (firstTimestamp < 0) {
+                                    firstTimestamp = timestamp;
+                                }
+                                // a tweet recorded out of order goes right away
+                                await(loopStartNanos + (long) (TimeUnit.MILLISECONDS.toNanos(timestamp - firstTimestamp) / speedup));
+                            }
+                        }
+                        queue.put(tweet);
+                        replayedMessages.increment();
+                        count++;
+                    }
+                }
+            }
+        }
+        logger.info("Replayed " + count + " tweets of " + files.size() + " files in " +
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms");
+    }
+
+    private void await(long dueNanos) throws InterruptedException {
+        long waitNanos;
+        while (running && (waitNanos = dueNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(waitNanos);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * @return the time the tweet was created in milliseconds, -1 if unknown
+     */
+    long timestamp(String tweet) {
+        timestamps.extract(tweet, fields);
+        return TweetTime.parse(fields.get(0), fields.get(1));
+    }
+
+    @Override
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * @return 0, the replay waits for the pipeline
+     */
+    @Override
+    public long getDroppedMessages() {
+        return 0;
+    }
+
+    public long getReplayedMessages() {
+        return replayedMessages.sum();
+    }
+
+    @Override
+    public String toString() {
+        return files.size() + " files at " + (pace == ReplayPace.FIXED_RATE ? rate + " tweets/s" :
+                pace == ReplayPace.RECORDED ? "the recorded pace x" + speedup : "full speed");
+    }
+}
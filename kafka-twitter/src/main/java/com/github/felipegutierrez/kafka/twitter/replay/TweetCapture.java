@@ -0,0 +1,107 @@
+package com.github.felipegutierrez.kafka.twitter.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Record the tweets of the live stream into files with one JSON document per line, to replay them later with a
+ * {@link ReplaySource}.
+ * <p>
+ * The files are named {@code tweets-00000.jsonl}, {@code tweets-00001.jsonl}... in the directory, after the ones
+ * already there, and a new file is started once the current one holds {@code maxFileBytes}. The workers of the
+ * pipeline write concurrently, so the tweets of different workers may be recorded slightly out of order.
+ */
+public class TweetCapture implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(TweetCapture.class);
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private final Path directory;
+    private final long maxFileBytes;
+    // guarded by this
+    private OutputStream out;
+    private long fileBytes;
+    private int fileIndex;
+    private long capturedMessages;
+    private boolean closed;
+
+    public TweetCapture(Path directory) {
+        this(directory, 512L * 1024 * 1024);
+    }
+
+    /**
+     * @param maxFileBytes size from which a new file is started
+     */
+    public TweetCapture(Path directory, long maxFileBytes) {
+        if (maxFileBytes < 1) {
+            throw new IllegalArgumentException("maxFileBytes must be at least 1");
+        }
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+    }
+
+    /**
+     * @param tweet a message of the stream, its line terminator is removed
+     */
+    public synchronized void write(String tweet) {
+        int end = tweet.length();
+        while (end > 0 && Character.isWhitespace(tweet.charAt(end - 1))) {
+            end--;
+        }
+        if (end == 0 || closed) {
+            return;
+        }
+        byte[] bytes = tweet.substring(0, end).getBytes(StandardCharsets.UTF_8);
+        try {
+            if (out == null || fileBytes >= maxFileBytes) {
+                nextFile();
+            }
+            out.write(bytes);
+            out.write('\n');
+            fileBytes += bytes.length + 1;
+            capturedMessages++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void nextFile() throws IOException {
+        if (out != null) {
+            out.close();
+        }
+        Files.createDirectories(directory);
+        Path file;
+        do {
+            file = directory.resolve(String.format("tweets-%05d.jsonl", fileIndex++));
+        } while (Files.exists(file));
+        out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE_NEW), BUFFER_BYTES);
+        fileBytes = 0;
+        logger.info("Capturing the tweets into " + file);
+    }
+
+    public synchronized long getCapturedMessages() {
+        return capturedMessages;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return directory.toString();
+    }
+}
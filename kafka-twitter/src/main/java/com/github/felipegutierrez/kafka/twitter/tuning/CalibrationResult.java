@@ -0,0 +1,81 @@
+package com.github.felipegutierrez.kafka.twitter.tuning;
+
+import org.apache.kafka.common.record.CompressionType;
+
+/**
+ * What one combination of codec and batch size of a {@link CompressionCalibration} cost.
+ */
+public class CalibrationResult {
+    private static final double MB = 1024 * 1024;
+    private final CompressionType compression;
+    private final int batchSize;
+    private final long inputBytes;
+    private final long batchBytes;
+    private final long batches;
+    private final long cpuNanos;
+    private final long elapsedNanos;
+
+    CalibrationResult(CompressionType compression, int batchSize, long inputBytes, long batchBytes, long batches,
+                      long cpuNanos, long elapsedNanos) {
+        this.compression = compression;
+        this.batchSize = batchSize;
+        this.inputBytes = inputBytes;
+        this.batchBytes = batchBytes;
+        this.batches = batches;
+        this.cpuNanos = cpuNanos;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public CompressionType getCompression() {
+        return compression;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return bytes of the keys, values and headers of the records
+     */
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    /**
+     * @return bytes of the batches sent to the broker, with the overhead of the record format
+     */
+    public long getBatchBytes() {
+        return batchBytes;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return bytes of the records per byte sent, below 1 when the format costs more than the compression saves
+     */
+    public double getCompressionRatio() {
+        return batchBytes == 0 ? 0 : (double) inputBytes / batchBytes;
+    }
+
+    /**
+     * @return CPU time spent building the batches per MB of records
+     */
+    public double getCpuMsPerMb() {
+        return inputBytes == 0 ? 0 : cpuNanos / 1e6 / (inputBytes / MB);
+    }
+
+    /**
+     * @return MB of records batched per second by a single thread
+     */
+    public double getMbPerSecond() {
+        return elapsedNanos == 0 ? 0 : inputBytes / MB / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-6s %8d %10.2f %12.2f %10.1f", compression.name, batchSize, getCompressionRatio(),
+                getCpuMsPerMb(), getMbPerSecond());
+    }
+}
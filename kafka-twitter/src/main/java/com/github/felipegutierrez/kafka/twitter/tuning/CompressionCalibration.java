@@ -0,0 +1,177 @@
+package com.github.felipegutierrez.kafka.twitter.tuning;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.RecordBatch;
+import org.apache.kafka.common.record.TimestampType;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Run a sample of records through every combination of codec and batch size, to choose the
+ * {@link ProducerTuning} of a deployment from the payloads it sends.
+ * <p>
+ * The records are appended to batches as the producer does, with the {@link MemoryRecordsBuilder} of the record
+ * format, so the sizes include its overhead and the time is the one of the compression. No broker is needed: the
+ * network and the linger are left out, the linger only matters for how full the batches get at the live rate.
+ */
+public class CompressionCalibration {
+    private final List<ProducerRecord<byte[], byte[]>> records;
+    private final long inputBytes;
+    private List<CompressionType> codecs = Arrays.asList(CompressionType.values());
+    private int[] batchSizes = {16 * 1024, 32 * 1024, 64 * 1024, 128 * 1024, 256 * 1024};
+    private int rounds = 5;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    /**
+     * @param records serialized records, e.g. recorded tweets mapped by the producer
+     */
+    public CompressionCalibration(List<ProducerRecord<byte[], byte[]>> records) {
+        if (records.isEmpty()) {
+            throw new IllegalArgumentException("The calibration needs at least one record");
+        }
+        this.records = new ArrayList<ProducerRecord<byte[], byte[]>>(records);
+        long bytes = 0;
+        for (ProducerRecord<byte[], byte[]> record : records) {
+            bytes += length(record.key()) + length(record.value());
+            for (Header header : record.headers()) {
+                bytes += header.key().length() + length(header.value());
+            }
+        }
+        this.inputBytes = bytes;
+    }
+
+    public CompressionCalibration setCodecs(CompressionType... codecs) {
+        if (codecs.length == 0) {
+            throw new IllegalArgumentException("codecs must be at least 1");
+        }
+        this.codecs = Arrays.asList(codecs);
+        return this;
+    }
+
+    public CompressionCalibration setBatchSizes(int... batchSizes) {
+        if (batchSizes.length == 0) {
+            throw new IllegalArgumentException("batchSizes must be at least 1");
+        }
+        this.batchSizes = batchSizes.clone();
+        return this;
+    }
+
+    /**
+     * Number of times the sample is batched for each combination, the first round warms up the codec and is not
+     * measured.
+     */
+    public CompressionCalibration setRounds(int rounds) {
+        if (rounds < 2) {
+            throw new IllegalArgumentException("rounds must be at least 2");
+        }
+        this.rounds = rounds;
+        return this;
+    }
+
+    public List<CalibrationResult> run() {
+        List<CalibrationResult> results = new ArrayList<CalibrationResult>();
+        for (CompressionType codec : codecs) {
+            for (int batchSize : batchSizes) {
+                results.add(run(codec, batchSize));
+            }
+        }
+        return results;
+    }
+
+    private CalibrationResult run(CompressionType codec, int batchSize) {
+        long[] batched = batch(codec, batchSize);
+        long cpuStart = cpuTime();
+        long start = System.nanoTime();
+        for (int round = 1; round < rounds; round++) {
+            batched = batch(codec, batchSize);
+        }
+        int measured = rounds - 1;
+        return new CalibrationResult(codec, batchSize, inputBytes, batched[0], batched[1],
+                (cpuTime() - cpuStart) / measured, (System.nanoTime() - start) / measured);
+    }
+
+    /**
+     * @return bytes and number of the batches
+     */
+    private long[] batch(CompressionType codec, int batchSize) {
+        long bytes = 0;
+        long batches = 0;
+        // as the producer, estimate the size of the compressed batch from the ratio of the previous one
+        float ratio = 1;
+        MemoryRecordsBuilder builder = null;
+        for (ProducerRecord<byte[], byte[]> record : records) {
+            Header[] headers = record.headers().toArray();
+            if (builder != null && !builder.hasRoomFor(0, record.key(), record.value(), headers)) {
+                ratio = close(builder);
+                bytes += builder.build().sizeInBytes();
+                batches++;
+                builder = null;
+            }
+            if (builder == null) {
+                builder = newBuilder(codec, batchSize, ratio);
+            }
+            builder.append(0, record.key(), record.value(), headers);
+        }
+        close(builder);
+        bytes += builder.build().sizeInBytes();
+        return new long[]{bytes, batches + 1};
+    }
+
+    private static MemoryRecordsBuilder newBuilder(CompressionType codec, int batchSize, float ratio) {
+        MemoryRecordsBuilder builder = MemoryRecords.builder(ByteBuffer.allocate(batchSize),
+                RecordBatch.CURRENT_MAGIC_VALUE, codec, TimestampType.CREATE_TIME, 0L);
+        builder.setEstimatedCompressionRatio(ratio);
+        return builder;
+    }
+
+    /**
+     * @return the compression ratio of the batch
+     */
+    private static float close(MemoryRecordsBuilder builder) {
+        builder.close();
+        return builder.compressionType() == CompressionType.NONE ? 1 :
+                (float) builder.build().sizeInBytes() / builder.uncompressedBytesWritten();
+    }
+
+    private long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * @return the results as a table, one line per combination
+     */
+    public static String report(List<CalibrationResult> results) {
+        StringBuilder report = new StringBuilder(String.format("%-6s %8s %10s %12s %10s", "codec", "batch",
+                "ratio", "cpu ms/MB", "MB/s"));
+        CalibrationResult smallest = null;
+        CalibrationResult fastest = null;
+        for (CalibrationResult result : results) {
+            report.append('\n').append(result);
+            if (smallest == null || result.getCompressionRatio() > smallest.getCompressionRatio()) {
+                smallest = result;
+            }
+            if (fastest == null || result.getMbPerSecond() > fastest.getMbPerSecond()) {
+                fastest = result;
+            }
+        }
+        if (smallest != null) {
+            report.append("\nbest ratio: ").append(smallest.getCompression().name).append(' ')
+                    .append(smallest.getBatchSize()).append(", best throughput: ")
+                    .append(fastest.getCompression().name).append(' ').append(fastest.getBatchSize());
+        }
+        return report.toString();
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.felipegutierrez.kafka.twitter.tuning;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.record.CompressionType;
+
+import java.util.Properties;
+
+/**
+ * How the producer batches and compresses the records. The defaults are the ones of Kafka, use a
+ * {@link CompressionCalibration} on recorded tweets to choose them for a deployment.
+ */
+public class ProducerTuning {
+    private CompressionType compression = CompressionType.NONE;
+    private int lingerMs = 0;
+    private int batchSize = 16 * 1024;
+
+    /**
+     * The settings of the former {@code compress} flag of the producer: gzip, 20 ms and 32 KB batches.
+     */
+    public static ProducerTuning compressed() {
+        return new ProducerTuning()
+                .setCompression(CompressionType.GZIP)
+                .setLingerMs(20)
+                .setBatchSize(32 * 1024);
+    }
+
+    public ProducerTuning setCompression(CompressionType compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * @param codec none, gzip, snappy, lz4 or zstd
+     */
+    public ProducerTuning setCompression(String codec) {
+        return setCompression(CompressionType.forName(codec.toLowerCase()));
+    }
+
+    /**
+     * Time the producer waits for more records to fill a batch.
+     */
+    public ProducerTuning setLingerMs(int lingerMs) {
+        if (lingerMs < 0) {
+            throw new IllegalArgumentException("lingerMs must be at least 0");
+        }
+        this.lingerMs = lingerMs;
+        return this;
+    }
+
+    /**
+     * Bytes of records per batch and partition, before the compression.
+     */
+    public ProducerTuning setBatchSize(int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("batchSize must be at least 0");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public CompressionType getCompression() {
+        return compression;
+    }
+
+    public int getLingerMs() {
+        return lingerMs;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public Properties apply(Properties properties) {
+        properties.setProperty(ProducerConfig.COMPRESSION_TYPE_CONFIG, compression.name);
+        properties.setProperty(ProducerConfig.LINGER_MS_CONFIG, Integer.toString(lingerMs));
+        properties.setProperty(ProducerConfig.BATCH_SIZE_CONFIG, Integer.toString(batchSize));
+        return properties;
+    }
+
+    @Override
+    public String toString() {
+        return "compression " + compression.name + ", linger " + lingerMs + " ms, batches of " + batchSize + " bytes";
+    }
+}
@@ -0,0 +1,17 @@
+package com.github.felipegutierrez.kafka.twitter.tweet;
+
+/**
+ * Where the producer writes the fields extracted from the tweets by a {@link TweetFieldExtractor}.
+ */
+public enum FieldOutput {
+    /**
+     * One header per field found, named after its path, with the UTF-8 text of the value. The value of the record is
+     * the tweet or its text, as without fields.
+     */
+    HEADERS,
+    /**
+     * The value of the record is a flat JSON object of the fields found, named after their paths, instead of the
+     * tweet, see {@link TweetFieldExtractor#toJson(TweetFields)}.
+     */
+    VALUE
+}
@@ -0,0 +1,33 @@
+package com.github.felipegutierrez.kafka.twitter.tweet;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.util.Properties;
+
+/**
+ * Turn the JSON of the tweets into the values the producer sends, e.g. a compact Avro record, instead of the JSON
+ * string itself.
+ * <p>
+ * The encoders are called by the workers of the pipeline concurrently.
+ *
+ * @param <V> type of the values
+ */
+public interface TweetEncoder<V> {
+
+    /**
+     * @return serializer of the values, set as the {@code value.serializer} of the producer
+     */
+    Class<? extends Serializer<V>> serializer();
+
+    /**
+     * Add the settings of the serializer to the producer, e.g. the URL of the schema registry.
+     */
+    void configure(Properties producerProperties);
+
+    /**
+     * @param tweet       the JSON of the tweet
+     * @param matchedTerm the key of the record, null if the records are not keyed or no term was found
+     * @return the value of the record, null to skip the tweet, e.g. a limit notice of the stream
+     */
+    V encode(String tweet, String matchedTerm);
+}
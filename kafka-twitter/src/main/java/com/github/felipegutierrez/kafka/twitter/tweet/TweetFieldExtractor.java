@@ -0,0 +1,182 @@
+package com.github.felipegutierrez.kafka.twitter.tweet;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read a few scalar fields of the tweets, e.g. {@code text,id_str,lang,user.followers_count}, in one streaming pass
+ * of a Jackson {@link JsonParser} instead of building the tree of the whole 3-5 KB tweet.
+ * <p>
+ * The fields are JSON paths separated by commas. The objects and arrays outside the paths are skipped without being
+ * materialized, e.g. {@code entities} or the {@code retweeted_status} with its own {@code text} and {@code user}, and
+ * the parsing stops as soon as every field is found. Only the first occurrence of a field counts, a field holding an
+ * object, an array or null is missing.
+ * <p>
+ * Instances are immutable and can be shared by the threads, each one with its own {@link TweetFields}.
+ */
+public class TweetFieldExtractor {
+    private final JsonFactory factory = new JsonFactory();
+    private final Node root = new Node();
+    private final List<String> paths = new ArrayList<String>();
+
+    /**
+     * @param fields JSON paths separated by commas
+     */
+    public TweetFieldExtractor(String fields) {
+        this(Arrays.asList(fields.split(",")));
+    }
+
+    /**
+     * @param fields JSON paths, the duplicates are ignored
+     */
+    public TweetFieldExtractor(Collection<String> fields) {
+        for (String field : fields) {
+            String path = field.trim();
+            if (path.isEmpty() || paths.contains(path)) {
+                continue;
+            }
+            Node node = root;
+            for (String name : path.split("\\.")) {
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("Invalid field path [" + path + "]");
+                }
+                node = node.child(name);
+            }
+            node.index = paths.size();
+            paths.add(path);
+        }
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("The extractor needs at least one field");
+        }
+    }
+
+    /**
+     * @param fields receives the values, in the order of the paths
+     * @return number of fields found, -1 if the tweet is not a valid JSON object, the fields found before the error
+     * are kept
+     */
+    public int extract(String tweet, TweetFields fields) {
+        fields.clear();
+        try (JsonParser parser = factory.createParser(tweet)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return -1;
+            }
+            extractObject(parser, root, fields);
+            return fields.getFound();
+        } catch (IOException e) {
+            // JsonParseException is an IOException
+            return -1;
+        }
+    }
+
+    /**
+     * @return true once every field is found
+     */
+    private boolean extractObject(JsonParser parser, Node node, TweetFields fields) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            Node child = node.children.get(parser.getCurrentName());
+            JsonToken token = parser.nextToken();
+            if (child == null) {
+                parser.skipChildren();
+                continue;
+            }
+            if (token == JsonToken.START_OBJECT && !child.children.isEmpty()) {
+                if (extractObject(parser, child, fields)) {
+                    return true;
+                }
+            } else if (child.index >= 0 && token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+                if (fields.set(child.index, parser.getText(), token) && fields.getFound() == paths.size()) {
+                    return true;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the fields found as a flat JSON object named after their paths, e.g.
+     * {@code {"id_str":"1241700000000000000","lang":"de","user.followers_count":42834}}, the numbers keep their
+     * literal
+     */
+    public String toJson(TweetFields fields) {
+        StringWriter out = new StringWriter(128);
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            generator.writeStartObject();
+            for (int i = 0; i < fields.size(); i++) {
+                JsonToken token = fields.getToken(i);
+                if (token == null) {
+                    continue;
+                }
+                generator.writeFieldName(paths.get(i));
+                switch (token) {
+                    case VALUE_NUMBER_INT:
+                    case VALUE_NUMBER_FLOAT:
+                        generator.writeNumber(fields.get(i));
+                        break;
+                    case VALUE_TRUE:
+                    case VALUE_FALSE:
+                        generator.writeBoolean(token == JsonToken.VALUE_TRUE);
+                        break;
+                    default:
+                        generator.writeString(fields.get(i));
+                }
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    public TweetFields newFields() {
+        return new TweetFields(paths.size());
+    }
+
+    /**
+     * @return index of the path in the {@link TweetFields}, -1 if it is not extracted
+     */
+    public int indexOf(String path) {
+        return paths.indexOf(path);
+    }
+
+    public String path(int index) {
+        return paths.get(index);
+    }
+
+    public int size() {
+        return paths.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.join(",", paths);
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<String, Node>();
+        private int index = -1;
+
+        private Node child(String name) {
+            Node child = children.get(name);
+            if (child == null) {
+                child = new Node();
+                children.put(name, child);
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.felipegutierrez.kafka.twitter.tweet;
+
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.util.Arrays;
+
+/**
+ * Values of the fields of a tweet found by a {@link TweetFieldExtractor}, in the order of its paths. An instance is
+ * meant to be reused for the tweets of one thread.
+ */
+public class TweetFields {
+    private final String[] values;
+    private final JsonToken[] tokens;
+    private int found;
+
+    public TweetFields(int size) {
+        this.values = new String[size];
+        this.tokens = new JsonToken[size];
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+        Arrays.fill(tokens, null);
+        found = 0;
+    }
+
+    boolean set(int index, String value, JsonToken token) {
+        if (values[index] != null) {
+            return false;
+        }
+        values[index] = value;
+        tokens[index] = token;
+        found++;
+        return true;
+    }
+
+    /**
+     * @return the text of the value, the literal of a number, null if the field is missing, null or not a scalar
+     */
+    public String get(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return type of the value, null if the field is missing
+     */
+    public JsonToken getToken(int index) {
+        return tokens[index];
+    }
+
+    /**
+     * @return number of fields found
+     */
+    public int getFound() {
+        return found;
+    }
+
+    public int size() {
+        return values.length;
+    }
+}
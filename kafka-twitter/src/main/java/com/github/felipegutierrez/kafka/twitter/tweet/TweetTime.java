@@ -0,0 +1,38 @@
+package com.github.felipegutierrez.kafka.twitter.tweet;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * When a tweet was created, from its {@code timestamp_ms} or its {@code created_at}.
+ */
+public class TweetTime {
+    /**
+     * Format of {@code created_at}, e.g. {@code Sun Mar 22 13:55:06 +0000 2020}.
+     */
+    public static final DateTimeFormatter CREATED_AT = DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss Z yyyy", Locale.ENGLISH);
+
+    private TweetTime() {
+    }
+
+    /**
+     * @param timestampMs the {@code timestamp_ms} of the tweet, the milliseconds since the epoch, or null
+     * @param createdAt   the {@code created_at} of the tweet, used without {@code timestamp_ms}, or null
+     * @return the milliseconds since the epoch, -1 if both are missing or invalid
+     */
+    public static long parse(String timestampMs, String createdAt) {
+        try {
+            if (timestampMs != null) {
+                return Long.parseLong(timestampMs);
+            }
+            if (createdAt != null) {
+                return ZonedDateTime.parse(createdAt, CREATED_AT).toInstant().toEpochMilli();
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return -1;
+        }
+        return -1;
+    }
+}
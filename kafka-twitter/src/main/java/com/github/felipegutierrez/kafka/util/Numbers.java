@@ -0,0 +1,19 @@
+package com.github.felipegutierrez.kafka.util;
+
+public class Numbers {
+
+    private Numbers() {
+    }
+
+    /**
+     * Round a size up so that an index can be reduced with a mask instead of a modulo.
+     *
+     * @return the smallest power of two greater than or equal to the value
+     */
+    public static int ceilPowerOfTwo(int value) {
+        if (value < 1 || value > 1 << 30) {
+            throw new IllegalArgumentException("value must be between 1 and 2^30");
+        }
+        return value == 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+}
@@ -3,4 +3,19 @@ package com.github.felipegutierrez.kafka.util;
 public class Parameters {
     public final static String APP = "-app";
     public final static String ELEMENTS = "-elements";
+    public final static String WORKERS = "-workers";
+    public final static String KEY = "-key";
+    public final static String HEADERS = "-headers";
+    public final static String COMPACT = "-compact";
+    public final static String LOG_EVERY = "-log";
+    public final static String REPLAY = "-replay";
+    public final static String PACE = "-pace";
+    public final static String CAPTURE = "-capture";
+    public final static String CODEC = "-codec";
+    public final static String LINGER = "-linger";
+    public final static String BATCH = "-batch";
+    public final static String CALIBRATE = "-calibrate";
+    public final static String AVRO = "-avro";
+    public final static String SKEW = "-skew";
+    public final static String SPREAD = "-spread";
 }
@@ -0,0 +1,147 @@
+package com.github.felipegutierrez.kafka.connector.basics.producers;
+
+import com.github.felipegutierrez.kafka.tweet.TweetSamples;
+import com.github.felipegutierrez.kafka.twitter.key.MatchStrategy;
+import com.github.felipegutierrez.kafka.twitter.tuning.CalibrationResult;
+import com.github.felipegutierrez.kafka.twitter.tweet.FieldOutput;
+import com.github.felipegutierrez.kafka.twitter.tweet.TweetEncoder;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.IntegerSerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class TwitterProducerTest {
+    private static final String TWEET = "{\"id_str\":\"7\",\"text\":\"Covid-19 and CORONA in Berlin\",\"lang\":\"en\"," +
+            "\"user\":{\"followers_count\":42}}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keysTheRecordsWithTheFirstOrTheLongestTerm() {
+        TwitterProducer producer = new TwitterProducer("covid|berlin|corona", "twitter_tweets", false, true, false);
+
+        ProducerRecord<String, String> record = producer.toRecord(TWEET);
+        assertEquals("covid", record.key());
+        assertEquals(TWEET, record.value());
+        // as long as "berlin", but found first
+        assertEquals("corona", producer.setMatchStrategy(MatchStrategy.LONGEST).toRecord(TWEET).key());
+        assertNull(producer.toRecord("{\"text\":\"nothing\"}").key());
+    }
+
+    @Test
+    public void listsEveryTermFoundInAHeader() {
+        TwitterProducer producer = new TwitterProducer("covid|berlin|corona", "twitter_tweets", true, true, false)
+                .setMatchStrategy(MatchStrategy.ALL);
+
+        ProducerRecord<String, String> record = producer.toRecord(TWEET);
+        assertEquals("covid", record.key());
+        assertEquals("Covid-19 and CORONA in Berlin", record.value());
+        Header header = record.headers().lastHeader(TwitterProducer.MATCHED_TERMS_HEADER);
+        assertEquals("covid|corona|berlin", new String(header.value(), StandardCharsets.UTF_8));
+        assertNull(producer.toRecord("{\"text\":\"nothing\"}").headers().lastHeader(TwitterProducer.MATCHED_TERMS_HEADER));
+    }
+
+    @Test
+    public void writesTheRoutingFieldsToTheHeaders() {
+        TwitterProducer producer = new TwitterProducer("corona", "twitter_tweets", true, false, false)
+                .setFields(TwitterProducer.ROUTING_FIELDS, FieldOutput.HEADERS);
+
+        ProducerRecord<String, String> record = producer.toRecord(TWEET);
+        assertEquals("Covid-19 and CORONA in Berlin", record.value());
+        assertEquals("7", new String(record.headers().lastHeader("id_str").value(), StandardCharsets.UTF_8));
+        assertEquals("en", new String(record.headers().lastHeader("lang").value(), StandardCharsets.UTF_8));
+        assertEquals("42", new String(record.headers().lastHeader("user.followers_count").value(), StandardCharsets.UTF_8));
+        // a field missing in the tweet has no header
+        assertNull(producer.toRecord("{\"id_str\":\"8\"}").headers().lastHeader("lang"));
+        assertEquals("", producer.toRecord("{\"id_str\":\"8\"}").value());
+    }
+
+    @Test
+    public void countsTheTweetsThatCannotBeParsed() {
+        TwitterProducer producer = new TwitterProducer("corona", "twitter_tweets", true, false, false);
+
+        assertEquals("Covid-19 and CORONA in Berlin", producer.toRecord(TWEET).value());
+        assertEquals(0, producer.getUnparsedTweets());
+        assertEquals("", producer.toRecord("not a tweet").value());
+        producer.toRecord("[\"corona\"]");
+        assertEquals(2, producer.getUnparsedTweets());
+    }
+
+    @Test
+    public void replacesTheTweetWithTheFields() {
+        TwitterProducer producer = new TwitterProducer("corona", "twitter_tweets", false, false, false)
+                .setFields("id_str,user.followers_count", FieldOutput.VALUE);
+
+        ProducerRecord<String, String> record = producer.toRecord(TWEET);
+        assertEquals("{\"text\":\"Covid-19 and CORONA in Berlin\",\"id_str\":\"7\",\"user.followers_count\":42}", record.value());
+        assertEquals(0, record.headers().toArray().length);
+    }
+
+    @Test
+    public void calibratesWithTheRecordsItWouldSend() throws Exception {
+        TwitterProducer producer = new TwitterProducer("corona", "twitter_tweets", false, true, false)
+                .setFields(TwitterProducer.ROUTING_FIELDS, FieldOutput.HEADERS);
+
+        List<String> samples = TweetSamples.load();
+        Path tweets = folder.newFile("tweets.jsonl").toPath();
+        Files.write(tweets, samples, StandardCharsets.UTF_8);
+        List<CalibrationResult> results = producer.calibrate(Collections.singletonList(tweets));
+        assertEquals(25, results.size());
+
+        // the keys, the values and the headers with the routing fields, as the producer would send them
+        long expectedBytes = 0;
+        for (String sample : samples) {
+            ProducerRecord<String, String> record = producer.toRecord(sample);
+            expectedBytes += utf8Length(record.key()) + utf8Length(record.value());
+            for (Header header : record.headers()) {
+                expectedBytes += header.key().length() + header.value().length;
+            }
+        }
+        for (CalibrationResult result : results) {
+            assertEquals(expectedBytes, result.getInputBytes());
+        }
+    }
+
+    @Test
+    public void encodesTheTweetWithTheMatchedTerm() {
+        TwitterProducer producer = new TwitterProducer("covid|berlin|corona", "twitter_tweets", false, true, false);
+        TweetEncoder<Integer> encoder = new TweetEncoder<Integer>() {
+            @Override
+            public Class<? extends Serializer<Integer>> serializer() {
+                return IntegerSerializer.class;
+            }
+
+            @Override
+            public void configure(Properties producerProperties) {
+            }
+
+            @Override
+            public Integer encode(String tweet, String matchedTerm) {
+                return tweet.contains("\"text\"") ? matchedTerm.length() : null;
+            }
+        };
+
+        ProducerRecord<String, Integer> record = producer.toRecord(TWEET, encoder);
+        assertEquals("covid", record.key());
+        assertEquals(5, record.value().intValue());
+        // a limit notice of the stream is skipped
+        assertNull(producer.toRecord("{\"limit\":{\"track\":42,\"covid\":1}}", encoder));
+    }
+
+    private static int utf8Length(String text) {
+        return text == null ? 0 : text.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.felipegutierrez.kafka.twitter.benchmark;
+
+import com.github.felipegutierrez.kafka.twitter.key.MatchStrategy;
+import com.github.felipegutierrez.kafka.twitter.key.TermMatcher;
+import com.github.felipegutierrez.kafka.tweet.TweetSamples;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the {@link TermMatcher} with the loop the producer used to run for every tweet, lowercasing the tweet and
+ * searching it once per term, over the synthetic {@link TweetSamples}. A few of the terms occur in the tweets, the
+ * others are random words.
+ * <p>
+ * Run it from the IDE or with:
+ * # mvn -pl kafka-twitter -am test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * # java -cp kafka-twitter/target/test-classes:kafka-twitter/target/classes:$(cat kafka-twitter/cp.txt) \
+ * com.github.felipegutierrez.kafka.twitter.benchmark.TermMatcherBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TermMatcherBenchmark {
+    private static final List<String> WORDS = Arrays.asList("corona", "covid", "berlin", "vaccine", "lockdown");
+    @Param({"10", "100", "1000"})
+    private int terms;
+    private List<String> tweets;
+    private List<String> termList;
+    private TermMatcher matcher;
+    private int[] matches;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TermMatcherBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        tweets = TweetSamples.load();
+        Random random = new Random(42);
+        termList = new ArrayList<String>(WORDS);
+        while (termList.size() < terms) {
+            StringBuilder word = new StringBuilder();
+            for (int i = 4 + random.nextInt(8); i > 0; i--) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            termList.add(word.toString());
+        }
+        matcher = new TermMatcher(termList);
+        matches = new int[matcher.size()];
+    }
+
+    @Benchmark
+    public void lowercaseContains(Blackhole blackhole) {
+        for (String tweet : tweets) {
+            String key = null;
+            for (String term : termList) {
+                if (tweet.toLowerCase().contains(term)) {
+                    key = term;
+                }
+            }
+            blackhole.consume(key);
+        }
+    }
+
+    @Benchmark
+    public void ahoCorasickFirst(Blackhole blackhole) {
+        for (String tweet : tweets) {
+            blackhole.consume(matcher.match(tweet, MatchStrategy.FIRST));
+        }
+    }
+
+    @Benchmark
+    public void ahoCorasickLongest(Blackhole blackhole) {
+        for (String tweet : tweets) {
+            blackhole.consume(matcher.match(tweet, MatchStrategy.LONGEST));
+        }
+    }
+
+    @Benchmark
+    public void ahoCorasickAll(Blackhole blackhole) {
+        for (String tweet : tweets) {
+            blackhole.consume(matcher.matchAll(tweet, matches));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.felipegutierrez.kafka.twitter.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.felipegutierrez.kafka.connector.basics.producers.TwitterProducer;
+import com.github.felipegutierrez.kafka.twitter.tweet.TweetFieldExtractor;
+import com.github.felipegutierrez.kafka.twitter.tweet.TweetFields;
+import com.github.felipegutierrez.kafka.tweet.TweetSamples;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the streaming {@link TweetFieldExtractor} with the Jackson tree the producer used to build for every tweet,
+ * reading the text alone and the text with the routing fields.
+ * <p>
+ * Run it from the IDE or with:
+ * # mvn -pl kafka-twitter -am test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * # java -cp kafka-twitter/target/test-classes:kafka-twitter/target/classes:$(cat kafka-twitter/cp.txt) \
+ * com.github.felipegutierrez.kafka.twitter.benchmark.TweetFieldExtractorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TweetFieldExtractorBenchmark {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private List<String> tweets;
+    private TweetFieldExtractor textExtractor;
+    private TweetFields text;
+    private TweetFieldExtractor routingExtractor;
+    private TweetFields routing;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TweetFieldExtractorBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        tweets = TweetSamples.load();
+        textExtractor = new TweetFieldExtractor("text");
+        text = textExtractor.newFields();
+        routingExtractor = new TweetFieldExtractor("text," + TwitterProducer.ROUTING_FIELDS);
+        routing = routingExtractor.newFields();
+    }
+
+    @Benchmark
+    public void jacksonTree(Blackhole blackhole) throws IOException {
+        for (String tweet : tweets) {
+            JsonNode tree = mapper.readValue(tweet, JsonNode.class);
+            blackhole.consume(tree.get("text").asText());
+            blackhole.consume(tree.get("id_str").asText());
+            blackhole.consume(tree.get("lang").asText());
+            blackhole.consume(tree.get("user").get("followers_count").asText());
+        }
+    }
+
+    @Benchmark
+    public void streamingText(Blackhole blackhole) {
+        for (String tweet : tweets) {
+            textExtractor.extract(tweet, text);
+            blackhole.consume(text.get(0));
+        }
+    }
+
+    @Benchmark
+    public void streamingRoutingFields(Blackhole blackhole) {
+        for (String tweet : tweets) {
+            blackhole.consume(routingExtractor.extract(tweet, routing));
+        }
+    }
+}
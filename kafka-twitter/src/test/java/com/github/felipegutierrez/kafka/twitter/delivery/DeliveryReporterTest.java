@@ -0,0 +1,93 @@
+package com.github.felipegutierrez.kafka.twitter.delivery;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DeliveryReporterTest {
+    private static final String TOPIC = "twitter_tweets";
+
+    @Test
+    public void countsTheDeliveriesPerPartition() throws InterruptedException {
+        DeliveryReporter reporter = new DeliveryReporter();
+        for (int i = 0; i < 4; i++) {
+            ProducerRecord<String, String> record = new ProducerRecord<String, String>(TOPIC, "key", "tweet " + i);
+            Callback callback = reporter.callback(record);
+            Thread.sleep(2);
+            callback.onCompletion(metadata(i % 2, i, 3, 7), null);
+        }
+        reporter.callback(new ProducerRecord<String, String>(TOPIC, "lost"))
+                .onCompletion(metadata(1, -1, -1, -1), new TimeoutException("expired"));
+
+        assertEquals(4, reporter.getSentRecords());
+        assertEquals(1, reporter.getFailedRecords());
+        assertEquals(40, reporter.getSentBytes());
+        Map<Integer, long[]> partitions = reporter.getPartitionCounts();
+        assertArrayEquals(new long[]{2, 0, 20}, partitions.get(0));
+        assertArrayEquals(new long[]{2, 1, 20}, partitions.get(1));
+        reporter.report();
+        assertTrue(reporter.getLatencyP50Ms() >= 2);
+        assertTrue(reporter.getLatencyMaxMs() >= reporter.getLatencyP99Ms());
+        // without sampling only the failure is logged
+        assertEquals(0, reporter.getSuppressedLogs());
+    }
+
+    @Test
+    public void logsASampleOfTheRecordsWithinTheLimit() {
+        DeliveryReporter reporter = new DeliveryReporter().setLogEvery(2).setMaxLogsPerReport(1);
+        MockProducer<String, String> producer = new MockProducer<String, String>(true, new StringSerializer(), new StringSerializer());
+        for (int i = 0; i < 6; i++) {
+            ProducerRecord<String, String> record = new ProducerRecord<String, String>(TOPIC, "tweet " + i);
+            producer.send(record, reporter.callback(record));
+        }
+        assertEquals(6, reporter.getSentRecords());
+
+        // 3 sampled records, a single one logged
+        reporter.report();
+        assertEquals(2, reporter.getSuppressedLogs());
+        reporter.report();
+        assertEquals(2, reporter.getSuppressedLogs());
+        reporter.close();
+    }
+
+    @Test
+    public void gettersDoNotTakeTheLatenciesOfTheNextReport() throws InterruptedException {
+        DeliveryReporter reporter = new DeliveryReporter();
+        send(reporter, 0, 0);
+        reporter.report();
+        assertEquals(1, reporter.getReportedLatencies());
+        double firstMaxMs = reporter.getLatencyMaxMs();
+
+        send(reporter, 1, 20);
+        send(reporter, 2, 20);
+        // read between two reports, the getters see the latencies up to the last one
+        assertEquals(firstMaxMs, reporter.getLatencyMaxMs(), 0.0);
+        assertEquals(firstMaxMs, reporter.getLatencyP99Ms(), 0.0);
+
+        reporter.report();
+        assertEquals(2, reporter.getReportedLatencies());
+        assertTrue(reporter.getLatencyMaxMs() >= 20);
+        reporter.report();
+        assertEquals(0, reporter.getReportedLatencies());
+    }
+
+    private static void send(DeliveryReporter reporter, int offset, long latencyMs) throws InterruptedException {
+        Callback callback = reporter.callback(new ProducerRecord<String, String>(TOPIC, "key", "tweet " + offset));
+        Thread.sleep(latencyMs);
+        callback.onCompletion(metadata(0, offset, 3, 7), null);
+    }
+
+    private static RecordMetadata metadata(int partition, long offset, int keySize, int valueSize) {
+        return new RecordMetadata(new TopicPartition(TOPIC, partition), offset, 0, System.currentTimeMillis(),
+                null, keySize, valueSize);
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.felipegutierrez.kafka.twitter.key;
+
+import com.github.felipegutierrez.kafka.tweet.TweetSamples;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TermMatcherTest {
+
+    @Test
+    public void findsTheTermsIgnoringTheCase() {
+        TermMatcher matcher = new TermMatcher(Arrays.asList("covid", "covid-19", "corona", "vid"));
+
+        assertEquals(-1, matcher.match("nothing to see", MatchStrategy.FIRST));
+        assertEquals("corona", matcher.term(matcher.match("New CORONA cases", MatchStrategy.FIRST)));
+        // "vid" and "covid" end at the same character, the longer one wins
+        assertEquals("covid", matcher.term(matcher.match("Covid-19 and corona", MatchStrategy.FIRST)));
+        assertEquals("covid-19", matcher.term(matcher.match("Covid-19 and corona", MatchStrategy.LONGEST)));
+        assertEquals("corona", matcher.term(matcher.match("corona then covid", MatchStrategy.LONGEST)));
+        // through a failure link: "cor" fails over to the start of "covid"
+        assertEquals("covid", matcher.term(matcher.match("cocovid", MatchStrategy.FIRST)));
+    }
+
+    @Test
+    public void listsTheDistinctTermsInTheOrderTheyEnd() {
+        TermMatcher matcher = new TermMatcher(Arrays.asList("covid", "covid-19", "corona", "vid"));
+        int[] matches = new int[matcher.size()];
+
+        int count = matcher.matchAll("COVID-19, corona and covid again", matches);
+        assertEquals(4, count);
+        assertEquals("covid", matcher.term(matches[0]));
+        assertEquals("vid", matcher.term(matches[1]));
+        assertEquals("covid-19", matcher.term(matches[2]));
+        assertEquals("corona", matcher.term(matches[3]));
+
+        int[] two = new int[2];
+        assertEquals(2, matcher.matchAll("corona covid", two));
+        assertEquals("corona", matcher.term(two[0]));
+    }
+
+    @Test
+    public void matchesTheNonAsciiTermsIgnoringTheCase() {
+        TermMatcher matcher = new TermMatcher(Arrays.asList("größe", "ÉTÉ", ""));
+
+        assertEquals("größe", matcher.term(matcher.match("Die GRÖSSE, die GRÖßE", MatchStrategy.FIRST)));
+        assertEquals("ÉTÉ", matcher.term(matcher.match("un été chaud", MatchStrategy.FIRST)));
+        assertEquals(-1, matcher.match("ete", MatchStrategy.FIRST));
+    }
+
+    @Test
+    public void matchesTheCharactersLowercasedIntoAsciiWithAsciiTerms() {
+        TermMatcher matcher = new TermMatcher(Arrays.asList("kafka", "istanbul"));
+
+        // KELVIN SIGN and LATIN CAPITAL LETTER I WITH DOT ABOVE
+        assertEquals("kafka", matcher.term(matcher.match("\u212Aafka streams", MatchStrategy.FIRST)));
+        assertEquals("istanbul", matcher.term(matcher.match("\u0130STANBUL", MatchStrategy.FIRST)));
+        assertEquals(-1, matcher.match("\u00DFafka", MatchStrategy.FIRST));
+    }
+
+    @Test
+    public void agreesWithContainsOnTheTweets() {
+        Random random = new Random(7);
+        List<String> words = Arrays.asList("corona", "covid", "berlin", "kafka", "vaccine", "lockdown", "data", "rt @",
+                "\"lang\":\"de\"", "minister", "school", "x");
+        List<String> terms = new ArrayList<String>();
+        for (int i = 0; i < 300; i++) {
+            terms.add(random.nextInt(4) == 0 ? words.get(random.nextInt(words.size())) : "term" + random.nextInt(1000));
+        }
+        TermMatcher matcher = new TermMatcher(terms);
+        int[] matches = new int[matcher.size()];
+
+        for (String tweet : TweetSamples.load()) {
+            String lower = tweet.toLowerCase();
+            int longest = -1;
+            int count = 0;
+            for (int i = 0; i < terms.size(); i++) {
+                if (terms.indexOf(terms.get(i)) == i && lower.contains(terms.get(i))) {
+                    count++;
+                    if (longest < 0 || terms.get(i).length() > terms.get(longest).length()) {
+                        longest = i;
+                    }
+                }
+            }
+            assertEquals(count, matcher.matchAll(tweet, matches));
+            int found = matcher.match(tweet, MatchStrategy.LONGEST);
+            assertEquals(terms.get(longest).length(), matcher.term(found).length());
+            assertTrue(lower.contains(matcher.term(matcher.match(tweet, MatchStrategy.FIRST))));
+        }
+    }
+}
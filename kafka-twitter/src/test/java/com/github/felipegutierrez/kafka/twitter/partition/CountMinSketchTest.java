@@ -0,0 +1,46 @@
+package com.github.felipegutierrez.kafka.twitter.partition;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class CountMinSketchTest {
+
+    @Test
+    public void neverUnderestimatesAndFindsTheHeavyKeys() {
+        CountMinSketch sketch = new CountMinSketch(256, 4);
+        // one heavy key among many light ones, more distinct keys than counters per row
+        for (int i = 0; i < 10000; i++) {
+            sketch.add(bytes("corona"));
+            sketch.add(bytes("term-" + (i % 1000)));
+        }
+        assertEquals(20000, sketch.getTotal());
+        long corona = sketch.estimate(bytes("corona"));
+        assertTrue(corona >= 10000);
+        assertTrue("corona " + corona, corona < 10000 + 0.05 * sketch.getTotal());
+        for (int i = 0; i < 1000; i++) {
+            long light = sketch.estimate(bytes("term-" + i));
+            assertTrue(light >= 10);
+            assertTrue("term-" + i + " " + light, light < 0.05 * sketch.getTotal());
+        }
+        assertEquals(0, new CountMinSketch(256, 4).estimate(bytes("corona")));
+    }
+
+    @Test
+    public void halvesTheCounts() {
+        CountMinSketch sketch = new CountMinSketch(64, 2);
+        for (int i = 0; i < 100; i++) {
+            sketch.add(bytes("covid"));
+        }
+        assertEquals(101, sketch.add(bytes("covid")));
+        sketch.decay();
+        assertEquals(50, sketch.estimate(bytes("covid")));
+        assertEquals(50, sketch.getTotal());
+    }
+
+    private static byte[] bytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
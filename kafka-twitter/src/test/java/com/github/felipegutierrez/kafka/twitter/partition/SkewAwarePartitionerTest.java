@@ -0,0 +1,160 @@
+package com.github.felipegutierrez.kafka.twitter.partition;
+
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.Assert.*;
+
+public class SkewAwarePartitionerTest {
+    private static final String TOPIC = "twitter_tweets";
+    private static final int PARTITIONS = 6;
+    private final Cluster cluster = cluster();
+    private final SkewAwarePartitioner partitioner = new SkewAwarePartitioner();
+
+    @After
+    public void close() {
+        partitioner.close();
+    }
+
+    @Test
+    public void keepsThePartitionOfTheColdKeys() {
+        partitioner.configure(Collections.singletonMap(SkewAwarePartitioner.MIN_RECORDS_CONFIG, "10"));
+        for (int i = 0; i < 1000; i++) {
+            String key = "term-" + (i % 50);
+            assertEquals(key, hashPartition(key),
+                    partitioner.partition(TOPIC, key, bytes(key), null, null, cluster));
+        }
+        assertEquals(0, partitioner.getSaltedRecords());
+        assertEquals("", partitioner.getHotKeys());
+    }
+
+    @Test
+    public void spreadsAHotKeyOverABoundedSetOfPartitions() {
+        Map<String, Object> configs = new HashMap<String, Object>();
+        configs.put(SkewAwarePartitioner.HOT_SHARE_CONFIG, 0.2);
+        configs.put(SkewAwarePartitioner.MAX_PARTITIONS_CONFIG, 3);
+        partitioner.configure(configs);
+        int coronaPartition = hashPartition("corona");
+
+        Set<Integer> coronaPartitions = new HashSet<Integer>();
+        Map<String, Integer> coldPartitions = new HashMap<String, Integer>();
+        for (int i = 0; i < 2000; i++) {
+            // 80% of the tweets are about corona
+            String key = i % 5 == 0 ? "term-" + (i % 20) : "corona";
+            int partition = partitioner.partition(TOPIC, key, bytes(key), null, null, cluster);
+            if (key.equals("corona")) {
+                coronaPartitions.add(partition);
+            } else {
+                Integer previous = coldPartitions.put(key, partition);
+                assertTrue(previous == null || previous == partition);
+            }
+        }
+        assertTrue(partitioner.isHot("corona"));
+        assertTrue(partitioner.getHotKeys().startsWith("corona="));
+        Set<Integer> expected = new HashSet<Integer>();
+        for (int i = 0; i < 3; i++) {
+            expected.add((coronaPartition + i) % PARTITIONS);
+        }
+        assertEquals(expected, coronaPartitions);
+        assertTrue(partitioner.getSaltedRecords() > 1500);
+    }
+
+    @Test
+    public void sticksTheRecordsWithoutKeyToAPartitionUntilItsBatchIsFull() {
+        partitioner.configure(Collections.<String, Object>emptyMap());
+        int partition = partitioner.partition(TOPIC, null, null, null, null, cluster);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(partition, partitioner.partition(TOPIC, null, null, null, null, cluster));
+        }
+        // a new batch of another partition does not move them
+        partitioner.onNewBatch(TOPIC, cluster, (partition + 1) % PARTITIONS);
+        assertEquals(partition, partitioner.partition(TOPIC, null, null, null, null, cluster));
+
+        Set<Integer> partitions = new HashSet<Integer>();
+        for (int i = 0; i < 100; i++) {
+            partitioner.onNewBatch(TOPIC, cluster, partition);
+            int next = partitioner.partition(TOPIC, null, null, null, null, cluster);
+            assertNotEquals(partition, next);
+            partitions.add(next);
+            partition = next;
+        }
+        assertEquals(PARTITIONS, partitions.size());
+        assertEquals(0, partitioner.getSaltedRecords());
+    }
+
+    @Test
+    public void measuresTheSkewOfEachWindow() throws InterruptedException {
+        Map<String, Object> configs = new HashMap<String, Object>();
+        configs.put(SkewAwarePartitioner.WINDOW_MS_CONFIG, "50");
+        configs.put(SkewAwarePartitioner.MAX_PARTITIONS_CONFIG, "1");
+        partitioner.configure(configs);
+        for (int i = 0; i < 600; i++) {
+            partitioner.partition(TOPIC, "corona", bytes("corona"), null, null, cluster);
+        }
+        Thread.sleep(60);
+        // closes the window
+        partitioner.partition(TOPIC, "corona", bytes("corona"), null, null, cluster);
+        // everything on one partition out of six, and never salted with a single partition
+        assertEquals(6.0, partitioner.getPartitionSkew(), 0.001);
+        assertEquals(0, partitioner.getSaltedRecords());
+        assertEquals(601, partitioner.getRecords());
+    }
+
+    @Test
+    public void registersTheProducersWithoutClientIdUnderDistinctNames() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName("com.github.felipegutierrez.kafka.twitter:type=SkewAwarePartitioner,*");
+        int registered = server.queryNames(pattern, null).size();
+        SkewAwarePartitioner other = new SkewAwarePartitioner();
+        try {
+            partitioner.configure(Collections.<String, Object>emptyMap());
+            other.configure(Collections.<String, Object>emptyMap());
+            assertEquals(registered + 2, server.queryNames(pattern, null).size());
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void skewIsOneWhenBalanced() {
+        AtomicLongArray counts = new AtomicLongArray(new long[]{5, 5, 5});
+        assertEquals(1.0, SkewAwarePartitioner.skew(counts), 0.001);
+        assertEquals(0.0, SkewAwarePartitioner.skew(new AtomicLongArray(3)), 0.001);
+    }
+
+    private static Cluster cluster() {
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitions = new ArrayList<PartitionInfo>();
+        for (int i = 0; i < PARTITIONS; i++) {
+            partitions.add(new PartitionInfo(TOPIC, i, node, new Node[]{node}, new Node[]{node}));
+        }
+        return new Cluster("cluster", Collections.singletonList(node), partitions, Collections.<String>emptySet(),
+                Collections.<String>emptySet());
+    }
+
+    private static int hashPartition(String key) {
+        return Utils.toPositive(Utils.murmur2(bytes(key))) % PARTITIONS;
+    }
+
+    private static byte[] bytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
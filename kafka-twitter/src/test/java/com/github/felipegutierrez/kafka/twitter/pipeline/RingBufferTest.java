@@ -0,0 +1,80 @@
+package com.github.felipegutierrez.kafka.twitter.pipeline;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RingBufferTest {
+
+    @Test
+    public void drainsTheElementsInOrderUntilEmpty() {
+        RingBuffer<Integer> ring = new RingBuffer<Integer>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+        assertEquals(1, ring.getFullOffers());
+        assertEquals(4, ring.getMaxSize());
+
+        List<Integer> batch = new ArrayList<Integer>();
+        assertEquals(3, ring.drainTo(batch, 3));
+        assertEquals(1, ring.size());
+        // the slots are reused after the wrap around
+        assertTrue(ring.offer(4));
+        assertTrue(ring.offer(5));
+        assertEquals(3, ring.drainTo(batch, 10));
+        assertEquals(0, ring.drainTo(batch, 10));
+        assertEquals(6, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(i, batch.get(i).intValue());
+        }
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void handsOverEveryElementBetweenTwoThreads() throws InterruptedException {
+        final RingBuffer<Integer> ring = new RingBuffer<Integer>(64);
+        final int elements = 200000;
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < elements; i++) {
+                    while (!ring.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        producer.start();
+
+        List<Integer> batch = new ArrayList<Integer>();
+        int expected = 0;
+        long deadline = System.currentTimeMillis() + 30000;
+        while (expected < elements && System.currentTimeMillis() < deadline) {
+            if (ring.drainTo(batch, 16) == 0) {
+                Thread.yield();
+            }
+            for (Integer element : batch) {
+                assertEquals(expected++, element.intValue());
+            }
+            batch.clear();
+        }
+        producer.join();
+        assertEquals(elements, expected);
+        assertTrue(ring.getMaxSize() <= 64);
+    }
+
+    @Test
+    public void roundsTheCapacityUpToAPowerOfTwo() {
+        assertEquals(2048, new TweetPipelineConfig().setRingCapacity(1025).getRingCapacity());
+        try {
+            new RingBuffer<String>(1000);
+            fail("the capacity should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("power of two"));
+        }
+    }
+}
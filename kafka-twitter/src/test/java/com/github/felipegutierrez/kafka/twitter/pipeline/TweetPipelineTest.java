@@ -0,0 +1,137 @@
+package com.github.felipegutierrez.kafka.twitter.pipeline;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TweetPipelineTest {
+    private static final String TOPIC = "twitter_tweets";
+
+    @Test
+    public void sendsEveryTweetOnceWithSeveralWorkers() throws InterruptedException {
+        BlockingQueue<String> source = new LinkedBlockingQueue<String>(1000);
+        final Set<String> workers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final List<ProducerRecord<String, String>> sent = new ArrayList<ProducerRecord<String, String>>();
+        TweetPipeline<String> pipeline = new TweetPipeline<String>(source, new TweetMapper<String>() {
+            @Override
+            public ProducerRecord<String, String> map(String tweet) {
+                workers.add(Thread.currentThread().getName());
+                if (tweet.endsWith("0")) {
+                    return null;
+                }
+                return new ProducerRecord<String, String>(TOPIC, tweet.toUpperCase());
+            }
+        }, new RecordSender<String>() {
+            @Override
+            public void send(ProducerRecord<String, String> record) {
+                // a single sender thread
+                sent.add(record);
+            }
+        }, new TweetPipelineConfig().setWorkers(3).setRingCapacity(16).setBatchSize(8)).start();
+
+        for (int i = 0; i < 5000; i++) {
+            source.put("tweet " + i);
+        }
+        pipeline.close();
+
+        assertEquals(5000, pipeline.getIngestedMessages());
+        assertEquals(500, pipeline.getSkippedMessages());
+        assertEquals(4500, pipeline.getSentRecords());
+        assertEquals(0, pipeline.getDroppedMessages());
+        Set<String> values = new HashSet<String>();
+        for (ProducerRecord<String, String> record : sent) {
+            values.add(record.value());
+        }
+        assertEquals(4500, values.size());
+        assertTrue(values.contains("TWEET 4999"));
+        assertEquals(3, workers.size());
+        assertTrue(pipeline.getMaxParseQueueSize() <= pipeline.getParseQueueCapacity());
+        assertEquals(0, pipeline.getParseQueueSize());
+        assertEquals(0, pipeline.getSendQueueSize());
+    }
+
+    @Test
+    public void dropsTheTweetsWhenTheWorkersAreBusy() throws InterruptedException {
+        BlockingQueue<String> source = new LinkedBlockingQueue<String>();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        TweetPipeline<String> pipeline = new TweetPipeline<String>(source, new TweetMapper<String>() {
+            @Override
+            public ProducerRecord<String, String> map(String tweet) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new ProducerRecord<String, String>(TOPIC, tweet);
+            }
+        }, new RecordSender<String>() {
+            @Override
+            public void send(ProducerRecord<String, String> record) {
+            }
+        }, new TweetPipelineConfig().setWorkers(1).setRingCapacity(4).setBatchSize(1).setDropWhenFull(true)).start();
+
+        source.put("first");
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            source.put("tweet " + i);
+        }
+        // the worker holds the first tweet, the ring takes 4 more
+        long deadline = System.currentTimeMillis() + 10000;
+        while (pipeline.getIngestedMessages() < 11 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(6, pipeline.getDroppedMessages());
+        assertEquals(4, pipeline.getParseQueueSize());
+        assertEquals(4, pipeline.getMaxParseQueueSize());
+        assertEquals(6, pipeline.getParseQueueFullOffers());
+        release.countDown();
+        pipeline.close();
+
+        assertEquals(5, pipeline.getSentRecords());
+        assertEquals(0, pipeline.getSourceQueueSize());
+    }
+
+    @Test
+    public void countsTheTweetsTheMapperFailsOn() throws InterruptedException {
+        BlockingQueue<String> source = new LinkedBlockingQueue<String>();
+        final List<ProducerRecord<String, String>> sent = new ArrayList<ProducerRecord<String, String>>();
+        TweetPipeline<String> pipeline = new TweetPipeline<String>(source, new TweetMapper<String>() {
+            @Override
+            public ProducerRecord<String, String> map(String tweet) {
+                if (tweet.isEmpty()) {
+                    throw new IllegalArgumentException("empty tweet");
+                }
+                return new ProducerRecord<String, String>(TOPIC, tweet);
+            }
+        }, new RecordSender<String>() {
+            @Override
+            public void send(ProducerRecord<String, String> record) {
+                sent.add(record);
+            }
+        }, new TweetPipelineConfig().setWorkers(1));
+        source.put("one");
+        source.put("");
+        source.put("two");
+        // queued before the start and sent on close
+        pipeline.start().close();
+
+        assertEquals(1, pipeline.getFailedMessages());
+        assertEquals(2, sent.size());
+        assertEquals("one", sent.get(0).value());
+        assertEquals("two", sent.get(1).value());
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.felipegutierrez.kafka.twitter.replay;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MappedLineReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsTheLinesAcrossTheWindows() throws IOException {
+        Path file = write("{\"text\":\"corona\"}\r\n\n  \n{\"text\":\"größer\"}\n{\"text\":\"covid\"}");
+        // windows much smaller than the file, so the lines cross their ends
+        for (int windowBytes : new int[]{20, 24, 64, 1024}) {
+            try (MappedLineReader reader = new MappedLineReader(file, windowBytes)) {
+                assertEquals(Arrays.asList("{\"text\":\"corona\"}", "{\"text\":\"größer\"}", "{\"text\":\"covid\"}"),
+                        readAll(reader));
+                assertEquals(3, reader.getLines());
+            }
+        }
+    }
+
+    @Test
+    public void readsAnEmptyFile() throws IOException {
+        try (MappedLineReader reader = new MappedLineReader(write(""))) {
+            assertNull(reader.nextLine());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsALineLongerThanTheWindow() throws IOException {
+        try (MappedLineReader reader = new MappedLineReader(write("{\"text\":\"corona covid\"}\n{}\n"), 8)) {
+            reader.nextLine();
+        }
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static List<String> readAll(MappedLineReader reader) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = reader.nextLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+}
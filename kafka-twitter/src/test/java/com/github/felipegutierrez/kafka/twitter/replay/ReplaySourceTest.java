@@ -0,0 +1,97 @@
+package com.github.felipegutierrez.kafka.twitter.replay;
+
+import com.github.felipegutierrez.kafka.tweet.TweetSamples;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReplaySourceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysTheCapturedTweetsInOrder() throws Exception {
+        List<String> tweets = TweetSamples.load();
+        Path directory = capture(tweets, 4096);
+        List<Path> files = ReplaySource.files(directory);
+        assertTrue(files.size() > 1);
+
+        // a small queue, the replay waits for the pipeline instead of dropping
+        BlockingQueue<String> queue = new LinkedBlockingQueue<String>(2);
+        ReplaySource replay = new ReplaySource(files, ReplayPace.MAX).setLoops(2);
+        replay.start(queue);
+        List<String> replayed = new ArrayList<String>();
+        for (int i = 0; i < tweets.size() * 2; i++) {
+            replayed.add(queue.poll(10, TimeUnit.SECONDS));
+        }
+        assertEquals(tweets, replayed.subList(0, tweets.size()));
+        assertEquals(tweets, replayed.subList(tweets.size(), replayed.size()));
+        waitUntilDone(replay);
+        assertEquals(tweets.size() * 2, replay.getReplayedMessages());
+        assertEquals(0, replay.getDroppedMessages());
+    }
+
+    @Test
+    public void replaysAtAFixedRate() throws Exception {
+        List<String> tweets = TweetSamples.load();
+        BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
+        ReplaySource replay = new ReplaySource(ReplaySource.files(capture(tweets, 1 << 20)), ReplayPace.FIXED_RATE)
+                .setRate(40);
+        long start = System.nanoTime();
+        replay.start(queue);
+        waitUntilDone(replay);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // the last tweet is due after 11 intervals of 25 ms
+        assertTrue("replayed in " + elapsedMs + " ms", elapsedMs >= 270);
+        assertEquals(tweets.size(), queue.size());
+    }
+
+    @Test
+    public void keepsTheRecordedIntervals() throws Exception {
+        List<String> tweets = TweetSamples.load();
+        ReplaySource replay = new ReplaySource(ReplaySource.files(capture(tweets, 1 << 20)), ReplayPace.RECORDED)
+                .setSpeedup(4);
+        assertEquals(1584887400332L, replay.timestamp(tweets.get(0)));
+        assertEquals(1584887400000L, replay.timestamp("{\"created_at\":\"Sun Mar 22 14:30:00 +0000 2020\"}"));
+        assertEquals(-1, replay.timestamp("{\"text\":\"corona\"}"));
+
+        BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
+        long start = System.nanoTime();
+        replay.start(queue);
+        waitUntilDone(replay);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // 1969 ms recorded between the first and the last tweet
+        assertTrue("replayed in " + elapsedMs + " ms", elapsedMs >= 480);
+        assertEquals(tweets.size(), queue.size());
+    }
+
+    private Path capture(List<String> tweets, long maxFileBytes) throws IOException {
+        Path directory = folder.newFolder().toPath();
+        try (TweetCapture capture = new TweetCapture(directory, maxFileBytes)) {
+            for (String tweet : tweets) {
+                capture.write(tweet + "\r\n");
+            }
+            capture.write("\r\n");
+            assertEquals(tweets.size(), capture.getCapturedMessages());
+        }
+        return directory;
+    }
+
+    private static void waitUntilDone(ReplaySource replay) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!replay.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(replay.isDone());
+    }
+}
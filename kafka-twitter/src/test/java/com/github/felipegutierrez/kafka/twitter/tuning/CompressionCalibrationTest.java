@@ -0,0 +1,61 @@
+package com.github.felipegutierrez.kafka.twitter.tuning;
+
+import com.github.felipegutierrez.kafka.tweet.TweetSamples;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.record.CompressionType;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class CompressionCalibrationTest {
+
+    @Test
+    public void measuresEveryCodecAndBatchSize() {
+        List<ProducerRecord<byte[], byte[]>> records = new ArrayList<ProducerRecord<byte[], byte[]>>();
+        // enough tweets to fill several batches
+        for (int i = 0; i < 20; i++) {
+            for (String tweet : TweetSamples.load()) {
+                records.add(new ProducerRecord<byte[], byte[]>("twitter_tweets", "corona".getBytes(StandardCharsets.UTF_8),
+                        tweet.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        List<CalibrationResult> results = new CompressionCalibration(records)
+                .setBatchSizes(4 * 1024, 64 * 1024)
+                .setRounds(2)
+                .run();
+
+        assertEquals(CompressionType.values().length * 2, results.size());
+        CalibrationResult none = results.get(0);
+        assertEquals(CompressionType.NONE, none.getCompression());
+        assertEquals(4 * 1024, none.getBatchSize());
+        // the record format costs a few bytes per record without compression
+        assertTrue(none.getCompressionRatio() < 1);
+        assertTrue(none.getBatches() > results.get(1).getBatches());
+        for (CalibrationResult result : results) {
+            assertEquals(none.getInputBytes(), result.getInputBytes());
+            assertTrue(result.getMbPerSecond() > 0);
+            if (result.getCompression() != CompressionType.NONE) {
+                assertTrue(result + " compresses", result.getCompressionRatio() > 1.5);
+            }
+        }
+        String report = CompressionCalibration.report(results);
+        assertTrue(report, report.contains("zstd") && report.contains("best ratio"));
+    }
+
+    @Test
+    public void configuresTheProducer() {
+        Properties properties = new ProducerTuning().setCompression("LZ4").setLingerMs(50).setBatchSize(256 * 1024)
+                .apply(new Properties());
+        assertEquals("lz4", properties.getProperty(ProducerConfig.COMPRESSION_TYPE_CONFIG));
+        assertEquals("50", properties.getProperty(ProducerConfig.LINGER_MS_CONFIG));
+        assertEquals("262144", properties.getProperty(ProducerConfig.BATCH_SIZE_CONFIG));
+        assertEquals("gzip", ProducerTuning.compressed().apply(new Properties())
+                .getProperty(ProducerConfig.COMPRESSION_TYPE_CONFIG));
+    }
+}
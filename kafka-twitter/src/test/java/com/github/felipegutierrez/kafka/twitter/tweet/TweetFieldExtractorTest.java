@@ -0,0 +1,66 @@
+package com.github.felipegutierrez.kafka.twitter.tweet;
+
+import com.github.felipegutierrez.kafka.tweet.TweetSamples;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class TweetFieldExtractorTest {
+
+    @Test
+    public void readsTheSameFieldsAsTheTree() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        TweetFieldExtractor extractor = new TweetFieldExtractor("text,id_str,lang,user.followers_count");
+        TweetFields fields = extractor.newFields();
+
+        for (String tweet : TweetSamples.load()) {
+            JsonNode tree = mapper.readTree(tweet);
+            assertEquals(4, extractor.extract(tweet, fields));
+            // the retweets hold a text and a user of their own, deeper in the tweet
+            assertEquals(tree.get("text").asText(), fields.get(0));
+            assertEquals(tree.get("id_str").asText(), fields.get(1));
+            assertEquals(tree.get("lang").asText(), fields.get(2));
+            assertEquals(tree.get("user").get("followers_count").asText(), fields.get(3));
+            assertEquals(JsonToken.VALUE_NUMBER_INT, fields.getToken(3));
+        }
+    }
+
+    @Test
+    public void writesTheFieldsFoundAsACompactObject() {
+        TweetFieldExtractor extractor = new TweetFieldExtractor(" id_str, lang,user.verified,user.followers_count,place.name,id_str");
+        TweetFields fields = extractor.newFields();
+        String tweet = "{\"id\":1241700000000000001,\"id_str\":\"1241700000000000001\",\"entities\":{\"lang\":\"xx\"}," +
+                "\"user\":{\"followers_count\":42834,\"verified\":false},\"place\":null,\"lang\":\"de\"}";
+
+        assertEquals(5, extractor.size());
+        assertEquals(3, extractor.indexOf("user.followers_count"));
+        assertEquals(4, extractor.extract(tweet, fields));
+        assertNull(fields.get(4));
+        assertEquals("{\"id_str\":\"1241700000000000001\",\"lang\":\"de\",\"user.verified\":false,\"user.followers_count\":42834}",
+                extractor.toJson(fields));
+    }
+
+    @Test
+    public void stopsAtTheInvalidTweets() {
+        TweetFieldExtractor extractor = new TweetFieldExtractor("id_str,text");
+        TweetFields fields = extractor.newFields();
+
+        assertEquals(-1, extractor.extract("[1,2]", fields));
+        assertEquals(-1, extractor.extract("{\"id_str\":\"1\",\"text\":", fields));
+        assertEquals("1", fields.get(0));
+        // the rest of the tweet is not read once every field is found
+        assertEquals(2, extractor.extract("{\"id_str\":\"2\",\"text\":\"hello\",\"broken", fields));
+        assertEquals("hello", fields.get(1));
+        assertEquals(0, extractor.extract("{\"text\":{\"nested\":\"no\"},\"id_str\":null}", fields));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTheEmptyPaths() {
+        new TweetFieldExtractor("id_str,user..name");
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.felipegutierrez.kafka.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NumbersTest {
+
+    @Test
+    public void roundsUpToAPowerOfTwo() {
+        assertEquals(1, Numbers.ceilPowerOfTwo(1));
+        assertEquals(2, Numbers.ceilPowerOfTwo(2));
+        assertEquals(1024, Numbers.ceilPowerOfTwo(1000));
+        assertEquals(1024, Numbers.ceilPowerOfTwo(1024));
+        assertEquals(1 << 30, Numbers.ceilPowerOfTwo((1 << 29) + 1));
+        try {
+            Numbers.ceilPowerOfTwo(0);
+            fail("0 should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("between 1 and 2^30"));
+        }
+    }
+}
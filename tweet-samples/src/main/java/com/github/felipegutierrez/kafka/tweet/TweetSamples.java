@@ -0,0 +1,38 @@
+package com.github.felipegutierrez.kafka.tweet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic tweets shaped like the ones of the statuses/filter stream, one JSON document per line. They were generated,
+ * not recorded: the texts draw on a small vocabulary and the users repeat, so they compress and match terms better
+ * than real tweets and the timings and ratios measured on them are only comparable with each other.
+ */
+public class TweetSamples {
+    private static final String TWEETS_FILE = "tweets/synthetic-tweets.jsonl";
+
+    public static List<String> load() {
+        List<String> tweets = new ArrayList<String>();
+        InputStream in = TweetSamples.class.getClassLoader().getResourceAsStream(TWEETS_FILE);
+        if (in == null) {
+            throw new IllegalStateException("File [" + TWEETS_FILE + "] not found.");
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    tweets.add(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return tweets;
+    }
+}